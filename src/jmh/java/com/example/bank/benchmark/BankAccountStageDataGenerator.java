@@ -0,0 +1,125 @@
+package com.example.bank.benchmark;
+
+import com.example.bank.job.BankAccountStageInput;
+import com.example.bank.job.Cents;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic in-JVM counterpart of {@code scripts/generate_bank_stage_test_data.py}.
+ * The same seed always produces the same records, with the same distribution of stages,
+ * balances and rank change conditions as the script.
+ */
+public final class BankAccountStageDataGenerator {
+
+	public static final String HEADER = "customer_id,current_stage_code,month_end_date,total_balance,"
+			+ "foreign_currency_balance,investment_trust_balance,monthly_foreign_currency_purchase,"
+			+ "monthly_investment_trust_purchase,housing_loan_balance,monthly_fx_trading_volume";
+
+	private static final String[] WEIGHTED_STAGES = { "NONE", "NONE", "NONE", "NONE", "NONE", "NONE", "SILVER",
+			"SILVER", "SILVER", "GOLD", "GOLD", "PLATINUM" };
+
+	private final SplittableRandom random;
+
+	private final LocalDate monthEndDate;
+
+	private final Set<Integer> usedCustomerIds = new HashSet<>();
+
+	public BankAccountStageDataGenerator(long seed, LocalDate monthEndDate) {
+		this.random = new SplittableRandom(seed);
+		this.monthEndDate = monthEndDate;
+	}
+
+	public BankAccountStageInput next() {
+		String customerId = "C" + uniqueCustomerNumber();
+		String currentStageCode = WEIGHTED_STAGES[this.random.nextInt(WEIGHTED_STAGES.length)];
+		boolean none = "NONE".equals(currentStageCode);
+		boolean goldOrAbove = "GOLD".equals(currentStageCode) || "PLATINUM".equals(currentStageCode);
+		long totalBalance = between(0, 10000000);
+		long monthlyForeignCurrencyPurchase = none ? oneOf(between(0, 20000), between(30000, 100000), 0, 0, 0)
+				: oneOf(between(0, 20000), between(30000, 100000));
+		long monthlyInvestmentTrustPurchase = none ? oneOf(between(0, 20000), between(30000, 100000), 0, 0, 0)
+				: oneOf(between(0, 20000), between(30000, 100000));
+		long foreignCurrencyBalance;
+		long investmentTrustBalance;
+		if (goldOrAbove) {
+			foreignCurrencyBalance = between(1000000, 8000000);
+			investmentTrustBalance = between(1000000, 8000000);
+		}
+		else if (!none) {
+			foreignCurrencyBalance = oneOf(between(0, 2000000), between(2000000, 5000000));
+			investmentTrustBalance = oneOf(between(0, 2000000), between(2000000, 5000000));
+		}
+		else {
+			foreignCurrencyBalance = oneOf(between(0, 3000000), 0, 0, 0);
+			investmentTrustBalance = oneOf(between(0, 3000000), 0, 0, 0);
+		}
+		long housingLoanBalance = oneOf(0, 0, between(1000000, 50000000));
+		long monthlyFxTradingVolume = goldOrAbove ? oneOf(between(0, 500), between(1000, 5000))
+				: oneOf(between(0, 500), between(1000, 5000), 0, 0, 0);
+		return BankAccountStageInput.of(customerId, currentStageCode, this.monthEndDate,
+				BigDecimal.valueOf(totalBalance), BigDecimal.valueOf(foreignCurrencyBalance),
+				BigDecimal.valueOf(investmentTrustBalance), BigDecimal.valueOf(monthlyForeignCurrencyPurchase),
+				BigDecimal.valueOf(monthlyInvestmentTrustPurchase), BigDecimal.valueOf(housingLoanBalance),
+				(int) monthlyFxTradingVolume);
+	}
+
+	public List<BankAccountStageInput> next(int count) {
+		List<BankAccountStageInput> inputs = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			inputs.add(next());
+		}
+		return inputs;
+	}
+
+	/**
+	 * Writes {@code count} records with a header line as the input CSV file.
+	 */
+	public void writeCsv(Path path, int count) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.write('\n');
+			for (int i = 0; i < count; i++) {
+				BankAccountStageInput input = next();
+				writer.write(String.join(",", input.customerId(), input.currentStageCode(),
+						input.monthEndDate().toString(), Cents.toString(input.totalBalance()),
+						Cents.toString(input.foreignCurrencyBalance()), Cents.toString(input.investmentTrustBalance()),
+						Cents.toString(input.monthlyForeignCurrencyPurchase()),
+						Cents.toString(input.monthlyInvestmentTrustPurchase()),
+						Cents.toString(input.housingLoanBalance()), Integer.toString(input.monthlyFxTradingVolume())));
+				writer.write('\n');
+			}
+		}
+	}
+
+	private int uniqueCustomerNumber() {
+		while (true) {
+			int customerNumber = (int) between(10000000, 99999999);
+			if (this.usedCustomerIds.add(customerNumber)) {
+				return customerNumber;
+			}
+		}
+	}
+
+	/**
+	 * Like Python's {@code random.randint}, both bounds are inclusive.
+	 */
+	private long between(long min, long max) {
+		return this.random.nextLong(min, max + 1);
+	}
+
+	private long oneOf(long... candidates) {
+		return candidates[this.random.nextInt(candidates.length)];
+	}
+
+}
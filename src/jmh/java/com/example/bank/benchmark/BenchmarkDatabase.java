@@ -0,0 +1,46 @@
+package com.example.bank.benchmark;
+
+import javax.sql.DataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+/**
+ * In-process H2 database in PostgreSQL mode with the schema and the initial rules of the
+ * migrations.
+ */
+final class BenchmarkDatabase {
+
+	private BenchmarkDatabase() {
+	}
+
+	static SingleConnectionDataSource create(String name) {
+		SingleConnectionDataSource dataSource = new SingleConnectionDataSource("jdbc:h2:mem:" + name
+				+ ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1", "sa", "",
+				true);
+		populate(dataSource);
+		return dataSource;
+	}
+
+	static void truncateResults(DataSource dataSource) {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("SET REFERENTIAL_INTEGRITY FALSE");
+		jdbcTemplate.execute("TRUNCATE TABLE condition_evaluation_results");
+		jdbcTemplate.execute("TRUNCATE TABLE stage_transitions");
+		jdbcTemplate.execute("TRUNCATE TABLE customer_stage_calculations");
+		jdbcTemplate.execute("SET REFERENTIAL_INTEGRITY TRUE");
+	}
+
+	static void shutdown(SingleConnectionDataSource dataSource) {
+		new JdbcTemplate(dataSource).execute("SHUTDOWN");
+		dataSource.destroy();
+	}
+
+	private static void populate(DataSource dataSource) {
+		new ResourceDatabasePopulator(new ClassPathResource("schema-h2.sql"),
+				new ClassPathResource("db/migration/V002__initial_data.sql"))
+			.execute(dataSource);
+	}
+
+}
@@ -0,0 +1,102 @@
+package com.example.bank.benchmark;
+
+import com.example.bank.job.BankAccountStageInput;
+import com.example.bank.job.BankAccountStageItemProcessor;
+import com.example.bank.job.BankAccountStageItemWriter;
+import com.example.bank.job.BankAccountStageMetrics;
+import com.example.bank.job.ProcessResult;
+import com.example.bank.stage.StageRuleEngine;
+import com.example.bank.stage.StageRuleRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.item.Chunk;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.support.JdbcTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Cost of writing and committing one chunk with {@link BankAccountStageItemWriter} for
+ * several chunk sizes. Divide the score by the chunk size for the cost per customer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChunkWriteBenchmark {
+
+	static final LocalDate MONTH_END_DATE = LocalDate.parse("2025-04-30");
+
+	@Param({ "100", "500", "2000" })
+	int chunkSize;
+
+	SingleConnectionDataSource dataSource;
+
+	BankAccountStageItemWriter itemWriter;
+
+	TransactionTemplate transactionTemplate;
+
+	Chunk<ProcessResult> chunk;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		this.dataSource = BenchmarkDatabase.create("write");
+		BankAccountStageMetrics metrics = new BankAccountStageMetrics(new SimpleMeterRegistry());
+		BankAccountStageItemProcessor itemProcessor = new BankAccountStageItemProcessor(new StageRuleEngine(
+				new StageRuleRepository(JdbcClient.create(this.dataSource)), MONTH_END_DATE.toString()), metrics);
+		List<ProcessResult> results = new ArrayList<>(this.chunkSize);
+		for (BankAccountStageInput input : new BankAccountStageDataGenerator(42, MONTH_END_DATE)
+			.next(this.chunkSize)) {
+			results.add(itemProcessor.process(input));
+		}
+		this.chunk = new Chunk<>(results);
+		this.itemWriter = new BankAccountStageItemWriter(this.dataSource, metrics, "insert", null, null);
+		this.transactionTemplate = new TransactionTemplate(new JdbcTransactionManager(this.dataSource));
+	}
+
+	/**
+	 * Empties the result tables, so that every invocation writes the same chunk into
+	 * empty tables. A chunk takes milliseconds, well above the cost of a per-invocation
+	 * fixture.
+	 */
+	@Setup(Level.Invocation)
+	public void truncate() {
+		BenchmarkDatabase.truncateResults(this.dataSource);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		BenchmarkDatabase.shutdown(this.dataSource);
+	}
+
+	@Benchmark
+	public void write() {
+		this.transactionTemplate.executeWithoutResult(status -> {
+			try {
+				this.itemWriter.write(this.chunk);
+			}
+			catch (Exception ex) {
+				throw new IllegalStateException(ex);
+			}
+		});
+	}
+
+}
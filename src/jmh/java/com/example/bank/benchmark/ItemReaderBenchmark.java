@@ -0,0 +1,77 @@
+package com.example.bank.benchmark;
+
+import com.example.bank.config.BankAccountStageJobConfig;
+import com.example.bank.job.BankAccountStageInput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * CSV parsing throughput of the readers built by {@link BankAccountStageJobConfig}. One
+ * operation is one line, so the score is lines per second and {@code -prof gc} reports
+ * the allocation per line.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ItemReaderBenchmark.LINES)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ItemReaderBenchmark {
+
+	static final int LINES = 100_000;
+
+	@Param({ "flatfile", "mapped" })
+	String reader;
+
+	Path inputFile;
+
+	@Setup(Level.Trial)
+	public void generateInputFile() throws IOException {
+		this.inputFile = Files.createTempFile("bank_account_stage_", ".csv");
+		new BankAccountStageDataGenerator(42, LocalDate.parse("2025-04-30")).writeCsv(this.inputFile, LINES);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteInputFile() throws IOException {
+		Files.deleteIfExists(this.inputFile);
+	}
+
+	@Benchmark
+	public void read(Blackhole blackhole) throws Exception {
+		ItemStreamReader<BankAccountStageInput> itemReader = new BankAccountStageJobConfig()
+			.bankAccountStageInputItemReader(new FileSystemResource(this.inputFile), this.reader, null, null);
+		itemReader.open(new ExecutionContext());
+		try {
+			BankAccountStageInput input;
+			while ((input = itemReader.read()) != null) {
+				blackhole.consume(input);
+			}
+		}
+		finally {
+			itemReader.close();
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.example.bank.benchmark;
+
+import com.example.bank.job.BankAccountStageInput;
+import com.example.bank.job.BankAccountStageItemProcessor;
+import com.example.bank.job.BankAccountStageMetrics;
+import com.example.bank.stage.StageDecisionTable;
+import com.example.bank.stage.StageRuleEngine;
+import com.example.bank.stage.StageRuleRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Stage and rank-up evaluation with the rules of the initial data, per item and per chunk
+ * of {@value #CHUNK_SIZE} items with the vectorized and the scalar kernel. One operation
+ * is one item. The forks enable the {@code jdk.incubator.vector} module.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(StageEvaluationBenchmark.ITEMS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class StageEvaluationBenchmark {
+
+	static final int ITEMS = 10_000;
+
+	static final int CHUNK_SIZE = 200;
+
+	static final LocalDate MONTH_END_DATE = LocalDate.parse("2025-04-30");
+
+	SingleConnectionDataSource dataSource;
+
+	StageDecisionTable decisionTable;
+
+	StageDecisionTable scalarDecisionTable;
+
+	BankAccountStageItemProcessor itemProcessor;
+
+	List<BankAccountStageInput> inputs;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.dataSource = BenchmarkDatabase.create("evaluation");
+		StageRuleEngine stageRuleEngine = new StageRuleEngine(
+				new StageRuleRepository(JdbcClient.create(this.dataSource)), MONTH_END_DATE.toString());
+		this.decisionTable = stageRuleEngine.decisionTable(MONTH_END_DATE);
+		if (!this.decisionTable.isVectorized()) {
+			throw new IllegalStateException("The Vector API is not enabled");
+		}
+		this.scalarDecisionTable = this.decisionTable.withoutVectorization();
+		this.itemProcessor = new BankAccountStageItemProcessor(stageRuleEngine,
+				new BankAccountStageMetrics(new SimpleMeterRegistry()));
+		this.inputs = new BankAccountStageDataGenerator(42, MONTH_END_DATE).next(ITEMS);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		BenchmarkDatabase.shutdown(this.dataSource);
+	}
+
+	@Benchmark
+	public void evaluate(Blackhole blackhole) {
+		for (BankAccountStageInput input : this.inputs) {
+			blackhole.consume(this.decisionTable.evaluate(input));
+		}
+	}
+
+	@Benchmark
+	public void process(Blackhole blackhole) throws Exception {
+		for (BankAccountStageInput input : this.inputs) {
+			blackhole.consume(this.itemProcessor.process(input));
+		}
+	}
+
+	@Benchmark
+	public void evaluateChunkVectorized(Blackhole blackhole) {
+		evaluateChunks(this.decisionTable, blackhole);
+	}
+
+	@Benchmark
+	public void evaluateChunkScalar(Blackhole blackhole) {
+		evaluateChunks(this.scalarDecisionTable, blackhole);
+	}
+
+	private void evaluateChunks(StageDecisionTable decisionTable, Blackhole blackhole) {
+		for (int i = 0; i < ITEMS; i += CHUNK_SIZE) {
+			blackhole.consume(decisionTable.evaluate(this.inputs.subList(i, Math.min(i + CHUNK_SIZE, ITEMS))));
+		}
+	}
+
+}
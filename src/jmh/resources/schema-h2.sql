@@ -0,0 +1,87 @@
+-- Schema of V001, V003 and V005 for H2 in PostgreSQL mode, used by the benchmarks.
+-- H2 has no CREATE TYPE ... AS ENUM, so the enum types are declared as domains.
+CREATE DOMAIN stage_code_enum AS ENUM ('NONE', 'SILVER', 'GOLD', 'PLATINUM');
+CREATE DOMAIN condition_type_enum AS ENUM ('TOTAL_BALANCE', 'MONTHLY_FOREIGN_CURRENCY_PURCHASE', 'MONTHLY_INVESTMENT_TRUST_PURCHASE', 'COMBINED_BALANCE_GOLD', 'COMBINED_BALANCE_PLATINUM', 'HOUSING_LOAN', 'FX_TRADING');
+CREATE DOMAIN condition_category_enum AS ENUM ('STAGE', 'RANK_CHANGE');
+
+CREATE TABLE stages (
+    stage_code stage_code_enum NOT NULL,
+    stage_name VARCHAR(50) NOT NULL,
+    stage_order INT NOT NULL,
+    valid_from DATE NOT NULL,
+    valid_to DATE NOT NULL DEFAULT '9999-12-31',
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    rank_up_reachable BOOLEAN NOT NULL DEFAULT TRUE,
+    PRIMARY KEY (stage_code, valid_from)
+);
+
+CREATE TABLE conditions (
+    id SERIAL PRIMARY KEY,
+    condition_type condition_type_enum NOT NULL,
+    condition_name VARCHAR(100) NOT NULL,
+    condition_category condition_category_enum NOT NULL,
+    valid_from DATE NOT NULL,
+    valid_to DATE NOT NULL DEFAULT '9999-12-31',
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uq_condition_type_valid UNIQUE (condition_type, valid_from, valid_to)
+);
+
+CREATE TABLE stage_conditions (
+    id BIGINT PRIMARY KEY,
+    stage_code stage_code_enum NOT NULL,
+    min_value DECIMAL(15, 2) NOT NULL DEFAULT 0,
+    max_value DECIMAL(15, 2) NOT NULL DEFAULT 9999999999999.99,
+    CONSTRAINT fk_stage_condition FOREIGN KEY (id) REFERENCES conditions(id)
+);
+
+CREATE TABLE rank_change_conditions (
+    id BIGINT PRIMARY KEY,
+    threshold_value DECIMAL(15, 2) NOT NULL,
+    rank_change_levels INT NOT NULL DEFAULT 1,
+    CONSTRAINT fk_rank_change_condition FOREIGN KEY (id) REFERENCES conditions(id)
+);
+
+CREATE TABLE customer_stage_calculations (
+    id SERIAL PRIMARY KEY,
+    customer_id VARCHAR(50) NOT NULL,
+    calculation_date DATE NOT NULL,
+    valid_from DATE NOT NULL,
+    valid_to DATE NOT NULL,
+    current_stage_code stage_code_enum NOT NULL,
+    final_stage_code stage_code_enum NOT NULL,
+    total_balance DECIMAL(15, 2) NOT NULL DEFAULT 0,
+    foreign_currency_balance DECIMAL(15, 2) NOT NULL DEFAULT 0,
+    investment_trust_balance DECIMAL(15, 2) NOT NULL DEFAULT 0,
+    monthly_foreign_currency_purchase DECIMAL(15, 2) NOT NULL DEFAULT 0,
+    monthly_investment_trust_purchase DECIMAL(15, 2) NOT NULL DEFAULT 0,
+    housing_loan_balance DECIMAL(15, 2) NOT NULL DEFAULT 0,
+    monthly_fx_trading_volume INT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uq_customer_valid UNIQUE (customer_id, valid_from, valid_to)
+);
+
+CREATE TABLE condition_evaluation_results (
+    id SERIAL PRIMARY KEY,
+    calculation_id BIGINT NOT NULL,
+    condition_id BIGINT NOT NULL,
+    is_met BOOLEAN NOT NULL DEFAULT FALSE,
+    evaluated_value DECIMAL(15, 2) NOT NULL DEFAULT 0,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT fk_evaluation_calculation FOREIGN KEY (calculation_id) REFERENCES customer_stage_calculations(id),
+    CONSTRAINT fk_evaluation_condition FOREIGN KEY (condition_id) REFERENCES conditions(id),
+    CONSTRAINT uq_calculation_condition UNIQUE (calculation_id, condition_id)
+);
+
+CREATE TABLE stage_transitions (
+    id SERIAL PRIMARY KEY,
+    customer_id VARCHAR(50) NOT NULL,
+    calculation_id BIGINT NOT NULL,
+    previous_stage_code stage_code_enum NOT NULL,
+    current_stage_code stage_code_enum NOT NULL,
+    transition_date DATE NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT fk_transition_calculation FOREIGN KEY (calculation_id) REFERENCES customer_stage_calculations(id),
+    CONSTRAINT uq_transition_calculation UNIQUE (calculation_id)
+);
+
+CREATE INDEX idx_customer_date ON stage_transitions(customer_id, transition_date);
@@ -1,66 +1,609 @@
 package com.example.bank.config;
 
+import com.example.bank.job.AdaptiveChunkCompletionPolicy;
+import com.example.bank.job.AsyncProcessingItemReader;
+import com.example.bank.job.BankAccountStageArchiveTasklet;
+import com.example.bank.job.BankAccountStageColumnarItemWriter;
+import com.example.bank.job.BankAccountStageDuplicateCheckTasklet;
+import com.example.bank.job.BankAccountStageExecutionModeDecider;
+import com.example.bank.job.BankAccountStageIncrementalItemWriter;
 import com.example.bank.job.BankAccountStageInput;
+import com.example.bank.job.BankAccountStageInputFiles;
+import com.example.bank.job.BankAccountStageInputPartitioner;
+import com.example.bank.job.BankAccountStageInputRejects;
 import com.example.bank.job.BankAccountStageItemProcessor;
 import com.example.bank.job.BankAccountStageItemWriter;
+import com.example.bank.job.BankAccountStageJobParametersValidator;
+import com.example.bank.job.BankAccountStageMetricsListener;
+import com.example.bank.job.BankAccountStagePartitionTasklet;
+import com.example.bank.job.BankAccountStageSqlEvaluateTasklet;
+import com.example.bank.job.BankAccountStageSqlLoadTasklet;
+import com.example.bank.job.BankAccountStageWhatIfTasklet;
+import com.example.bank.job.ByteOffsetFlatFileItemReader;
+import com.example.bank.job.CustomerHashItemReader;
+import com.example.bank.job.CustomerHashPartitioner;
+import com.example.bank.job.CustomerSkipListItemReader;
+import com.example.bank.job.DecompressingResource;
+import com.example.bank.job.JobContextPropagationListener;
+import com.example.bank.job.JobContextTaskDecorator;
+import com.example.bank.job.JobRepositoryPartitionHandler;
+import com.example.bank.job.MappedBankAccountStageInputItemReader;
 import com.example.bank.job.ProcessResult;
+import com.example.bank.job.ReadAheadItemReader;
+import com.example.bank.job.SqlStatisticsListener;
+import com.example.bank.job.StageTransitionExportListener;
+import com.example.bank.lookup.CustomerStageLookup;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.Future;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.ItemWriteListener;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepScope;
-import org.springframework.batch.core.converter.StringToLocalDateConverter;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.job.flow.Flow;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.support.MultiResourcePartitioner;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
 import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
 import org.springframework.batch.core.step.builder.StepBuilder;
-import org.springframework.batch.item.file.FlatFileItemReader;
-import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
-import org.springframework.batch.item.file.mapping.RecordFieldSetMapper;
+import org.springframework.batch.integration.async.AsyncItemProcessor;
+import org.springframework.batch.integration.async.AsyncItemWriter;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.item.file.mapping.DefaultLineMapper;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.convert.support.DefaultConversionService;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.lang.Nullable;
 import org.springframework.transaction.PlatformTransactionManager;
 
 @Configuration(proxyBeanMethods = false)
 public class BankAccountStageJobConfig {
 
+	private static final String MAPPED_READER = "mapped";
+
+	/**
+	 * Reader for the whole input file. The {@code reader} job parameter selects the
+	 * implementation: {@code flatfile} (default) for {@link ByteOffsetFlatFileItemReader}
+	 * or {@code mapped} for {@link MappedBankAccountStageInputItemReader}. Both save the
+	 * byte offset of the next line, so that a restart seeks to it directly.
+	 */
 	@Bean
 	@StepScope
-	public FlatFileItemReader<BankAccountStageInput> bankAccountStageInputItemReader(
+	public ItemStreamReader<BankAccountStageInput> bankAccountStageInputItemReader(
+			@Value("#{jobParameters['inputFile'] ?: 'file://${PWD}/src/test/resources/bank_account_stage_usecase_data.csv'}") Resource resource,
+			@Value("#{jobParameters['reader'] ?: 'flatfile'}") String reader,
+			@Value("#{jobExecutionContext['" + BankAccountStageDuplicateCheckTasklet.DUPLICATE_CUSTOMER_IDS_KEY
+					+ "']}") @Nullable String[] skippedCustomerIds,
+			@Nullable BankAccountStageInputRejects rejects) {
+		return bankAccountStageInputItemReader(resource, reader, skippedCustomerIds, rejects, true);
+	}
+
+	private static ItemStreamReader<BankAccountStageInput> bankAccountStageInputItemReader(Resource resource,
+			String reader, @Nullable String[] skippedCustomerIds, @Nullable BankAccountStageInputRejects rejects,
+			boolean recordRejects) {
+		if (MAPPED_READER.equals(reader)) {
+			return skipCustomers(
+					rejectInvalidLines(new MappedBankAccountStageInputItemReader(resource), rejects, recordRejects),
+					skippedCustomerIds);
+		}
+		return skipCustomers(bankAccountStageInputItemReader(
+				new ByteOffsetFlatFileItemReader<>(resource, bankAccountStageInputLineMapper()), rejects,
+				recordRejects), skippedCustomerIds);
+	}
+
+	@Bean
+	@StepScope
+	public ItemStreamReader<BankAccountStageInput> bankAccountStagePartitionItemReader(
+			@Value("#{jobParameters['inputFile'] ?: 'file://${PWD}/src/test/resources/bank_account_stage_usecase_data.csv'}") Resource resource,
+			@Value("#{jobParameters['reader'] ?: 'flatfile'}") String reader,
+			@Value("#{stepExecutionContext['" + BankAccountStageInputPartitioner.START_OFFSET_KEY
+					+ "']}") long startOffset,
+			@Value("#{stepExecutionContext['" + BankAccountStageInputPartitioner.END_OFFSET_KEY + "']}") long endOffset,
+			@Value("#{stepExecutionContext['" + BankAccountStageInputPartitioner.START_LINE_NUMBER_KEY
+					+ "'] ?: 1}") long startLineNumber,
+			@Value("#{jobExecutionContext['" + BankAccountStageDuplicateCheckTasklet.DUPLICATE_CUSTOMER_IDS_KEY
+					+ "']}") @Nullable String[] skippedCustomerIds,
+			@Nullable BankAccountStageInputRejects rejects) {
+		// the partitioner excludes the header from every byte range
+		if (MAPPED_READER.equals(reader)) {
+			MappedBankAccountStageInputItemReader itemReader = new MappedBankAccountStageInputItemReader(resource,
+					startOffset, endOffset);
+			itemReader.setStartLineNumber(startLineNumber);
+			return skipCustomers(rejectInvalidLines(itemReader, rejects, true), skippedCustomerIds);
+		}
+		ByteOffsetFlatFileItemReader<BankAccountStageInput> itemReader = new ByteOffsetFlatFileItemReader<>(resource,
+				startOffset, endOffset, bankAccountStageInputLineMapper());
+		itemReader.setStartLineNumber(startLineNumber);
+		return skipCustomers(bankAccountStageInputItemReader(itemReader, rejects, true), skippedCustomerIds);
+	}
+
+	private static ItemStreamReader<BankAccountStageInput> bankAccountStageInputItemReader(
+			ByteOffsetFlatFileItemReader<BankAccountStageInput> itemReader,
+			@Nullable BankAccountStageInputRejects rejects, boolean recordRejects) {
+		itemReader.setName("BankAccountStageInputItemReader");
+		if (rejects != null && rejects.isEnabled()) {
+			itemReader.setRejects(rejects.validator(), recordRejects ? rejects.rejectFile() : null);
+		}
+		return itemReader;
+	}
+
+	private static ItemStreamReader<BankAccountStageInput> rejectInvalidLines(
+			MappedBankAccountStageInputItemReader itemReader, @Nullable BankAccountStageInputRejects rejects,
+			boolean recordRejects) {
+		if (rejects != null && rejects.isEnabled()) {
+			itemReader.setRejects(rejects.validator(), recordRejects ? rejects.rejectFile() : null);
+		}
+		return itemReader;
+	}
+
+	/**
+	 * Skips the records of the customers found by
+	 * {@link BankAccountStageDuplicateCheckTasklet}, if any.
+	 */
+	private static ItemStreamReader<BankAccountStageInput> skipCustomers(
+			ItemStreamReader<BankAccountStageInput> itemReader, @Nullable String[] customerIds) {
+		return (customerIds != null) ? new CustomerSkipListItemReader(itemReader, List.of(customerIds)) : itemReader;
+	}
+
+	private static LineMapper<BankAccountStageInput> bankAccountStageInputLineMapper() {
+		DelimitedLineTokenizer lineTokenizer = new DelimitedLineTokenizer();
+		lineTokenizer.setNames("customerId", "currentStageCode", "monthEndDate", "totalBalance",
+				"foreignCurrencyBalance", "investmentTrustBalance", "monthlyForeignCurrencyPurchase",
+				"monthlyInvestmentTrustPurchase", "housingLoanBalance", "monthlyFxTradingVolume");
+		DefaultLineMapper<BankAccountStageInput> lineMapper = new DefaultLineMapper<>();
+		lineMapper.setLineTokenizer(lineTokenizer);
+		lineMapper.setFieldSetMapper(fieldSet -> BankAccountStageInput.of(fieldSet.readString("customerId"),
+				fieldSet.readString("currentStageCode"), LocalDate.parse(fieldSet.readString("monthEndDate")),
+				fieldSet.readBigDecimal("totalBalance"), fieldSet.readBigDecimal("foreignCurrencyBalance"),
+				fieldSet.readBigDecimal("investmentTrustBalance"),
+				fieldSet.readBigDecimal("monthlyForeignCurrencyPurchase"),
+				fieldSet.readBigDecimal("monthlyInvestmentTrustPurchase"),
+				fieldSet.readBigDecimal("housingLoanBalance"), fieldSet.readInt("monthlyFxTradingVolume")));
+		return lineMapper;
+	}
+
+	/**
+	 * Chunk-oriented step for the whole input file. An {@code asyncConcurrency} job
+	 * parameter greater than 0 evaluates items with an {@link AsyncItemProcessor} on
+	 * virtual threads, at most that many at a time. Items are submitted for evaluation as
+	 * they are read ahead, up to one chunk beyond the current one, so that the next chunk
+	 * is parsed and evaluated while the current chunk is being written. Items are still
+	 * written by the step's own thread within the chunk transaction.
+	 * <p>
+	 * A {@code chunkTargetMillis} job parameter greater than 0 makes {@code chunkSize}
+	 * only the initial size: an {@link AdaptiveChunkCompletionPolicy} then resizes the
+	 * chunks between {@code minChunkSize} and {@code maxChunkSize} so that writing and
+	 * committing a chunk takes about that many milliseconds.
+	 * <p>
+	 * With the {@code evaluation=columnar} job parameter the step has no item processor:
+	 * the {@link BankAccountStageColumnarItemWriter} evaluates each chunk at once, column
+	 * by column, before writing it.
+	 * <p>
+	 * With the {@code incremental=true} job parameter the step has no item processor
+	 * either: the {@link BankAccountStageIncrementalItemWriter} carries the previous
+	 * month's calculations of unchanged customers forward and evaluates the others by
+	 * column.
+	 */
+	@Bean
+	@JobScope
+	public Step bankAccountStageStep(@Value("#{jobParameters['chunkSize'] ?: 200}") int chunkSize,
+			@Value("#{jobParameters['chunkTargetMillis'] ?: 0}") long chunkTargetMillis,
+			@Value("#{jobParameters['minChunkSize'] ?: 10}") int minChunkSize,
+			@Value("#{jobParameters['maxChunkSize'] ?: 10000}") int maxChunkSize,
+			@Value("#{jobParameters['asyncConcurrency'] ?: 0}") int asyncConcurrency,
+			@Value("#{jobParameters['evaluation'] ?: 'item'}") String evaluation,
+			@Value("#{jobParameters['incremental'] ?: false}") boolean incremental, JobRepository jobRepository,
+			PlatformTransactionManager transactionManager,
+			@Qualifier("bankAccountStageInputItemReader") ItemStreamReader<BankAccountStageInput> itemReader,
+			BankAccountStageItemProcessor itemProcessor, BankAccountStageItemWriter itemWriter,
+			BankAccountStageColumnarItemWriter columnarItemWriter,
+			BankAccountStageIncrementalItemWriter incrementalItemWriter,
+			BankAccountStageMetricsListener metricsListener, SqlStatisticsListener sqlStatisticsListener) {
+		StepBuilder stepBuilder = new StepBuilder("BankAccountStage", jobRepository)
+			.listener((StepExecutionListener) sqlStatisticsListener);
+		AdaptiveChunkCompletionPolicy completionPolicy = (chunkTargetMillis > 0) ? new AdaptiveChunkCompletionPolicy(
+				chunkSize, minChunkSize, maxChunkSize, Duration.ofMillis(chunkTargetMillis)) : null;
+		if (incremental || "columnar".equals(evaluation)) {
+			return BankAccountStageJobConfig
+				.<BankAccountStageInput, BankAccountStageInput>chunk(stepBuilder, chunkSize, completionPolicy,
+						transactionManager)
+				.reader(itemReader)
+				.writer(incremental ? incrementalItemWriter : columnarItemWriter)
+				// closes the transition export of the writer the columnar writer
+				// delegates to
+				.stream(itemWriter)
+				.listener((StepExecutionListener) metricsListener)
+				.listener((ItemReadListener<Object>) metricsListener)
+				.build();
+		}
+		if (asyncConcurrency > 0) {
+			SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("bank-account-stage-process-");
+			taskExecutor.setVirtualThreads(true);
+			taskExecutor.setConcurrencyLimit(asyncConcurrency);
+			taskExecutor.setTaskDecorator(new JobContextTaskDecorator());
+			AsyncItemProcessor<BankAccountStageInput, ProcessResult> asyncItemProcessor = new AsyncItemProcessor<>();
+			asyncItemProcessor.setDelegate(itemProcessor);
+			asyncItemProcessor.setTaskExecutor(taskExecutor);
+			AsyncItemWriter<ProcessResult> asyncItemWriter = new AsyncItemWriter<>();
+			asyncItemWriter.setDelegate(itemWriter);
+			return BankAccountStageJobConfig
+				.<Future<ProcessResult>, Future<ProcessResult>>chunk(stepBuilder, chunkSize, completionPolicy,
+						transactionManager)
+				.reader(new ReadAheadItemReader<>(new AsyncProcessingItemReader<>(itemReader, asyncItemProcessor),
+						chunkSize))
+				.writer(asyncItemWriter)
+				.listener((StepExecutionListener) metricsListener)
+				.listener((ItemReadListener<Object>) metricsListener)
+				.build();
+		}
+		return BankAccountStageJobConfig
+			.<BankAccountStageInput, ProcessResult>chunk(stepBuilder, chunkSize, completionPolicy, transactionManager)
+			.reader(itemReader)
+			.processor(itemProcessor)
+			.writer(itemWriter)
+			.listener((StepExecutionListener) metricsListener)
+			.listener((ItemReadListener<Object>) metricsListener)
+			.build();
+	}
+
+	private static <I, O> SimpleStepBuilder<I, O> chunk(StepBuilder stepBuilder, int chunkSize,
+			@Nullable AdaptiveChunkCompletionPolicy completionPolicy, PlatformTransactionManager transactionManager) {
+		if (completionPolicy == null) {
+			return stepBuilder.chunk(chunkSize, transactionManager);
+		}
+		return stepBuilder.<I, O>chunk(completionPolicy, transactionManager)
+			.listener((ChunkListener) completionPolicy)
+			.listener((ItemWriteListener<Object>) completionPolicy)
+			.stream(completionPolicy);
+	}
+
+	@Bean
+	@JobScope
+	public BankAccountStageInputPartitioner bankAccountStageInputPartitioner(
 			@Value("#{jobParameters['inputFile'] ?: 'file://${PWD}/src/test/resources/bank_account_stage_usecase_data.csv'}") Resource resource) {
-		DefaultConversionService conversionService = new DefaultConversionService();
-		conversionService.addConverter(new StringToLocalDateConverter());
-		return new FlatFileItemReaderBuilder<BankAccountStageInput>().name("BankAccountStageInputItemReader")
-			.resource(resource)
-			.linesToSkip(1) // skip header
-			.delimited()
-			.names("customerId", "currentStageCode", "monthEndDate", "totalBalance", "foreignCurrencyBalance",
-					"investmentTrustBalance", "monthlyForeignCurrencyPurchase", "monthlyInvestmentTrustPurchase",
-					"housingLoanBalance", "monthlyFxTradingVolume")
-			.fieldSetMapper(new RecordFieldSetMapper<>(BankAccountStageInput.class, conversionService))
+		return new BankAccountStageInputPartitioner(resource);
+	}
+
+	/**
+	 * Runs {@code gridSize} worker steps concurrently, one per byte range of the input
+	 * file. Each worker holds a connection of the default pool while it writes a chunk,
+	 * so {@code gridSize} should not exceed
+	 * {@code spring.datasource.hikari.maximum-pool-size}. The workers support the
+	 * {@code incremental=true} job parameter like {@link #bankAccountStageStep}, and the
+	 * {@link BankAccountStageJobParametersValidator} rejects the options they cannot
+	 * honour.
+	 */
+	@Bean
+	@JobScope
+	public Step bankAccountStagePartitionedStep(@Value("#{jobParameters['gridSize'] ?: 1}") int gridSize,
+			@Value("#{jobParameters['chunkSize'] ?: 200}") int chunkSize,
+			@Value("#{jobParameters['incremental'] ?: false}") boolean incremental, JobRepository jobRepository,
+			PlatformTransactionManager transactionManager, BankAccountStageInputPartitioner partitioner,
+			@Qualifier("bankAccountStagePartitionItemReader") ItemStreamReader<BankAccountStageInput> itemReader,
+			BankAccountStageItemProcessor itemProcessor, BankAccountStageItemWriter itemWriter,
+			BankAccountStageIncrementalItemWriter incrementalItemWriter,
+			BankAccountStageMetricsListener metricsListener, SqlStatisticsListener sqlStatisticsListener) {
+		return partitionedStep("BankAccountStagePartitioned", "BankAccountStageWorker", partitioner, gridSize,
+				chunkSize, jobRepository, transactionManager, itemReader, itemProcessor, itemWriter,
+				incremental ? incrementalItemWriter : null, metricsListener, sqlStatisticsListener);
+	}
+
+	/**
+	 * Resolves the {@code inputFiles} job parameter, a resource location pattern such as
+	 * {@code file:/data/2025-04/*.csv.gz} or a directory, into one partition per file.
+	 */
+	@Bean
+	@JobScope
+	public MultiResourcePartitioner bankAccountStageInputFilesPartitioner(
+			@Value("#{jobParameters['inputFiles']}") String inputFiles, ResourceLoader resourceLoader)
+			throws IOException {
+		MultiResourcePartitioner partitioner = new MultiResourcePartitioner();
+		partitioner.setResources(BankAccountStageInputFiles.resolve(inputFiles, resourceLoader));
+		return partitioner;
+	}
+
+	/**
+	 * Reader for one file of {@code inputFiles}. Files ending with {@code .gz} or
+	 * {@code .zst} are decompressed while they are read; other files are read like
+	 * {@code inputFile}.
+	 */
+	@Bean
+	@StepScope
+	public ItemStreamReader<BankAccountStageInput> bankAccountStageInputFileItemReader(
+			@Value("#{stepExecutionContext['fileName']}") Resource resource,
+			@Value("#{jobParameters['reader'] ?: 'flatfile'}") String reader,
+			@Value("#{jobExecutionContext['" + BankAccountStageDuplicateCheckTasklet.DUPLICATE_CUSTOMER_IDS_KEY
+					+ "']}") @Nullable String[] skippedCustomerIds,
+			@Nullable BankAccountStageInputRejects rejects) {
+		if (DecompressingResource.isCompressed(resource)) {
+			return skipCustomers(
+					bankAccountStageInputItemReader(new ByteOffsetFlatFileItemReader<>(
+							new DecompressingResource(resource), bankAccountStageInputLineMapper()), rejects, true),
+					skippedCustomerIds);
+		}
+		return bankAccountStageInputItemReader(resource, reader, skippedCustomerIds, rejects, true);
+	}
+
+	/**
+	 * Runs a worker step per file of {@code inputFiles}, at most {@code gridSize} (4 by
+	 * default) at a time. Each worker checkpoints its own file, so a restart only resumes
+	 * the files that were not completed. The workers support the {@code incremental=true}
+	 * job parameter like {@link #bankAccountStageStep}.
+	 */
+	@Bean
+	@JobScope
+	public Step bankAccountStageMultiFileStep(@Value("#{jobParameters['gridSize'] ?: 4}") int gridSize,
+			@Value("#{jobParameters['chunkSize'] ?: 200}") int chunkSize,
+			@Value("#{jobParameters['incremental'] ?: false}") boolean incremental, JobRepository jobRepository,
+			PlatformTransactionManager transactionManager,
+			@Qualifier("bankAccountStageInputFilesPartitioner") MultiResourcePartitioner partitioner,
+			@Qualifier("bankAccountStageInputFileItemReader") ItemStreamReader<BankAccountStageInput> itemReader,
+			BankAccountStageItemProcessor itemProcessor, BankAccountStageItemWriter itemWriter,
+			BankAccountStageIncrementalItemWriter incrementalItemWriter,
+			BankAccountStageMetricsListener metricsListener, SqlStatisticsListener sqlStatisticsListener) {
+		return partitionedStep("BankAccountStageMultiFile", "BankAccountStageFileWorker", partitioner, gridSize,
+				chunkSize, jobRepository, transactionManager, itemReader, itemProcessor, itemWriter,
+				incremental ? incrementalItemWriter : null, metricsListener, sqlStatisticsListener);
+	}
+
+	private static Step partitionedStep(String name, String workerName, Partitioner partitioner, int gridSize,
+			int chunkSize, JobRepository jobRepository, PlatformTransactionManager transactionManager,
+			ItemStreamReader<BankAccountStageInput> itemReader, BankAccountStageItemProcessor itemProcessor,
+			BankAccountStageItemWriter itemWriter,
+			@Nullable BankAccountStageIncrementalItemWriter incrementalItemWriter,
+			BankAccountStageMetricsListener metricsListener, SqlStatisticsListener sqlStatisticsListener) {
+		// the worker step runs on the partition threads, so it is built here rather than
+		// exposed as a job-scoped bean whose proxy cannot be resolved on those threads
+		SimpleStepBuilder<BankAccountStageInput, ?> workerStepBuilder;
+		if (incrementalItemWriter != null) {
+			workerStepBuilder = new StepBuilder(workerName, jobRepository)
+				.<BankAccountStageInput, BankAccountStageInput>chunk(chunkSize, transactionManager)
+				.reader(itemReader)
+				.writer(incrementalItemWriter)
+				// closes the transition export of the writer the incremental writer
+				// delegates to
+				.stream(itemWriter);
+		}
+		else {
+			workerStepBuilder = new StepBuilder(workerName, jobRepository)
+				.<BankAccountStageInput, ProcessResult>chunk(chunkSize, transactionManager)
+				.reader(itemReader)
+				.processor(itemProcessor)
+				.writer(itemWriter);
+		}
+		Step workerStep = workerStepBuilder.listener(new JobContextPropagationListener())
+			.listener((StepExecutionListener) metricsListener)
+			.listener((ItemReadListener<Object>) metricsListener)
+			.build();
+		SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("bank-account-stage-");
+		taskExecutor.setConcurrencyLimit(gridSize);
+		TaskExecutorPartitionHandler partitionHandler = new TaskExecutorPartitionHandler();
+		partitionHandler.setStep(workerStep);
+		partitionHandler.setGridSize(gridSize);
+		partitionHandler.setTaskExecutor(taskExecutor);
+		// one summary of the statements of all partitions
+		return new StepBuilder(name, jobRepository).listener((StepExecutionListener) sqlStatisticsListener)
+			.partitioner(workerName, partitioner)
+			.partitionHandler(partitionHandler)
 			.build();
 	}
 
+	/**
+	 * Manager step of remote partitioning, selected with the {@code executionMode=remote}
+	 * job parameter: saves {@code gridSize} partitions in the job repository and waits
+	 * for {@link com.example.bank.job.BankAccountStageRemoteWorker}s sharing it to run
+	 * them. A {@code partitionBy} job parameter of {@code range} (default) splits the
+	 * input file into byte ranges, and one of {@code customer} assigns customers to
+	 * partitions by the hash of their {@code customer_id}. A partition without a
+	 * heartbeat for {@code heartbeatTimeoutMillis} is reassigned to another worker, and
+	 * one that no worker claims within {@code claimTimeoutMillis} fails the step.
+	 */
 	@Bean
 	@JobScope
-	public Step bankAccountStageStep(@Value("#{jobParameters['chunkSize'] ?: 200}") int chunkSize,
+	public Step bankAccountStageRemoteStep(@Value("#{jobParameters['gridSize'] ?: 4}") int gridSize,
+			@Value("#{jobParameters['partitionBy'] ?: 'range'}") String partitionBy,
+			@Value("#{jobParameters['pollIntervalMillis'] ?: 1000}") long pollIntervalMillis,
+			@Value("#{jobParameters['heartbeatTimeoutMillis'] ?: 60000}") long heartbeatTimeoutMillis,
+			@Value("#{jobParameters['claimTimeoutMillis'] ?: 600000}") long claimTimeoutMillis,
+			JobRepository jobRepository, JobExplorer jobExplorer, BankAccountStageInputPartitioner rangePartitioner) {
+		Partitioner partitioner = switch (partitionBy) {
+			case "range" -> rangePartitioner;
+			case "customer" -> new CustomerHashPartitioner();
+			default -> throw new IllegalArgumentException(
+					"Unknown partitionBy '" + partitionBy + "', expected one of [range, customer]");
+		};
+		JobRepositoryPartitionHandler partitionHandler = new JobRepositoryPartitionHandler(jobExplorer, jobRepository,
+				Duration.ofMillis(pollIntervalMillis), Duration.ofMillis(heartbeatTimeoutMillis),
+				Duration.ofMillis(claimTimeoutMillis));
+		partitionHandler.setGridSize(gridSize);
+		return new StepBuilder("BankAccountStageRemote", jobRepository)
+			.partitioner("BankAccountStageRemoteWorker", partitioner)
+			.partitionHandler(partitionHandler)
+			.build();
+	}
+
+	/**
+	 * Reader for a partition of {@link #bankAccountStageRemoteStep}: the byte range of
+	 * the partition, or the records of the partition's customers in the whole input file.
+	 * As every customer partition reads the whole file, only the first one records the
+	 * rejected lines.
+	 */
+	@Bean
+	@StepScope
+	public ItemStreamReader<BankAccountStageInput> bankAccountStageRemoteItemReader(
+			@Value("#{jobParameters['inputFile'] ?: 'file://${PWD}/src/test/resources/bank_account_stage_usecase_data.csv'}") Resource resource,
+			@Value("#{jobParameters['reader'] ?: 'flatfile'}") String reader,
+			@Value("#{stepExecutionContext['" + CustomerHashPartitioner.PARTITION_KEY
+					+ "']}") @Nullable Integer partition,
+			@Value("#{stepExecutionContext['" + CustomerHashPartitioner.PARTITIONS_KEY
+					+ "']}") @Nullable Integer partitions,
+			@Value("#{stepExecutionContext['" + BankAccountStageInputPartitioner.START_OFFSET_KEY
+					+ "']}") @Nullable Long startOffset,
+			@Value("#{stepExecutionContext['" + BankAccountStageInputPartitioner.END_OFFSET_KEY
+					+ "']}") @Nullable Long endOffset,
+			@Value("#{stepExecutionContext['" + BankAccountStageInputPartitioner.START_LINE_NUMBER_KEY
+					+ "'] ?: 1}") long startLineNumber,
+			@Value("#{jobExecutionContext['" + BankAccountStageDuplicateCheckTasklet.DUPLICATE_CUSTOMER_IDS_KEY
+					+ "']}") @Nullable String[] skippedCustomerIds,
+			@Nullable BankAccountStageInputRejects rejects) {
+		if (partition != null && partitions != null) {
+			return new CustomerHashItemReader(
+					bankAccountStageInputItemReader(resource, reader, skippedCustomerIds, rejects, partition == 0),
+					partition, partitions);
+		}
+		return bankAccountStagePartitionItemReader(resource, reader, startOffset, endOffset, startLineNumber,
+				skippedCustomerIds, rejects);
+	}
+
+	/**
+	 * Step that a {@link com.example.bank.job.BankAccountStageRemoteWorker} runs for each
+	 * partition it claims. The worker registers the job execution on its thread, so this
+	 * step can be a job-scoped bean.
+	 */
+	@Bean
+	@JobScope
+	public Step bankAccountStageRemoteWorkerStep(@Value("#{jobParameters['chunkSize'] ?: 200}") int chunkSize,
 			JobRepository jobRepository, PlatformTransactionManager transactionManager,
-			FlatFileItemReader<BankAccountStageInput> itemReader, BankAccountStageItemProcessor itemProcessor,
-			BankAccountStageItemWriter itemWriter) {
-		return new StepBuilder("BankAccountStage", jobRepository)
+			@Qualifier("bankAccountStageRemoteItemReader") ItemStreamReader<BankAccountStageInput> itemReader,
+			BankAccountStageItemProcessor itemProcessor, BankAccountStageItemWriter itemWriter,
+			BankAccountStageMetricsListener metricsListener, SqlStatisticsListener sqlStatisticsListener) {
+		return new StepBuilder("BankAccountStageRemoteWorker", jobRepository)
 			.<BankAccountStageInput, ProcessResult>chunk(chunkSize, transactionManager)
 			.reader(itemReader)
 			.processor(itemProcessor)
 			.writer(itemWriter)
+			.listener((StepExecutionListener) metricsListener)
+			.listener((ItemReadListener<Object>) metricsListener)
+			.listener((StepExecutionListener) sqlStatisticsListener)
+			.build();
+	}
+
+	@Bean
+	public Step bankAccountStageSqlLoadStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+			BankAccountStageSqlLoadTasklet tasklet, SqlStatisticsListener sqlStatisticsListener) {
+		return new StepBuilder("BankAccountStageSqlLoad", jobRepository).tasklet(tasklet, transactionManager)
+			.listener((StepExecutionListener) sqlStatisticsListener)
 			.build();
 	}
 
 	@Bean
-	public Job bankAccountStageJob(JobRepository jobRepository, Step bankAccountStageStep) {
+	public Step bankAccountStageSqlEvaluateStep(JobRepository jobRepository,
+			PlatformTransactionManager transactionManager, BankAccountStageSqlEvaluateTasklet tasklet,
+			SqlStatisticsListener sqlStatisticsListener) {
+		return new StepBuilder("BankAccountStageSqlEvaluate", jobRepository).tasklet(tasklet, transactionManager)
+			.listener((StepExecutionListener) sqlStatisticsListener)
+			.build();
+	}
+
+	/**
+	 * Set-based alternative to the chunk-oriented steps, selected with the
+	 * {@code executionMode=sql} job parameter: copies the input file into a staging table
+	 * and evaluates it in the database.
+	 */
+	@Bean
+	public Flow bankAccountStageSqlFlow(@Qualifier("bankAccountStageSqlLoadStep") Step bankAccountStageSqlLoadStep,
+			@Qualifier("bankAccountStageSqlEvaluateStep") Step bankAccountStageSqlEvaluateStep) {
+		return new FlowBuilder<Flow>("BankAccountStageSql").start(bankAccountStageSqlLoadStep)
+			.next(bankAccountStageSqlEvaluateStep)
+			.build();
+	}
+
+	@Bean
+	public Step bankAccountStagePartitionStep(JobRepository jobRepository,
+			PlatformTransactionManager transactionManager, BankAccountStagePartitionTasklet tasklet) {
+		return new StepBuilder("BankAccountStagePartition", jobRepository).tasklet(tasklet, transactionManager).build();
+	}
+
+	@Bean
+	public Step bankAccountStageArchiveStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+			BankAccountStageArchiveTasklet tasklet) {
+		return new StepBuilder("BankAccountStageArchive", jobRepository).tasklet(tasklet, transactionManager).build();
+	}
+
+	@Bean
+	public Step bankAccountStageDuplicateCheckStep(JobRepository jobRepository,
+			PlatformTransactionManager transactionManager, BankAccountStageDuplicateCheckTasklet tasklet) {
+		return new StepBuilder("BankAccountStageDuplicateCheck", jobRepository).tasklet(tasklet, transactionManager)
+			.build();
+	}
+
+	@Bean
+	public Step bankAccountStageWhatIfStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+			BankAccountStageWhatIfTasklet tasklet) {
+		return new StepBuilder("BankAccountStageWhatIf", jobRepository).tasklet(tasklet, transactionManager).build();
+	}
+
+	/**
+	 * Creates the partitions the run writes into, archives the partitions out of the
+	 * {@code retentionMonths} window and, with {@code duplicateRejectFile}, rejects the
+	 * customers appearing more than once in the input, then runs the steps of the
+	 * execution mode chosen by {@link BankAccountStageExecutionModeDecider}. A completed
+	 * run refreshes the {@link CustomerStageLookup} and publishes the manifest of the
+	 * {@code transitionExport}. The {@code whatif} dry run writes nothing to the
+	 * database, so it skips the partition, archive and duplicate check steps. The
+	 * combinations of job parameters a run could not honour are rejected by the
+	 * {@link BankAccountStageJobParametersValidator}.
+	 */
+	@Bean
+	public Job bankAccountStageJob(JobRepository jobRepository,
+			@Qualifier("bankAccountStagePartitionStep") Step bankAccountStagePartitionStep,
+			@Qualifier("bankAccountStageArchiveStep") Step bankAccountStageArchiveStep,
+			@Qualifier("bankAccountStageDuplicateCheckStep") Step bankAccountStageDuplicateCheckStep,
+			@Qualifier("bankAccountStageStep") Step bankAccountStageStep,
+			@Qualifier("bankAccountStagePartitionedStep") Step bankAccountStagePartitionedStep,
+			@Qualifier("bankAccountStageMultiFileStep") Step bankAccountStageMultiFileStep,
+			@Qualifier("bankAccountStageRemoteStep") Step bankAccountStageRemoteStep,
+			@Qualifier("bankAccountStageSqlFlow") Flow bankAccountStageSqlFlow,
+			@Qualifier("bankAccountStageWhatIfStep") Step bankAccountStageWhatIfStep,
+			CustomerStageLookup customerStageLookup, StageTransitionExportListener transitionExportListener,
+			ResourceLoader resourceLoader) {
+		BankAccountStageExecutionModeDecider dryRunDecider = new BankAccountStageExecutionModeDecider();
+		BankAccountStageExecutionModeDecider decider = new BankAccountStageExecutionModeDecider();
 		return new JobBuilder("BankAccountStage", jobRepository).incrementer(new RunIdIncrementer())
-			.start(bankAccountStageStep)
+			.validator(new BankAccountStageJobParametersValidator(resourceLoader))
+			.listener(customerStageLookup)
+			.listener(transitionExportListener)
+			.start(dryRunDecider)
+			.on(BankAccountStageExecutionModeDecider.WHAT_IF.getName())
+			.to(bankAccountStageWhatIfStep)
+			.from(dryRunDecider)
+			.on("*")
+			.to(bankAccountStagePartitionStep)
+			.next(bankAccountStageArchiveStep)
+			.next(bankAccountStageDuplicateCheckStep)
+			.next(decider)
+			.on(BankAccountStageExecutionModeDecider.SQL.getName())
+			.to(bankAccountStageSqlFlow)
+			.from(decider)
+			.on(BankAccountStageExecutionModeDecider.MULTI_FILE.getName())
+			.to(bankAccountStageMultiFileStep)
+			.from(decider)
+			.on(BankAccountStageExecutionModeDecider.PARTITIONED.getName())
+			.to(bankAccountStagePartitionedStep)
+			.from(decider)
+			.on(BankAccountStageExecutionModeDecider.REMOTE.getName())
+			.to(bankAccountStageRemoteStep)
+			.from(decider)
+			.on("*")
+			.to(bankAccountStageStep)
+			.end()
 			.build();
 	}
 
@@ -0,0 +1,112 @@
+package com.example.bank.job;
+
+import java.time.Duration;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.repeat.CompletionPolicy;
+import org.springframework.batch.repeat.policy.SimpleCompletionPolicy;
+import org.springframework.util.Assert;
+
+/**
+ * {@link CompletionPolicy} that resizes the chunks of a step so that writing and
+ * committing one chunk takes about {@code target}. The time from the start of the write
+ * to the end of the commit is measured for every chunk, and the next chunk size is scaled
+ * by the square root of the ratio between the target and that time, which damps the
+ * reaction to a single slow or fast commit. The size stays within
+ * {@code [minChunkSize, maxChunkSize]}, changes at most by a factor of two per chunk and
+ * is kept while the measured time is within about 10% of the target.
+ * <p>
+ * The size of the last committed chunk is saved in the step's {@link ExecutionContext},
+ * so that a restarted step resumes with it instead of the initial size. It has to be
+ * registered as a {@link ChunkListener}, an {@link ItemWriteListener} and a stream of a
+ * single step; partitioned workers would need an instance each.
+ */
+public class AdaptiveChunkCompletionPolicy extends SimpleCompletionPolicy
+		implements ChunkListener, ItemWriteListener<Object>, ItemStream {
+
+	static final String CHUNK_SIZE_KEY = "adaptiveChunkCompletionPolicy.chunkSize";
+
+	private static final double MAX_FACTOR = 2.0;
+
+	private static final double DEAD_BAND = 0.05;
+
+	private final int minChunkSize;
+
+	private final int maxChunkSize;
+
+	private final long targetNanos;
+
+	private long writeStart;
+
+	private int writeSize;
+
+	public AdaptiveChunkCompletionPolicy(int initialChunkSize, int minChunkSize, int maxChunkSize, Duration target) {
+		Assert.isTrue(minChunkSize > 0, "minChunkSize must be positive");
+		Assert.isTrue(minChunkSize <= maxChunkSize, "minChunkSize must not be greater than maxChunkSize");
+		Assert.isTrue(target.isPositive(), "target must be positive");
+		this.minChunkSize = minChunkSize;
+		this.maxChunkSize = maxChunkSize;
+		this.targetNanos = target.toNanos();
+		setChunkSize(bounded(initialChunkSize));
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) {
+		if (executionContext.containsKey(CHUNK_SIZE_KEY)) {
+			setChunkSize(bounded(executionContext.getInt(CHUNK_SIZE_KEY)));
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) {
+		// called within the chunk transaction, before the size is adjusted to this chunk
+		executionContext.putInt(CHUNK_SIZE_KEY, getChunkSize());
+	}
+
+	@Override
+	public void beforeChunk(ChunkContext context) {
+		this.writeStart = 0;
+	}
+
+	@Override
+	public void beforeWrite(Chunk<?> items) {
+		this.writeStart = System.nanoTime();
+		this.writeSize = items.size();
+	}
+
+	@Override
+	public void afterChunk(ChunkContext context) {
+		// invoked after the commit
+		if (this.writeStart != 0 && this.writeSize > 0) {
+			setChunkSize(nextChunkSize(this.writeSize, System.nanoTime() - this.writeStart));
+		}
+	}
+
+	/**
+	 * Size of the next chunk after writing and committing {@code items} items in
+	 * {@code nanos}.
+	 */
+	int nextChunkSize(int items, long nanos) {
+		int chunkSize = getChunkSize();
+		if (items < chunkSize) {
+			// a short chunk at the end of the input says little about a full one
+			return chunkSize;
+		}
+		double factor = Math.sqrt((double) this.targetNanos / Math.max(nanos, 1));
+		if (Math.abs(factor - 1) < DEAD_BAND) {
+			return chunkSize;
+		}
+		factor = Math.max(1 / MAX_FACTOR, Math.min(MAX_FACTOR, factor));
+		double next = chunkSize * factor;
+		return bounded((int) ((factor > 1) ? Math.ceil(next) : Math.floor(next)));
+	}
+
+	private int bounded(int chunkSize) {
+		return Math.max(this.minChunkSize, Math.min(this.maxChunkSize, chunkSize));
+	}
+
+}
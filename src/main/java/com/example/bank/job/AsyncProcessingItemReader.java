@@ -0,0 +1,47 @@
+package com.example.bank.job;
+
+import java.util.concurrent.Future;
+import org.springframework.batch.integration.async.AsyncItemProcessor;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+
+/**
+ * Submits every item read from the delegate to an {@link AsyncItemProcessor} and returns
+ * the future of its result. Wrapped in a {@link ReadAheadItemReader}, the items of the
+ * next chunk are then read and processed while the step is writing the current one,
+ * instead of being processed only once the step has read them.
+ */
+public class AsyncProcessingItemReader<I, O> implements ItemStreamReader<Future<O>> {
+
+	private final ItemStreamReader<I> delegate;
+
+	private final AsyncItemProcessor<I, O> processor;
+
+	public AsyncProcessingItemReader(ItemStreamReader<I> delegate, AsyncItemProcessor<I, O> processor) {
+		this.delegate = delegate;
+		this.processor = processor;
+	}
+
+	@Override
+	public Future<O> read() throws Exception {
+		I item = this.delegate.read();
+		return (item != null) ? this.processor.process(item) : null;
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		this.delegate.open(executionContext);
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		this.delegate.update(executionContext);
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		this.delegate.close();
+	}
+
+}
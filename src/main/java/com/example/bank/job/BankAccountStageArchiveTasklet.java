@@ -0,0 +1,121 @@
+package com.example.bank.job;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Detaches the monthly partitions of {@code customer_stage_calculations} and
+ * {@code stage_transitions} that fall out of the retention window, and moves them into
+ * the {@code archive} schema. Both are metadata operations, no row of the partitions is
+ * copied or deleted. The condition evaluations of the archived calculations, which are
+ * not partitioned, are moved into the tables of the same name in the {@code archive}
+ * schema.
+ * <p>
+ * With the {@code retentionMonths} job parameter set to {@code n}, the calculations of
+ * the run's month and of the {@code n - 1} months before it are kept, together with their
+ * transitions, which are dated one month later. Without the parameter the step does
+ * nothing.
+ */
+@Component
+@StepScope
+public class BankAccountStageArchiveTasklet implements Tasklet {
+
+	static final String ARCHIVE_SCHEMA = "archive";
+
+	private static final List<String> CONDITION_EVALUATION_TABLES = List.of("condition_evaluation_results",
+			"condition_evaluations_compact");
+
+	private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('(\\d{4}-\\d{2}-\\d{2})'\\)");
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final Integer retentionMonths;
+
+	private final String monthEndDate;
+
+	public BankAccountStageArchiveTasklet(DataSource dataSource,
+			@Value("#{jobParameters['retentionMonths']}") @Nullable Integer retentionMonths,
+			@Value("#{jobExecutionContext['" + BankAccountStagePartitionTasklet.MONTH_END_DATE_KEY
+					+ "']}") @Nullable String monthEndDate) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.retentionMonths = retentionMonths;
+		this.monthEndDate = monthEndDate;
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		if (this.retentionMonths == null || this.monthEndDate == null) {
+			return RepeatStatus.FINISHED;
+		}
+		if (this.retentionMonths < 1) {
+			throw new IllegalArgumentException("retentionMonths must be at least 1 but was " + this.retentionMonths);
+		}
+		LocalDate oldestKept = LocalDate.parse(this.monthEndDate)
+			.withDayOfMonth(1)
+			.minusMonths(this.retentionMonths - 1);
+		archive(BankAccountStagePartitionTasklet.CALCULATIONS_TABLE, oldestKept);
+		archive(BankAccountStagePartitionTasklet.STAGE_TRANSITIONS_TABLE, oldestKept.plusMonths(1));
+		return RepeatStatus.FINISHED;
+	}
+
+	/**
+	 * Archives the partitions of {@code table} whose rows are all dated before
+	 * {@code oldestKept}.
+	 */
+	private void archive(String table, LocalDate oldestKept) {
+		List<Partition> partitions = this.jdbcTemplate.query("""
+				SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) AS bound
+				FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+				WHERE i.inhparent = CAST(? AS regclass)
+				""", (rs, rowNum) -> new Partition(rs.getString("relname"), rs.getString("bound")), table);
+		for (Partition partition : partitions) {
+			LocalDate upperBound = partition.upperBound();
+			if (upperBound != null && !upperBound.isAfter(oldestKept)) {
+				if (table.equals(BankAccountStagePartitionTasklet.CALCULATIONS_TABLE)) {
+					archiveConditionEvaluations(partition.name());
+				}
+				this.jdbcTemplate.execute("ALTER TABLE " + table + " DETACH PARTITION " + partition.name());
+				this.jdbcTemplate.execute("ALTER TABLE " + partition.name() + " SET SCHEMA " + ARCHIVE_SCHEMA);
+			}
+		}
+	}
+
+	/**
+	 * Moves the condition evaluations of the calculations of a partition into the
+	 * {@code archive} schema.
+	 */
+	private void archiveConditionEvaluations(String partition) {
+		for (String table : CONDITION_EVALUATION_TABLES) {
+			this.jdbcTemplate.update("WITH archived AS (DELETE FROM " + table + " e USING " + partition
+					+ " c WHERE e.calculation_id = c.id RETURNING e.*) INSERT INTO " + ARCHIVE_SCHEMA + "." + table
+					+ " SELECT * FROM archived");
+		}
+	}
+
+	record Partition(String name, String bound) {
+
+		/**
+		 * The exclusive upper bound of a monthly range partition, or {@code null} for a
+		 * default partition.
+		 */
+		@Nullable
+		LocalDate upperBound() {
+			Matcher matcher = UPPER_BOUND.matcher(this.bound);
+			return matcher.find() ? LocalDate.parse(matcher.group(1)) : null;
+		}
+
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.example.bank.job;
+
+import com.example.bank.job.BankAccountStageMetrics.StepMetrics;
+import com.example.bank.stage.ChunkEvaluation;
+import com.example.bank.stage.StageDecisionTable;
+import com.example.bank.stage.StageRuleEngine;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.stereotype.Component;
+
+/**
+ * Evaluates a whole chunk of inputs with {@link StageDecisionTable#evaluate(List)} and
+ * writes the results with the {@link BankAccountStageItemWriter}, for the chunk step run
+ * with the {@code evaluation=columnar} job parameter and no item processor.
+ * <p>
+ * The evaluation of the chunk is recorded as one {@value BankAccountStageMetrics#PROCESS}
+ * sample.
+ */
+@Component
+@StepScope
+public class BankAccountStageColumnarItemWriter implements ItemWriter<BankAccountStageInput> {
+
+	private final StageRuleEngine stageRuleEngine;
+
+	private final BankAccountStageItemWriter itemWriter;
+
+	private final StepMetrics metrics;
+
+	public BankAccountStageColumnarItemWriter(StageRuleEngine stageRuleEngine, BankAccountStageItemWriter itemWriter,
+			BankAccountStageMetrics metrics) {
+		this.stageRuleEngine = stageRuleEngine;
+		this.itemWriter = itemWriter;
+		this.metrics = metrics.forCurrentStep();
+	}
+
+	@Override
+	public void write(Chunk<? extends BankAccountStageInput> chunk) throws Exception {
+		if (chunk.isEmpty()) {
+			return;
+		}
+		List<? extends BankAccountStageInput> items = chunk.getItems();
+		long start = System.nanoTime();
+		StageDecisionTable decisionTable = this.stageRuleEngine.decisionTable(items.get(0).monthEndDate());
+		ChunkEvaluation evaluation = decisionTable.evaluate(items);
+		Chunk<ProcessResult> results = new Chunk<>();
+		for (int i = 0; i < items.size(); i++) {
+			results.add(new ProcessResult(items.get(i), evaluation.stageEvaluation(i), decisionTable.validFrom(),
+					decisionTable.validTo(), decisionTable.ruleSetVersion()));
+		}
+		this.metrics.process().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		this.itemWriter.write(results);
+	}
+
+}
@@ -0,0 +1,202 @@
+package com.example.bank.job;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Optional step before the stage calculation that finds the customers appearing more than
+ * once in the input, so that their records are skipped by the readers instead of
+ * violating {@code uq_customer_valid} in the middle of a chunk. The step runs when the
+ * {@code duplicateRejectFile} job parameter is given, and writes every record of a
+ * duplicated customer into that file, as it cannot tell which of them is right.
+ * <p>
+ * The input is streamed twice. The first pass adds every customer ID to an
+ * {@link OffHeapBloomFilter} sized for {@code expectedCustomers}, estimated from the
+ * input size by default, and collects the IDs the filter might have seen before as
+ * candidates. The second pass counts the records of the candidates only, which confirms
+ * the actual duplicates among the few false positives. The heap therefore holds the
+ * candidates only, not every customer ID.
+ * <p>
+ * The sorted duplicate customer IDs are stored in the job execution context under
+ * {@link #DUPLICATE_CUSTOMER_IDS_KEY}, where the readers of the later steps, also on
+ * restart, pick them up.
+ */
+@Component
+@StepScope
+public class BankAccountStageDuplicateCheckTasklet implements Tasklet {
+
+	public static final String DUPLICATE_CUSTOMER_IDS_KEY = "duplicateCustomerIds";
+
+	static final String REASON = "duplicate customer_id";
+
+	private static final int BITS_PER_CUSTOMER = 12;
+
+	// records take about 50 bytes and compress to about a fourth, rather overestimate
+	// the customers than fill the filter
+	private static final int ESTIMATED_RECORD_BYTES = 40;
+
+	private static final int ESTIMATED_COMPRESSION_RATIO = 4;
+
+	private final Resource rejectFile;
+
+	private final Long expectedCustomers;
+
+	private final Resource inputFile;
+
+	private final String inputFiles;
+
+	private final ResourceLoader resourceLoader;
+
+	public BankAccountStageDuplicateCheckTasklet(
+			@Value("#{jobParameters['duplicateRejectFile']}") @Nullable Resource rejectFile,
+			@Value("#{jobParameters['expectedCustomers']}") @Nullable Long expectedCustomers,
+			@Value("#{jobParameters['inputFile'] ?: 'file://${PWD}/src/test/resources/bank_account_stage_usecase_data.csv'}") Resource inputFile,
+			@Value("#{jobParameters['inputFiles']}") @Nullable String inputFiles, ResourceLoader resourceLoader) {
+		this.rejectFile = rejectFile;
+		this.expectedCustomers = expectedCustomers;
+		this.inputFile = inputFile;
+		this.inputFiles = inputFiles;
+		this.resourceLoader = resourceLoader;
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		if (this.rejectFile == null) {
+			return RepeatStatus.FINISHED;
+		}
+		List<Resource> inputs = (this.inputFiles != null)
+				? List.of(BankAccountStageInputFiles.resolve(this.inputFiles, this.resourceLoader))
+				: List.of(this.inputFile);
+		long expectedCustomers = (this.expectedCustomers != null) ? this.expectedCustomers : estimateCustomers(inputs);
+		Path rejectPath = this.rejectFile.getFile().toPath();
+		Duplicates duplicates = findDuplicates(inputs, expectedCustomers, rejectPath);
+		if (!duplicates.customerIds().isEmpty()) {
+			chunkContext.getStepContext()
+				.getStepExecution()
+				.getJobExecution()
+				.getExecutionContext()
+				.put(DUPLICATE_CUSTOMER_IDS_KEY, duplicates.customerIds().stream().sorted().toArray(String[]::new));
+		}
+		contribution.incrementWriteCount(duplicates.rejectedRecords());
+		contribution.setExitStatus(ExitStatus.COMPLETED.addExitDescription(duplicates.customerIds().size()
+				+ " duplicate customers, " + duplicates.rejectedRecords() + " records rejected to " + rejectPath));
+		return RepeatStatus.FINISHED;
+	}
+
+	private static long estimateCustomers(List<Resource> inputs) throws IOException {
+		long records = 0;
+		for (Resource input : inputs) {
+			long bytes = input.contentLength();
+			records += (DecompressingResource.isCompressed(input) ? bytes * ESTIMATED_COMPRESSION_RATIO : bytes)
+					/ ESTIMATED_RECORD_BYTES;
+		}
+		return records;
+	}
+
+	/**
+	 * Finds the customers with more than one record in {@code inputs}, and writes all
+	 * their records with the file name and line number into {@code rejectFile}.
+	 */
+	static Duplicates findDuplicates(List<Resource> inputs, long expectedCustomers, Path rejectFile)
+			throws IOException {
+		OffHeapBloomFilter seen = new OffHeapBloomFilter(expectedCustomers, BITS_PER_CUSTOMER);
+		Set<String> candidates = new HashSet<>();
+		String header = scan(inputs, (input, lineNumber, line, customerId) -> {
+			if (!seen.put(customerId)) {
+				candidates.add(customerId);
+			}
+		});
+		if (rejectFile.getParent() != null) {
+			Files.createDirectories(rejectFile.getParent());
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(rejectFile)) {
+			writer.write("file,line_number,reason," + ((header != null) ? header : ""));
+			writer.newLine();
+			if (candidates.isEmpty()) {
+				return new Duplicates(Set.of(), 0);
+			}
+			Map<String, List<String>> candidateRecords = new TreeMap<>();
+			scan(inputs, (input, lineNumber, line, customerId) -> {
+				if (candidates.contains(customerId)) {
+					candidateRecords.computeIfAbsent(customerId, id -> new ArrayList<>(2))
+						.add(input.getFilename() + "," + lineNumber + "," + REASON + "," + line);
+				}
+			});
+			Set<String> customerIds = new HashSet<>();
+			long rejectedRecords = 0;
+			for (Map.Entry<String, List<String>> entry : candidateRecords.entrySet()) {
+				if (entry.getValue().size() > 1) {
+					customerIds.add(entry.getKey());
+					for (String record : entry.getValue()) {
+						writer.write(record);
+						writer.newLine();
+						rejectedRecords++;
+					}
+				}
+			}
+			return new Duplicates(customerIds, rejectedRecords);
+		}
+	}
+
+	/**
+	 * Streams the records of every input to {@code callback} and returns the header of
+	 * the first input.
+	 */
+	@Nullable
+	private static String scan(List<Resource> inputs, RecordCallback callback) throws IOException {
+		String header = null;
+		for (Resource input : inputs) {
+			Resource resource = DecompressingResource.isCompressed(input) ? new DecompressingResource(input) : input;
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+				String line = reader.readLine();
+				if (header == null) {
+					header = line;
+				}
+				long lineNumber = 1;
+				while ((line = reader.readLine()) != null) {
+					lineNumber++;
+					if (line.isEmpty()) {
+						continue;
+					}
+					int comma = line.indexOf(',');
+					callback.record(input, lineNumber, line, (comma < 0) ? line : line.substring(0, comma));
+				}
+			}
+		}
+		return header;
+	}
+
+	@FunctionalInterface
+	private interface RecordCallback {
+
+		void record(Resource input, long lineNumber, String line, String customerId);
+
+	}
+
+	record Duplicates(Set<String> customerIds, long rejectedRecords) {
+	}
+
+}
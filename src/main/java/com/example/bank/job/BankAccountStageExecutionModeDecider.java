@@ -0,0 +1,60 @@
+package com.example.bank.job;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameter;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
+
+/**
+ * Chooses how the stage calculation runs for a job execution. An {@code executionMode}
+ * job parameter of {@code sql} selects the set-based SQL steps, and one of {@code remote}
+ * the step whose partitions are run by {@link BankAccountStageRemoteWorker}s in other
+ * JVMs, and one of {@code whatif} the dry run of {@link BankAccountStageWhatIfTasklet}.
+ * Otherwise an {@code inputFiles} job parameter selects the step partitioned by input
+ * file, a {@code gridSize} job parameter greater than 1 selects the step partitioned by
+ * byte range, and the single-threaded chunk step is used by default.
+ */
+public class BankAccountStageExecutionModeDecider implements JobExecutionDecider {
+
+	public static final FlowExecutionStatus CHUNK = new FlowExecutionStatus("CHUNK");
+
+	public static final FlowExecutionStatus PARTITIONED = new FlowExecutionStatus("PARTITIONED");
+
+	public static final FlowExecutionStatus SQL = new FlowExecutionStatus("SQL");
+
+	public static final FlowExecutionStatus MULTI_FILE = new FlowExecutionStatus("MULTI_FILE");
+
+	public static final FlowExecutionStatus REMOTE = new FlowExecutionStatus("REMOTE");
+
+	public static final FlowExecutionStatus WHAT_IF = new FlowExecutionStatus("WHAT_IF");
+
+	private static final String SQL_EXECUTION_MODE = "sql";
+
+	private static final String REMOTE_EXECUTION_MODE = "remote";
+
+	private static final String WHAT_IF_EXECUTION_MODE = "whatif";
+
+	@Override
+	public FlowExecutionStatus decide(JobExecution jobExecution, StepExecution stepExecution) {
+		JobParameter<?> executionMode = jobExecution.getJobParameters().getParameter("executionMode");
+		if (executionMode != null && SQL_EXECUTION_MODE.equals(executionMode.getValue().toString())) {
+			return SQL;
+		}
+		if (executionMode != null && REMOTE_EXECUTION_MODE.equals(executionMode.getValue().toString())) {
+			return REMOTE;
+		}
+		if (executionMode != null && WHAT_IF_EXECUTION_MODE.equals(executionMode.getValue().toString())) {
+			return WHAT_IF;
+		}
+		if (jobExecution.getJobParameters().getParameter("inputFiles") != null) {
+			return MULTI_FILE;
+		}
+		JobParameter<?> gridSize = jobExecution.getJobParameters().getParameter("gridSize");
+		if (gridSize != null && Integer.parseInt(gridSize.getValue().toString()) > 1) {
+			return PARTITIONED;
+		}
+		return CHUNK;
+	}
+
+}
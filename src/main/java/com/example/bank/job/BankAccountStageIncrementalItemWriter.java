@@ -0,0 +1,179 @@
+package com.example.bank.job;
+
+import com.example.bank.job.BankAccountStageMetrics.StepMetrics;
+import com.example.bank.stage.StageDecisionTable;
+import com.example.bank.stage.StageRuleEngine;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Writer of the incremental mode, selected with the {@code incremental=true} job
+ * parameter for a step without an item processor. Inputs whose {@link InputFingerprint}
+ * equals the {@code input_fingerprint} of the customer's calculation of the previous
+ * month are not evaluated: that calculation and its condition evaluations are copied into
+ * the new month by a single {@code INSERT ... SELECT} for the whole chunk. The other
+ * inputs are evaluated and written by the {@link BankAccountStageColumnarItemWriter}.
+ * <p>
+ * The fingerprints of the chunk are looked up with a single query through
+ * {@code idx_calculation_fingerprint}. As the rule-set version is part of the
+ * fingerprint, a change to the effective stages or conditions makes every input of the
+ * month go through the evaluation. Calculations that recorded a stage transition, and
+ * those without a fingerprint, are never carried forward. Carried forward items are
+ * counted in {@value BankAccountStageMetrics#CARRIED_FORWARD}. The incremental mode
+ * requires PostgreSQL.
+ */
+@Component
+@StepScope
+public class BankAccountStageIncrementalItemWriter implements ItemWriter<BankAccountStageInput> {
+
+	private static final String PREVIOUS_CALCULATIONS_SQL = """
+			SELECT i.ordinality, c.id, c.input_fingerprint
+			FROM unnest(?) WITH ORDINALITY AS i(customer_id, ordinality)
+			JOIN customer_stage_calculations c ON c.customer_id = i.customer_id
+			WHERE c.calculation_date = ? AND c.input_fingerprint IS NOT NULL
+			AND c.current_stage_code = c.final_stage_code
+			""";
+
+	private static final String CARRY_FORWARD_SQL = """
+			WITH previous AS (
+			    SELECT * FROM unnest(?::varchar[], ?::bigint[]) AS p(customer_id, id)
+			), calculations AS (
+			    INSERT INTO customer_stage_calculations (customer_id, calculation_date, valid_from, valid_to,
+			        current_stage_code, final_stage_code, total_balance, foreign_currency_balance,
+			        investment_trust_balance, monthly_foreign_currency_purchase, monthly_investment_trust_purchase,
+			        housing_loan_balance, monthly_fx_trading_volume, input_fingerprint)
+			    SELECT c.customer_id, ?, ?, ?, c.current_stage_code, c.final_stage_code, c.total_balance,
+			        c.foreign_currency_balance, c.investment_trust_balance, c.monthly_foreign_currency_purchase,
+			        c.monthly_investment_trust_purchase, c.housing_loan_balance, c.monthly_fx_trading_volume,
+			        c.input_fingerprint
+			    FROM previous p
+			    JOIN customer_stage_calculations c ON c.id = p.id AND c.calculation_date = ?%s
+			    RETURNING id, customer_id
+			), condition_evaluations AS (
+			    INSERT INTO condition_evaluation_results (calculation_id, condition_id, is_met, evaluated_value)
+			    SELECT n.id, r.condition_id, r.is_met, r.evaluated_value
+			    FROM calculations n
+			    JOIN previous p ON p.customer_id = n.customer_id
+			    JOIN condition_evaluation_results r ON r.calculation_id = p.id
+			)
+			INSERT INTO condition_evaluations_compact (calculation_id, condition_ids, met_bits, evaluated_values)
+			SELECT n.id, e.condition_ids, e.met_bits, e.evaluated_values
+			FROM calculations n
+			JOIN previous p ON p.customer_id = n.customer_id
+			JOIN condition_evaluations_compact e ON e.calculation_id = p.id
+			""";
+
+	// a calculation carried forward by a chunk committed just before the job repository
+	// could record it is kept
+	private static final String UPSERT_CARRY_FORWARD_SUFFIX = """
+
+			ON CONFLICT ON CONSTRAINT uq_customer_valid DO NOTHING""";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final StageRuleEngine stageRuleEngine;
+
+	private final BankAccountStageColumnarItemWriter columnarItemWriter;
+
+	private final StepMetrics metrics;
+
+	private final String carryForwardSql;
+
+	public BankAccountStageIncrementalItemWriter(DataSource dataSource, StageRuleEngine stageRuleEngine,
+			BankAccountStageColumnarItemWriter columnarItemWriter, BankAccountStageMetrics metrics,
+			@Value("#{jobParameters['writeMode'] ?: 'insert'}") String writeMode) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.stageRuleEngine = stageRuleEngine;
+		this.columnarItemWriter = columnarItemWriter;
+		this.metrics = metrics.forCurrentStep();
+		this.carryForwardSql = CARRY_FORWARD_SQL.formatted(
+				BankAccountStageItemWriter.UPSERT_WRITE_MODE.equals(writeMode) ? UPSERT_CARRY_FORWARD_SUFFIX : "");
+	}
+
+	@Override
+	public void write(Chunk<? extends BankAccountStageInput> chunk) throws Exception {
+		if (chunk.isEmpty()) {
+			return;
+		}
+		List<? extends BankAccountStageInput> items = chunk.getItems();
+		LocalDate monthEndDate = items.get(0).monthEndDate();
+		StageDecisionTable decisionTable = this.stageRuleEngine.decisionTable(monthEndDate);
+		long[] previousIds = unchangedCalculations(items, decisionTable.ruleSetVersion());
+
+		Chunk<BankAccountStageInput> changed = new Chunk<>();
+		List<String> customerIds = new ArrayList<>();
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < previousIds.length; i++) {
+			if (previousIds[i] > 0) {
+				customerIds.add(items.get(i).customerId());
+				ids.add(previousIds[i]);
+			}
+			else {
+				changed.add(items.get(i));
+			}
+		}
+		if (!ids.isEmpty()) {
+			this.jdbcTemplate.update(this.carryForwardSql, (PreparedStatementSetter) ps -> {
+				ps.setArray(1, ps.getConnection().createArrayOf("varchar", customerIds.toArray()));
+				ps.setArray(2, ps.getConnection().createArrayOf("bigint", ids.toArray()));
+				ps.setObject(3, monthEndDate);
+				ps.setObject(4, decisionTable.validFrom());
+				ps.setObject(5, decisionTable.validTo());
+				ps.setObject(6, previousMonthEndDate(monthEndDate));
+			});
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+					@Override
+					public void afterCommit() {
+						BankAccountStageIncrementalItemWriter.this.metrics.carriedForward().increment(ids.size());
+					}
+				});
+			}
+			else {
+				this.metrics.carriedForward().increment(ids.size());
+			}
+		}
+		this.columnarItemWriter.write(changed);
+	}
+
+	/**
+	 * The ids of the previous month's calculations to carry forward by position in
+	 * {@code items}, or 0 for inputs to evaluate.
+	 */
+	private long[] unchangedCalculations(List<? extends BankAccountStageInput> items, long ruleSetVersion) {
+		long[] previousIds = new long[items.size()];
+		String[] customerIds = new String[items.size()];
+		for (int i = 0; i < customerIds.length; i++) {
+			customerIds[i] = items.get(i).customerId();
+		}
+		this.jdbcTemplate.query(PREVIOUS_CALCULATIONS_SQL, ps -> {
+			ps.setArray(1, ps.getConnection().createArrayOf("varchar", customerIds));
+			// the calculation date lets PostgreSQL scan the previous month's partition
+			// only
+			ps.setObject(2, previousMonthEndDate(items.get(0).monthEndDate()));
+		}, (RowCallbackHandler) rs -> {
+			int index = rs.getInt(1) - 1;
+			if (rs.getLong(3) == InputFingerprint.of(items.get(index), ruleSetVersion)) {
+				previousIds[index] = rs.getLong(2);
+			}
+		});
+		return previousIds;
+	}
+
+	private static LocalDate previousMonthEndDate(LocalDate monthEndDate) {
+		return monthEndDate.withDayOfMonth(1).minusDays(1);
+	}
+
+}
@@ -1,8 +1,49 @@
 package com.example.bank.job;
 
+import com.example.bank.stage.StageCodes;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
 /**
  * Record representing the input data for the Bank Account Stage monthly batch process.
+ * <p>
+ * The representation is fixed-point so that evaluating an item allocates nothing for it:
+ * amounts are {@code long} hundredths (see {@link Cents}), the current stage is a
+ * {@link StageCodes} ordinal and the month-end date is an epoch day.
  */
-public record BankAccountStageInput() {
+public record BankAccountStageInput(String customerId, int currentStage, long monthEndEpochDay, long totalBalance,
+		long foreignCurrencyBalance, long investmentTrustBalance, long monthlyForeignCurrencyPurchase,
+		long monthlyInvestmentTrustPurchase, long housingLoanBalance, int monthlyFxTradingVolume) {
+
+	/**
+	 * Creates an input from the column values of the CSV file.
+	 * @throws ArithmeticException if an amount is not a {@code DECIMAL(15,2)} value
+	 */
+	public static BankAccountStageInput of(String customerId, String currentStageCode, LocalDate monthEndDate,
+			BigDecimal totalBalance, BigDecimal foreignCurrencyBalance, BigDecimal investmentTrustBalance,
+			BigDecimal monthlyForeignCurrencyPurchase, BigDecimal monthlyInvestmentTrustPurchase,
+			BigDecimal housingLoanBalance, int monthlyFxTradingVolume) {
+		return new BankAccountStageInput(customerId, StageCodes.ordinal(currentStageCode), monthEndDate.toEpochDay(),
+				Cents.of(totalBalance), Cents.of(foreignCurrencyBalance), Cents.of(investmentTrustBalance),
+				Cents.of(monthlyForeignCurrencyPurchase), Cents.of(monthlyInvestmentTrustPurchase),
+				Cents.of(housingLoanBalance), monthlyFxTradingVolume);
+	}
+
+	/**
+	 * Returns a copy of this input with another current stage.
+	 */
+	public BankAccountStageInput withCurrentStage(int currentStage) {
+		return new BankAccountStageInput(this.customerId, currentStage, this.monthEndEpochDay, this.totalBalance,
+				this.foreignCurrencyBalance, this.investmentTrustBalance, this.monthlyForeignCurrencyPurchase,
+				this.monthlyInvestmentTrustPurchase, this.housingLoanBalance, this.monthlyFxTradingVolume);
+	}
+
+	public String currentStageCode() {
+		return StageCodes.code(this.currentStage);
+	}
+
+	public LocalDate monthEndDate() {
+		return LocalDate.ofEpochDay(this.monthEndEpochDay);
+	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,42 @@
+package com.example.bank.job;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternUtils;
+
+/**
+ * Resolution of the {@code inputFiles} job parameter, a resource location pattern such as
+ * {@code file:/data/2025-04/*.csv.gz} or a directory, into the input files.
+ */
+public final class BankAccountStageInputFiles {
+
+	private BankAccountStageInputFiles() {
+	}
+
+	/**
+	 * Returns the readable files matching {@code inputFiles} in the order of their
+	 * descriptions.
+	 * @throws IllegalStateException if no file matches
+	 */
+	public static Resource[] resolve(String inputFiles, ResourceLoader resourceLoader) throws IOException {
+		ResourcePatternResolver resolver = ResourcePatternUtils.getResourcePatternResolver(resourceLoader);
+		String pattern = inputFiles;
+		Resource location = resolver.getResource(inputFiles);
+		if (location.isFile() && location.getFile().isDirectory()) {
+			pattern = inputFiles.endsWith("/") ? inputFiles + "*" : inputFiles + "/*";
+		}
+		Resource[] resources = Arrays.stream(resolver.getResources(pattern))
+			.filter(Resource::isReadable)
+			.sorted(Comparator.comparing(Resource::getDescription))
+			.toArray(Resource[]::new);
+		if (resources.length == 0) {
+			throw new IllegalStateException("No input files match " + inputFiles);
+		}
+		return resources;
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.example.bank.job;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.Resource;
+
+/**
+ * {@link Partitioner} that splits the input CSV into byte ranges aligned to line
+ * boundaries. The header line is excluded from every range, and each partition's
+ * {@link ExecutionContext} holds its own {@value #START_OFFSET_KEY} /
+ * {@value #END_OFFSET_KEY}, so that a restart only re-runs the partitions that failed,
+ * and the {@value #START_LINE_NUMBER_KEY} of the range's first line in the file, so that
+ * rejected lines are reported with their line numbers in the file.
+ */
+public class BankAccountStageInputPartitioner implements Partitioner {
+
+	public static final String START_OFFSET_KEY = "startOffset";
+
+	public static final String END_OFFSET_KEY = "endOffset";
+
+	public static final String START_LINE_NUMBER_KEY = "startLineNumber";
+
+	private static final String PARTITION_PREFIX = "partition";
+
+	private final Resource resource;
+
+	public BankAccountStageInputPartitioner(Resource resource) {
+		this.resource = resource;
+	}
+
+	@Override
+	public Map<String, ExecutionContext> partition(int gridSize) {
+		if (gridSize < 1) {
+			throw new IllegalArgumentException("gridSize must be positive: " + gridSize);
+		}
+		try (InputStream inputStream = new BufferedInputStream(this.resource.getInputStream())) {
+			long length = this.resource.contentLength();
+			long headerEnd = skipLine(inputStream, 0, length);
+			long dataLength = length - headerEnd;
+			Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+			long position = headerEnd;
+			long startOffset = headerEnd;
+			long lineNumber = 2;
+			long startLineNumber = lineNumber;
+			for (int i = 1; i <= gridSize && startOffset < length; i++) {
+				long endOffset = length;
+				if (i < gridSize) {
+					long nominal = headerEnd + dataLength * i / gridSize;
+					if (nominal <= startOffset) {
+						continue;
+					}
+					// align to the first line that starts at or after the nominal offset
+					lineNumber += countLineFeeds(inputStream, nominal - 1 - position);
+					endOffset = skipLine(inputStream, nominal - 1, length);
+					lineNumber++;
+					position = endOffset;
+				}
+				ExecutionContext executionContext = new ExecutionContext();
+				executionContext.putLong(START_OFFSET_KEY, startOffset);
+				executionContext.putLong(END_OFFSET_KEY, endOffset);
+				executionContext.putLong(START_LINE_NUMBER_KEY, startLineNumber);
+				partitions.put(PARTITION_PREFIX + partitions.size(), executionContext);
+				startOffset = endOffset;
+				startLineNumber = lineNumber;
+			}
+			return partitions;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Failed to partition " + this.resource.getDescription(), e);
+		}
+	}
+
+	/**
+	 * Reads the next {@code count} bytes and returns the number of line feeds among them.
+	 */
+	private static long countLineFeeds(InputStream inputStream, long count) throws IOException {
+		byte[] buffer = new byte[8192];
+		long lineFeeds = 0;
+		while (count > 0) {
+			int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, count));
+			if (read < 0) {
+				throw new EOFException();
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer[i] == '\n') {
+					lineFeeds++;
+				}
+			}
+			count -= read;
+		}
+		return lineFeeds;
+	}
+
+	/**
+	 * Reads up to and including the next line feed and returns the offset of the
+	 * following line, or {@code length} if the end of the input was reached first.
+	 */
+	private static long skipLine(InputStream inputStream, long position, long length) throws IOException {
+		int b;
+		while ((b = inputStream.read()) != -1) {
+			position++;
+			if (b == '\n') {
+				return position;
+			}
+		}
+		return length;
+	}
+
+}
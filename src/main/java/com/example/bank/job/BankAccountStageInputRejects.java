@@ -0,0 +1,69 @@
+package com.example.bank.job;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.sql.DataSource;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reject channel of the {@code rejectFile} job parameter: the readers validate every
+ * input line with a {@link #validator()} and, instead of failing the chunk, skip the
+ * invalid lines and record them with their line number and the reason in the
+ * {@link #rejectFile()}. Without the parameter the input is not validated and a malformed
+ * line fails the step.
+ * <p>
+ * The stage codes are the labels of {@code stage_code_enum} at the start of the step, and
+ * the month-end date is that of the run, stored by
+ * {@link BankAccountStagePartitionTasklet}.
+ */
+@Component
+@StepScope
+public class BankAccountStageInputRejects {
+
+	private final RejectFile rejectFile;
+
+	private final Set<String> stageCodes;
+
+	private final LocalDate monthEndDate;
+
+	public BankAccountStageInputRejects(DataSource dataSource,
+			@Value("#{jobParameters['rejectFile']}") @Nullable Resource rejectFile, @Value("#{jobExecutionContext['"
+					+ BankAccountStagePartitionTasklet.MONTH_END_DATE_KEY + "']}") @Nullable String monthEndDate)
+			throws IOException {
+		if (rejectFile == null) {
+			this.rejectFile = null;
+			this.stageCodes = Set.of();
+		}
+		else {
+			this.rejectFile = new RejectFile(rejectFile.getFile().toPath());
+			this.stageCodes = new LinkedHashSet<>(new JdbcTemplate(dataSource).queryForList(
+					"SELECT enumlabel FROM pg_enum WHERE enumtypid = 'stage_code_enum'::regtype ORDER BY enumsortorder",
+					String.class));
+		}
+		this.monthEndDate = (monthEndDate != null) ? LocalDate.parse(monthEndDate) : null;
+	}
+
+	public boolean isEnabled() {
+		return this.rejectFile != null;
+	}
+
+	@Nullable
+	public RejectFile rejectFile() {
+		return this.rejectFile;
+	}
+
+	/**
+	 * Returns a new validator, as validators are not thread-safe.
+	 */
+	public BankAccountStageInputValidator validator() {
+		return new BankAccountStageInputValidator(this.stageCodes, this.monthEndDate);
+	}
+
+}
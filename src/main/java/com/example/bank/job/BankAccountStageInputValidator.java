@@ -0,0 +1,211 @@
+package com.example.bank.job;
+
+import com.example.bank.stage.StageCodes;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Set;
+import org.springframework.lang.Nullable;
+
+/**
+ * Validates input lines before they are mapped, so that invalid lines can be rejected
+ * without an exception: a line is valid if it has the ten columns, a customer ID of at
+ * most 50 characters, a current stage code that is a label of {@code stage_code_enum}, a
+ * month-end date that is the last day of its month and the month-end date of the run,
+ * amounts that are {@code DECIMAL(15,2)} values and an {@code INT} trading volume.
+ * <p>
+ * The checks scan the characters of the line and allocate nothing for valid lines.
+ */
+public final class BankAccountStageInputValidator implements ByteOffsetFlatFileItemReader.LineValidator {
+
+	private static final int COLUMNS = 10;
+
+	private static final int MAX_CUSTOMER_ID_LENGTH = 50;
+
+	private static final int MAX_INTEGER_DIGITS = 13;
+
+	private static final String[] AMOUNT_COLUMNS = { "total_balance", "foreign_currency_balance",
+			"investment_trust_balance", "monthly_foreign_currency_purchase", "monthly_investment_trust_purchase",
+			"housing_loan_balance" };
+
+	private final Set<String> stageCodes;
+
+	private final LocalDate monthEndDate;
+
+	private final int[] commas = new int[COLUMNS];
+
+	/**
+	 * @param stageCodes the labels of {@code stage_code_enum}
+	 * @param monthEndDate the month-end date of the run, or {@code null} to accept any
+	 * month-end date
+	 */
+	public BankAccountStageInputValidator(Set<String> stageCodes, @Nullable LocalDate monthEndDate) {
+		this.stageCodes = stageCodes;
+		this.monthEndDate = monthEndDate;
+	}
+
+	/**
+	 * Returns why the line is invalid, or {@code null} if it is valid. Not thread-safe,
+	 * every reader has its own validator.
+	 */
+	@Override
+	@Nullable
+	public String validate(String line) {
+		int[] commas = this.commas;
+		int columns = 1;
+		for (int i = line.indexOf(','); i >= 0; i = line.indexOf(',', i + 1)) {
+			if (columns == COLUMNS) {
+				return "More than " + COLUMNS + " columns";
+			}
+			commas[columns++ - 1] = i;
+		}
+		if (columns != COLUMNS) {
+			return "Expected " + COLUMNS + " columns but found " + columns;
+		}
+		commas[COLUMNS - 1] = line.length();
+		if (commas[0] == 0 || commas[0] > MAX_CUSTOMER_ID_LENGTH) {
+			return "customer_id must have 1 to " + MAX_CUSTOMER_ID_LENGTH + " characters";
+		}
+		if (!isStageCode(line, commas[0] + 1, commas[1])) {
+			return "Unknown current_stage_code";
+		}
+		String reason = validateMonthEndDate(line, commas[1] + 1, commas[2]);
+		if (reason != null) {
+			return reason;
+		}
+		for (int i = 0; i < AMOUNT_COLUMNS.length; i++) {
+			if (!isAmount(line, commas[i + 2] + 1, commas[i + 3])) {
+				return AMOUNT_COLUMNS[i] + " is not a DECIMAL(15,2) value";
+			}
+		}
+		if (!isInt(line, commas[8] + 1, commas[9])) {
+			return "monthly_fx_trading_volume is not an INT value";
+		}
+		return null;
+	}
+
+	/**
+	 * Returns why the already mapped input is invalid, or {@code null} if it is valid,
+	 * for readers that parse the columns themselves. Only the stage code and the
+	 * month-end date are checked, the readers reject malformed columns while parsing.
+	 */
+	@Nullable
+	public String validate(BankAccountStageInput input) {
+		if (!this.stageCodes.contains(StageCodes.code(input.currentStage()))) {
+			return "Unknown current_stage_code";
+		}
+		LocalDate monthEndDate = input.monthEndDate();
+		if (monthEndDate.getDayOfMonth() != monthEndDate.lengthOfMonth()) {
+			return "month_end_date is not the last day of a month";
+		}
+		if (this.monthEndDate != null && !this.monthEndDate.equals(monthEndDate)) {
+			return "month_end_date differs from " + this.monthEndDate;
+		}
+		return null;
+	}
+
+	private boolean isStageCode(String line, int start, int end) {
+		for (String stageCode : this.stageCodes) {
+			if (stageCode.length() == end - start && line.startsWith(stageCode, start)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Nullable
+	private String validateMonthEndDate(String line, int start, int end) {
+		if (end - start != 10 || line.charAt(start + 4) != '-' || line.charAt(start + 7) != '-') {
+			return "month_end_date is not a yyyy-MM-dd date";
+		}
+		int year = digits(line, start, start + 4);
+		int month = digits(line, start + 5, start + 7);
+		int day = digits(line, start + 8, end);
+		if (year < 0 || month < 1 || month > 12 || day < 1) {
+			return "month_end_date is not a yyyy-MM-dd date";
+		}
+		if (day != YearMonth.of(year, month).lengthOfMonth()) {
+			return "month_end_date is not the last day of a month";
+		}
+		if (this.monthEndDate != null && (this.monthEndDate.getYear() != year
+				|| this.monthEndDate.getMonthValue() != month || this.monthEndDate.getDayOfMonth() != day)) {
+			return "month_end_date differs from " + this.monthEndDate;
+		}
+		return null;
+	}
+
+	/**
+	 * Whether the column is an optionally signed decimal number that
+	 * {@link Cents#of(java.math.BigDecimal)} accepts: at most 13 integer digits, and
+	 * zeros only beyond the second decimal place.
+	 */
+	private static boolean isAmount(String line, int start, int end) {
+		int i = start;
+		if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+			i++;
+		}
+		int integerDigits = 0;
+		boolean leading = true;
+		int digits = 0;
+		for (; i < end && line.charAt(i) != '.'; i++) {
+			char c = line.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+			digits++;
+			leading &= c == '0';
+			if (!leading) {
+				integerDigits++;
+			}
+		}
+		if (integerDigits > MAX_INTEGER_DIGITS) {
+			return false;
+		}
+		if (i < end) {
+			// the decimal point
+			for (int scale = 1, j = i + 1; j < end; j++, scale++) {
+				char c = line.charAt(j);
+				if (c < '0' || c > '9' || (scale > Cents.SCALE && c != '0')) {
+					return false;
+				}
+				digits++;
+			}
+		}
+		return digits > 0;
+	}
+
+	private static boolean isInt(String line, int start, int end) {
+		int i = start;
+		boolean negative = i < end && line.charAt(i) == '-';
+		if (negative) {
+			i++;
+		}
+		if (i == end || end - i > 10) {
+			return false;
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			char c = line.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return negative ? -value >= Integer.MIN_VALUE : value <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Parses the digits, or returns -1 if there is another character.
+	 */
+	private static int digits(String line, int start, int end) {
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			char c = line.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+}
@@ -1,5 +1,10 @@
 package com.example.bank.job;
 
+import com.example.bank.job.BankAccountStageMetrics.StepMetrics;
+import com.example.bank.stage.StageDecisionTable;
+import com.example.bank.stage.StageEvaluation;
+import com.example.bank.stage.StageRuleEngine;
+import java.util.concurrent.TimeUnit;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.stereotype.Component;
@@ -8,10 +13,33 @@ import org.springframework.stereotype.Component;
 @StepScope
 public class BankAccountStageItemProcessor implements ItemProcessor<BankAccountStageInput, ProcessResult> {
 
+	private final StageRuleEngine stageRuleEngine;
+
+	private final StepMetrics metrics;
+
+	// resolved once per step so that items are evaluated without going through the
+	// job-scoped proxy
+	private StageDecisionTable decisionTable;
+
+	public BankAccountStageItemProcessor(StageRuleEngine stageRuleEngine, BankAccountStageMetrics metrics) {
+		this.stageRuleEngine = stageRuleEngine;
+		this.metrics = metrics.forCurrentStep();
+	}
+
 	@Override
 	public ProcessResult process(BankAccountStageInput input) throws Exception {
-		// TODO CHANGE ME
-		return new ProcessResult();
+		long start = System.nanoTime();
+		StageDecisionTable decisionTable = this.decisionTable;
+		if (decisionTable == null || decisionTable.monthEndEpochDay() != input.monthEndEpochDay()) {
+			decisionTable = this.stageRuleEngine.decisionTable(input.monthEndDate());
+			this.decisionTable = decisionTable;
+		}
+		StageEvaluation evaluation = decisionTable.evaluate(input);
+		// timed here rather than by a listener, which would only see the submission to
+		// the AsyncItemProcessor's executor
+		this.metrics.process().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		return new ProcessResult(input, evaluation, decisionTable.validFrom(), decisionTable.validTo(),
+				decisionTable.ruleSetVersion());
 	}
 
 }
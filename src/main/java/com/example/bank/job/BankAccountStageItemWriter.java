@@ -1,17 +1,531 @@
 package com.example.bank.job;
 
+import com.example.bank.job.BankAccountStageMetrics.StepMetrics;
+import com.example.bank.stage.ConditionEvaluation;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.item.Chunk;
-import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+/**
+ * Writes {@code customer_stage_calculations} and its {@code condition_evaluation_results}
+ * and {@code stage_transitions} within the chunk transaction.
+ * <p>
+ * On PostgreSQL the calculation ids of a chunk are reserved from
+ * {@code customer_stage_calculations_id_seq} in a single query, so that the child rows
+ * can be written without reading generated keys back. With the {@code writeMode} job
+ * parameter set to {@code copy} the three tables are then streamed with {@code COPY},
+ * otherwise they are written with batched INSERTs. Other databases always use batched
+ * INSERTs with generated keys.
+ * <p>
+ * The {@code upsert} write mode (PostgreSQL only) makes the writes idempotent: rows that
+ * already exist for the customer and validity period, such as those of a chunk committed
+ * just before the job repository could record it, are updated in place through
+ * {@code uq_customer_valid}, {@code uq_calculation_condition} and
+ * {@code uq_transition_calculation} instead of failing the step.
+ * <p>
+ * The {@code compact} write mode (PostgreSQL only) writes like the default mode, but
+ * stores the condition evaluations of a calculation as a single
+ * {@code condition_evaluations_compact} row of a met bitmask and an array of evaluated
+ * values. {@code condition_evaluation_results_view} exposes both storages in the
+ * normalized shape.
+ * <p>
+ * With a {@code priorStagePolicy} job parameter, the current stages of each chunk are
+ * first checked against the previous month's final stages by a {@link PriorStageCheck}.
+ * <p>
+ * Each calculation is written with the {@link ProcessResult#inputFingerprint()} that the
+ * incremental mode compares the next month's input with.
+ * <p>
+ * Amounts are held in hundredths while items are processed and are converted back to
+ * {@code DECIMAL(15,2)} values here: bound as {@code BigDecimal}s of scale 2, or written
+ * as text by {@code COPY}.
+ * <p>
+ * With a {@code transitionExport} job parameter, the transitions of every committed chunk
+ * are also exported to files by a {@link StageTransitionExport}, which is published when
+ * the writer is closed.
+ * <p>
+ * The time spent on each table and on the commit of the chunk, and the stages of the
+ * committed items, are recorded in {@link BankAccountStageMetrics}.
+ */
 @Component
 @StepScope
-public class BankAccountStageItemWriter implements ItemWriter<ProcessResult> {
+public class BankAccountStageItemWriter implements ItemStreamWriter<ProcessResult> {
+
+	static final String COPY_WRITE_MODE = "copy";
+
+	static final String UPSERT_WRITE_MODE = "upsert";
+
+	static final String COMPACT_WRITE_MODE = "compact";
+
+	static final String CALCULATIONS_TABLE = "customer_stage_calculations";
+
+	static final String CONDITION_EVALUATIONS_TABLE = "condition_evaluation_results";
+
+	static final String STAGE_TRANSITIONS_TABLE = "stage_transitions";
+
+	static final String COMPACT_CONDITION_EVALUATIONS_TABLE = "condition_evaluations_compact";
+
+	private static final String ALLOCATE_IDS_SQL = """
+			SELECT nextval('customer_stage_calculations_id_seq') FROM generate_series(1, ?)
+			""";
+
+	private static final String CALCULATION_COLUMNS = """
+			customer_id, calculation_date, valid_from, valid_to, current_stage_code, final_stage_code,
+			total_balance, foreign_currency_balance, investment_trust_balance, monthly_foreign_currency_purchase,
+			monthly_investment_trust_purchase, housing_loan_balance, monthly_fx_trading_volume, input_fingerprint""";
+
+	private static final String CALCULATION_VALUES = """
+			?, ?, ?, ?, CAST(? AS stage_code_enum), CAST(? AS stage_code_enum), ?, ?, ?, ?, ?, ?, ?, ?""";
+
+	private static final String CONDITION_EVALUATION_COLUMNS = "calculation_id, condition_id, is_met, evaluated_value";
+
+	private static final String COMPACT_CONDITION_EVALUATION_SQL = """
+			INSERT INTO condition_evaluations_compact (calculation_id, condition_ids, met_bits, evaluated_values)
+			VALUES (?, ?, ?, ?)""";
+
+	private static final String STAGE_TRANSITION_COLUMNS = "customer_id, calculation_id, previous_stage_code, current_stage_code, transition_date";
+
+	private static final String STAGE_TRANSITION_VALUES = "?, ?, CAST(? AS stage_code_enum), CAST(? AS stage_code_enum), ?";
+
+	private static final String UPSERT_CALCULATION_SUFFIX = """
+			 ON CONFLICT ON CONSTRAINT uq_customer_valid DO UPDATE SET
+			calculation_date = EXCLUDED.calculation_date, current_stage_code = EXCLUDED.current_stage_code,
+			final_stage_code = EXCLUDED.final_stage_code, total_balance = EXCLUDED.total_balance,
+			foreign_currency_balance = EXCLUDED.foreign_currency_balance,
+			investment_trust_balance = EXCLUDED.investment_trust_balance,
+			monthly_foreign_currency_purchase = EXCLUDED.monthly_foreign_currency_purchase,
+			monthly_investment_trust_purchase = EXCLUDED.monthly_investment_trust_purchase,
+			housing_loan_balance = EXCLUDED.housing_loan_balance,
+			monthly_fx_trading_volume = EXCLUDED.monthly_fx_trading_volume,
+			input_fingerprint = EXCLUDED.input_fingerprint""";
+
+	private static final String UPSERT_CONDITION_EVALUATION_SUFFIX = """
+			 ON CONFLICT ON CONSTRAINT uq_calculation_condition DO UPDATE SET
+			is_met = EXCLUDED.is_met, evaluated_value = EXCLUDED.evaluated_value""";
+
+	private static final String UPSERT_STAGE_TRANSITION_SUFFIX = """
+			 ON CONFLICT ON CONSTRAINT uq_transition_calculation DO UPDATE SET
+			customer_id = EXCLUDED.customer_id, previous_stage_code = EXCLUDED.previous_stage_code,
+			current_stage_code = EXCLUDED.current_stage_code, transition_date = EXCLUDED.transition_date""";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final boolean copy;
+
+	private final boolean upsert;
+
+	private final boolean compact;
+
+	private final StepMetrics metrics;
+
+	@Nullable
+	private final PriorStageCheck priorStageCheck;
+
+	@Nullable
+	private final StageTransitionExport transitionExport;
+
+	private Boolean postgres;
+
+	public BankAccountStageItemWriter(DataSource dataSource, BankAccountStageMetrics metrics,
+			@Value("#{jobParameters['writeMode'] ?: 'insert'}") String writeMode,
+			@Value("#{jobParameters['priorStagePolicy']}") @Nullable String priorStagePolicy,
+			@Nullable StageTransitionExport transitionExport) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.copy = COPY_WRITE_MODE.equals(writeMode);
+		this.upsert = UPSERT_WRITE_MODE.equals(writeMode);
+		this.compact = COMPACT_WRITE_MODE.equals(writeMode);
+		this.metrics = metrics.forCurrentStep();
+		this.priorStageCheck = (priorStagePolicy != null) ? new PriorStageCheck(this.jdbcTemplate,
+				PriorStageCheck.Policy.of(priorStagePolicy), this.metrics.priorStageMismatches()) : null;
+		this.transitionExport = transitionExport;
+	}
 
 	@Override
 	public void write(Chunk<? extends ProcessResult> chunk) throws Exception {
-		// TODO CHANGE ME
+		if (chunk.isEmpty()) {
+			return;
+		}
+		List<? extends ProcessResult> items = chunk.getItems();
+		if (this.priorStageCheck != null) {
+			items = this.priorStageCheck.check(items);
+		}
+		if ((this.upsert || this.compact) && !isPostgres()) {
+			throw new IllegalStateException("The " + (this.upsert ? UPSERT_WRITE_MODE : COMPACT_WRITE_MODE)
+					+ " write mode requires PostgreSQL");
+		}
+		long[] ids;
+		if (this.upsert) {
+			long start = System.nanoTime();
+			ids = insertCalculations(items, UPSERT_CALCULATION_SUFFIX);
+			recordWrite(CALCULATIONS_TABLE, start);
+			insertChildren(items, ids);
+		}
+		else if (!isPostgres()) {
+			long start = System.nanoTime();
+			ids = insertCalculations(items, "");
+			recordWrite(CALCULATIONS_TABLE, start);
+			insertChildren(items, ids);
+		}
+		else if (this.copy) {
+			// the calculations are timed by copy()
+			ids = allocateIds(items.size());
+			copy(items, ids);
+		}
+		else {
+			long start = System.nanoTime();
+			ids = allocateIds(items.size());
+			insertCalculations(items, ids);
+			recordWrite(CALCULATIONS_TABLE, start);
+			insertChildren(items, ids);
+		}
+		if (this.transitionExport != null && this.transitionExport.isEnabled()) {
+			this.transitionExport.export(items, ids);
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new CommitMetrics(items));
+		}
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		if (this.transitionExport != null && this.transitionExport.isEnabled()) {
+			this.transitionExport.open(executionContext);
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		if (this.transitionExport != null && this.transitionExport.isEnabled()) {
+			this.transitionExport.update(executionContext);
+		}
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		if (this.transitionExport != null && this.transitionExport.isEnabled()) {
+			this.transitionExport.close();
+		}
+	}
+
+	private void recordWrite(String table, long start) {
+		this.metrics.write(table).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+
+	private boolean isPostgres() {
+		Boolean postgres = this.postgres;
+		if (postgres == null) {
+			postgres = this.jdbcTemplate
+				.execute((ConnectionCallback<Boolean>) connection -> connection.isWrapperFor(PGConnection.class));
+			this.postgres = postgres;
+		}
+		return postgres;
+	}
+
+	private long[] allocateIds(int size) {
+		List<Long> ids = this.jdbcTemplate.queryForList(ALLOCATE_IDS_SQL, Long.class, size);
+		return ids.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	private void copy(List<? extends ProcessResult> items, long[] ids) {
+		this.jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+			CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+			long start = System.nanoTime();
+			copyCalculations(copyManager, items, ids);
+			recordWrite(CALCULATIONS_TABLE, start);
+			start = System.nanoTime();
+			copyConditionEvaluations(copyManager, items, ids);
+			recordWrite(CONDITION_EVALUATIONS_TABLE, start);
+			start = System.nanoTime();
+			copyStageTransitions(copyManager, items, ids);
+			recordWrite(STAGE_TRANSITIONS_TABLE, start);
+			return null;
+		});
+	}
+
+	private static void copyCalculations(CopyManager copyManager, List<? extends ProcessResult> items, long[] ids)
+			throws SQLException {
+		PgCopyWriter writer = new PgCopyWriter(copyManager,
+				"COPY customer_stage_calculations (id, " + CALCULATION_COLUMNS + ") FROM STDIN");
+		try {
+			for (int i = 0; i < ids.length; i++) {
+				ProcessResult item = items.get(i);
+				BankAccountStageInput input = item.input();
+				writer.column(ids[i])
+					.column(input.customerId())
+					.column(input.monthEndDate())
+					.column(item.validFrom())
+					.column(item.validTo())
+					.column(input.currentStageCode())
+					.column(item.finalStageCode())
+					.cents(input.totalBalance())
+					.cents(input.foreignCurrencyBalance())
+					.cents(input.investmentTrustBalance())
+					.cents(input.monthlyForeignCurrencyPurchase())
+					.cents(input.monthlyInvestmentTrustPurchase())
+					.cents(input.housingLoanBalance())
+					.column(input.monthlyFxTradingVolume())
+					.column(item.inputFingerprint())
+					.endRow();
+			}
+			writer.end();
+		}
+		catch (SQLException | RuntimeException ex) {
+			writer.cancel();
+			throw ex;
+		}
+	}
+
+	private static void copyConditionEvaluations(CopyManager copyManager, List<? extends ProcessResult> items,
+			long[] ids) throws SQLException {
+		PgCopyWriter writer = new PgCopyWriter(copyManager,
+				"COPY condition_evaluation_results (" + CONDITION_EVALUATION_COLUMNS + ") FROM STDIN");
+		try {
+			for (int i = 0; i < ids.length; i++) {
+				for (ConditionEvaluation evaluation : items.get(i).evaluation().conditionEvaluations()) {
+					writer.column(ids[i])
+						.column(evaluation.conditionId())
+						.column(evaluation.met())
+						.cents(evaluation.evaluatedValue())
+						.endRow();
+				}
+			}
+			writer.end();
+		}
+		catch (SQLException | RuntimeException ex) {
+			writer.cancel();
+			throw ex;
+		}
+	}
+
+	private static void copyStageTransitions(CopyManager copyManager, List<? extends ProcessResult> items, long[] ids)
+			throws SQLException {
+		PgCopyWriter writer = new PgCopyWriter(copyManager,
+				"COPY stage_transitions (" + STAGE_TRANSITION_COLUMNS + ") FROM STDIN");
+		try {
+			for (int i = 0; i < ids.length; i++) {
+				ProcessResult item = items.get(i);
+				if (item.isStageChanged()) {
+					writer.column(item.input().customerId())
+						.column(ids[i])
+						.column(item.input().currentStageCode())
+						.column(item.finalStageCode())
+						.column(item.validFrom())
+						.endRow();
+				}
+			}
+			writer.end();
+		}
+		catch (SQLException | RuntimeException ex) {
+			writer.cancel();
+			throw ex;
+		}
+	}
+
+	private void insertCalculations(List<? extends ProcessResult> items, long[] ids) {
+		List<Object[]> rows = new ArrayList<>(ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			Object[] row = new Object[15];
+			row[0] = ids[i];
+			calculationValues(items.get(i), row, 1);
+			rows.add(row);
+		}
+		this.jdbcTemplate.batchUpdate("INSERT INTO customer_stage_calculations (id, " + CALCULATION_COLUMNS
+				+ ") VALUES (?, " + CALCULATION_VALUES + ")", rows);
+	}
+
+	/**
+	 * Inserts the calculations letting the database assign the ids, and returns the ids
+	 * of the written rows. {@code suffix} may turn the INSERT into an upsert.
+	 */
+	private long[] insertCalculations(List<? extends ProcessResult> items, String suffix) {
+		KeyHolder keyHolder = new GeneratedKeyHolder();
+		this.jdbcTemplate
+			.batchUpdate(connection -> connection.prepareStatement("INSERT INTO customer_stage_calculations ("
+					+ CALCULATION_COLUMNS + ") VALUES (" + CALCULATION_VALUES + ")" + suffix, new String[] { "id" }),
+					new BatchPreparedStatementSetter() {
+						@Override
+						public void setValues(PreparedStatement ps, int i) throws SQLException {
+							Object[] row = new Object[14];
+							calculationValues(items.get(i), row, 0);
+							for (int j = 0; j < row.length; j++) {
+								ps.setObject(j + 1, row[j]);
+							}
+						}
+
+						@Override
+						public int getBatchSize() {
+							return items.size();
+						}
+					}, keyHolder);
+		return keyHolder.getKeyList()
+			.stream()
+			.mapToLong(keys -> ((Number) keys.values().iterator().next()).longValue())
+			.toArray();
+	}
+
+	private static void calculationValues(ProcessResult item, Object[] row, int offset) {
+		BankAccountStageInput input = item.input();
+		row[offset] = input.customerId();
+		row[offset + 1] = input.monthEndDate();
+		row[offset + 2] = item.validFrom();
+		row[offset + 3] = item.validTo();
+		row[offset + 4] = input.currentStageCode();
+		row[offset + 5] = item.finalStageCode();
+		row[offset + 6] = Cents.toBigDecimal(input.totalBalance());
+		row[offset + 7] = Cents.toBigDecimal(input.foreignCurrencyBalance());
+		row[offset + 8] = Cents.toBigDecimal(input.investmentTrustBalance());
+		row[offset + 9] = Cents.toBigDecimal(input.monthlyForeignCurrencyPurchase());
+		row[offset + 10] = Cents.toBigDecimal(input.monthlyInvestmentTrustPurchase());
+		row[offset + 11] = Cents.toBigDecimal(input.housingLoanBalance());
+		row[offset + 12] = input.monthlyFxTradingVolume();
+		row[offset + 13] = item.inputFingerprint();
+	}
+
+	private void insertChildren(List<? extends ProcessResult> items, long[] ids) {
+		List<Object[]> conditionEvaluations = new ArrayList<>(this.compact ? 0 : ids.length * 8);
+		List<Object[]> stageTransitions = new ArrayList<>();
+		List<Long> unchangedIds = new ArrayList<>();
+		for (int i = 0; i < ids.length; i++) {
+			ProcessResult item = items.get(i);
+			if (!this.compact) {
+				for (ConditionEvaluation evaluation : item.evaluation().conditionEvaluations()) {
+					conditionEvaluations.add(new Object[] { ids[i], evaluation.conditionId(), evaluation.met(),
+							Cents.toBigDecimal(evaluation.evaluatedValue()) });
+				}
+			}
+			if (item.isStageChanged()) {
+				stageTransitions.add(new Object[] { item.input().customerId(), ids[i], item.input().currentStageCode(),
+						item.finalStageCode(), item.validFrom() });
+			}
+			else {
+				unchangedIds.add(ids[i]);
+			}
+		}
+		long start = System.nanoTime();
+		if (this.compact) {
+			insertCompactConditionEvaluations(items, ids);
+			recordWrite(COMPACT_CONDITION_EVALUATIONS_TABLE, start);
+		}
+		else {
+			this.jdbcTemplate.batchUpdate(
+					"INSERT INTO condition_evaluation_results (" + CONDITION_EVALUATION_COLUMNS
+							+ ") VALUES (?, ?, ?, ?)" + (this.upsert ? UPSERT_CONDITION_EVALUATION_SUFFIX : ""),
+					conditionEvaluations);
+			recordWrite(CONDITION_EVALUATIONS_TABLE, start);
+		}
+		start = System.nanoTime();
+		if (this.upsert && !unchangedIds.isEmpty()) {
+			// a calculation written again may no longer change the stage
+			this.jdbcTemplate.update("DELETE FROM stage_transitions WHERE calculation_id = ANY(?)",
+					(PreparedStatementSetter) ps -> ps.setArray(1,
+							ps.getConnection().createArrayOf("bigint", unchangedIds.toArray())));
+		}
+		if (!stageTransitions.isEmpty()) {
+			this.jdbcTemplate.batchUpdate(
+					"INSERT INTO stage_transitions (" + STAGE_TRANSITION_COLUMNS + ") VALUES ("
+							+ STAGE_TRANSITION_VALUES + ")" + (this.upsert ? UPSERT_STAGE_TRANSITION_SUFFIX : ""),
+					stageTransitions);
+		}
+		recordWrite(STAGE_TRANSITIONS_TABLE, start);
+	}
+
+	/**
+	 * Inserts one {@code condition_evaluations_compact} row per calculation. Bit
+	 * {@code i} of {@code met_bits} stands for the {@code i}-th element of
+	 * {@code condition_ids}, which are in ascending id order.
+	 */
+	private void insertCompactConditionEvaluations(List<? extends ProcessResult> items, long[] ids) {
+		this.jdbcTemplate.batchUpdate(COMPACT_CONDITION_EVALUATION_SQL, new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				List<ConditionEvaluation> evaluations = items.get(i)
+					.evaluation()
+					.conditionEvaluations()
+					.stream()
+					.sorted(Comparator.comparingLong(ConditionEvaluation::conditionId))
+					.toList();
+				if (evaluations.size() > Long.SIZE) {
+					throw new IllegalStateException("The " + COMPACT_WRITE_MODE
+							+ " write mode supports at most 64 conditions, but there are " + evaluations.size());
+				}
+				Long[] conditionIds = new Long[evaluations.size()];
+				BigDecimal[] evaluatedValues = new BigDecimal[evaluations.size()];
+				long metBits = 0;
+				for (int j = 0; j < conditionIds.length; j++) {
+					ConditionEvaluation evaluation = evaluations.get(j);
+					conditionIds[j] = evaluation.conditionId();
+					evaluatedValues[j] = Cents.toBigDecimal(evaluation.evaluatedValue());
+					if (evaluation.met()) {
+						metBits |= 1L << j;
+					}
+				}
+				ps.setLong(1, ids[i]);
+				ps.setArray(2, ps.getConnection().createArrayOf("bigint", conditionIds));
+				ps.setLong(3, metBits);
+				ps.setArray(4, ps.getConnection().createArrayOf("numeric", evaluatedValues));
+			}
+
+			@Override
+			public int getBatchSize() {
+				return ids.length;
+			}
+		});
+	}
+
+	/**
+	 * Times the commit of the chunk transaction and counts its items once they are
+	 * committed, so that rolled back chunks are not counted.
+	 */
+	private final class CommitMetrics implements TransactionSynchronization {
+
+		private final List<? extends ProcessResult> items;
+
+		private long start;
+
+		CommitMetrics(List<? extends ProcessResult> items) {
+			this.items = items;
+		}
+
+		@Override
+		public void beforeCommit(boolean readOnly) {
+			this.start = System.nanoTime();
+		}
+
+		@Override
+		public void afterCommit() {
+			BankAccountStageItemWriter.this.metrics.commit()
+				.record(System.nanoTime() - this.start, TimeUnit.NANOSECONDS);
+			BankAccountStageItemWriter.this.metrics.committed(this.items);
+		}
+
+		@Override
+		public int getOrder() {
+			// begin timing after the other synchronizations have run their beforeCommit
+			return LOWEST_PRECEDENCE;
+		}
+
 	}
 
 }
@@ -0,0 +1,141 @@
+package com.example.bank.job;
+
+import java.io.IOException;
+import java.util.List;
+import org.springframework.batch.core.JobParameter;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.JobParametersValidator;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.lang.Nullable;
+
+/**
+ * Rejects the combinations of job parameters that a run could not honour, before the run
+ * starts:
+ * <ul>
+ * <li>{@code asyncConcurrency} with {@code rejectFile}: the {@link ReadAheadItemReader}
+ * reads ahead of the committed chunks and restarts by skipping items, so the rejected
+ * lines could not be recorded exactly once.</li>
+ * <li>{@code reader=mapped} with an input that is not a file on the file system, such as
+ * a classpath resource inside the jar or a URL, or with a compressed {@code inputFile}:
+ * the {@link MappedBankAccountStageInputItemReader} maps the file into memory. The
+ * compressed files of {@code inputFiles} are always decompressed by the flat file
+ * reader.</li>
+ * <li>{@code asyncConcurrency} with {@code evaluation=columnar} or
+ * {@code incremental=true}: their steps have no item processor to run
+ * asynchronously.</li>
+ * <li>{@code asyncConcurrency}, {@code chunkTargetMillis}, {@code minChunkSize},
+ * {@code maxChunkSize} or {@code evaluation=columnar} with a partitioned run, that is a
+ * {@code gridSize} greater than 1, {@code inputFiles} or {@code executionMode=remote}:
+ * the worker steps only process items one at a time in chunks of {@code chunkSize}.</li>
+ * </ul>
+ */
+public class BankAccountStageJobParametersValidator implements JobParametersValidator {
+
+	private static final String MAPPED_READER = "mapped";
+
+	private static final String COLUMNAR_EVALUATION = "columnar";
+
+	private static final List<String> SINGLE_STEP_PARAMETERS = List.of("asyncConcurrency", "chunkTargetMillis",
+			"minChunkSize", "maxChunkSize");
+
+	private final ResourceLoader resourceLoader;
+
+	public BankAccountStageJobParametersValidator(ResourceLoader resourceLoader) {
+		this.resourceLoader = resourceLoader;
+	}
+
+	@Override
+	public void validate(@Nullable JobParameters parameters) throws JobParametersInvalidException {
+		if (parameters == null) {
+			return;
+		}
+		if (longValue(parameters, "asyncConcurrency") > 0 && parameters.getParameter("rejectFile") != null) {
+			throw new JobParametersInvalidException("asyncConcurrency cannot be combined with rejectFile");
+		}
+		boolean columnar = COLUMNAR_EVALUATION.equals(stringValue(parameters, "evaluation"));
+		if (longValue(parameters, "asyncConcurrency") > 0
+				&& (columnar || Boolean.parseBoolean(stringValue(parameters, "incremental")))) {
+			throw new JobParametersInvalidException(
+					"asyncConcurrency cannot be combined with evaluation=columnar or incremental=true");
+		}
+		if (isPartitioned(parameters)) {
+			for (String key : SINGLE_STEP_PARAMETERS) {
+				if (parameters.getParameter(key) != null && longValue(parameters, key) > 0) {
+					throw new JobParametersInvalidException(
+							key + " cannot be combined with gridSize, inputFiles or executionMode=remote");
+				}
+			}
+			if (columnar) {
+				throw new JobParametersInvalidException(
+						"evaluation=columnar cannot be combined with gridSize, inputFiles or executionMode=remote");
+			}
+		}
+		if (MAPPED_READER.equals(stringValue(parameters, "reader"))) {
+			validateMappable(parameters);
+		}
+	}
+
+	private void validateMappable(JobParameters parameters) throws JobParametersInvalidException {
+		String inputFile = stringValue(parameters, "inputFile");
+		if (inputFile != null) {
+			Resource resource = this.resourceLoader.getResource(inputFile);
+			if (DecompressingResource.isCompressed(resource)) {
+				throw new JobParametersInvalidException(
+						"reader=mapped cannot read the compressed inputFile " + inputFile + ", use reader=flatfile");
+			}
+			requireFile(resource, "inputFile " + inputFile);
+		}
+		String inputFiles = stringValue(parameters, "inputFiles");
+		if (inputFiles != null) {
+			Resource[] resources;
+			try {
+				resources = BankAccountStageInputFiles.resolve(inputFiles, this.resourceLoader);
+			}
+			catch (IOException | IllegalStateException ex) {
+				// left to the step, which reports the same failure
+				return;
+			}
+			for (Resource resource : resources) {
+				if (!DecompressingResource.isCompressed(resource)) {
+					requireFile(resource, "input file " + resource.getDescription());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Whether the run goes through partitioned worker steps, as chosen by
+	 * {@link BankAccountStageExecutionModeDecider}.
+	 */
+	private static boolean isPartitioned(JobParameters parameters) {
+		String executionMode = stringValue(parameters, "executionMode");
+		if ("remote".equals(executionMode)) {
+			return true;
+		}
+		if ("sql".equals(executionMode) || "whatif".equals(executionMode)) {
+			return false;
+		}
+		return parameters.getParameter("inputFiles") != null || longValue(parameters, "gridSize") > 1;
+	}
+
+	private static void requireFile(Resource resource, String description) throws JobParametersInvalidException {
+		if (!resource.isFile()) {
+			throw new JobParametersInvalidException(
+					"reader=mapped needs a file on the file system, but " + description + " is not one");
+		}
+	}
+
+	static long longValue(JobParameters parameters, String key) {
+		JobParameter<?> parameter = parameters.getParameter(key);
+		return (parameter != null) ? Long.parseLong(parameter.getValue().toString()) : 0;
+	}
+
+	@Nullable
+	static String stringValue(JobParameters parameters, String key) {
+		JobParameter<?> parameter = parameters.getParameter(key);
+		return (parameter != null) ? parameter.getValue().toString() : null;
+	}
+
+}
@@ -0,0 +1,195 @@
+package com.example.bank.job;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Meters of the chunk-oriented steps, tagged with the job name, the step and the
+ * partition that recorded them. They are published by the application's
+ * {@link MeterRegistry}, i.e. through OTLP when
+ * {@code management.otlp.metrics.export.enabled} is set. The meters accumulate across
+ * runs: the job execution is not a tag, so that a long-lived process running the job
+ * repeatedly does not register new meters for every run.
+ * <ul>
+ * <li>{@value #READ}: time the step waits for the next item, including parsing</li>
+ * <li>{@value #PROCESS}: stage evaluation of one item, or of one chunk with columnar
+ * evaluation</li>
+ * <li>{@value #WRITE}: writing one chunk to the table in the {@code table} tag</li>
+ * <li>{@value #COMMIT}: commit of the chunk transaction</li>
+ * <li>{@value #ITEMS}: committed items, whose rate is the items per second</li>
+ * <li>{@value #THROUGHPUT}: items per second of each completed step</li>
+ * <li>{@value #FINAL_STAGES}: committed items by final stage in the {@code stage}
+ * tag</li>
+ * <li>{@value #RANK_UPS}: committed items whose final stage was raised by rank change
+ * conditions</li>
+ * <li>{@value #PRIOR_STAGE_MISMATCHES}: inputs whose current stage differs from the final
+ * stage of the previous month's calculation, with a {@code priorStagePolicy}</li>
+ * <li>{@value #CARRIED_FORWARD}: committed items whose previous month's calculation was
+ * carried forward by the incremental mode, which are not counted in {@value #ITEMS}</li>
+ * </ul>
+ */
+@Component
+public class BankAccountStageMetrics {
+
+	public static final String READ = "bank.account.stage.read";
+
+	public static final String PROCESS = "bank.account.stage.process";
+
+	public static final String WRITE = "bank.account.stage.write";
+
+	public static final String COMMIT = "bank.account.stage.commit";
+
+	public static final String ITEMS = "bank.account.stage.items";
+
+	public static final String THROUGHPUT = "bank.account.stage.throughput";
+
+	public static final String FINAL_STAGES = "bank.account.stage.final.stages";
+
+	public static final String RANK_UPS = "bank.account.stage.rank.ups";
+
+	public static final String PRIOR_STAGE_MISMATCHES = "bank.account.stage.prior.stage.mismatches";
+
+	public static final String CARRIED_FORWARD = "bank.account.stage.carried.forward";
+
+	static final String NONE = "none";
+
+	private final MeterRegistry meterRegistry;
+
+	public BankAccountStageMetrics(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
+	/**
+	 * Meters of the step execution running on the current thread, or untagged meters
+	 * outside a step.
+	 */
+	public StepMetrics forCurrentStep() {
+		StepContext context = StepSynchronizationManager.getContext();
+		return forStep((context != null) ? context.getStepExecution() : null);
+	}
+
+	public StepMetrics forStep(@Nullable StepExecution stepExecution) {
+		return new StepMetrics(this.meterRegistry, tags(stepExecution));
+	}
+
+	static Tags tags(@Nullable StepExecution stepExecution) {
+		if (stepExecution == null) {
+			return Tags.of("job.name", NONE, "step", NONE, "partition", NONE);
+		}
+		// partition worker steps are named "<step>:<partition>"
+		String stepName = stepExecution.getStepName();
+		int separator = stepName.indexOf(':');
+		return Tags.of("job.name", stepExecution.getJobExecution().getJobInstance().getJobName(), "step",
+				(separator < 0) ? stepName : stepName.substring(0, separator), "partition",
+				(separator < 0) ? NONE : stepName.substring(separator + 1));
+	}
+
+	/**
+	 * Meters of one step execution.
+	 */
+	public static final class StepMetrics {
+
+		private final MeterRegistry meterRegistry;
+
+		private final Tags tags;
+
+		private final Timer read;
+
+		private final Timer process;
+
+		private final Timer commit;
+
+		private final Counter items;
+
+		private final Counter rankUps;
+
+		private final Counter priorStageMismatches;
+
+		private final Counter carriedForward;
+
+		private final Map<String, Timer> writes = new ConcurrentHashMap<>();
+
+		private final Map<String, Counter> finalStages = new ConcurrentHashMap<>();
+
+		StepMetrics(MeterRegistry meterRegistry, Tags tags) {
+			this.meterRegistry = meterRegistry;
+			this.tags = tags;
+			this.read = timer(READ, tags);
+			this.process = timer(PROCESS, tags);
+			this.commit = timer(COMMIT, tags);
+			this.items = Counter.builder(ITEMS).tags(tags).register(meterRegistry);
+			this.rankUps = Counter.builder(RANK_UPS).tags(tags).register(meterRegistry);
+			this.priorStageMismatches = Counter.builder(PRIOR_STAGE_MISMATCHES).tags(tags).register(meterRegistry);
+			this.carriedForward = Counter.builder(CARRIED_FORWARD).tags(tags).register(meterRegistry);
+		}
+
+		private Timer timer(String name, Tags tags) {
+			return Timer.builder(name).tags(tags).publishPercentileHistogram().register(this.meterRegistry);
+		}
+
+		public Timer read() {
+			return this.read;
+		}
+
+		public Timer process() {
+			return this.process;
+		}
+
+		public Timer write(String table) {
+			return this.writes.computeIfAbsent(table, key -> timer(WRITE, this.tags.and("table", key)));
+		}
+
+		public Timer commit() {
+			return this.commit;
+		}
+
+		public Counter priorStageMismatches() {
+			return this.priorStageMismatches;
+		}
+
+		public Counter carriedForward() {
+			return this.carriedForward;
+		}
+
+		/**
+		 * Counts the items of a committed chunk by final stage and rank change.
+		 */
+		public void committed(List<? extends ProcessResult> items) {
+			this.items.increment(items.size());
+			for (ProcessResult item : items) {
+				this.finalStages
+					.computeIfAbsent(item.finalStageCode(),
+							stage -> Counter.builder(FINAL_STAGES)
+								.tags(this.tags.and("stage", stage))
+								.register(this.meterRegistry))
+					.increment();
+				if (item.evaluation().isRankChanged()) {
+					this.rankUps.increment();
+				}
+			}
+		}
+
+		public void throughput(long items, double seconds) {
+			if (seconds > 0) {
+				DistributionSummary.builder(THROUGHPUT)
+					.baseUnit("items/s")
+					.tags(this.tags)
+					.register(this.meterRegistry)
+					.record(items / seconds);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.example.bank.job;
+
+import com.example.bank.job.BankAccountStageMetrics.StepMetrics;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records the read time of every item and the throughput of the step in
+ * {@link BankAccountStageMetrics}. Step-scoped, because partition workers share a step
+ * definition but read on their own threads. With {@code asyncConcurrency}, the items read
+ * are the futures of their evaluations, and the read time is the wait for the read-ahead.
+ */
+@Component
+@StepScope
+public class BankAccountStageMetricsListener implements StepExecutionListener, ItemReadListener<Object> {
+
+	private final StepMetrics metrics;
+
+	private long readStart;
+
+	public BankAccountStageMetricsListener(BankAccountStageMetrics metrics) {
+		this.metrics = metrics.forCurrentStep();
+	}
+
+	@Override
+	public void beforeRead() {
+		this.readStart = System.nanoTime();
+	}
+
+	@Override
+	public void afterRead(Object item) {
+		this.metrics.read().record(System.nanoTime() - this.readStart, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public ExitStatus afterStep(StepExecution stepExecution) {
+		if (stepExecution.getStartTime() != null) {
+			Duration duration = Duration.between(stepExecution.getStartTime(), LocalDateTime.now());
+			this.metrics.throughput(stepExecution.getWriteCount(), duration.toNanos() / 1e9);
+		}
+		return null;
+	}
+
+}
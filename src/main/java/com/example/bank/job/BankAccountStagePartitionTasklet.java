@@ -0,0 +1,133 @@
+package com.example.bank.job;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import javax.sql.DataSource;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * First step of the job: creates the monthly partitions of
+ * {@code customer_stage_calculations} and {@code stage_transitions} that the run writes
+ * into, before any item is written.
+ * <p>
+ * The month-end date of the run is the {@code monthEndDate} job parameter if given,
+ * otherwise that of the first record of the input. The calculations are written into the
+ * partition of that month and the transitions, dated the first day of the next month,
+ * into the partition of the next month. The partitions of both months are created for
+ * both tables, so that the next month's calculation partition exists in advance. The
+ * month-end date is stored in the job execution context under {@link #MONTH_END_DATE_KEY}
+ * for the later steps.
+ */
+@Component
+@StepScope
+public class BankAccountStagePartitionTasklet implements Tasklet {
+
+	public static final String MONTH_END_DATE_KEY = "monthEndDate";
+
+	static final String CALCULATIONS_TABLE = "customer_stage_calculations";
+
+	static final String STAGE_TRANSITIONS_TABLE = "stage_transitions";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final String monthEndDate;
+
+	private final Resource inputFile;
+
+	private final String inputFiles;
+
+	private final ResourceLoader resourceLoader;
+
+	public BankAccountStagePartitionTasklet(DataSource dataSource,
+			@Value("#{jobParameters['monthEndDate']}") @Nullable String monthEndDate,
+			@Value("#{jobParameters['inputFile'] ?: 'file://${PWD}/src/test/resources/bank_account_stage_usecase_data.csv'}") Resource inputFile,
+			@Value("#{jobParameters['inputFiles']}") @Nullable String inputFiles, ResourceLoader resourceLoader) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.monthEndDate = monthEndDate;
+		this.inputFile = inputFile;
+		this.inputFiles = inputFiles;
+		this.resourceLoader = resourceLoader;
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		LocalDate monthEndDate = monthEndDate();
+		if (monthEndDate == null) {
+			// an empty input writes nothing
+			return RepeatStatus.FINISHED;
+		}
+		for (LocalDate month : new LocalDate[] { monthEndDate, monthEndDate.plusDays(1) }) {
+			for (String table : new String[] { CALCULATIONS_TABLE, STAGE_TRANSITIONS_TABLE }) {
+				this.jdbcTemplate.queryForObject("SELECT create_monthly_partition(?, ?)", String.class, table, month);
+			}
+		}
+		ExecutionContext jobExecutionContext = chunkContext.getStepContext()
+			.getStepExecution()
+			.getJobExecution()
+			.getExecutionContext();
+		jobExecutionContext.putString(MONTH_END_DATE_KEY, monthEndDate.toString());
+		return RepeatStatus.FINISHED;
+	}
+
+	@Nullable
+	private LocalDate monthEndDate() throws IOException {
+		if (this.monthEndDate != null) {
+			return LocalDate.parse(this.monthEndDate);
+		}
+		if (this.inputFiles != null) {
+			for (Resource resource : BankAccountStageInputFiles.resolve(this.inputFiles, this.resourceLoader)) {
+				LocalDate monthEndDate = firstMonthEndDate(
+						DecompressingResource.isCompressed(resource) ? new DecompressingResource(resource) : resource);
+				if (monthEndDate != null) {
+					return monthEndDate;
+				}
+			}
+			return null;
+		}
+		return firstMonthEndDate(this.inputFile);
+	}
+
+	/**
+	 * Returns the month-end date of the first record with a valid one, or {@code null} if
+	 * the file has no such record. Malformed records are left to the readers, which
+	 * reject or fail on them.
+	 */
+	@Nullable
+	static LocalDate firstMonthEndDate(Resource resource) throws IOException {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+			// skip the header
+			reader.readLine();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(",", 4);
+				if (fields.length < 4) {
+					continue;
+				}
+				try {
+					return LocalDate.parse(fields[2]);
+				}
+				catch (DateTimeParseException ex) {
+					// not a month-end date
+				}
+			}
+			return null;
+		}
+	}
+
+}
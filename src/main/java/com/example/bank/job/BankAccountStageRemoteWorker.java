@@ -0,0 +1,180 @@
+package com.example.bank.job;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.Semaphore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInterruptedException;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.scope.context.JobSynchronizationManager;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Worker side of remote partitioning, enabled with the {@code bank.worker.enabled}
+ * property: polls the shared job repository every {@code bank.worker.poll-interval} for
+ * partitions of running {@code BankAccountStage} jobs that no worker has claimed yet, and
+ * runs up to {@code bank.worker.concurrency} of them at a time with the job-scoped
+ * {@code bankAccountStageRemoteWorkerStep}.
+ * <p>
+ * A partition is claimed by updating its step execution to {@link BatchStatus#STARTED}.
+ * The update checks the version of the step execution, so when several workers try to
+ * claim the same partition only one of them succeeds.
+ *
+ * @see JobRepositoryPartitionHandler
+ */
+@Component
+@ConditionalOnProperty(name = "bank.worker.enabled", havingValue = "true")
+public class BankAccountStageRemoteWorker implements SmartLifecycle {
+
+	private static final Logger logger = LoggerFactory.getLogger(BankAccountStageRemoteWorker.class);
+
+	static final String WORKER_STEP_NAME = "BankAccountStageRemoteWorker";
+
+	private final JobExplorer jobExplorer;
+
+	private final JobRepository jobRepository;
+
+	private final ObjectProvider<Step> workerStep;
+
+	private final String jobName;
+
+	private final Duration pollInterval;
+
+	private final Semaphore permits;
+
+	private final SimpleAsyncTaskExecutor taskExecutor;
+
+	private volatile Thread poller;
+
+	public BankAccountStageRemoteWorker(JobExplorer jobExplorer, JobRepository jobRepository,
+			@Qualifier("bankAccountStageRemoteWorkerStep") ObjectProvider<Step> workerStep,
+			@Value("${spring.batch.job.name}") String jobName,
+			@Value("${bank.worker.poll-interval:1s}") Duration pollInterval,
+			@Value("${bank.worker.concurrency:1}") int concurrency) {
+		this.jobExplorer = jobExplorer;
+		this.jobRepository = jobRepository;
+		this.workerStep = workerStep;
+		this.jobName = jobName;
+		this.pollInterval = pollInterval;
+		this.permits = new Semaphore(concurrency);
+		this.taskExecutor = new SimpleAsyncTaskExecutor("bank-account-stage-worker-");
+	}
+
+	@Override
+	public void start() {
+		// assigned before it starts, as the poll loop runs while it is set
+		Thread poller = Thread.ofPlatform().name("bank-account-stage-worker-poller").unstarted(this::poll);
+		this.poller = poller;
+		poller.start();
+	}
+
+	@Override
+	public void stop() {
+		Thread poller = this.poller;
+		this.poller = null;
+		if (poller != null) {
+			poller.interrupt();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.poller != null;
+	}
+
+	private void poll() {
+		while (this.poller != null) {
+			try {
+				this.permits.acquire();
+				StepExecution stepExecution = claim();
+				if (stepExecution != null) {
+					this.taskExecutor.execute(() -> {
+						try {
+							execute(stepExecution);
+						}
+						finally {
+							this.permits.release();
+						}
+					});
+				}
+				else {
+					this.permits.release();
+					Thread.sleep(this.pollInterval.toMillis());
+				}
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (RuntimeException ex) {
+				// e.g. the job repository is not reachable, try again with the next poll
+				logger.warn("Failed to claim a partition, retrying in {}", this.pollInterval, ex);
+				this.permits.release();
+				try {
+					Thread.sleep(this.pollInterval.toMillis());
+				}
+				catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Claims a partition that no worker has claimed yet, or returns {@code null} if there
+	 * is none.
+	 */
+	private StepExecution claim() {
+		for (JobExecution jobExecution : this.jobExplorer.findRunningJobExecutions(this.jobName)) {
+			for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+				if (stepExecution.getStatus() == BatchStatus.STARTING
+						&& stepExecution.getStepName().startsWith(WORKER_STEP_NAME + ":")) {
+					stepExecution.setStatus(BatchStatus.STARTED);
+					stepExecution.setStartTime(LocalDateTime.now());
+					try {
+						this.jobRepository.update(stepExecution);
+						return stepExecution;
+					}
+					catch (OptimisticLockingFailureException ex) {
+						// claimed by another worker
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Runs the claimed partition. The step records its own failures in the step
+	 * execution, where the manager picks them up.
+	 */
+	private void execute(StepExecution stepExecution) {
+		JobSynchronizationManager.register(stepExecution.getJobExecution());
+		try {
+			this.workerStep.getObject().execute(stepExecution);
+		}
+		catch (JobInterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			// close() only unregisters, the job-scoped beans may be shared with a manager
+			// step running in this JVM
+			JobSynchronizationManager.close();
+		}
+	}
+
+}
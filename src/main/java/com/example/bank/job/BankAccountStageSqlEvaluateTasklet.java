@@ -0,0 +1,287 @@
+package com.example.bank.job;
+
+import com.example.bank.stage.ConditionMetric;
+import com.example.bank.stage.StageDecisionTable;
+import com.example.bank.stage.StageRuleEngine;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Second step of the SQL execution mode: evaluates every record of the
+ * {@code bank_account_stage_inputs} staging table against the date-effective rule tables
+ * with a few set-based statements, and writes {@code customer_stage_calculations},
+ * {@code condition_evaluation_results} and {@code stage_transitions}.
+ * <p>
+ * Condition evaluations and final stages are materialized with
+ * {@code CREATE UNLOGGED TABLE ... AS}, which PostgreSQL can run as a parallel query, and
+ * then inserted in line order. The calculation ids are reserved from the sequence in line
+ * order, so that the rows and their ids are the same as those of the chunk-oriented step
+ * for the same input.
+ */
+@Component
+@StepScope
+public class BankAccountStageSqlEvaluateTasklet implements Tasklet {
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final StageRuleEngine stageRuleEngine;
+
+	public BankAccountStageSqlEvaluateTasklet(DataSource dataSource, StageRuleEngine stageRuleEngine) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.stageRuleEngine = stageRuleEngine;
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		Map<String, Object> summary = this.jdbcTemplate.queryForMap("""
+				SELECT COUNT(*) AS records, MIN(month_end_date) AS min_date, MAX(month_end_date) AS max_date
+				FROM bank_account_stage_inputs
+				""");
+		long records = ((Number) summary.get("records")).longValue();
+		if (records == 0) {
+			return RepeatStatus.FINISHED;
+		}
+		LocalDate monthEndDate = ((Date) summary.get("min_date")).toLocalDate();
+		if (!monthEndDate.equals(((Date) summary.get("max_date")).toLocalDate())) {
+			throw new IllegalStateException("All records must share the same month-end date but found " + monthEndDate
+					+ " to " + summary.get("max_date"));
+		}
+		// compiling the rules rejects inconsistent master data as the chunk-oriented step
+		// does
+		StageDecisionTable decisionTable = this.stageRuleEngine.decisionTable(monthEndDate);
+
+		dropWorkTables();
+		this.jdbcTemplate.execute(conditionEvaluationWorkSql(monthEndDate));
+		this.jdbcTemplate.execute(stageCalculationWorkSql(monthEndDate));
+
+		this.jdbcTemplate.execute(calculationIdWorkSql(records));
+		this.jdbcTemplate.update("""
+				INSERT INTO customer_stage_calculations (id, customer_id, calculation_date, valid_from, valid_to,
+				    current_stage_code, final_stage_code, total_balance, foreign_currency_balance,
+				    investment_trust_balance, monthly_foreign_currency_purchase, monthly_investment_trust_purchase,
+				    housing_loan_balance, monthly_fx_trading_volume)
+				SELECT
+				    ids.id,
+				    i.customer_id,
+				    i.month_end_date,
+				    ?,
+				    ?,
+				    i.current_stage_code,
+				    w.final_stage_code,
+				    i.total_balance,
+				    i.foreign_currency_balance,
+				    i.investment_trust_balance,
+				    i.monthly_foreign_currency_purchase,
+				    i.monthly_investment_trust_purchase,
+				    i.housing_loan_balance,
+				    i.monthly_fx_trading_volume
+				FROM
+				    bank_account_stage_inputs i
+				    JOIN stage_calculation_work w ON w.line_number = i.line_number
+				    JOIN stage_calculation_id_work ids ON ids.calculation_number = w.calculation_number
+				ORDER BY
+				    i.line_number
+				""", decisionTable.validFrom(), decisionTable.validTo());
+		this.jdbcTemplate.update("""
+				INSERT INTO condition_evaluation_results (calculation_id, condition_id, is_met, evaluated_value)
+				SELECT
+				    ids.id,
+				    e.condition_id,
+				    e.is_met,
+				    e.evaluated_value
+				FROM
+				    stage_condition_evaluation_work e
+				    JOIN stage_calculation_work w ON w.line_number = e.line_number
+				    JOIN stage_calculation_id_work ids ON ids.calculation_number = w.calculation_number
+				ORDER BY
+				    e.line_number, e.condition_id
+				""");
+		this.jdbcTemplate.update("""
+				INSERT INTO stage_transitions (customer_id, calculation_id, previous_stage_code, current_stage_code,
+				    transition_date)
+				SELECT
+				    i.customer_id,
+				    ids.id,
+				    i.current_stage_code,
+				    w.final_stage_code,
+				    ?
+				FROM
+				    bank_account_stage_inputs i
+				    JOIN stage_calculation_work w ON w.line_number = i.line_number
+				    JOIN stage_calculation_id_work ids ON ids.calculation_number = w.calculation_number
+				WHERE
+				    i.current_stage_code <> w.final_stage_code
+				ORDER BY
+				    i.line_number
+				""", decisionTable.validFrom());
+		dropWorkTables();
+		contribution.incrementWriteCount(records);
+		return RepeatStatus.FINISHED;
+	}
+
+	private void dropWorkTables() {
+		this.jdbcTemplate.execute(
+				"DROP TABLE IF EXISTS stage_condition_evaluation_work, stage_calculation_work, stage_calculation_id_work");
+	}
+
+	/**
+	 * The ids reserved for the calculations by {@code nextval}, one call per record like
+	 * the chunk-oriented writer does, in the order of {@code calculation_number}. Each
+	 * call is atomic, so ids taken by a concurrent writer are skipped instead of reused,
+	 * and the ids are consecutive when the sequence is not used concurrently.
+	 */
+	static String calculationIdWorkSql(long records) {
+		return """
+				CREATE UNLOGGED TABLE stage_calculation_id_work AS
+				SELECT
+				    n AS calculation_number,
+				    nextval('customer_stage_calculations_id_seq') AS id
+				FROM
+				    generate_series(1, %d) AS n
+				""".formatted(records);
+	}
+
+	/**
+	 * One row per record and effective condition. The statement cannot take bind
+	 * parameters, so the date is inlined as a literal.
+	 */
+	static String conditionEvaluationWorkSql(LocalDate monthEndDate) {
+		return """
+				CREATE UNLOGGED TABLE stage_condition_evaluation_work AS
+				WITH effective_conditions AS (
+				    SELECT
+				        c.id,
+				        CAST(c.condition_category AS VARCHAR) AS condition_category,
+				        %s AS metric,
+				        sc.stage_code,
+				        COALESCE(sc.min_value, rc.threshold_value) AS min_value,
+				        sc.max_value,
+				        rc.rank_change_levels
+				    FROM
+				        conditions c
+				        LEFT JOIN stage_conditions sc ON sc.id = c.id
+				        LEFT JOIN rank_change_conditions rc ON rc.id = c.id
+				    WHERE
+				        DATE '%s' BETWEEN c.valid_from AND c.valid_to
+				)
+				SELECT
+				    i.line_number,
+				    ec.id AS condition_id,
+				    ec.condition_category,
+				    ec.stage_code,
+				    ec.rank_change_levels,
+				    v.evaluated_value,
+				    CASE
+				        WHEN ec.condition_category = 'STAGE'
+				            THEN v.evaluated_value >= ec.min_value AND v.evaluated_value < ec.max_value
+				        ELSE v.evaluated_value >= ec.min_value
+				    END AS is_met
+				FROM
+				    bank_account_stage_inputs i
+				    CROSS JOIN effective_conditions ec
+				    CROSS JOIN LATERAL (SELECT CAST(%s AS DECIMAL(15, 2)) AS evaluated_value) v
+				""".formatted(metricSql(), monthEndDate, metricValueSql());
+	}
+
+	/**
+	 * One row per record with the final stage and the position of the record among the
+	 * loaded ones, which the reserved ids are assigned by, without the gaps left in the
+	 * line numbers by rejected customers. The base stage is the highest stage whose
+	 * condition is met, or the lowest stage, and rank change levels move it up through
+	 * the stages that are {@code rank_up_reachable}.
+	 */
+	static String stageCalculationWorkSql(LocalDate monthEndDate) {
+		return """
+				CREATE UNLOGGED TABLE stage_calculation_work AS
+				WITH effective_stages AS (
+				    SELECT
+				        stage_code,
+				        stage_order,
+				        rank_up_reachable
+				    FROM
+				        stages
+				    WHERE
+				        DATE '%s' BETWEEN valid_from AND valid_to
+				),
+				evaluations AS (
+				    SELECT
+				        e.line_number,
+				        MAX(s.stage_order) FILTER (WHERE e.is_met AND e.condition_category = 'STAGE') AS stage_order,
+				        GREATEST(COALESCE(SUM(e.rank_change_levels)
+				            FILTER (WHERE e.is_met AND e.condition_category = 'RANK_CHANGE'), 0), 0) AS rank_change_levels
+				    FROM
+				        stage_condition_evaluation_work e
+				        LEFT JOIN effective_stages s ON s.stage_code = e.stage_code
+				    GROUP BY
+				        e.line_number
+				)
+				SELECT
+				    i.line_number,
+				    ROW_NUMBER() OVER (ORDER BY i.line_number) AS calculation_number,
+				    COALESCE(up.stage_code, base.stage_code) AS final_stage_code
+				FROM
+				    bank_account_stage_inputs i
+				    LEFT JOIN evaluations ev ON ev.line_number = i.line_number
+				    JOIN effective_stages base ON base.stage_order = COALESCE(ev.stage_order,
+				        (SELECT MIN(stage_order) FROM effective_stages))
+				    LEFT JOIN LATERAL (
+				        SELECT
+				            r.stage_code
+				        FROM (
+				            SELECT
+				                stage_code,
+				                stage_order
+				            FROM
+				                effective_stages
+				            WHERE
+				                rank_up_reachable AND stage_order > base.stage_order
+				            ORDER BY
+				                stage_order
+				            LIMIT COALESCE(ev.rank_change_levels, 0)
+				        ) r
+				        ORDER BY
+				            r.stage_order DESC
+				        LIMIT 1
+				    ) up ON TRUE
+				"""
+			.formatted(monthEndDate);
+	}
+
+	/**
+	 * Resolves {@code condition_type} to a {@link ConditionMetric} name the way
+	 * {@link ConditionMetric#of(String)} does, trying longer names first.
+	 */
+	private static String metricSql() {
+		StringBuilder sql = new StringBuilder("CASE");
+		Arrays.stream(ConditionMetric.values())
+			.sorted(Comparator.comparingInt((ConditionMetric metric) -> metric.name().length()).reversed())
+			.forEach(metric -> sql.append(" WHEN CAST(c.condition_type AS VARCHAR) = '")
+				.append(metric.name())
+				.append("' OR starts_with(CAST(c.condition_type AS VARCHAR), '")
+				.append(metric.name())
+				.append("_') THEN '")
+				.append(metric.name())
+				.append("'"));
+		return sql.append(" END").toString();
+	}
+
+	private static String metricValueSql() {
+		StringBuilder sql = new StringBuilder("CASE ec.metric");
+		for (ConditionMetric metric : ConditionMetric.values()) {
+			sql.append(" WHEN '").append(metric.name()).append("' THEN ").append(metric.sqlExpression());
+		}
+		return sql.append(" END").toString();
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.example.bank.job;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * First step of the SQL execution mode: replaces the content of the
+ * {@code bank_account_stage_inputs} staging table with the input file using {@code COPY}.
+ * Line numbers restart at 1 so that they follow the order of the file. The records of the
+ * customers rejected by {@link BankAccountStageDuplicateCheckTasklet} are deleted again.
+ * <p>
+ * With {@link BankAccountStageInputRejects} enabled, the lines are validated on their way
+ * into {@code COPY}, so that an invalid line is rejected instead of aborting the whole
+ * copy.
+ */
+@Component
+@StepScope
+public class BankAccountStageSqlLoadTasklet implements Tasklet {
+
+	private static final String COPY_SQL = """
+			COPY bank_account_stage_inputs (customer_id, current_stage_code, month_end_date, total_balance,
+			    foreign_currency_balance, investment_trust_balance, monthly_foreign_currency_purchase,
+			    monthly_investment_trust_purchase, housing_loan_balance, monthly_fx_trading_volume)
+			FROM STDIN WITH (FORMAT csv, HEADER true)
+			""";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final Resource resource;
+
+	private final String[] skippedCustomerIds;
+
+	private final BankAccountStageInputRejects rejects;
+
+	public BankAccountStageSqlLoadTasklet(DataSource dataSource,
+			@Value("#{jobParameters['inputFile'] ?: 'file://${PWD}/src/test/resources/bank_account_stage_usecase_data.csv'}") Resource resource,
+			@Value("#{jobExecutionContext['" + BankAccountStageDuplicateCheckTasklet.DUPLICATE_CUSTOMER_IDS_KEY
+					+ "']}") @Nullable String[] skippedCustomerIds,
+			BankAccountStageInputRejects rejects) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.resource = resource;
+		this.skippedCustomerIds = skippedCustomerIds;
+		this.rejects = rejects;
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		this.jdbcTemplate.execute("TRUNCATE bank_account_stage_inputs RESTART IDENTITY");
+		StringBuilder rejected = new StringBuilder();
+		long rows = this.jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+			CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+			try (InputStream inputStream = this.resource.getInputStream()) {
+				if (!this.rejects.isEnabled()) {
+					return copyManager.copyIn(COPY_SQL, inputStream);
+				}
+				return copyValidLines(copyManager, inputStream, rejected);
+			}
+			catch (IOException ex) {
+				throw new UncheckedIOException("Failed to copy " + this.resource, ex);
+			}
+		});
+		if (this.skippedCustomerIds != null) {
+			rows -= this.jdbcTemplate.update("DELETE FROM bank_account_stage_inputs WHERE customer_id = ANY(?)",
+					ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", this.skippedCustomerIds)));
+		}
+		// statistics for the evaluation queries, autovacuum does not analyze in time
+		this.jdbcTemplate.execute("ANALYZE bank_account_stage_inputs");
+		contribution.incrementWriteCount(rows);
+		if (this.rejects.isEnabled()) {
+			this.rejects.rejectFile().appendAfterCommit(rejected);
+		}
+		return RepeatStatus.FINISHED;
+	}
+
+	/**
+	 * Copies the header and the valid lines, and collects the invalid ones into
+	 * {@code rejected}.
+	 */
+	private long copyValidLines(CopyManager copyManager, InputStream inputStream, StringBuilder rejected)
+			throws SQLException, IOException {
+		BankAccountStageInputValidator validator = this.rejects.validator();
+		CopyIn copyIn = copyManager.copyIn(COPY_SQL);
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8),
+				1 << 16)) {
+			// not closed, closing the stream would flush it after the copy has ended
+			Writer writer = new OutputStreamWriter(new PGCopyOutputStream(copyIn, 1 << 16), StandardCharsets.UTF_8);
+			String line = reader.readLine();
+			long lineNumber = 1;
+			if (line != null) {
+				writer.write(line);
+				writer.write('\n');
+			}
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.isEmpty()) {
+					continue;
+				}
+				String reason = validator.validate(line);
+				if (reason != null) {
+					RejectFile.appendRecord(rejected, this.resource.getFilename(), lineNumber, reason, line);
+					continue;
+				}
+				writer.write(line);
+				writer.write('\n');
+			}
+			writer.flush();
+			return copyIn.endCopy();
+		}
+		finally {
+			if (copyIn.isActive()) {
+				copyIn.cancelCopy();
+			}
+		}
+	}
+
+}
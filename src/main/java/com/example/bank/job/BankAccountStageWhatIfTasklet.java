@@ -0,0 +1,244 @@
+package com.example.bank.job;
+
+import com.example.bank.stage.ChunkEvaluation;
+import com.example.bank.stage.StageCodes;
+import com.example.bank.stage.StageDecisionTable;
+import com.example.bank.stage.StageRuleOverrides;
+import com.example.bank.stage.StageRuleRepository;
+import com.example.bank.stage.StageRules;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dry run of a rule change: evaluates every input record against the current rules and
+ * against candidate rules, the current rules with the {@link StageRuleOverrides} of the
+ * {@code candidateRules} job parameter applied, and writes nothing but the transition
+ * matrix of the final stages to {@code whatIfMatrixFile} and, with
+ * {@code whatIfSampleFile}, up to {@code whatIfSampleSize} (100 by default) of the
+ * customers whose stage changes. The business tables are neither read nor written, apart
+ * from the rules.
+ * <p>
+ * The input is split into byte ranges with {@link BankAccountStageInputPartitioner},
+ * several per core so that the cores finish together, and the ranges are read with
+ * {@link MappedBankAccountStageInputItemReader} and evaluated chunk by chunk with
+ * {@link StageDecisionTable#evaluate(List)} in a {@link ForkJoinPool} using every core.
+ * The input must be an uncompressed file.
+ */
+@Component
+@StepScope
+public class BankAccountStageWhatIfTasklet implements Tasklet {
+
+	static final String CUSTOMERS_KEY = "whatIf.customers";
+
+	static final String CHANGED_KEY = "whatIf.changed";
+
+	static final String MATRIX_HEADER = "current_rules_stage,candidate_rules_stage,customers";
+
+	static final String SAMPLE_HEADER = "customer_id,current_stage_code,current_rules_stage,candidate_rules_stage";
+
+	private static final int CHUNK_SIZE = 4096;
+
+	private static final int PARTITIONS_PER_CORE = 4;
+
+	private final StageRuleRepository stageRuleRepository;
+
+	private final Resource resource;
+
+	private final Resource candidateRules;
+
+	private final Resource matrixFile;
+
+	private final Resource sampleFile;
+
+	private final int sampleSize;
+
+	private final String monthEndDate;
+
+	public BankAccountStageWhatIfTasklet(StageRuleRepository stageRuleRepository,
+			@Value("#{jobParameters['inputFile'] ?: 'file://${PWD}/src/test/resources/bank_account_stage_usecase_data.csv'}") Resource resource,
+			@Value("#{jobParameters['candidateRules']}") @Nullable Resource candidateRules,
+			@Value("#{jobParameters['whatIfMatrixFile']}") @Nullable Resource matrixFile,
+			@Value("#{jobParameters['whatIfSampleFile']}") @Nullable Resource sampleFile,
+			@Value("#{jobParameters['whatIfSampleSize'] ?: 100}") int sampleSize,
+			@Value("#{jobParameters['monthEndDate']}") @Nullable String monthEndDate) {
+		this.stageRuleRepository = stageRuleRepository;
+		this.resource = resource;
+		this.candidateRules = candidateRules;
+		this.matrixFile = matrixFile;
+		this.sampleFile = sampleFile;
+		this.sampleSize = sampleSize;
+		this.monthEndDate = monthEndDate;
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		if (this.candidateRules == null || this.matrixFile == null) {
+			throw new IllegalArgumentException(
+					"The whatif execution mode requires the candidateRules and whatIfMatrixFile job parameters");
+		}
+		LocalDate monthEndDate = (this.monthEndDate != null) ? LocalDate.parse(this.monthEndDate)
+				: BankAccountStagePartitionTasklet.firstMonthEndDate(this.resource);
+		if (monthEndDate == null) {
+			throw new IllegalArgumentException("No month-end date found in " + this.resource.getDescription());
+		}
+		StageRules rules = this.stageRuleRepository.findEffectiveRules(monthEndDate);
+		StageDecisionTable current = StageDecisionTable.compile(rules);
+		StageDecisionTable candidate = StageDecisionTable
+			.compile(StageRuleOverrides.read(this.candidateRules).applyTo(rules));
+
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		List<ExecutionContext> partitions = new ArrayList<>(
+				new BankAccountStageInputPartitioner(this.resource).partition(parallelism * PARTITIONS_PER_CORE)
+					.values());
+		Simulation simulation;
+		try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+			// an ordered stream, so that the sample follows the order of the file
+			simulation = pool
+				.submit(() -> partitions.parallelStream()
+					.map(partition -> simulate(partition, current, candidate))
+					.reduce(this::merge)
+					.orElseGet(() -> new Simulation(StageCodes.count())))
+				.get();
+		}
+
+		Files.writeString(this.matrixFile.getFile().toPath(), simulation.formatMatrix(), StandardCharsets.UTF_8);
+		if (this.sampleFile != null) {
+			Files.writeString(this.sampleFile.getFile().toPath(), SAMPLE_HEADER + "\n" + simulation.sample,
+					StandardCharsets.UTF_8);
+		}
+		ExecutionContext executionContext = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+		executionContext.putLong(CUSTOMERS_KEY, simulation.customers);
+		executionContext.putLong(CHANGED_KEY, simulation.changed);
+		return RepeatStatus.FINISHED;
+	}
+
+	private Simulation simulate(ExecutionContext partition, StageDecisionTable current, StageDecisionTable candidate) {
+		Simulation simulation = new Simulation(StageCodes.count());
+		MappedBankAccountStageInputItemReader reader = new MappedBankAccountStageInputItemReader(this.resource,
+				partition.getLong(BankAccountStageInputPartitioner.START_OFFSET_KEY),
+				partition.getLong(BankAccountStageInputPartitioner.END_OFFSET_KEY));
+		reader.open(new ExecutionContext());
+		try {
+			List<BankAccountStageInput> chunk = new ArrayList<>(CHUNK_SIZE);
+			BankAccountStageInput input;
+			while ((input = reader.read()) != null) {
+				chunk.add(input);
+				if (chunk.size() == CHUNK_SIZE) {
+					simulate(chunk, current, candidate, simulation);
+					chunk.clear();
+				}
+			}
+			simulate(chunk, current, candidate, simulation);
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException("Failed to simulate " + this.resource.getDescription(), ex);
+		}
+		finally {
+			reader.close();
+		}
+		return simulation;
+	}
+
+	private void simulate(List<BankAccountStageInput> chunk, StageDecisionTable current, StageDecisionTable candidate,
+			Simulation simulation) {
+		if (chunk.isEmpty()) {
+			return;
+		}
+		ChunkEvaluation currentEvaluation = current.evaluate(chunk);
+		ChunkEvaluation candidateEvaluation = candidate.evaluate(chunk);
+		for (int i = 0; i < chunk.size(); i++) {
+			int currentStage = currentEvaluation.finalStage(i);
+			int candidateStage = candidateEvaluation.finalStage(i);
+			simulation.matrix[currentStage][candidateStage]++;
+			if (currentStage != candidateStage) {
+				simulation.changed++;
+				if (simulation.sampled < this.sampleSize) {
+					BankAccountStageInput input = chunk.get(i);
+					simulation.sample.append(input.customerId())
+						.append(',')
+						.append(input.currentStageCode())
+						.append(',')
+						.append(StageCodes.code(currentStage))
+						.append(',')
+						.append(StageCodes.code(candidateStage))
+						.append('\n');
+					simulation.sampled++;
+				}
+			}
+		}
+		simulation.customers += chunk.size();
+	}
+
+	private Simulation merge(Simulation left, Simulation right) {
+		for (int i = 0; i < left.matrix.length; i++) {
+			for (int j = 0; j < left.matrix.length; j++) {
+				left.matrix[i][j] += right.matrix[i][j];
+			}
+		}
+		left.customers += right.customers;
+		left.changed += right.changed;
+		// the sample of the left partition comes first and is kept whole
+		int start = 0;
+		for (int i = 0; i < right.sampled && left.sampled < this.sampleSize; i++) {
+			int end = right.sample.indexOf("\n", start) + 1;
+			left.sample.append(right.sample, start, end);
+			left.sampled++;
+			start = end;
+		}
+		return left;
+	}
+
+	/**
+	 * The transition matrix, the counts and the sample of a range of the input.
+	 */
+	private static final class Simulation {
+
+		// [current rules stage][candidate rules stage], by StageCodes ordinal
+		final long[][] matrix;
+
+		final StringBuilder sample = new StringBuilder();
+
+		int sampled;
+
+		long customers;
+
+		long changed;
+
+		Simulation(int stages) {
+			this.matrix = new long[stages][stages];
+		}
+
+		String formatMatrix() {
+			StringBuilder matrix = new StringBuilder(MATRIX_HEADER).append('\n');
+			for (int i = 0; i < this.matrix.length; i++) {
+				for (int j = 0; j < this.matrix.length; j++) {
+					if (this.matrix[i][j] > 0) {
+						matrix.append(StageCodes.code(i))
+							.append(',')
+							.append(StageCodes.code(j))
+							.append(',')
+							.append(this.matrix[i][j])
+							.append('\n');
+					}
+				}
+			}
+			return matrix.toString();
+		}
+
+	}
+
+}
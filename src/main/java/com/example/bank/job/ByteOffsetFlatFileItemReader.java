@@ -0,0 +1,264 @@
+package com.example.bank.job;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+
+/**
+ * Line-oriented {@link ItemStreamReader} that maps each line with a {@link LineMapper},
+ * like {@code FlatFileItemReader}, but keeps track of the byte offset of the next line.
+ * The offset is the restart state, so a restarted step seeks straight to the first
+ * uncommitted line instead of reading and discarding the lines before it.
+ * <p>
+ * The reader reads the byte range {@code [startOffset, endOffset)} of the resource; when
+ * it starts at offset 0 the first line is skipped as the header. Empty lines are ignored
+ * and quoted fields must not contain line breaks. For a {@link DecompressingResource} the
+ * offsets count decompressed bytes, and a restart decompresses and discards the bytes
+ * before the offset without parsing them.
+ * <p>
+ * With a {@link LineValidator}, lines that it rejects, or that fail to map, are skipped
+ * instead of failing the step. They are collected for a {@link RejectFile} and appended
+ * to it when the chunk that saves the restart state commits. A restart therefore rejects
+ * the lines after the committed offset again, but never the lines before it.
+ */
+public class ByteOffsetFlatFileItemReader<T> extends ItemStreamSupport implements ItemStreamReader<T> {
+
+	private static final String OFFSET_KEY = "offset";
+
+	private static final String LINE_NUMBER_KEY = "line.number";
+
+	private static final String REJECTED_COUNT_KEY = "rejected.count";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Resource resource;
+
+	private final long startOffset;
+
+	private final long endOffset;
+
+	private final LineMapper<T> lineMapper;
+
+	private final Charset charset = StandardCharsets.UTF_8;
+
+	private InputStream inputStream;
+
+	private byte[] buffer = new byte[BUFFER_SIZE];
+
+	private int position;
+
+	private int limit;
+
+	private long offset;
+
+	private long lineNumber;
+
+	private long startLineNumber = 1;
+
+	private LineValidator lineValidator;
+
+	private RejectFile rejectFile;
+
+	private final StringBuilder rejects = new StringBuilder();
+
+	private long rejectedCount;
+
+	/**
+	 * Reads the whole resource, skipping the header.
+	 */
+	public ByteOffsetFlatFileItemReader(Resource resource, LineMapper<T> lineMapper) {
+		this(resource, 0, -1, lineMapper);
+	}
+
+	/**
+	 * Reads the bytes {@code [startOffset, endOffset)}; a negative {@code endOffset}
+	 * means the end of the resource. {@code startOffset} must be 0 or the start of a
+	 * line.
+	 */
+	public ByteOffsetFlatFileItemReader(Resource resource, long startOffset, long endOffset, LineMapper<T> lineMapper) {
+		this.resource = resource;
+		this.startOffset = startOffset;
+		this.endOffset = endOffset;
+		this.lineMapper = lineMapper;
+		setName("ByteOffsetFlatFileItemReader");
+	}
+
+	/**
+	 * Number of the line at {@code startOffset} in the resource, 1 by default, which the
+	 * rejected lines and parse errors are reported with.
+	 */
+	public void setStartLineNumber(long startLineNumber) {
+		this.startLineNumber = startLineNumber;
+	}
+
+	/**
+	 * Skips the lines that {@code lineValidator} finds invalid or that fail to map
+	 * instead of failing, and records them in {@code rejectFile} if given.
+	 */
+	public void setRejects(LineValidator lineValidator, @Nullable RejectFile rejectFile) {
+		this.lineValidator = lineValidator;
+		this.rejectFile = rejectFile;
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		boolean restart = executionContext.containsKey(getExecutionContextKey(OFFSET_KEY));
+		this.offset = restart ? executionContext.getLong(getExecutionContextKey(OFFSET_KEY)) : this.startOffset;
+		this.lineNumber = restart ? executionContext.getLong(getExecutionContextKey(LINE_NUMBER_KEY), 0)
+				: this.startLineNumber - 1;
+		this.rejectedCount = executionContext.getLong(getExecutionContextKey(REJECTED_COUNT_KEY), 0);
+		this.rejects.setLength(0);
+		this.position = 0;
+		this.limit = 0;
+		try {
+			if (this.endOffset < 0) {
+				// the length of a decompressed resource is not known up front
+				this.inputStream = this.resource.getInputStream();
+				this.inputStream.skipNBytes(this.offset);
+			}
+			else {
+				this.inputStream = new ByteRangeResource(this.resource, Math.min(this.offset, this.endOffset),
+						this.endOffset)
+					.getInputStream();
+			}
+			if (!restart && this.startOffset == 0) {
+				readLine(); // header
+			}
+		}
+		catch (IOException e) {
+			throw new ItemStreamException("Failed to open " + this.resource.getDescription(), e);
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		executionContext.putLong(getExecutionContextKey(OFFSET_KEY), this.offset);
+		executionContext.putLong(getExecutionContextKey(LINE_NUMBER_KEY), this.lineNumber);
+		if (this.rejectFile != null) {
+			this.rejectFile.appendAfterCommit(this.rejects);
+			this.rejects.setLength(0);
+			executionContext.putLong(getExecutionContextKey(REJECTED_COUNT_KEY), this.rejectedCount);
+		}
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		// rejects after the last update are dropped, a restart rejects them again
+		this.rejects.setLength(0);
+		if (this.inputStream != null) {
+			try {
+				this.inputStream.close();
+			}
+			catch (IOException e) {
+				throw new ItemStreamException("Failed to close " + this.resource.getDescription(), e);
+			}
+			finally {
+				this.inputStream = null;
+			}
+		}
+	}
+
+	@Override
+	public T read() throws Exception {
+		String line;
+		while ((line = readLine()) != null) {
+			if (line.isEmpty()) {
+				continue;
+			}
+			if (this.lineValidator != null) {
+				String reason = this.lineValidator.validate(line);
+				if (reason != null) {
+					reject(line, reason);
+					continue;
+				}
+			}
+			try {
+				return this.lineMapper.mapLine(line, (int) this.lineNumber);
+			}
+			catch (Exception e) {
+				if (this.lineValidator != null) {
+					reject(line, String.valueOf(e.getMessage()));
+					continue;
+				}
+				throw new FlatFileParseException("Parsing error at line: " + this.lineNumber + " in resource=["
+						+ this.resource.getDescription() + "], input=[" + line + "]", e, line, (int) this.lineNumber);
+			}
+		}
+		return null;
+	}
+
+	private void reject(String line, String reason) {
+		if (this.rejectFile == null) {
+			return;
+		}
+		RejectFile.appendRecord(this.rejects, this.resource.getFilename(), this.lineNumber, reason, line);
+		this.rejectedCount++;
+	}
+
+	/**
+	 * Returns the next line without its terminator and advances {@link #offset} past it,
+	 * or {@code null} at the end of the range.
+	 */
+	private String readLine() throws IOException {
+		int scanned = this.position;
+		while (true) {
+			for (int i = scanned; i < this.limit; i++) {
+				if (this.buffer[i] == '\n') {
+					return consumeLine(i, i + 1);
+				}
+			}
+			if (this.position > 0) {
+				// move the partial line to the start of the buffer
+				int length = this.limit - this.position;
+				System.arraycopy(this.buffer, this.position, this.buffer, 0, length);
+				this.position = 0;
+				this.limit = length;
+			}
+			else if (this.limit == this.buffer.length) {
+				this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+			}
+			scanned = this.limit;
+			int read = this.inputStream.read(this.buffer, this.limit, this.buffer.length - this.limit);
+			if (read < 0) {
+				return (this.limit > this.position) ? consumeLine(this.limit, this.limit) : null;
+			}
+			this.limit += read;
+		}
+	}
+
+	private String consumeLine(int lineEnd, int next) {
+		int start = this.position;
+		this.offset += next - start;
+		this.lineNumber++;
+		this.position = next;
+		if (lineEnd > start && this.buffer[lineEnd - 1] == '\r') {
+			lineEnd--;
+		}
+		return new String(this.buffer, start, lineEnd - start, this.charset);
+	}
+
+	/**
+	 * Validates a line before it is mapped.
+	 */
+	@FunctionalInterface
+	public interface LineValidator {
+
+		/**
+		 * Returns why the line is invalid, or {@code null} if it is valid.
+		 */
+		@Nullable
+		String validate(String line);
+
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.example.bank.job;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * {@link Resource} exposing only the bytes {@code [startOffset, endOffset)} of a delegate
+ * resource, so that a stream-based reader can read one partition of a larger input file
+ * or resume from a byte offset.
+ */
+public class ByteRangeResource extends AbstractResource {
+
+	private final Resource delegate;
+
+	private final long startOffset;
+
+	private final long endOffset;
+
+	public ByteRangeResource(Resource delegate, long startOffset, long endOffset) {
+		if (startOffset < 0 || endOffset < startOffset) {
+			throw new IllegalArgumentException(
+					"Invalid byte range [" + startOffset + ", " + endOffset + ") for " + delegate.getDescription());
+		}
+		this.delegate = delegate;
+		this.startOffset = startOffset;
+		this.endOffset = endOffset;
+	}
+
+	@Override
+	public boolean exists() {
+		return this.delegate.exists();
+	}
+
+	@Override
+	public long contentLength() {
+		return this.endOffset - this.startOffset;
+	}
+
+	@Override
+	public String getDescription() {
+		return this.delegate.getDescription() + " [" + this.startOffset + ", " + this.endOffset + ")";
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		InputStream inputStream = this.delegate.getInputStream();
+		// FileInputStream.skip seeks, so this does not read the skipped bytes
+		inputStream.skipNBytes(this.startOffset);
+		return new BoundedInputStream(inputStream, this.endOffset - this.startOffset);
+	}
+
+	private static final class BoundedInputStream extends FilterInputStream {
+
+		private long remaining;
+
+		BoundedInputStream(InputStream in, long limit) {
+			super(in);
+			this.remaining = limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (this.remaining <= 0) {
+				return -1;
+			}
+			int b = super.read();
+			if (b >= 0) {
+				this.remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (this.remaining <= 0) {
+				return -1;
+			}
+			int n = super.read(b, off, (int) Math.min(len, this.remaining));
+			if (n > 0) {
+				this.remaining -= n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, this.remaining));
+			this.remaining -= skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), this.remaining);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.example.bank.job;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions of amounts between {@code DECIMAL(15,2)} values and {@code long} hundredths
+ * of the currency unit, the representation used while items are evaluated.
+ * <p>
+ * Every {@code DECIMAL(15,2)} value is exactly a {@code long} number of hundredths, so
+ * the conversions are lossless: {@link #of(BigDecimal)} rejects values with more than two
+ * significant decimal places or more than 13 integer digits instead of rounding them.
+ */
+public final class Cents {
+
+	public static final int SCALE = 2;
+
+	/**
+	 * The largest absolute value of a {@code DECIMAL(15,2)} column, in hundredths.
+	 */
+	public static final long MAX_VALUE = 999_999_999_999_999L;
+
+	private Cents() {
+	}
+
+	/**
+	 * Converts a decimal amount to hundredths.
+	 * @throws ArithmeticException if the amount is not a {@code DECIMAL(15,2)} value
+	 */
+	public static long of(BigDecimal value) {
+		return checkRange(value.movePointRight(SCALE).setScale(0, RoundingMode.UNNECESSARY).longValueExact());
+	}
+
+	/**
+	 * Converts hundredths to a decimal amount of scale 2, for binding to a
+	 * {@code DECIMAL(15,2)} parameter.
+	 */
+	public static BigDecimal toBigDecimal(long cents) {
+		return BigDecimal.valueOf(cents, SCALE);
+	}
+
+	/**
+	 * Appends the amount in the plain notation of {@link BigDecimal#toPlainString()} of
+	 * scale 2, e.g. {@code -0.05}, without creating a {@link BigDecimal}.
+	 */
+	public static StringBuilder append(StringBuilder builder, long cents) {
+		long abs = Math.abs(checkRange(cents));
+		if (cents < 0) {
+			builder.append('-');
+		}
+		long fraction = abs % 100;
+		builder.append(abs / 100).append('.');
+		if (fraction < 10) {
+			builder.append('0');
+		}
+		return builder.append(fraction);
+	}
+
+	public static String toString(long cents) {
+		return append(new StringBuilder(20), cents).toString();
+	}
+
+	static long checkRange(long cents) {
+		if (cents > MAX_VALUE || cents < -MAX_VALUE) {
+			throw new ArithmeticException("Amount out of the range of DECIMAL(15,2): " + toBigDecimal(cents));
+		}
+		return cents;
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.example.bank.job;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+
+/**
+ * Reads the records of the customers of one {@link CustomerHashPartitioner} partition
+ * from a delegate reading the whole input, skipping the records of other partitions
+ * before they are processed. The restart state is the delegate's own.
+ */
+public class CustomerHashItemReader implements ItemStreamReader<BankAccountStageInput> {
+
+	private final ItemStreamReader<BankAccountStageInput> delegate;
+
+	private final int partition;
+
+	private final int partitions;
+
+	public CustomerHashItemReader(ItemStreamReader<BankAccountStageInput> delegate, int partition, int partitions) {
+		if (partition < 0 || partition >= partitions) {
+			throw new IllegalArgumentException(
+					"partition must be between 0 and " + (partitions - 1) + ": " + partition);
+		}
+		this.delegate = delegate;
+		this.partition = partition;
+		this.partitions = partitions;
+	}
+
+	@Override
+	public BankAccountStageInput read() throws Exception {
+		BankAccountStageInput input;
+		while ((input = this.delegate.read()) != null) {
+			if (CustomerHashPartitioner.partition(input.customerId(), this.partitions) == this.partition) {
+				return input;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		this.delegate.open(executionContext);
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		this.delegate.update(executionContext);
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		this.delegate.close();
+	}
+
+}
@@ -0,0 +1,46 @@
+package com.example.bank.job;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+/**
+ * {@link Partitioner} that assigns each customer to one of {@code gridSize} partitions by
+ * the hash of its {@code customer_id}. Every partition reads the whole input and keeps
+ * the records of its own customers with a {@link CustomerHashItemReader}, so that the
+ * records of a customer are always processed by the same partition regardless of their
+ * position in the file.
+ */
+public class CustomerHashPartitioner implements Partitioner {
+
+	public static final String PARTITION_KEY = "customerHashPartition";
+
+	public static final String PARTITIONS_KEY = "customerHashPartitions";
+
+	private static final String PARTITION_PREFIX = "partition";
+
+	@Override
+	public Map<String, ExecutionContext> partition(int gridSize) {
+		if (gridSize < 1) {
+			throw new IllegalArgumentException("gridSize must be positive: " + gridSize);
+		}
+		Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+		for (int i = 0; i < gridSize; i++) {
+			ExecutionContext executionContext = new ExecutionContext();
+			executionContext.putInt(PARTITION_KEY, i);
+			executionContext.putInt(PARTITIONS_KEY, gridSize);
+			partitions.put(PARTITION_PREFIX + i, executionContext);
+		}
+		return partitions;
+	}
+
+	/**
+	 * The partition of a customer. {@link String#hashCode()} is specified, so every JVM
+	 * assigns a customer to the same partition.
+	 */
+	public static int partition(String customerId, int partitions) {
+		return Math.floorMod(customerId.hashCode(), partitions);
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.example.bank.job;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+
+/**
+ * Skips the records of the given customers, such as those found by
+ * {@link BankAccountStageDuplicateCheckTasklet}, before they are processed. The restart
+ * state is the delegate's own.
+ */
+public class CustomerSkipListItemReader implements ItemStreamReader<BankAccountStageInput> {
+
+	private final ItemStreamReader<BankAccountStageInput> delegate;
+
+	private final Set<String> customerIds;
+
+	public CustomerSkipListItemReader(ItemStreamReader<BankAccountStageInput> delegate,
+			Collection<String> customerIds) {
+		this.delegate = delegate;
+		this.customerIds = new HashSet<>(customerIds);
+	}
+
+	@Override
+	public BankAccountStageInput read() throws Exception {
+		BankAccountStageInput input;
+		while ((input = this.delegate.read()) != null) {
+			if (!this.customerIds.contains(input.customerId())) {
+				return input;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		this.delegate.open(executionContext);
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		this.delegate.update(executionContext);
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		this.delegate.close();
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.example.bank.job;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+
+/**
+ * {@link Resource} whose input stream is the decompressed content of a {@code .gz} or
+ * {@code .zst} delegate resource. The content is decompressed while it is read, so the
+ * uncompressed file is never written to disk. Its length is unknown without reading it
+ * all, so readers cannot seek into it and skip bytes instead.
+ */
+public class DecompressingResource extends AbstractResource {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Resource delegate;
+
+	public DecompressingResource(Resource delegate) {
+		if (!isCompressed(delegate)) {
+			throw new IllegalArgumentException("Not a .gz or .zst file: " + delegate.getDescription());
+		}
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Whether the file name of the resource ends with {@code .gz} or {@code .zst}.
+	 */
+	public static boolean isCompressed(Resource resource) {
+		String filename = resource.getFilename();
+		return filename != null && (filename.endsWith(".gz") || filename.endsWith(".zst"));
+	}
+
+	@Override
+	public boolean exists() {
+		return this.delegate.exists();
+	}
+
+	@Override
+	@Nullable
+	public String getFilename() {
+		return this.delegate.getFilename();
+	}
+
+	@Override
+	public String getDescription() {
+		return "decompressed " + this.delegate.getDescription();
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		InputStream inputStream = this.delegate.getInputStream();
+		try {
+			if (this.delegate.getFilename().endsWith(".gz")) {
+				// reads concatenated gzip members as one stream
+				return new GZIPInputStream(inputStream, BUFFER_SIZE);
+			}
+			return new ZstdInputStream(inputStream);
+		}
+		catch (IOException | RuntimeException ex) {
+			inputStream.close();
+			throw ex;
+		}
+	}
+
+}
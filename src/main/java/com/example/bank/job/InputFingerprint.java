@@ -0,0 +1,41 @@
+package com.example.bank.job;
+
+/**
+ * 64-bit fingerprint of the evaluated columns of an input and of the version of the rules
+ * it is evaluated with, stored as {@code input_fingerprint} of its calculation. Equal
+ * fingerprints of a customer's inputs of two months mean that the stage and the condition
+ * evaluations of the second month are those of the first.
+ * <p>
+ * The customer id and the month-end date are not part of the fingerprint, and the current
+ * stage is hashed by code so that fingerprints do not depend on the {@code StageCodes}
+ * ordinals of the JVM that computed them.
+ */
+final class InputFingerprint {
+
+	private InputFingerprint() {
+	}
+
+	static long of(BankAccountStageInput input, long ruleSetVersion) {
+		long hash = mix(ruleSetVersion, input.currentStageCode().hashCode());
+		hash = mix(hash, input.totalBalance());
+		hash = mix(hash, input.foreignCurrencyBalance());
+		hash = mix(hash, input.investmentTrustBalance());
+		hash = mix(hash, input.monthlyForeignCurrencyPurchase());
+		hash = mix(hash, input.monthlyInvestmentTrustPurchase());
+		hash = mix(hash, input.housingLoanBalance());
+		return mix(hash, input.monthlyFxTradingVolume());
+	}
+
+	/**
+	 * Combines {@code value} into {@code hash} with the finalizer of SplitMix64, so that
+	 * the order of the values matters and every bit of them reaches every bit of the
+	 * result.
+	 */
+	private static long mix(long hash, long value) {
+		long z = (hash ^ value) + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -0,0 +1,28 @@
+package com.example.bank.job;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.JobSynchronizationManager;
+
+/**
+ * Registers the job execution on the thread running a partition worker step, so that
+ * {@code @JobScope} beans used by the worker's step-scoped components can be resolved
+ * outside the job's own thread.
+ */
+public class JobContextPropagationListener implements StepExecutionListener {
+
+	@Override
+	public void beforeStep(StepExecution stepExecution) {
+		JobSynchronizationManager.register(stepExecution.getJobExecution());
+	}
+
+	@Override
+	public ExitStatus afterStep(StepExecution stepExecution) {
+		// close() only unregisters; release() would also destroy the job-scoped beans
+		// that the job thread is still using
+		JobSynchronizationManager.close();
+		return null;
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.example.bank.job;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.scope.context.JobContext;
+import org.springframework.batch.core.scope.context.JobSynchronizationManager;
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Registers the job execution of the submitting thread on the thread running the task, so
+ * that {@code @JobScope} beans can be resolved from tasks of an executor, such as the
+ * processing tasks of an {@code AsyncItemProcessor}.
+ * <p>
+ * Like {@link JobContextPropagationListener}, the task only unregisters the job execution
+ * when it completes and never destroys the job-scoped beans.
+ */
+public class JobContextTaskDecorator implements TaskDecorator {
+
+	@Override
+	public Runnable decorate(Runnable runnable) {
+		JobContext context = JobSynchronizationManager.getContext();
+		if (context == null) {
+			return runnable;
+		}
+		JobExecution jobExecution = context.getJobExecution();
+		return () -> {
+			JobSynchronizationManager.register(jobExecution);
+			try {
+				runnable.run();
+			}
+			finally {
+				JobSynchronizationManager.close();
+			}
+		};
+	}
+
+}
@@ -0,0 +1,165 @@
+package com.example.bank.job;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.partition.support.AbstractPartitionHandler;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+/**
+ * Manager side of remote partitioning without a message broker: the partition step
+ * executions are only saved in the shared {@link JobRepository}, where
+ * {@link BankAccountStageRemoteWorker}s in other JVMs find and claim them. The handler
+ * then polls the repository until every partition has finished, and returns the final
+ * step executions for aggregation.
+ * <p>
+ * The version of a running partition is its heartbeat: the worker updates the step
+ * execution when it claims the partition and with every chunk it commits. A partition
+ * whose version the handler has not seen change for the heartbeat timeout is considered
+ * to be held by a dead worker. The timeout is measured on the handler's own monotonic
+ * clock, so it does not depend on the clocks of the workers, which set the
+ * {@code lastUpdated} times. The step execution is marked as {@link BatchStatus#FAILED},
+ * which also fences the worker off, as its next update fails on the version, and the
+ * partition is handed out again as a new step execution with the same name, the execution
+ * context of the last committed chunk and the counts so far, so that the next worker
+ * resumes where the dead one stopped.
+ * <p>
+ * A partition that no worker claims within the claim timeout, for example because no
+ * worker is running, is marked as {@link BatchStatus#FAILED} instead, which fails the
+ * step.
+ */
+public class JobRepositoryPartitionHandler extends AbstractPartitionHandler {
+
+	private static final Logger logger = LoggerFactory.getLogger(JobRepositoryPartitionHandler.class);
+
+	private final JobExplorer jobExplorer;
+
+	private final JobRepository jobRepository;
+
+	private final Duration pollInterval;
+
+	private final Duration heartbeatTimeout;
+
+	private final Duration claimTimeout;
+
+	public JobRepositoryPartitionHandler(JobExplorer jobExplorer, JobRepository jobRepository, Duration pollInterval,
+			Duration heartbeatTimeout, Duration claimTimeout) {
+		this.jobExplorer = jobExplorer;
+		this.jobRepository = jobRepository;
+		this.pollInterval = pollInterval;
+		this.heartbeatTimeout = heartbeatTimeout;
+		this.claimTimeout = claimTimeout;
+	}
+
+	@Override
+	protected Set<StepExecution> doHandle(StepExecution managerStepExecution,
+			Set<StepExecution> partitionStepExecutions) throws Exception {
+		Map<String, StepExecution> partitions = new LinkedHashMap<>();
+		Map<String, Heartbeat> heartbeats = new HashMap<>();
+		for (StepExecution stepExecution : partitionStepExecutions) {
+			partitions.put(stepExecution.getStepName(), stepExecution);
+			heartbeats.put(stepExecution.getStepName(), new Heartbeat(stepExecution.getVersion(), System.nanoTime()));
+		}
+		Set<String> running = new HashSet<>(partitions.keySet());
+		while (true) {
+			for (Iterator<String> iterator = running.iterator(); iterator.hasNext();) {
+				String name = iterator.next();
+				StepExecution stepExecution = this.jobExplorer
+					.getStepExecution(managerStepExecution.getJobExecutionId(), partitions.get(name).getId());
+				Heartbeat heartbeat = heartbeats.get(name);
+				if (!Objects.equals(stepExecution.getVersion(), heartbeat.version())) {
+					heartbeat = new Heartbeat(stepExecution.getVersion(), System.nanoTime());
+					heartbeats.put(name, heartbeat);
+				}
+				if (!stepExecution.getStatus().isRunning()) {
+					partitions.put(name, stepExecution);
+					iterator.remove();
+				}
+				else if (stepExecution.getStatus() == BatchStatus.STARTING) {
+					if (heartbeat.isOlderThan(this.claimTimeout)
+							&& fail(stepExecution, "Not claimed by a worker within " + this.claimTimeout)) {
+						logger.warn("Partition {} was not claimed by a worker within {}, failing it", name,
+								this.claimTimeout);
+						partitions.put(name, stepExecution);
+						iterator.remove();
+					}
+				}
+				else if (heartbeat.isOlderThan(this.heartbeatTimeout) && fail(stepExecution,
+						"No heartbeat from the worker for " + this.heartbeatTimeout + ", reassigned")) {
+					logger.warn("No heartbeat from the worker of partition {} for {}, reassigning it", name,
+							this.heartbeatTimeout);
+					StepExecution reassigned = reassign(stepExecution);
+					partitions.put(name, reassigned);
+					heartbeats.put(name, new Heartbeat(reassigned.getVersion(), System.nanoTime()));
+				}
+			}
+			if (running.isEmpty()) {
+				return new HashSet<>(partitions.values());
+			}
+			Thread.sleep(this.pollInterval.toMillis());
+		}
+	}
+
+	/**
+	 * Marks the step execution of a partition as failed, unless a worker has updated it
+	 * in the meantime, in which case {@code false} is returned.
+	 */
+	private boolean fail(StepExecution stepExecution, String description) {
+		stepExecution.setStatus(BatchStatus.FAILED);
+		stepExecution.setExitStatus(ExitStatus.FAILED.addExitDescription(description));
+		stepExecution.setEndTime(LocalDateTime.now());
+		try {
+			this.jobRepository.update(stepExecution);
+			return true;
+		}
+		catch (OptimisticLockingFailureException ex) {
+			// the worker has just claimed the partition or committed a chunk
+			return false;
+		}
+	}
+
+	/**
+	 * Returns a new step execution of the failed partition of a dead worker, to be
+	 * claimed by another worker.
+	 */
+	private StepExecution reassign(StepExecution stepExecution) {
+		StepExecution reassigned = stepExecution.getJobExecution().createStepExecution(stepExecution.getStepName());
+		reassigned.setExecutionContext(new ExecutionContext(stepExecution.getExecutionContext()));
+		reassigned.setReadCount(stepExecution.getReadCount());
+		reassigned.setWriteCount(stepExecution.getWriteCount());
+		reassigned.setFilterCount(stepExecution.getFilterCount());
+		reassigned.setCommitCount(stepExecution.getCommitCount());
+		reassigned.setRollbackCount(stepExecution.getRollbackCount());
+		reassigned.setReadSkipCount(stepExecution.getReadSkipCount());
+		reassigned.setProcessSkipCount(stepExecution.getProcessSkipCount());
+		reassigned.setWriteSkipCount(stepExecution.getWriteSkipCount());
+		this.jobRepository.add(reassigned);
+		return reassigned;
+	}
+
+	/**
+	 * The version of a partition's step execution, and the time the handler first saw it.
+	 */
+	private record Heartbeat(Integer version, long seenNanos) {
+
+		boolean isOlderThan(Duration timeout) {
+			return System.nanoTime() - this.seenNanos > timeout.toNanos();
+		}
+
+	}
+
+}
@@ -0,0 +1,444 @@
+package com.example.bank.job;
+
+import com.example.bank.stage.StageCodes;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+
+/**
+ * {@link ItemStreamReader} that memory-maps the input CSV and parses the ten known
+ * columns straight from the mapped bytes, without creating intermediate line
+ * {@code String}s or {@code FieldSet}s.
+ * <p>
+ * The reader reads the byte range {@code [startOffset, endOffset)} of the file; when it
+ * starts at offset 0 the header line is verified and skipped. The restart state is the
+ * byte offset of the next line rather than a line count, so a restarted step seeks
+ * directly to where it stopped. Quoted fields are not supported.
+ * <p>
+ * Amounts are parsed straight into hundredths, so a line allocates nothing but the
+ * customer id and the item.
+ * <p>
+ * With a {@link BankAccountStageInputValidator}, lines that fail to parse or that it
+ * rejects are skipped and recorded in a {@link RejectFile} like
+ * {@link ByteOffsetFlatFileItemReader} does.
+ */
+public class MappedBankAccountStageInputItemReader extends ItemStreamSupport
+		implements ItemStreamReader<BankAccountStageInput> {
+
+	static final String HEADER = "customer_id,current_stage_code,month_end_date,total_balance,foreign_currency_balance,investment_trust_balance,monthly_foreign_currency_purchase,monthly_investment_trust_purchase,housing_loan_balance,monthly_fx_trading_volume";
+
+	private static final String OFFSET_KEY = "offset";
+
+	private static final String LINE_NUMBER_KEY = "line.number";
+
+	private static final String REJECTED_COUNT_KEY = "rejected.count";
+
+	private static final String COLUMNS_MESSAGE = "Expected 10 columns";
+
+	private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private static final String[] STAGE_CODES = { "NONE", "SILVER", "GOLD", "PLATINUM" };
+
+	private static final byte[][] STAGE_CODE_BYTES = Arrays.stream(STAGE_CODES)
+		.map(code -> code.getBytes(StandardCharsets.US_ASCII))
+		.toArray(byte[][]::new);
+
+	private static final int[] STAGE_ORDINALS = Arrays.stream(STAGE_CODES).mapToInt(StageCodes::ordinal).toArray();
+
+	private final Resource resource;
+
+	private final long startOffset;
+
+	private final long endOffset;
+
+	private int windowSize = DEFAULT_WINDOW_SIZE;
+
+	private FileChannel channel;
+
+	private MappedByteBuffer window;
+
+	private long windowStart;
+
+	private long end;
+
+	private long offset;
+
+	private long lineNumber;
+
+	private long startLineNumber = 1;
+
+	private final byte[] cachedDateBytes = new byte[10];
+
+	private long cachedEpochDay = Long.MIN_VALUE;
+
+	private final int[] fieldEnds = new int[10];
+
+	private BankAccountStageInputValidator validator;
+
+	private RejectFile rejectFile;
+
+	private final StringBuilder rejects = new StringBuilder();
+
+	private long rejectedCount;
+
+	/**
+	 * Reads the whole file, skipping the header.
+	 */
+	public MappedBankAccountStageInputItemReader(Resource resource) {
+		this(resource, 0, -1);
+	}
+
+	/**
+	 * Reads the bytes {@code [startOffset, endOffset)}; a negative {@code endOffset}
+	 * means the end of the file. {@code startOffset} must be 0 or the start of a line.
+	 */
+	public MappedBankAccountStageInputItemReader(Resource resource, long startOffset, long endOffset) {
+		this.resource = resource;
+		this.startOffset = startOffset;
+		this.endOffset = endOffset;
+		setName("MappedBankAccountStageInputItemReader");
+	}
+
+	/**
+	 * Number of the line at {@code startOffset} in the file, 1 by default, which the
+	 * rejected lines and parse errors are reported with.
+	 */
+	public void setStartLineNumber(long startLineNumber) {
+		this.startLineNumber = startLineNumber;
+	}
+
+	/**
+	 * Size of each mapped region. A single line must fit in one window.
+	 */
+	public void setWindowSize(int windowSize) {
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Skips the lines that fail to parse or that {@code validator} finds invalid instead
+	 * of failing, and records them in {@code rejectFile} if given.
+	 */
+	public void setRejects(BankAccountStageInputValidator validator, @Nullable RejectFile rejectFile) {
+		this.validator = validator;
+		this.rejectFile = rejectFile;
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		try {
+			Path path = this.resource.getFile().toPath();
+			this.channel = FileChannel.open(path, StandardOpenOption.READ);
+			this.end = this.endOffset < 0 ? this.channel.size() : Math.min(this.endOffset, this.channel.size());
+			this.window = null;
+			this.rejectedCount = executionContext.getLong(getExecutionContextKey(REJECTED_COUNT_KEY), 0);
+			this.rejects.setLength(0);
+			if (executionContext.containsKey(getExecutionContextKey(OFFSET_KEY))) {
+				this.offset = executionContext.getLong(getExecutionContextKey(OFFSET_KEY));
+				this.lineNumber = executionContext.getLong(getExecutionContextKey(LINE_NUMBER_KEY), 0);
+			}
+			else {
+				this.offset = this.startOffset;
+				this.lineNumber = this.startLineNumber - 1;
+				if (this.startOffset == 0) {
+					skipHeader();
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new ItemStreamException("Failed to open " + this.resource.getDescription(), e);
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		executionContext.putLong(getExecutionContextKey(OFFSET_KEY), this.offset);
+		executionContext.putLong(getExecutionContextKey(LINE_NUMBER_KEY), this.lineNumber);
+		if (this.rejectFile != null) {
+			this.rejectFile.appendAfterCommit(this.rejects);
+			this.rejects.setLength(0);
+			executionContext.putLong(getExecutionContextKey(REJECTED_COUNT_KEY), this.rejectedCount);
+		}
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		// rejects after the last update are dropped, a restart rejects them again
+		this.rejects.setLength(0);
+		this.window = null;
+		if (this.channel != null) {
+			try {
+				this.channel.close();
+			}
+			catch (IOException e) {
+				throw new ItemStreamException("Failed to close " + this.resource.getDescription(), e);
+			}
+			finally {
+				this.channel = null;
+			}
+		}
+	}
+
+	@Override
+	public BankAccountStageInput read() throws Exception {
+		while (this.offset < this.end) {
+			int lineEnd = findLineEnd();
+			int lineStart = (int) (this.offset - this.windowStart);
+			this.offset = this.windowStart + lineEnd + 1;
+			this.lineNumber++;
+			if (lineEnd > lineStart && this.window.get(lineEnd - 1) == '\r') {
+				lineEnd--;
+			}
+			if (lineEnd > lineStart) {
+				if (this.validator == null) {
+					return parse(lineStart, lineEnd);
+				}
+				BankAccountStageInput input = parseOrReject(lineStart, lineEnd);
+				if (input != null) {
+					return input;
+				}
+			}
+		}
+		return null;
+	}
+
+	@Nullable
+	private BankAccountStageInput parseOrReject(int lineStart, int lineEnd) {
+		String reason;
+		try {
+			BankAccountStageInput input = parse(lineStart, lineEnd);
+			reason = this.validator.validate(input);
+			if (reason == null) {
+				return input;
+			}
+		}
+		catch (FlatFileParseException e) {
+			// the column count is the only check without a cause
+			reason = (e.getCause() != null) ? e.getCause().getMessage() : COLUMNS_MESSAGE;
+		}
+		if (this.rejectFile != null) {
+			RejectFile.appendRecord(this.rejects, this.resource.getFilename(), this.lineNumber, reason,
+					parseString(lineStart, lineEnd));
+			this.rejectedCount++;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the window position of the line feed terminating the line at
+	 * {@link #offset} (or of the end of the range), remapping the window if the line is
+	 * not fully mapped.
+	 */
+	private int findLineEnd() throws IOException {
+		if (this.window == null || this.offset >= this.windowStart + this.window.limit()) {
+			map(this.offset);
+		}
+		int lineEnd = indexOfLineFeed((int) (this.offset - this.windowStart));
+		if (lineEnd < 0 && this.windowStart + this.window.limit() < this.end) {
+			map(this.offset);
+			lineEnd = indexOfLineFeed(0);
+			if (lineEnd < 0 && this.window.limit() < this.end - this.windowStart) {
+				throw new FlatFileParseException("Line longer than the mapped window of " + this.windowSize + " bytes",
+						"", (int) this.lineNumber + 1);
+			}
+		}
+		return lineEnd < 0 ? this.window.limit() : lineEnd;
+	}
+
+	private int indexOfLineFeed(int from) {
+		MappedByteBuffer buffer = this.window;
+		int limit = buffer.limit();
+		for (int i = from; i < limit; i++) {
+			if (buffer.get(i) == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void map(long position) throws IOException {
+		this.windowStart = position;
+		this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position,
+				Math.min(this.windowSize, this.end - position));
+	}
+
+	private void skipHeader() throws IOException {
+		if (this.end == 0) {
+			return;
+		}
+		int lineEnd = findLineEnd();
+		int headerEnd = lineEnd > 0 && this.window.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+		byte[] header = new byte[headerEnd];
+		this.window.get(0, header);
+		if (!HEADER.equals(new String(header, StandardCharsets.US_ASCII))) {
+			throw new FlatFileParseException("Unexpected header", new String(header, StandardCharsets.UTF_8), 1);
+		}
+		this.offset = lineEnd + 1L;
+		this.lineNumber = 1;
+	}
+
+	private BankAccountStageInput parse(int start, int lineEnd) {
+		int[] fieldEnds = this.fieldEnds;
+		int field = 0;
+		for (int i = start; i < lineEnd && field < 10; i++) {
+			if (this.window.get(i) == ',') {
+				fieldEnds[field++] = i;
+			}
+		}
+		if (field != 9) {
+			throw parseException(COLUMNS_MESSAGE, start, lineEnd);
+		}
+		fieldEnds[9] = lineEnd;
+		try {
+			return new BankAccountStageInput(parseString(start, fieldEnds[0]),
+					parseStageCode(fieldEnds[0] + 1, fieldEnds[1]), parseDate(fieldEnds[1] + 1, fieldEnds[2]),
+					parseCents(fieldEnds[2] + 1, fieldEnds[3]), parseCents(fieldEnds[3] + 1, fieldEnds[4]),
+					parseCents(fieldEnds[4] + 1, fieldEnds[5]), parseCents(fieldEnds[5] + 1, fieldEnds[6]),
+					parseCents(fieldEnds[6] + 1, fieldEnds[7]), parseCents(fieldEnds[7] + 1, fieldEnds[8]),
+					Math.toIntExact(parseLong(fieldEnds[8] + 1, fieldEnds[9])));
+		}
+		catch (IllegalArgumentException | ArithmeticException | DateTimeException e) {
+			FlatFileParseException exception = parseException(e.getMessage(), start, lineEnd);
+			exception.initCause(e);
+			throw exception;
+		}
+	}
+
+	private String parseString(int start, int end) {
+		byte[] bytes = new byte[end - start];
+		this.window.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int parseStageCode(int start, int end) {
+		for (int i = 0; i < STAGE_CODE_BYTES.length; i++) {
+			if (equalsBytes(start, end, STAGE_CODE_BYTES[i])) {
+				return STAGE_ORDINALS[i];
+			}
+		}
+		return StageCodes.ordinal(parseString(start, end));
+	}
+
+	/**
+	 * Parses {@code yyyy-MM-dd} into an epoch day. Every line of a month-end file carries
+	 * the same date, so the last parsed value is cached and returned when the bytes
+	 * match.
+	 */
+	private long parseDate(int start, int end) {
+		if (end - start != 10) {
+			throw new NumberFormatException("Invalid date");
+		}
+		if (this.cachedEpochDay != Long.MIN_VALUE && equalsBytes(start, end, this.cachedDateBytes)) {
+			return this.cachedEpochDay;
+		}
+		if (this.window.get(start + 4) != '-' || this.window.get(start + 7) != '-') {
+			throw new NumberFormatException("Invalid date");
+		}
+		long epochDay = LocalDate
+			.of((int) parseLong(start, start + 4), (int) parseLong(start + 5, start + 7),
+					(int) parseLong(start + 8, end))
+			.toEpochDay();
+		this.window.get(start, this.cachedDateBytes);
+		this.cachedEpochDay = epochDay;
+		return epochDay;
+	}
+
+	/**
+	 * Parses an optionally signed decimal number into hundredths, exactly as
+	 * {@link Cents#of(java.math.BigDecimal)} would convert {@code new BigDecimal(String)}
+	 * of it: digits beyond the second decimal place must be zeros.
+	 */
+	private long parseCents(int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (this.window.get(i) == '-' || this.window.get(i) == '+')) {
+			negative = this.window.get(i) == '-';
+			i++;
+		}
+		if (i == end) {
+			throw new NumberFormatException("Empty number");
+		}
+		long cents = 0;
+		int digits = 0;
+		int scale = -1;
+		for (; i < end; i++) {
+			byte b = this.window.get(i);
+			if (b == '.' && scale < 0) {
+				scale = 0;
+				continue;
+			}
+			if (b < '0' || b > '9') {
+				throw new NumberFormatException("Invalid number");
+			}
+			digits++;
+			if (scale >= Cents.SCALE) {
+				if (b != '0') {
+					throw new ArithmeticException("More than " + Cents.SCALE + " decimal places");
+				}
+				continue;
+			}
+			cents = Math.addExact(Math.multiplyExact(cents, 10), b - '0');
+			if (scale >= 0) {
+				scale++;
+			}
+		}
+		if (digits == 0) {
+			throw new NumberFormatException("Invalid number");
+		}
+		for (int j = Math.max(scale, 0); j < Cents.SCALE; j++) {
+			cents = Math.multiplyExact(cents, 10);
+		}
+		return Cents.checkRange(negative ? -cents : cents);
+	}
+
+	private long parseLong(int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && this.window.get(i) == '-') {
+			negative = true;
+			i++;
+		}
+		if (i == end) {
+			throw new NumberFormatException("Empty number");
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			byte b = this.window.get(i);
+			if (b < '0' || b > '9') {
+				throw new NumberFormatException("Invalid number");
+			}
+			value = Math.addExact(Math.multiplyExact(value, 10), b - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	private boolean equalsBytes(int start, int end, byte[] expected) {
+		if (end - start != expected.length) {
+			return false;
+		}
+		for (int i = 0; i < expected.length; i++) {
+			if (this.window.get(start + i) != expected[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private FlatFileParseException parseException(String message, int start, int end) {
+		return new FlatFileParseException("Parsing error at line: " + this.lineNumber + " in resource=["
+				+ this.resource.getDescription() + "]: " + message, parseString(start, end), (int) this.lineNumber);
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.example.bank.job;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * Streams rows to PostgreSQL with {@code COPY ... FROM STDIN} in text format, flushing to
+ * the server every {@value #FLUSH_THRESHOLD} characters.
+ */
+final class PgCopyWriter {
+
+	private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+	private final CopyIn copyIn;
+
+	private final StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD + 1024);
+
+	private boolean firstColumn = true;
+
+	PgCopyWriter(CopyManager copyManager, String sql) throws SQLException {
+		this.copyIn = copyManager.copyIn(sql);
+	}
+
+	PgCopyWriter column(String value) {
+		delimit();
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '\\' -> this.buffer.append("\\\\");
+				case '\t' -> this.buffer.append("\\t");
+				case '\n' -> this.buffer.append("\\n");
+				case '\r' -> this.buffer.append("\\r");
+				default -> this.buffer.append(c);
+			}
+		}
+		return this;
+	}
+
+	PgCopyWriter column(long value) {
+		delimit();
+		this.buffer.append(value);
+		return this;
+	}
+
+	PgCopyWriter column(boolean value) {
+		delimit();
+		this.buffer.append(value ? 't' : 'f');
+		return this;
+	}
+
+	/**
+	 * Writes an amount in hundredths as a {@code DECIMAL(15,2)} value.
+	 */
+	PgCopyWriter cents(long value) {
+		delimit();
+		Cents.append(this.buffer, value);
+		return this;
+	}
+
+	PgCopyWriter column(LocalDate value) {
+		delimit();
+		this.buffer.append(value);
+		return this;
+	}
+
+	void endRow() throws SQLException {
+		this.buffer.append('\n');
+		this.firstColumn = true;
+		if (this.buffer.length() >= FLUSH_THRESHOLD) {
+			flush();
+		}
+	}
+
+	/**
+	 * Completes the copy and returns the number of rows copied.
+	 */
+	long end() throws SQLException {
+		flush();
+		return this.copyIn.endCopy();
+	}
+
+	/**
+	 * Aborts the copy so that the connection can be used for the rollback.
+	 */
+	void cancel() throws SQLException {
+		if (this.copyIn.isActive()) {
+			this.copyIn.cancelCopy();
+		}
+	}
+
+	private void delimit() {
+		if (this.firstColumn) {
+			this.firstColumn = false;
+		}
+		else {
+			this.buffer.append('\t');
+		}
+	}
+
+	private void flush() throws SQLException {
+		if (!this.buffer.isEmpty()) {
+			byte[] bytes = this.buffer.toString().getBytes(StandardCharsets.UTF_8);
+			this.copyIn.writeToCopy(bytes, 0, bytes.length);
+			this.buffer.setLength(0);
+		}
+	}
+
+}
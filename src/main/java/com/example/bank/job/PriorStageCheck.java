@@ -0,0 +1,137 @@
+package com.example.bank.job;
+
+import com.example.bank.stage.StageCodes;
+import io.micrometer.core.instrument.Counter;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * Checks the current stages of the inputs of a chunk against the final stages of the
+ * customers' calculations of the previous month, which are valid until the month-end date
+ * of the inputs.
+ * <p>
+ * The previous month's final stages of the whole chunk are loaded with a single query
+ * into an {@code int} array of stage ordinals indexed like the chunk. Customers without a
+ * calculation of the previous month are not checked. What happens on a mismatch depends
+ * on the {@link Policy}; every mismatch is counted in
+ * {@value BankAccountStageMetrics#PRIOR_STAGE_MISMATCHES}.
+ */
+final class PriorStageCheck {
+
+	private static final String PRIOR_STAGES_SQL = """
+			SELECT i.ordinality, c.final_stage_code
+			FROM unnest(?) WITH ORDINALITY AS i(customer_id, ordinality)
+			JOIN customer_stage_calculations c ON c.customer_id = i.customer_id
+			WHERE c.valid_from = ? AND c.valid_to = ? AND c.calculation_date = ?
+			""";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final Policy policy;
+
+	private final Counter mismatches;
+
+	PriorStageCheck(JdbcTemplate jdbcTemplate, Policy policy, Counter mismatches) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.policy = policy;
+		this.mismatches = mismatches;
+	}
+
+	/**
+	 * Returns the items to write: {@code items} itself, or a copy whose mismatching
+	 * current stages are replaced with the previous month's final stages.
+	 * @throws IllegalStateException on a mismatch with the {@link Policy#FAIL} policy
+	 */
+	List<? extends ProcessResult> check(List<? extends ProcessResult> items) {
+		int[] priorStages = priorStages(items);
+		List<ProcessResult> checked = null;
+		for (int i = 0; i < priorStages.length; i++) {
+			ProcessResult item = items.get(i);
+			int priorStage = priorStages[i];
+			if (priorStage < 0 || priorStage == item.input().currentStage()) {
+				continue;
+			}
+			this.mismatches.increment();
+			if (this.policy == Policy.FAIL) {
+				throw new IllegalStateException("Current stage " + item.input().currentStageCode() + " of customer "
+						+ item.input().customerId() + " differs from the final stage " + StageCodes.code(priorStage)
+						+ " of the previous month");
+			}
+			if (this.policy == Policy.TRUST_DB) {
+				if (checked == null) {
+					checked = new ArrayList<>(items);
+				}
+				checked.set(i, item.withCurrentStage(priorStage));
+			}
+		}
+		return (checked != null) ? checked : items;
+	}
+
+	/**
+	 * Final stage ordinals of the previous month by position in {@code items}, or -1 for
+	 * customers without a calculation of the previous month.
+	 */
+	private int[] priorStages(List<? extends ProcessResult> items) {
+		int[] priorStages = new int[items.size()];
+		Arrays.fill(priorStages, -1);
+		String[] customerIds = new String[items.size()];
+		for (int i = 0; i < customerIds.length; i++) {
+			customerIds[i] = items.get(i).input().customerId();
+		}
+		LocalDate monthEndDate = items.get(0).input().monthEndDate();
+		LocalDate validFrom = monthEndDate.withDayOfMonth(1);
+		this.jdbcTemplate.query(PRIOR_STAGES_SQL, ps -> {
+			ps.setArray(1, ps.getConnection().createArrayOf("varchar", customerIds));
+			ps.setObject(2, validFrom);
+			ps.setObject(3, monthEndDate);
+			// the calculation date lets PostgreSQL scan the previous month's partition
+			// only
+			ps.setObject(4, validFrom.minusDays(1));
+		}, (RowCallbackHandler) rs -> priorStages[rs.getInt(1) - 1] = StageCodes.ordinal(rs.getString(2)));
+		return priorStages;
+	}
+
+	/**
+	 * What to do when the current stage of an input differs from the previous month's
+	 * final stage, selected with the {@code priorStagePolicy} job parameter.
+	 */
+	enum Policy {
+
+		/**
+		 * Keep the current stage of the input file, only count the mismatch.
+		 */
+		TRUST_CSV("trust-csv"),
+
+		/**
+		 * Replace the current stage with the previous month's final stage.
+		 */
+		TRUST_DB("trust-db"),
+
+		/**
+		 * Fail the chunk, and with it the step.
+		 */
+		FAIL("fail");
+
+		private final String value;
+
+		Policy(String value) {
+			this.value = value;
+		}
+
+		static Policy of(String value) {
+			for (Policy policy : values()) {
+				if (policy.value.equals(value)) {
+					return policy;
+				}
+			}
+			throw new IllegalArgumentException("Unknown priorStagePolicy '" + value + "', expected one of "
+					+ Arrays.stream(values()).map(policy -> policy.value).toList());
+		}
+
+	}
+
+}
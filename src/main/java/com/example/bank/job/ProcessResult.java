@@ -1,4 +1,41 @@
 package com.example.bank.job;
 
-public record ProcessResult() {
+import com.example.bank.stage.StageEvaluation;
+import java.time.LocalDate;
+
+/**
+ * Stage calculation for one customer, valid from {@code validFrom} to {@code validTo},
+ * evaluated with the rules of version {@code ruleSetVersion}.
+ */
+public record ProcessResult(BankAccountStageInput input, StageEvaluation evaluation, LocalDate validFrom,
+		LocalDate validTo, long ruleSetVersion) {
+
+	public int finalStage() {
+		return this.evaluation.finalStage();
+	}
+
+	public String finalStageCode() {
+		return this.evaluation.finalStageCode();
+	}
+
+	public ProcessResult withCurrentStage(int currentStage) {
+		return new ProcessResult(this.input.withCurrentStage(currentStage), this.evaluation, this.validFrom,
+				this.validTo, this.ruleSetVersion);
+	}
+
+	/**
+	 * Whether the final stage differs from the customer's current stage, i.e. a
+	 * {@code stage_transitions} row has to be recorded.
+	 */
+	public boolean isStageChanged() {
+		return this.input.currentStage() != this.evaluation.finalStage();
+	}
+
+	/**
+	 * The {@code input_fingerprint} of the calculation.
+	 */
+	public long inputFingerprint() {
+		return InputFingerprint.of(this.input, this.ruleSetVersion);
+	}
+
 }
@@ -0,0 +1,143 @@
+package com.example.bank.job;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.JobSynchronizationManager;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+
+/**
+ * Reads items from the delegate on a background virtual thread into a bounded buffer, so
+ * that the next items are parsed while the step is processing and writing the current
+ * chunk.
+ * <p>
+ * The delegate is always ahead of the step, so its own restart state is not saved. The
+ * number of items handed to the step is saved instead, and that many items are skipped
+ * when restarting.
+ */
+public class ReadAheadItemReader<T> extends ItemStreamSupport implements ItemStreamReader<T> {
+
+	private static final String READ_COUNT_KEY = "read.count";
+
+	private static final Object END = new Object();
+
+	private final ItemStreamReader<T> delegate;
+
+	private final BlockingQueue<Object> buffer;
+
+	private long readCount;
+
+	private Thread producer;
+
+	private volatile Throwable failure;
+
+	private boolean exhausted;
+
+	public ReadAheadItemReader(ItemStreamReader<T> delegate, int bufferSize) {
+		this.delegate = delegate;
+		this.buffer = new ArrayBlockingQueue<>(bufferSize);
+		setName("readAheadItemReader");
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		this.delegate.open(new ExecutionContext());
+		String key = getExecutionContextKey(READ_COUNT_KEY);
+		long skip = executionContext.containsKey(key) ? executionContext.getLong(key) : 0;
+		this.readCount = skip;
+		this.exhausted = false;
+		this.failure = null;
+		// the delegate may be a step-scoped proxy, or submit to a task executor
+		// propagating the job execution
+		StepContext stepContext = StepSynchronizationManager.getContext();
+		StepExecution stepExecution = (stepContext != null) ? stepContext.getStepExecution() : null;
+		this.producer = Thread.ofVirtual().name(getName()).start(() -> produce(stepExecution, skip));
+	}
+
+	private void produce(StepExecution stepExecution, long skip) {
+		if (stepExecution != null) {
+			StepSynchronizationManager.register(stepExecution);
+			JobSynchronizationManager.register(stepExecution.getJobExecution());
+		}
+		try {
+			for (long i = 0; i < skip; i++) {
+				if (this.delegate.read() == null) {
+					break;
+				}
+			}
+			T item;
+			while ((item = this.delegate.read()) != null) {
+				this.buffer.put(item);
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		catch (Throwable ex) {
+			this.failure = ex;
+		}
+		finally {
+			if (stepExecution != null) {
+				JobSynchronizationManager.close();
+				StepSynchronizationManager.close();
+			}
+		}
+		try {
+			this.buffer.put(END);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T read() throws Exception {
+		if (this.exhausted) {
+			return null;
+		}
+		Object item = this.buffer.take();
+		if (item == END) {
+			this.exhausted = true;
+			Throwable failure = this.failure;
+			if (failure instanceof Exception exception) {
+				throw exception;
+			}
+			if (failure instanceof Error error) {
+				throw error;
+			}
+			return null;
+		}
+		this.readCount++;
+		return (T) item;
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		executionContext.putLong(getExecutionContextKey(READ_COUNT_KEY), this.readCount);
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		Thread producer = this.producer;
+		if (producer != null) {
+			producer.interrupt();
+			try {
+				producer.join();
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			this.producer = null;
+		}
+		this.buffer.clear();
+		this.delegate.close();
+	}
+
+}
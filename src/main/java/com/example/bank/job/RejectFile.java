@@ -0,0 +1,102 @@
+package com.example.bank.job;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * CSV file of rejected input lines, each with the name of its input file, its line number
+ * and the reason, followed by the line itself:
+ * {@code file,line_number,reason,customer_id,current_stage_code,...}.
+ * <p>
+ * Readers collect their rejected lines with {@link #appendRecord} and append them in
+ * blocks with {@link #appendAfterCommit}, so that the lines of a chunk that is rolled
+ * back and read again on restart are not recorded twice. Every block is appended under a
+ * file lock, so the partitions of a job, also in other JVMs, can share the file. The
+ * header is written with the first block.
+ */
+public final class RejectFile {
+
+	static final String HEADER = "file,line_number,reason," + MappedBankAccountStageInputItemReader.HEADER;
+
+	private final Path path;
+
+	public RejectFile(Path path) {
+		this.path = path;
+	}
+
+	public Path path() {
+		return this.path;
+	}
+
+	/**
+	 * Appends the records collected in {@code records}, if any.
+	 */
+	public void append(CharSequence records) {
+		if (records.isEmpty()) {
+			return;
+		}
+		try {
+			if (this.path.getParent() != null) {
+				Files.createDirectories(this.path.getParent());
+			}
+			try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND); FileLock lock = channel.lock()) {
+				String block = (channel.size() == 0) ? HEADER + "\n" + records : records.toString();
+				ByteBuffer buffer = StandardCharsets.UTF_8.encode(block);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Failed to append to " + this.path, ex);
+		}
+	}
+
+	/**
+	 * Appends the records collected in {@code records}, if any, when the current
+	 * transaction commits, or at once without a transaction.
+	 */
+	public void appendAfterCommit(CharSequence records) {
+		if (records.isEmpty()) {
+			return;
+		}
+		String block = records.toString();
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			append(block);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				append(block);
+			}
+		});
+	}
+
+	/**
+	 * Appends the record of a rejected line, terminated by a line feed, to
+	 * {@code records}. Commas in the reason are replaced, as it is not quoted.
+	 */
+	public static StringBuilder appendRecord(StringBuilder records, String file, long lineNumber, String reason,
+			String line) {
+		return records.append(file)
+			.append(',')
+			.append(lineNumber)
+			.append(',')
+			.append(reason.replace(',', ';'))
+			.append(',')
+			.append(line)
+			.append('\n');
+	}
+
+}
@@ -0,0 +1,192 @@
+package com.example.bank.job;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Execution statistics of the SQL statements run during a step, aggregated per normalized
+ * statement: the count, the affected rows, a latency histogram and the time of the
+ * slowest execution. Literals are replaced with {@code ?} and lists of parameters or rows
+ * collapsed, so that the statements of differently sized chunks share their statistics.
+ * <p>
+ * Recording is lock-free: the counters and the histogram buckets are {@link LongAdder}s,
+ * which stripe contended updates of concurrent partitions, and a statement is normalized
+ * only the first time its text is seen.
+ */
+public final class SqlStatistics {
+
+	// 2^i microseconds, up to about 3 days
+	private static final int BUCKETS = 40;
+
+	// statements with inlined literals would otherwise grow the cache without bound
+	private static final int MAX_CACHED_STATEMENTS = 4096;
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+
+	private static final Pattern ROW_LIST = Pattern.compile("\\(\\?\\.\\.\\.\\)(?:\\s*,\\s*\\(\\?\\.\\.\\.\\))+");
+
+	private final Map<String, Statement> statementsBySql = new ConcurrentHashMap<>();
+
+	private final Map<String, Statement> statements = new ConcurrentHashMap<>();
+
+	/**
+	 * Records an execution of {@code sql} that took {@code elapsedNanos} and affected
+	 * {@code rows} rows.
+	 */
+	public void record(String sql, long elapsedNanos, long rows) {
+		Statement statement = this.statementsBySql.get(sql);
+		if (statement == null) {
+			statement = this.statements.computeIfAbsent(normalize(sql), Statement::new);
+			if (this.statementsBySql.size() < MAX_CACHED_STATEMENTS) {
+				this.statementsBySql.putIfAbsent(sql, statement);
+			}
+		}
+		statement.record(elapsedNanos, rows);
+	}
+
+	/**
+	 * Returns the statistics of every statement, the longest total time first.
+	 */
+	public List<StatementSummary> summaries() {
+		List<StatementSummary> summaries = new ArrayList<>(this.statements.size());
+		for (Statement statement : this.statements.values()) {
+			summaries.add(statement.summary());
+		}
+		summaries.sort(Comparator.comparingLong(StatementSummary::totalNanos).reversed());
+		return summaries;
+	}
+
+	/**
+	 * Replaces the literals of {@code sql} with {@code ?}, collapses whitespace and
+	 * collapses lists of parameters into {@code ?...} and lists of rows into a single
+	 * {@code (?...)}, so that a multi-row insert counts as one statement whatever its row
+	 * count.
+	 */
+	static String normalize(String sql) {
+		StringBuilder normalized = new StringBuilder(sql.length());
+		int length = sql.length();
+		for (int i = 0; i < length; i++) {
+			char c = sql.charAt(i);
+			if (c == '\'') {
+				// skip to the closing quote, a quote inside a literal is doubled
+				int end = i + 1;
+				while (end < length) {
+					if (sql.charAt(end) == '\'') {
+						if (end + 1 < length && sql.charAt(end + 1) == '\'') {
+							end += 2;
+							continue;
+						}
+						break;
+					}
+					end++;
+				}
+				i = end;
+				normalized.append('?');
+			}
+			else if (Character.isDigit(c) && !isIdentifierPart(normalized)) {
+				while (i + 1 < length && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+					i++;
+				}
+				normalized.append('?');
+			}
+			else {
+				normalized.append(c);
+			}
+		}
+		String collapsed = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+		collapsed = PARAMETER_LIST.matcher(collapsed).replaceAll("?...");
+		return ROW_LIST.matcher(collapsed.replace("(?)", "(?...)")).replaceAll("(?...)");
+	}
+
+	private static boolean isIdentifierPart(CharSequence normalized) {
+		if (normalized.isEmpty()) {
+			return false;
+		}
+		char previous = normalized.charAt(normalized.length() - 1);
+		return Character.isLetterOrDigit(previous) || previous == '_' || previous == '$';
+	}
+
+	private static int bucket(long elapsedNanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+		return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+	}
+
+	private static final class Statement {
+
+		private final String normalizedSql;
+
+		private final LongAdder rows = new LongAdder();
+
+		private final LongAdder totalNanos = new LongAdder();
+
+		private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		Statement(String normalizedSql) {
+			this.normalizedSql = normalizedSql;
+			for (int i = 0; i < BUCKETS; i++) {
+				this.buckets[i] = new LongAdder();
+			}
+		}
+
+		void record(long elapsedNanos, long rows) {
+			this.rows.add(rows);
+			this.totalNanos.add(elapsedNanos);
+			this.buckets[bucket(elapsedNanos)].increment();
+			long max = this.maxNanos.get();
+			while (elapsedNanos > max) {
+				if (this.maxNanos.compareAndSet(max, elapsedNanos)) {
+					break;
+				}
+				max = this.maxNanos.get();
+			}
+		}
+
+		StatementSummary summary() {
+			long[] counts = new long[BUCKETS];
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = this.buckets[i].sum();
+				count += counts[i];
+			}
+			return new StatementSummary(this.normalizedSql, count, this.rows.sum(), this.totalNanos.sum(),
+					percentileMicros(counts, count, 0.5), percentileMicros(counts, count, 0.99), this.maxNanos.get());
+		}
+
+		/**
+		 * Returns the upper bound of the bucket holding the percentile.
+		 */
+		private static long percentileMicros(long[] counts, long count, double percentile) {
+			long rank = (long) Math.ceil(count * percentile);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank && seen > 0) {
+					return 1L << i;
+				}
+			}
+			return 0;
+		}
+
+	}
+
+	/**
+	 * Statistics of a normalized statement. The percentiles are upper bounds, accurate to
+	 * a factor of two.
+	 */
+	public record StatementSummary(String sql, long count, long rows, long totalNanos, long p50Micros, long p99Micros,
+			long maxNanos) {
+
+	}
+
+}
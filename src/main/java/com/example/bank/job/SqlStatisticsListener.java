@@ -0,0 +1,167 @@
+package com.example.bank.job;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Aggregates the statements executed on the business data source into
+ * {@link SqlStatistics} while a step runs, and logs one summary of the slowest statements
+ * per step instead of a log line per statement. Statements taking at least
+ * {@code bank.sql.slow-query-threshold} (1 second by default) are logged individually.
+ * <p>
+ * Registered with datasource-proxy as a {@link QueryExecutionListener} bean. The
+ * per-statement logging of datasource-proxy stays available with
+ * {@code jdbc.datasource-proxy.query.enable-logging=true}.
+ */
+@Component
+public class SqlStatisticsListener implements QueryExecutionListener, StepExecutionListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(SqlStatisticsListener.class);
+
+	private static final int SUMMARY_STATEMENTS = 10;
+
+	private final long slowQueryThresholdNanos;
+
+	private final ThreadLocal<long[]> queryStart = ThreadLocal.withInitial(() -> new long[1]);
+
+	private final Map<Long, SqlStatistics> statisticsByStepExecution = new ConcurrentHashMap<>();
+
+	// copied on write, steps start and end rarely compared to the queries
+	private volatile SqlStatistics[] activeStatistics = new SqlStatistics[0];
+
+	public SqlStatisticsListener(@Value("${bank.sql.slow-query-threshold:1s}") Duration slowQueryThreshold) {
+		this.slowQueryThresholdNanos = slowQueryThreshold.toNanos();
+	}
+
+	@Override
+	public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+		this.queryStart.get()[0] = System.nanoTime();
+	}
+
+	@Override
+	public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+		long elapsedNanos = System.nanoTime() - this.queryStart.get()[0];
+		int size = queryInfoList.size();
+		if (elapsedNanos >= this.slowQueryThresholdNanos && size > 0) {
+			logger.warn("Slow query took {} ms{}: {}", TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+					execInfo.isBatch() ? " for a batch of " + execInfo.getBatchSize() : "",
+					queryInfoList.get(0).getQuery());
+		}
+		SqlStatistics[] activeStatistics = this.activeStatistics;
+		if (activeStatistics.length == 0) {
+			return;
+		}
+		Object result = execInfo.getResult();
+		for (int i = 0; i < size; i++) {
+			// the statements of a batch share its time
+			String sql = queryInfoList.get(i).getQuery();
+			long rows = (size == 1) ? rows(result) : rows(result, i);
+			for (SqlStatistics statistics : activeStatistics) {
+				statistics.record(sql, elapsedNanos / size, rows);
+			}
+		}
+	}
+
+	/**
+	 * Returns the update count of an execution, or 0 for a query.
+	 */
+	private static long rows(Object result) {
+		if (result instanceof Number count) {
+			return Math.max(count.longValue(), 0);
+		}
+		if (result instanceof int[] counts) {
+			return Arrays.stream(counts).filter(count -> count > 0).asLongStream().sum();
+		}
+		if (result instanceof long[] counts) {
+			return Arrays.stream(counts).filter(count -> count > 0).sum();
+		}
+		return 0;
+	}
+
+	private static long rows(Object result, int index) {
+		if (result instanceof int[] counts && index < counts.length) {
+			return Math.max(counts[index], 0);
+		}
+		if (result instanceof long[] counts && index < counts.length) {
+			return Math.max(counts[index], 0);
+		}
+		return 0;
+	}
+
+	@Override
+	public void beforeStep(StepExecution stepExecution) {
+		SqlStatistics statistics = new SqlStatistics();
+		this.statisticsByStepExecution.put(stepExecution.getId(), statistics);
+		synchronized (this) {
+			SqlStatistics[] activeStatistics = Arrays.copyOf(this.activeStatistics, this.activeStatistics.length + 1);
+			activeStatistics[activeStatistics.length - 1] = statistics;
+			this.activeStatistics = activeStatistics;
+		}
+	}
+
+	@Override
+	public ExitStatus afterStep(StepExecution stepExecution) {
+		SqlStatistics statistics = this.statisticsByStepExecution.remove(stepExecution.getId());
+		if (statistics == null) {
+			return null;
+		}
+		synchronized (this) {
+			this.activeStatistics = Arrays.stream(this.activeStatistics)
+				.filter(active -> active != statistics)
+				.toArray(SqlStatistics[]::new);
+		}
+		if (logger.isInfoEnabled()) {
+			List<SqlStatistics.StatementSummary> summaries = statistics.summaries();
+			if (!summaries.isEmpty()) {
+				logger.info(summary(stepExecution.getStepName(), summaries));
+			}
+		}
+		return null;
+	}
+
+	static String summary(String stepName, List<SqlStatistics.StatementSummary> summaries) {
+		StringBuilder summary = new StringBuilder("SQL statistics of ").append(stepName)
+			.append(" (")
+			.append(summaries.size())
+			.append(" statements, the slowest ")
+			.append(Math.min(summaries.size(), SUMMARY_STATEMENTS))
+			.append(" by total time):");
+		for (SqlStatistics.StatementSummary statement : summaries.subList(0,
+				Math.min(summaries.size(), SUMMARY_STATEMENTS))) {
+			summary.append("\n  count=")
+				.append(statement.count())
+				.append(" rows=")
+				.append(statement.rows())
+				.append(" total=")
+				.append(TimeUnit.NANOSECONDS.toMillis(statement.totalNanos()))
+				.append("ms p50<=")
+				.append(millis(statement.p50Micros()))
+				.append("ms p99<=")
+				.append(millis(statement.p99Micros()))
+				.append("ms max=")
+				.append(millis(TimeUnit.NANOSECONDS.toMicros(statement.maxNanos())))
+				.append("ms sql=")
+				.append(statement.sql());
+		}
+		return summary.toString();
+	}
+
+	private static String millis(long micros) {
+		return String.format("%.3f", micros / 1000.0);
+	}
+
+}
@@ -0,0 +1,413 @@
+package com.example.bank.job;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Export of the stage transitions written by {@link BankAccountStageItemWriter} to files
+ * in the directory of the {@code transitionExport} job parameter, so that downstream
+ * systems take a file instead of querying {@code stage_transitions}. Without the
+ * parameter nothing is exported.
+ * <p>
+ * The transitions of a chunk are formatted as CSV or, with
+ * {@code transitionExportFormat=ndjson}, as one JSON object per line, and appended
+ * through a {@link FileChannel} to a hidden in-progress file just before the chunk
+ * transaction commits. A chunk that rolls back is truncated away again, so the file only
+ * grows by committed chunks. Once the file exceeds {@code transitionExportFileBytes} (64
+ * MiB by default), and when the step ends, it is renamed into place as
+ * {@code transitions-<step execution id>-<sequence>.csv} (or {@code .ndjson}) and added
+ * with its record count, size and SHA-256 checksum to the manifest that
+ * {@link StageTransitionExportListener} publishes when the job completes.
+ * <p>
+ * Every step execution, such as a partition, writes its own files and appends to the
+ * manifest under a file lock. As an {@link ItemStream}, opened, updated and closed by
+ * {@link BankAccountStageItemWriter}, the export saves the name, size and record count of
+ * its in-progress file with the chunk, so that a restarted step truncates the file back
+ * to the last committed chunk and goes on appending to it. A run should export into its
+ * own directory; with the {@code upsert} write mode a chunk written again is exported
+ * again.
+ */
+@Component
+@StepScope
+public class StageTransitionExport extends ItemStreamSupport {
+
+	static final String CSV_HEADER = "customer_id,calculation_id,previous_stage_code,current_stage_code,transition_date";
+
+	static final String MANIFEST_HEADER = "file,records,bytes,sha256";
+
+	static final String MANIFEST_FILE = "manifest.csv";
+
+	static final String IN_PROGRESS_MANIFEST_FILE = ".manifest.csv.inprogress";
+
+	private static final String NDJSON_FORMAT = "ndjson";
+
+	private static final String SEQUENCE_KEY = "sequence";
+
+	private static final String FILE_KEY = "file";
+
+	private static final String BYTES_KEY = "bytes";
+
+	private static final String RECORDS_KEY = "records";
+
+	private final Path directory;
+
+	private final boolean ndjson;
+
+	private final long maxFileBytes;
+
+	private final long stepExecutionId;
+
+	private int sequence;
+
+	private FileChannel channel;
+
+	private String fileName;
+
+	private Path inProgressFile;
+
+	private long committedBytes;
+
+	private long records;
+
+	private MessageDigest digest;
+
+	// of the chunk transaction in progress, saved with it by update()
+	private long pendingBytes;
+
+	private long pendingRecords;
+
+	public StageTransitionExport(@Value("#{jobParameters['transitionExport']}") @Nullable Resource directory,
+			@Value("#{jobParameters['transitionExportFormat'] ?: 'csv'}") String format,
+			@Value("#{jobParameters['transitionExportFileBytes'] ?: 67108864}") long maxFileBytes,
+			@Value("#{stepExecution.id}") long stepExecutionId) throws IOException {
+		this.directory = (directory != null) ? directory.getFile().toPath() : null;
+		this.ndjson = NDJSON_FORMAT.equals(format);
+		this.maxFileBytes = maxFileBytes;
+		this.stepExecutionId = stepExecutionId;
+		setName("stageTransitionExport");
+	}
+
+	public boolean isEnabled() {
+		return this.directory != null;
+	}
+
+	/**
+	 * Reopens the in-progress file of a restarted step execution, truncated to the bytes
+	 * of its committed chunks, or moves on to the next file if it was published.
+	 */
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		if (!isEnabled() || !executionContext.containsKey(getExecutionContextKey(SEQUENCE_KEY))) {
+			return;
+		}
+		this.sequence = executionContext.getInt(getExecutionContextKey(SEQUENCE_KEY));
+		String fileName = executionContext.getString(getExecutionContextKey(FILE_KEY), null);
+		if (fileName == null) {
+			return;
+		}
+		Path inProgressFile = this.directory.resolve("." + fileName + ".inprogress");
+		if (!Files.exists(inProgressFile)) {
+			// published when the failed execution was closed, or rolled over after its
+			// last update
+			this.sequence++;
+			return;
+		}
+		try {
+			reopen(fileName, inProgressFile, executionContext.getLong(getExecutionContextKey(BYTES_KEY)),
+					executionContext.getLong(getExecutionContextKey(RECORDS_KEY)));
+		}
+		catch (IOException ex) {
+			throw new ItemStreamException("Failed to reopen " + inProgressFile, ex);
+		}
+	}
+
+	/**
+	 * Saves the in-progress file as it will be once the chunk commits.
+	 */
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		if (!isEnabled()) {
+			return;
+		}
+		executionContext.putInt(getExecutionContextKey(SEQUENCE_KEY), this.sequence);
+		if (this.channel == null) {
+			executionContext.remove(getExecutionContextKey(FILE_KEY));
+			return;
+		}
+		executionContext.putString(getExecutionContextKey(FILE_KEY), this.fileName);
+		executionContext.putLong(getExecutionContextKey(BYTES_KEY), this.committedBytes + this.pendingBytes);
+		executionContext.putLong(getExecutionContextKey(RECORDS_KEY), this.records + this.pendingRecords);
+	}
+
+	/**
+	 * Exports the transitions of a chunk written with the calculation ids {@code ids}
+	 * once the chunk transaction commits, or right away without a transaction.
+	 */
+	public void export(List<? extends ProcessResult> items, long[] ids) {
+		StringBuilder block = new StringBuilder();
+		int count = 0;
+		for (int i = 0; i < ids.length; i++) {
+			ProcessResult item = items.get(i);
+			if (item.isStageChanged()) {
+				append(block, item, ids[i]);
+				count++;
+			}
+		}
+		if (count == 0) {
+			return;
+		}
+		byte[] bytes = block.toString().getBytes(StandardCharsets.UTF_8);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			// opened now, so that update() saves the file the chunk goes to
+			openIfNecessary();
+			this.pendingBytes += bytes.length;
+			this.pendingRecords += count;
+			TransactionSynchronizationManager.registerSynchronization(new ChunkExport(bytes, count));
+		}
+		else {
+			write(bytes);
+			committed(bytes, count);
+		}
+	}
+
+	private void append(StringBuilder block, ProcessResult item, long id) {
+		BankAccountStageInput input = item.input();
+		if (this.ndjson) {
+			block.append("{\"customer_id\":\"");
+			appendJsonString(block, input.customerId());
+			block.append("\",\"calculation_id\":")
+				.append(id)
+				.append(",\"previous_stage_code\":\"")
+				.append(input.currentStageCode())
+				.append("\",\"current_stage_code\":\"")
+				.append(item.finalStageCode())
+				.append("\",\"transition_date\":\"")
+				.append(item.validFrom())
+				.append("\"}\n");
+		}
+		else {
+			block.append(input.customerId())
+				.append(',')
+				.append(id)
+				.append(',')
+				.append(input.currentStageCode())
+				.append(',')
+				.append(item.finalStageCode())
+				.append(',')
+				.append(item.validFrom())
+				.append('\n');
+		}
+	}
+
+	private static void appendJsonString(StringBuilder block, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				block.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				block.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				block.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Publishes the current file, if it holds any transition.
+	 */
+	@Override
+	public void close() {
+		if (this.channel == null) {
+			return;
+		}
+		try {
+			this.channel.force(false);
+			this.channel.close();
+			this.channel = null;
+			if (this.records == 0) {
+				Files.delete(this.inProgressFile);
+				return;
+			}
+			Files.move(this.inProgressFile, this.directory.resolve(this.fileName), StandardCopyOption.ATOMIC_MOVE);
+			appendManifest(this.directory, this.fileName + "," + this.records + "," + this.committedBytes + ","
+					+ HexFormat.of().formatHex(this.digest.digest()) + "\n");
+			this.sequence++;
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Failed to publish " + this.inProgressFile, ex);
+		}
+	}
+
+	private void write(byte[] bytes) {
+		try {
+			openIfNecessary();
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			long position = this.committedBytes;
+			while (buffer.hasRemaining()) {
+				position += this.channel.write(buffer, position);
+			}
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Failed to export transitions to " + this.inProgressFile, ex);
+		}
+	}
+
+	private void committed(byte[] bytes, int count) {
+		this.committedBytes += bytes.length;
+		this.digest.update(bytes);
+		this.records += count;
+		if (this.committedBytes >= this.maxFileBytes) {
+			close();
+		}
+	}
+
+	private void rolledBack() {
+		if (this.channel == null) {
+			return;
+		}
+		try {
+			this.channel.truncate(this.committedBytes);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Failed to truncate " + this.inProgressFile, ex);
+		}
+	}
+
+	private void openIfNecessary() {
+		if (this.channel != null) {
+			return;
+		}
+		try {
+			open();
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Failed to export transitions to " + this.directory, ex);
+		}
+	}
+
+	private void open() throws IOException {
+		Files.createDirectories(this.directory);
+		this.fileName = "transitions-" + this.stepExecutionId + "-" + this.sequence
+				+ (this.ndjson ? ".ndjson" : ".csv");
+		this.inProgressFile = this.directory.resolve("." + this.fileName + ".inprogress");
+		this.channel = FileChannel.open(this.inProgressFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.committedBytes = 0;
+		this.records = 0;
+		this.digest = sha256();
+		if (!this.ndjson) {
+			byte[] header = (CSV_HEADER + "\n").getBytes(StandardCharsets.UTF_8);
+			this.channel.write(ByteBuffer.wrap(header), 0);
+			this.committedBytes = header.length;
+			this.digest.update(header);
+		}
+	}
+
+	private void reopen(String fileName, Path inProgressFile, long bytes, long records) throws IOException {
+		FileChannel channel = FileChannel.open(inProgressFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (channel.size() < bytes) {
+			channel.close();
+			throw new IllegalStateException(
+					inProgressFile + " is shorter than the " + bytes + " bytes of its committed chunks");
+		}
+		channel.truncate(bytes);
+		MessageDigest digest = sha256();
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		for (long position = 0; position < bytes;) {
+			int read = channel.read(buffer.clear(), position);
+			digest.update(buffer.array(), 0, read);
+			position += read;
+		}
+		this.fileName = fileName;
+		this.inProgressFile = inProgressFile;
+		this.channel = channel;
+		this.committedBytes = bytes;
+		this.records = records;
+		this.digest = digest;
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Appends a line to the in-progress manifest of {@code directory}, under a lock as
+	 * the partitions of a job may share it.
+	 */
+	static void appendManifest(Path directory, String line) throws IOException {
+		try (FileChannel channel = FileChannel.open(directory.resolve(IN_PROGRESS_MANIFEST_FILE),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+				FileLock lock = channel.lock()) {
+			String block = (channel.size() == 0) ? MANIFEST_HEADER + "\n" + line : line;
+			ByteBuffer buffer = StandardCharsets.UTF_8.encode(block);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Appends the transitions of a chunk before it commits and takes them back if it
+	 * rolls back.
+	 */
+	private final class ChunkExport implements TransactionSynchronization {
+
+		private final byte[] bytes;
+
+		private final int count;
+
+		ChunkExport(byte[] bytes, int count) {
+			this.bytes = bytes;
+			this.count = count;
+		}
+
+		@Override
+		public void beforeCommit(boolean readOnly) {
+			write(this.bytes);
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			StageTransitionExport.this.pendingBytes -= this.bytes.length;
+			StageTransitionExport.this.pendingRecords -= this.count;
+			if (status == STATUS_COMMITTED) {
+				committed(this.bytes, this.count);
+			}
+			else {
+				rolledBack();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.example.bank.job;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the manifest of the {@link StageTransitionExport} as {@code manifest.csv}
+ * when the job completes, so that consumers take the files once the manifest appears. A
+ * run without transitions publishes a manifest of the header only.
+ */
+@Component
+public class StageTransitionExportListener implements JobExecutionListener {
+
+	private final ResourceLoader resourceLoader;
+
+	public StageTransitionExportListener(ResourceLoader resourceLoader) {
+		this.resourceLoader = resourceLoader;
+	}
+
+	@Override
+	public void afterJob(JobExecution jobExecution) {
+		String transitionExport = jobExecution.getJobParameters().getString("transitionExport");
+		if (transitionExport == null || jobExecution.getStatus() != BatchStatus.COMPLETED) {
+			return;
+		}
+		try {
+			Path directory = this.resourceLoader.getResource(transitionExport).getFile().toPath();
+			Files.createDirectories(directory);
+			Path inProgress = directory.resolve(StageTransitionExport.IN_PROGRESS_MANIFEST_FILE);
+			if (Files.notExists(inProgress)) {
+				Files.writeString(inProgress, StageTransitionExport.MANIFEST_HEADER + "\n");
+			}
+			Files.move(inProgress, directory.resolve(StageTransitionExport.MANIFEST_FILE),
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Failed to publish the manifest of " + transitionExport, ex);
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.example.bank.lookup;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint answering "what stage does customer X have on date D?" from the
+ * {@link CustomerStageLookup}, for example
+ * {@code /actuator/customerstage/CUS001?date=2025-05-15} over HTTP or the
+ * {@code customerstage} operation over JMX. Without a date, the stage of today is
+ * returned.
+ */
+@Component
+@Endpoint(id = "customerstage")
+public class CustomerStageEndpoint {
+
+	private final CustomerStageLookup lookup;
+
+	public CustomerStageEndpoint(CustomerStageLookup lookup) {
+		this.lookup = lookup;
+	}
+
+	@ReadOperation
+	public Map<String, Object> stage(@Selector String customerId, @Nullable String date) {
+		LocalDate effectiveDate = (date != null) ? LocalDate.parse(date) : LocalDate.now();
+		Map<String, Object> stage = new LinkedHashMap<>();
+		stage.put("customerId", customerId);
+		stage.put("date", effectiveDate.toString());
+		stage.put("stageCode", this.lookup.findStage(customerId, effectiveDate).orElse(null));
+		return stage;
+	}
+
+}
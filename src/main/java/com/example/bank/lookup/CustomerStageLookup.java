@@ -0,0 +1,251 @@
+package com.example.bank.lookup;
+
+import com.example.bank.job.BankAccountStagePartitionTasklet;
+import com.example.bank.stage.StageCodes;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+
+/**
+ * Point-in-time lookup of the final stage of a customer, served from an in-memory index
+ * of {@code customer_stage_calculations} so that the downstream queries do not compete
+ * with the writes of the batch.
+ * <p>
+ * A customer is loaded from the database the first time it is looked up, and its validity
+ * periods are kept packed in an {@code int[]} of {@code (valid_from, valid_to, stage)}
+ * triples, the dates as epoch days and the stage as a {@link StageCodes} ordinal, ordered
+ * by {@code valid_from}. At most {@code bank.stage-lookup.max-customers} customers are
+ * kept; beyond that the customers not looked up since the last sweep are evicted and fall
+ * back to the database again.
+ * <p>
+ * Registered on the job as a {@link JobExecutionListener}: when a run completes, the
+ * calculations of its month-end date are merged into the customers already indexed. A run
+ * with {@code retentionMonths} may have archived older periods, so it clears the index
+ * instead. A serving process learns about the runs of other processes from a
+ * {@link CustomerStageLookupRefresher}; every job execution is applied only once,
+ * whichever of the two passes it first.
+ */
+@Component
+public class CustomerStageLookup implements JobExecutionListener {
+
+	private static final int REFRESH_BATCH_SIZE = 1000;
+
+	private final JdbcClient jdbcClient;
+
+	private final int maxCustomers;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	// incremented before a refresh, so that a load racing with it is not cached
+	private final AtomicLong generation = new AtomicLong();
+
+	private final Set<Long> appliedJobExecutionIds = ConcurrentHashMap.newKeySet();
+
+	public CustomerStageLookup(JdbcClient jdbcClient,
+			@Value("${bank.stage-lookup.max-customers:100000}") int maxCustomers) {
+		this.jdbcClient = jdbcClient;
+		this.maxCustomers = maxCustomers;
+	}
+
+	/**
+	 * Returns the final stage of {@code customerId} on {@code date}, or empty if no
+	 * calculation of the customer is valid on that date.
+	 */
+	public Optional<String> findStage(String customerId, LocalDate date) {
+		Entry entry = this.entries.get(customerId);
+		int[] periods;
+		if (entry != null) {
+			entry.referenced = true;
+			periods = entry.periods;
+		}
+		else {
+			long generation = this.generation.get();
+			periods = load(customerId);
+			if (this.generation.get() == generation) {
+				this.entries.putIfAbsent(customerId, new Entry(periods));
+				if (this.entries.size() > this.maxCustomers) {
+					evict();
+				}
+			}
+		}
+		int stage = find(periods, (int) date.toEpochDay());
+		return (stage < 0) ? Optional.empty() : Optional.of(StageCodes.code(stage));
+	}
+
+	/**
+	 * Returns the number of customers indexed.
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	public void clear() {
+		this.generation.incrementAndGet();
+		this.entries.clear();
+	}
+
+	@Override
+	public void afterJob(JobExecution jobExecution) {
+		if (jobExecution.getStatus() != BatchStatus.COMPLETED
+				|| !this.appliedJobExecutionIds.add(jobExecution.getId())) {
+			return;
+		}
+		if (jobExecution.getJobParameters().getParameters().containsKey("retentionMonths")) {
+			clear();
+			return;
+		}
+		String monthEndDate = jobExecution.getExecutionContext()
+			.getString(BankAccountStagePartitionTasklet.MONTH_END_DATE_KEY, null);
+		if (monthEndDate != null) {
+			refresh(LocalDate.parse(monthEndDate));
+		}
+	}
+
+	/**
+	 * Merges the calculations of {@code calculationDate} into the customers indexed.
+	 * Customers not indexed are left to be loaded on their first lookup.
+	 */
+	synchronized void refresh(LocalDate calculationDate) {
+		this.generation.incrementAndGet();
+		List<String> customerIds = new ArrayList<>(this.entries.keySet());
+		for (int from = 0; from < customerIds.size(); from += REFRESH_BATCH_SIZE) {
+			List<String> batch = customerIds.subList(from, Math.min(from + REFRESH_BATCH_SIZE, customerIds.size()));
+			Map<String, List<int[]>> periodsByCustomer = new HashMap<>();
+			this.jdbcClient.sql("""
+					SELECT customer_id, valid_from, valid_to, CAST(final_stage_code AS VARCHAR) AS final_stage_code
+					FROM customer_stage_calculations
+					WHERE calculation_date = ? AND customer_id = ANY(?)
+					""").params(Date.valueOf(calculationDate), batch.toArray(String[]::new)).query(rs -> {
+				periodsByCustomer.computeIfAbsent(rs.getString(1), customerId -> new ArrayList<>())
+					.add(period(rs.getDate(2), rs.getDate(3), rs.getString(4)));
+			});
+			periodsByCustomer.forEach((customerId, periods) -> {
+				Entry entry = this.entries.get(customerId);
+				if (entry != null) {
+					int[] merged = entry.periods;
+					for (int[] period : periods) {
+						merged = merge(merged, period[0], period[1], period[2]);
+					}
+					entry.periods = merged;
+				}
+			});
+		}
+	}
+
+	private int[] load(String customerId) {
+		List<int[]> periods = this.jdbcClient.sql("""
+				SELECT valid_from, valid_to, CAST(final_stage_code AS VARCHAR) AS final_stage_code
+				FROM customer_stage_calculations
+				WHERE customer_id = ?
+				""")
+			.param(customerId)
+			.query((rs, rowNum) -> period(rs.getDate(1), rs.getDate(2), rs.getString(3)))
+			.list();
+		int[] packed = new int[0];
+		for (int[] period : periods) {
+			packed = merge(packed, period[0], period[1], period[2]);
+		}
+		return packed;
+	}
+
+	private static int[] period(Date validFrom, Date validTo, String stageCode) {
+		return new int[] { (int) validFrom.toLocalDate().toEpochDay(), (int) validTo.toLocalDate().toEpochDay(),
+				StageCodes.ordinal(stageCode) };
+	}
+
+	/**
+	 * Evicts the customers not looked up since the previous sweep, clearing the mark of
+	 * the others, until the index is back under its bound (second-chance eviction).
+	 */
+	private synchronized void evict() {
+		// evict down to 90% of the bound, so that a sweep does not run on every load
+		int target = this.maxCustomers - this.maxCustomers / 10;
+		while (this.entries.size() > target) {
+			Iterator<Entry> iterator = this.entries.values().iterator();
+			while (iterator.hasNext() && this.entries.size() > target) {
+				Entry entry = iterator.next();
+				if (entry.referenced) {
+					entry.referenced = false;
+				}
+				else {
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the stage ordinal of the period of {@code periods} containing
+	 * {@code epochDay}, or {@code -1}.
+	 */
+	static int find(int[] periods, int epochDay) {
+		// the last period starting on or before the day
+		int low = 0;
+		int high = periods.length / 3 - 1;
+		int found = -1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (periods[middle * 3] <= epochDay) {
+				found = middle;
+				low = middle + 1;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		return (found >= 0 && epochDay <= periods[found * 3 + 1]) ? periods[found * 3 + 2] : -1;
+	}
+
+	/**
+	 * Returns a copy of {@code periods} with the period starting on {@code validFrom}
+	 * replaced or inserted in order.
+	 */
+	static int[] merge(int[] periods, int validFrom, int validTo, int stage) {
+		int count = periods.length / 3;
+		int index = 0;
+		while (index < count && periods[index * 3] < validFrom) {
+			index++;
+		}
+		int[] merged;
+		if (index < count && periods[index * 3] == validFrom) {
+			merged = periods.clone();
+		}
+		else {
+			merged = Arrays.copyOf(periods, periods.length + 3);
+			System.arraycopy(periods, index * 3, merged, index * 3 + 3, periods.length - index * 3);
+		}
+		merged[index * 3] = validFrom;
+		merged[index * 3 + 1] = validTo;
+		merged[index * 3 + 2] = stage;
+		return merged;
+	}
+
+	private static final class Entry {
+
+		// replaced, never modified, so that lookups read it without locking
+		volatile int[] periods;
+
+		volatile boolean referenced;
+
+		Entry(int[] periods) {
+			this.periods = periods;
+		}
+
+	}
+
+}
@@ -0,0 +1,122 @@
+package com.example.bank.lookup;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the {@link CustomerStageLookup} of a serving process, started with
+ * {@code bank.stage-lookup.refresh.enabled}, up to date with the runs of the batch in
+ * other JVMs: polls the shared job repository every
+ * {@code bank.stage-lookup.refresh.poll-interval} for executions of the
+ * {@code BankAccountStage} job that finished since the previous poll, and hands them to
+ * the lookup as its job listener would. The lookup skips the executions its listener has
+ * already applied, so runs of the serving process itself are not applied twice.
+ * <p>
+ * Only the executions of the {@value #INSTANCES_PER_POLL} most recent job instances are
+ * checked. Executions are handed over in the order of their ids, up to the first one
+ * still running, so that a run is never passed over while it is in progress.
+ */
+@Component
+@ConditionalOnProperty(name = "bank.stage-lookup.refresh.enabled", havingValue = "true")
+public class CustomerStageLookupRefresher implements SmartLifecycle {
+
+	private static final Logger logger = LoggerFactory.getLogger(CustomerStageLookupRefresher.class);
+
+	static final int INSTANCES_PER_POLL = 20;
+
+	private final JobExplorer jobExplorer;
+
+	private final CustomerStageLookup lookup;
+
+	private final String jobName;
+
+	private final Duration pollInterval;
+
+	private long lastExecutionId;
+
+	private volatile Thread poller;
+
+	public CustomerStageLookupRefresher(JobExplorer jobExplorer, CustomerStageLookup lookup,
+			@Value("${spring.batch.job.name}") String jobName,
+			@Value("${bank.stage-lookup.refresh.poll-interval:10s}") Duration pollInterval) {
+		this.jobExplorer = jobExplorer;
+		this.lookup = lookup;
+		this.jobName = jobName;
+		this.pollInterval = pollInterval;
+	}
+
+	@Override
+	public void start() {
+		// assigned before it starts, as the poll loop runs while it is set
+		Thread poller = Thread.ofPlatform().name("customer-stage-lookup-refresher").unstarted(this::poll);
+		this.poller = poller;
+		poller.start();
+	}
+
+	@Override
+	public void stop() {
+		Thread poller = this.poller;
+		this.poller = null;
+		if (poller != null) {
+			poller.interrupt();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.poller != null;
+	}
+
+	private void poll() {
+		while (this.poller != null) {
+			try {
+				refresh();
+			}
+			catch (RuntimeException ex) {
+				// e.g. the job repository is not reachable, try again with the next poll
+				logger.warn("Failed to refresh the customer stage lookup, retrying in {}", this.pollInterval, ex);
+			}
+			try {
+				Thread.sleep(this.pollInterval.toMillis());
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Hands the executions finished since the previous call to the lookup.
+	 */
+	public synchronized void refresh() {
+		List<JobExecution> executions = new ArrayList<>();
+		for (JobInstance jobInstance : this.jobExplorer.getJobInstances(this.jobName, 0, INSTANCES_PER_POLL)) {
+			for (JobExecution jobExecution : this.jobExplorer.getJobExecutions(jobInstance)) {
+				if (jobExecution.getId() > this.lastExecutionId) {
+					executions.add(jobExecution);
+				}
+			}
+		}
+		executions.sort(Comparator.comparing(JobExecution::getId));
+		for (JobExecution jobExecution : executions) {
+			if (jobExecution.isRunning()) {
+				return;
+			}
+			this.lookup.afterJob(jobExecution);
+			this.lastExecutionId = jobExecution.getId();
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package com.example.bank.stage;
+
+import java.util.List;
+
+/**
+ * Stages determined for a chunk of customers by
+ * {@link StageDecisionTable#evaluate(List)}, kept in the primitive arrays the conditions
+ * were evaluated on. Item {@code i} is the {@code i}-th input of the chunk and condition
+ * {@code c} the {@code c}-th condition in {@code id} order.
+ */
+public final class ChunkEvaluation {
+
+	private final long[] conditionIds;
+
+	private final int[] metricSlots;
+
+	private final long[][] columns;
+
+	private final long[] metBits;
+
+	private final int[] baseStages;
+
+	private final int[] finalStages;
+
+	ChunkEvaluation(long[] conditionIds, int[] metricSlots, long[][] columns, long[] metBits, int[] baseStages,
+			int[] finalStages) {
+		this.conditionIds = conditionIds;
+		this.metricSlots = metricSlots;
+		this.columns = columns;
+		this.metBits = metBits;
+		this.baseStages = baseStages;
+		this.finalStages = finalStages;
+	}
+
+	public int size() {
+		return this.metBits.length;
+	}
+
+	/**
+	 * Bit {@code c} is set when condition {@code c} is met by item {@code i}.
+	 */
+	public long metBits(int i) {
+		return this.metBits[i];
+	}
+
+	/**
+	 * Value of condition {@code c} for item {@code i}, in hundredths.
+	 */
+	public long evaluatedValue(int i, int c) {
+		return this.columns[this.metricSlots[c]][i];
+	}
+
+	public int baseStage(int i) {
+		return this.baseStages[i];
+	}
+
+	public int finalStage(int i) {
+		return this.finalStages[i];
+	}
+
+	/**
+	 * The evaluation of item {@code i}, equal to
+	 * {@link StageDecisionTable#evaluate(com.example.bank.job.BankAccountStageInput)} of
+	 * the item.
+	 */
+	public StageEvaluation stageEvaluation(int i) {
+		ConditionEvaluation[] evaluations = new ConditionEvaluation[this.conditionIds.length];
+		long bits = this.metBits[i];
+		for (int c = 0; c < evaluations.length; c++) {
+			evaluations[c] = new ConditionEvaluation(this.conditionIds[c], (bits & (1L << c)) != 0,
+					evaluatedValue(i, c));
+		}
+		return new StageEvaluation(this.baseStages[i], this.finalStages[i], List.of(evaluations));
+	}
+
+}
@@ -0,0 +1,8 @@
+package com.example.bank.stage;
+
+/**
+ * Result of evaluating one condition for a customer, as recorded in
+ * {@code condition_evaluation_results}. {@code evaluatedValue} is in hundredths.
+ */
+public record ConditionEvaluation(long conditionId, boolean met, long evaluatedValue) {
+}
@@ -0,0 +1,31 @@
+package com.example.bank.stage;
+
+/**
+ * Evaluates the conditions of a {@link StageDecisionTable} for a range of items laid out
+ * in columns, one {@code long} array of hundredths per metric slot.
+ * <p>
+ * For each item {@code i} it stores the bits of the met conditions, in condition order,
+ * in {@code metBits[i]}, the highest stage rank granted by a met stage condition in
+ * {@code baseRanks[i]} and the sum of the levels of the met rank change conditions in
+ * {@code levels[i]}.
+ */
+interface ConditionKernel {
+
+	void evaluate(long[][] columns, int from, int to, long[] metBits, long[] baseRanks, long[] levels);
+
+	/**
+	 * The {@link VectorConditionKernel} when the {@code jdk.incubator.vector} module is
+	 * enabled with {@code --add-modules jdk.incubator.vector}, the
+	 * {@link ScalarConditionKernel} otherwise.
+	 */
+	static ConditionKernel create(int[] metricSlots, int[] stageRanks, long[] minValues, long[] maxValues,
+			int[] rankChangeLevels) {
+		ScalarConditionKernel scalar = new ScalarConditionKernel(metricSlots, stageRanks, minValues, maxValues,
+				rankChangeLevels);
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+			return scalar;
+		}
+		return new VectorConditionKernel(metricSlots, stageRanks, minValues, maxValues, rankChangeLevels, scalar);
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.example.bank.stage;
+
+import com.example.bank.job.BankAccountStageInput;
+import java.util.function.ToLongFunction;
+
+/**
+ * The input value a condition is evaluated against.
+ * <p>
+ * A {@code condition_type} resolves to the metric with the longest name that equals it or
+ * prefixes it followed by {@code _}, so that several stages can put thresholds on the
+ * same metric through distinct condition types, e.g. {@code COMBINED_BALANCE_GOLD} and
+ * {@code COMBINED_BALANCE_PLATINUM}. New stages can therefore be added as data only.
+ */
+public enum ConditionMetric {
+
+	TOTAL_BALANCE(BankAccountStageInput::totalBalance, "total_balance"),
+
+	MONTHLY_FOREIGN_CURRENCY_PURCHASE(BankAccountStageInput::monthlyForeignCurrencyPurchase,
+			"monthly_foreign_currency_purchase"),
+
+	MONTHLY_INVESTMENT_TRUST_PURCHASE(BankAccountStageInput::monthlyInvestmentTrustPurchase,
+			"monthly_investment_trust_purchase"),
+
+	/**
+	 * Foreign currency balance plus investment trust balance.
+	 */
+	COMBINED_BALANCE(input -> input.foreignCurrencyBalance() + input.investmentTrustBalance(),
+			"foreign_currency_balance + investment_trust_balance"),
+
+	HOUSING_LOAN(BankAccountStageInput::housingLoanBalance, "housing_loan_balance"),
+
+	/**
+	 * Number of lots, scaled to hundredths like the amounts.
+	 */
+	FX_TRADING(input -> input.monthlyFxTradingVolume() * 100L, "monthly_fx_trading_volume"),
+
+	/**
+	 * The smaller of total balance and housing loan balance, i.e. a threshold on this
+	 * metric requires both to reach it.
+	 */
+	TOTAL_BALANCE_AND_HOUSING_LOAN(input -> Math.min(input.totalBalance(), input.housingLoanBalance()),
+			"LEAST(total_balance, housing_loan_balance)");
+
+	private final ToLongFunction<BankAccountStageInput> extractor;
+
+	private final String sqlExpression;
+
+	ConditionMetric(ToLongFunction<BankAccountStageInput> extractor, String sqlExpression) {
+		this.extractor = extractor;
+		this.sqlExpression = sqlExpression;
+	}
+
+	/**
+	 * The value of the metric in hundredths.
+	 */
+	public long value(BankAccountStageInput input) {
+		return this.extractor.applyAsLong(input);
+	}
+
+	/**
+	 * The same value as an SQL expression over columns named after the input fields.
+	 */
+	public String sqlExpression() {
+		return this.sqlExpression;
+	}
+
+	public static ConditionMetric of(String conditionType) {
+		ConditionMetric resolved = null;
+		for (ConditionMetric metric : values()) {
+			String name = metric.name();
+			if ((conditionType.equals(name) || conditionType.startsWith(name + "_"))
+					&& (resolved == null || name.length() > resolved.name().length())) {
+				resolved = metric;
+			}
+		}
+		if (resolved == null) {
+			throw new IllegalArgumentException("Unsupported condition type: " + conditionType);
+		}
+		return resolved;
+	}
+
+}
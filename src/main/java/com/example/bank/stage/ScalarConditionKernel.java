@@ -0,0 +1,54 @@
+package com.example.bank.stage;
+
+/**
+ * {@link ConditionKernel} evaluating one item at a time, used when the Vector API is not
+ * available and for the items that do not fill a whole vector.
+ */
+final class ScalarConditionKernel implements ConditionKernel {
+
+	private final int[] metricSlots;
+
+	private final int[] stageRanks;
+
+	private final long[] minValues;
+
+	private final long[] maxValues;
+
+	private final int[] rankChangeLevels;
+
+	ScalarConditionKernel(int[] metricSlots, int[] stageRanks, long[] minValues, long[] maxValues,
+			int[] rankChangeLevels) {
+		this.metricSlots = metricSlots;
+		this.stageRanks = stageRanks;
+		this.minValues = minValues;
+		this.maxValues = maxValues;
+		this.rankChangeLevels = rankChangeLevels;
+	}
+
+	@Override
+	public void evaluate(long[][] columns, int from, int to, long[] metBits, long[] baseRanks, long[] levels) {
+		for (int i = from; i < to; i++) {
+			long bits = 0;
+			long baseRank = 0;
+			long level = 0;
+			for (int c = 0; c < this.metricSlots.length; c++) {
+				long value = columns[this.metricSlots[c]][i];
+				int stageRank = this.stageRanks[c];
+				if (stageRank >= 0) {
+					if (value >= this.minValues[c] && value < this.maxValues[c]) {
+						bits |= 1L << c;
+						baseRank = Math.max(baseRank, stageRank);
+					}
+				}
+				else if (value >= this.minValues[c]) {
+					bits |= 1L << c;
+					level += this.rankChangeLevels[c];
+				}
+			}
+			metBits[i] = bits;
+			baseRanks[i] = baseRank;
+			levels[i] = level;
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.example.bank.stage;
+
+import java.util.Arrays;
+
+/**
+ * Stage codes as {@code int} ordinals, so that items carry and compare stages without
+ * {@code String}s.
+ * <p>
+ * The labels of {@code stage_code_enum} in V001 are registered up front in their
+ * declaration order, so their ordinals match the database enum. Labels added later, such
+ * as a stage added as data only, are registered the first time they are seen and keep
+ * their ordinal for the life of the JVM. Ordinals identify stages; they are not ranks,
+ * which come from {@code stage_order}.
+ */
+public final class StageCodes {
+
+	public static final int NONE = 0;
+
+	private static volatile String[] codes = { "NONE", "SILVER", "GOLD", "PLATINUM" };
+
+	private StageCodes() {
+	}
+
+	public static int ordinal(String code) {
+		String[] codes = StageCodes.codes;
+		for (int i = 0; i < codes.length; i++) {
+			if (codes[i].equals(code)) {
+				return i;
+			}
+		}
+		return register(code);
+	}
+
+	public static String code(int ordinal) {
+		return codes[ordinal];
+	}
+
+	/**
+	 * The number of stage codes registered so far, one more than the largest ordinal.
+	 */
+	public static int count() {
+		return codes.length;
+	}
+
+	private static synchronized int register(String code) {
+		String[] codes = StageCodes.codes;
+		for (int i = 0; i < codes.length; i++) {
+			if (codes[i].equals(code)) {
+				return i;
+			}
+		}
+		String[] registered = Arrays.copyOf(codes, codes.length + 1);
+		registered[codes.length] = code.intern();
+		StageCodes.codes = registered;
+		return codes.length;
+	}
+
+}
@@ -0,0 +1,328 @@
+package com.example.bank.stage;
+
+import com.example.bank.job.BankAccountStageInput;
+import com.example.bank.job.Cents;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, compiled form of the {@link StageRules} effective on a month-end date.
+ * <p>
+ * Stages are ranked by {@code stage_order} and conditions are kept in {@code id} order.
+ * The result of applying any number of rank change levels to any base stage is
+ * precomputed, moving up only through stages that are {@code rank_up_reachable}, so
+ * {@link #evaluate(BankAccountStageInput)} does no I/O, takes no locks and is safe to
+ * call from any number of threads. Thresholds are compiled to hundredths, so an item is
+ * evaluated with {@code long} comparisons only.
+ * <p>
+ * A whole chunk can also be evaluated at once with {@link #evaluate(List)}, which lays
+ * the metrics out in columns and evaluates them with a {@link ConditionKernel}:
+ * vectorized when the JVM runs with {@code --add-modules jdk.incubator.vector}, scalar
+ * otherwise.
+ * <p>
+ * The {@link #ruleSetVersion()} is a digest of the compiled rules, so that tables of
+ * equal rules have the same version whatever their month-end date, and any change to the
+ * effective stages or conditions changes it.
+ */
+public final class StageDecisionTable {
+
+	private final LocalDate monthEndDate;
+
+	private final long monthEndEpochDay;
+
+	private final LocalDate validFrom;
+
+	private final LocalDate validTo;
+
+	/**
+	 * {@link StageCodes} ordinal of each stage rank.
+	 */
+	private final int[] stages;
+
+	private final ConditionMetric[] metrics;
+
+	private final long[] conditionIds;
+
+	private final int[] metricSlots;
+
+	/**
+	 * Stage rank a condition grants, or {@code -1} for a rank change condition.
+	 */
+	private final int[] stageRanks;
+
+	private final long[] minValues;
+
+	private final long[] maxValues;
+
+	private final int[] rankChangeLevels;
+
+	/**
+	 * {@code rankUp[baseRank][levels]} is the final stage rank.
+	 */
+	private final int[][] rankUp;
+
+	private final ConditionKernel kernel;
+
+	private final long ruleSetVersion;
+
+	private StageDecisionTable(LocalDate monthEndDate, int[] stages, ConditionMetric[] metrics, long[] conditionIds,
+			int[] metricSlots, int[] stageRanks, long[] minValues, long[] maxValues, int[] rankChangeLevels,
+			int[][] rankUp, ConditionKernel kernel, long ruleSetVersion) {
+		this.monthEndDate = monthEndDate;
+		this.monthEndEpochDay = monthEndDate.toEpochDay();
+		this.validFrom = monthEndDate.plusDays(1);
+		this.validTo = this.validFrom.with(TemporalAdjusters.lastDayOfMonth());
+		this.stages = stages;
+		this.metrics = metrics;
+		this.conditionIds = conditionIds;
+		this.metricSlots = metricSlots;
+		this.stageRanks = stageRanks;
+		this.minValues = minValues;
+		this.maxValues = maxValues;
+		this.rankChangeLevels = rankChangeLevels;
+		this.rankUp = rankUp;
+		this.kernel = kernel;
+		this.ruleSetVersion = ruleSetVersion;
+	}
+
+	public static StageDecisionTable compile(StageRules rules) {
+		List<StageRules.Stage> stages = new ArrayList<>(rules.stages());
+		if (stages.isEmpty()) {
+			throw new IllegalStateException("No stage is effective on " + rules.effectiveDate());
+		}
+		stages.sort(Comparator.comparingInt(StageRules.Stage::stageOrder));
+		int[] stageOrdinals = new int[stages.size()];
+		Map<String, Integer> ranks = new HashMap<>();
+		for (int i = 0; i < stageOrdinals.length; i++) {
+			stageOrdinals[i] = StageCodes.ordinal(stages.get(i).stageCode());
+			ranks.put(stages.get(i).stageCode(), i);
+		}
+
+		List<StageRules.Condition> conditions = new ArrayList<>(rules.conditions());
+		conditions.sort(Comparator.comparingLong(StageRules.Condition::id));
+		int size = conditions.size();
+		long[] conditionIds = new long[size];
+		int[] metricSlots = new int[size];
+		int[] stageRanks = new int[size];
+		long[] minValues = new long[size];
+		long[] maxValues = new long[size];
+		int[] rankChangeLevels = new int[size];
+		List<ConditionMetric> metrics = new ArrayList<>();
+		int totalLevels = 0;
+		for (int i = 0; i < size; i++) {
+			StageRules.Condition condition = conditions.get(i);
+			ConditionMetric metric = ConditionMetric.of(condition.conditionType());
+			if (!metrics.contains(metric)) {
+				metrics.add(metric);
+			}
+			conditionIds[i] = condition.id();
+			metricSlots[i] = metrics.indexOf(metric);
+			if (StageRules.Condition.STAGE.equals(condition.conditionCategory())) {
+				Integer rank = ranks.get(condition.stageCode());
+				if (rank == null) {
+					throw new IllegalStateException("Condition " + condition.id() + " refers to stage "
+							+ condition.stageCode() + " which is not effective on " + rules.effectiveDate());
+				}
+				stageRanks[i] = rank;
+				minValues[i] = Cents.of(condition.minValue());
+				maxValues[i] = Cents.of(condition.maxValue());
+			}
+			else if (StageRules.Condition.RANK_CHANGE.equals(condition.conditionCategory())) {
+				stageRanks[i] = -1;
+				minValues[i] = Cents.of(condition.thresholdValue());
+				rankChangeLevels[i] = condition.rankChangeLevels();
+				totalLevels += Math.max(condition.rankChangeLevels(), 0);
+			}
+			else {
+				throw new IllegalStateException(
+						"Unsupported condition category " + condition.conditionCategory() + " of " + condition.id());
+			}
+		}
+
+		int[][] rankUp = new int[stageOrdinals.length][totalLevels + 1];
+		for (int base = 0; base < stageOrdinals.length; base++) {
+			int rank = base;
+			rankUp[base][0] = rank;
+			for (int levels = 1; levels <= totalLevels; levels++) {
+				int next = rank + 1;
+				while (next < stageOrdinals.length && !stages.get(next).rankUpReachable()) {
+					next++;
+				}
+				if (next < stageOrdinals.length) {
+					rank = next;
+				}
+				rankUp[base][levels] = rank;
+			}
+		}
+		return new StageDecisionTable(rules.effectiveDate(), stageOrdinals, metrics.toArray(ConditionMetric[]::new),
+				conditionIds, metricSlots, stageRanks, minValues, maxValues, rankChangeLevels, rankUp,
+				ConditionKernel.create(metricSlots, stageRanks, minValues, maxValues, rankChangeLevels),
+				ruleSetVersion(stages, metrics, conditionIds, metricSlots, stageRanks, minValues, maxValues,
+						rankChangeLevels));
+	}
+
+	/**
+	 * The first 8 bytes of the SHA-256 digest of the compiled rules. Stages are digested
+	 * by code rather than by {@link StageCodes} ordinal, which depends on the order codes
+	 * were first seen in the JVM.
+	 */
+	private static long ruleSetVersion(List<StageRules.Stage> stages, List<ConditionMetric> metrics,
+			long[] conditionIds, int[] metricSlots, int[] stageRanks, long[] minValues, long[] maxValues,
+			int[] rankChangeLevels) {
+		StringBuilder rules = new StringBuilder();
+		for (StageRules.Stage stage : stages) {
+			rules.append(stage.stageCode()).append(',').append(stage.rankUpReachable()).append(';');
+		}
+		for (int i = 0; i < conditionIds.length; i++) {
+			rules.append(conditionIds[i])
+				.append(',')
+				.append(metrics.get(metricSlots[i]))
+				.append(',')
+				.append(stageRanks[i])
+				.append(',')
+				.append(minValues[i])
+				.append(',')
+				.append(maxValues[i])
+				.append(',')
+				.append(rankChangeLevels[i])
+				.append(';');
+		}
+		try {
+			return ByteBuffer
+				.wrap(MessageDigest.getInstance("SHA-256").digest(rules.toString().getBytes(StandardCharsets.UTF_8)))
+				.getLong();
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	public StageEvaluation evaluate(BankAccountStageInput input) {
+		long[] values = new long[this.metrics.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = this.metrics[i].value(input);
+		}
+		ConditionEvaluation[] evaluations = new ConditionEvaluation[this.conditionIds.length];
+		int baseRank = 0;
+		int levels = 0;
+		for (int i = 0; i < evaluations.length; i++) {
+			long value = values[this.metricSlots[i]];
+			boolean met;
+			int stageRank = this.stageRanks[i];
+			if (stageRank >= 0) {
+				met = value >= this.minValues[i] && value < this.maxValues[i];
+				if (met && stageRank > baseRank) {
+					baseRank = stageRank;
+				}
+			}
+			else {
+				met = value >= this.minValues[i];
+				if (met) {
+					levels += this.rankChangeLevels[i];
+				}
+			}
+			evaluations[i] = new ConditionEvaluation(this.conditionIds[i], met, value);
+		}
+		int finalRank = this.rankUp[baseRank][Math.max(levels, 0)];
+		return new StageEvaluation(this.stages[baseRank], this.stages[finalRank], List.of(evaluations));
+	}
+
+	/**
+	 * Evaluates a chunk of inputs with the same result as evaluating each of them with
+	 * {@link #evaluate(BankAccountStageInput)}. At most 64 conditions are supported, one
+	 * bit each in {@link ChunkEvaluation#metBits(int)}.
+	 * @throws IllegalArgumentException if an input has another month-end date
+	 */
+	public ChunkEvaluation evaluate(List<? extends BankAccountStageInput> inputs) {
+		if (this.conditionIds.length > Long.SIZE) {
+			throw new IllegalStateException(
+					"Chunk evaluation supports up to " + Long.SIZE + " conditions: " + this.conditionIds.length);
+		}
+		int size = inputs.size();
+		long[][] columns = new long[this.metrics.length][size];
+		for (int i = 0; i < size; i++) {
+			BankAccountStageInput input = inputs.get(i);
+			if (input.monthEndEpochDay() != this.monthEndEpochDay) {
+				throw new IllegalArgumentException("Month-end date " + input.monthEndDate() + " of "
+						+ input.customerId() + " differs from " + this.monthEndDate);
+			}
+			for (int m = 0; m < columns.length; m++) {
+				columns[m][i] = this.metrics[m].value(input);
+			}
+		}
+		long[] metBits = new long[size];
+		long[] baseRanks = new long[size];
+		long[] levels = new long[size];
+		this.kernel.evaluate(columns, 0, size, metBits, baseRanks, levels);
+		int[] baseStages = new int[size];
+		int[] finalStages = new int[size];
+		for (int i = 0; i < size; i++) {
+			int baseRank = (int) baseRanks[i];
+			baseStages[i] = this.stages[baseRank];
+			finalStages[i] = this.stages[this.rankUp[baseRank][(int) Math.max(levels[i], 0)]];
+		}
+		return new ChunkEvaluation(this.conditionIds, this.metricSlots, columns, metBits, baseStages, finalStages);
+	}
+
+	/**
+	 * A table with the same rules that evaluates chunks with the scalar kernel even when
+	 * the Vector API is available.
+	 */
+	public StageDecisionTable withoutVectorization() {
+		return new StageDecisionTable(this.monthEndDate, this.stages, this.metrics, this.conditionIds, this.metricSlots,
+				this.stageRanks, this.minValues, this.maxValues, this.rankChangeLevels, this.rankUp,
+				new ScalarConditionKernel(this.metricSlots, this.stageRanks, this.minValues, this.maxValues,
+						this.rankChangeLevels),
+				this.ruleSetVersion);
+	}
+
+	/**
+	 * Whether {@link #evaluate(List)} uses the Vector API.
+	 */
+	public boolean isVectorized() {
+		return !(this.kernel instanceof ScalarConditionKernel);
+	}
+
+	/**
+	 * Version of the rules, equal for tables compiled from equal rules.
+	 */
+	public long ruleSetVersion() {
+		return this.ruleSetVersion;
+	}
+
+	/**
+	 * The month-end date the rules were loaded for.
+	 */
+	public LocalDate monthEndDate() {
+		return this.monthEndDate;
+	}
+
+	public long monthEndEpochDay() {
+		return this.monthEndEpochDay;
+	}
+
+	/**
+	 * First day the evaluated stage applies: the day after the month-end date.
+	 */
+	public LocalDate validFrom() {
+		return this.validFrom;
+	}
+
+	/**
+	 * Last day the evaluated stage applies: the end of the month following the month-end
+	 * date.
+	 */
+	public LocalDate validTo() {
+		return this.validTo;
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.example.bank.stage;
+
+import java.util.List;
+
+/**
+ * Stage determined for a customer: {@code baseStage} from the stage conditions, and
+ * {@code finalStage} after applying the rank change conditions, as {@link StageCodes}
+ * ordinals.
+ */
+public record StageEvaluation(int baseStage, int finalStage, List<ConditionEvaluation> conditionEvaluations) {
+
+	public String baseStageCode() {
+		return StageCodes.code(this.baseStage);
+	}
+
+	public String finalStageCode() {
+		return StageCodes.code(this.finalStage);
+	}
+
+	public boolean isRankChanged() {
+		return this.baseStage != this.finalStage;
+	}
+
+}
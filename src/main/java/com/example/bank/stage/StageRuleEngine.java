@@ -0,0 +1,50 @@
+package com.example.bank.stage;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicReference;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Job-scoped holder of the {@link StageDecisionTable} for the run's month-end date.
+ * <p>
+ * The rules are loaded once per job execution: eagerly when the {@code monthEndDate} job
+ * parameter is given, otherwise for the month-end date of the first item. Every item of a
+ * run must share that month-end date.
+ */
+@Component
+@JobScope
+public class StageRuleEngine {
+
+	private final StageRuleRepository stageRuleRepository;
+
+	private final AtomicReference<StageDecisionTable> decisionTable = new AtomicReference<>();
+
+	public StageRuleEngine(StageRuleRepository stageRuleRepository,
+			@Value("#{jobParameters['monthEndDate']}") String monthEndDate) {
+		this.stageRuleRepository = stageRuleRepository;
+		if (monthEndDate != null) {
+			this.decisionTable.set(load(LocalDate.parse(monthEndDate)));
+		}
+	}
+
+	public StageDecisionTable decisionTable(LocalDate monthEndDate) {
+		StageDecisionTable decisionTable = this.decisionTable.get();
+		if (decisionTable == null) {
+			// concurrent partitions may both load; only the first one is kept
+			this.decisionTable.compareAndSet(null, load(monthEndDate));
+			decisionTable = this.decisionTable.get();
+		}
+		if (!decisionTable.monthEndDate().equals(monthEndDate)) {
+			throw new IllegalStateException("Month-end date " + monthEndDate
+					+ " differs from the month-end date of this run " + decisionTable.monthEndDate());
+		}
+		return decisionTable;
+	}
+
+	private StageDecisionTable load(LocalDate monthEndDate) {
+		return StageDecisionTable.compile(this.stageRuleRepository.findEffectiveRules(monthEndDate));
+	}
+
+}
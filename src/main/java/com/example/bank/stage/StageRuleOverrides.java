@@ -0,0 +1,129 @@
+package com.example.bank.stage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.core.io.Resource;
+
+/**
+ * Candidate changes to the {@link StageRules}, read from a CSV file with the columns of
+ * {@link StageRuleRepository#findEffectiveRules}:
+ *
+ * <pre>
+ * rule_kind,stage_code,stage_order,rank_up_reachable,condition_id,condition_type,condition_category,min_value,max_value,threshold_value,rank_change_levels
+ * STAGE,DIAMOND,400,false,,,,,,,
+ * CONDITION,DIAMOND,,,,TOTAL_BALANCE_DIAMOND,STAGE,300000000,,,
+ * </pre>
+ *
+ * A {@code STAGE} row replaces the stage with the same code or adds it. A
+ * {@code CONDITION} row replaces the condition with the same {@code condition_id}, or
+ * adds a condition after the existing ones when the id is empty. Empty values take the
+ * column defaults of the schema.
+ */
+public final class StageRuleOverrides {
+
+	private static final int COLUMNS = 11;
+
+	private static final BigDecimal DEFAULT_MAX_VALUE = new BigDecimal("9999999999999.99");
+
+	private final List<StageRules.Stage> stages;
+
+	private final List<StageRules.Condition> conditions;
+
+	// conditions without an id, numbered when applied
+	private final List<StageRules.Condition> addedConditions;
+
+	private StageRuleOverrides(List<StageRules.Stage> stages, List<StageRules.Condition> conditions,
+			List<StageRules.Condition> addedConditions) {
+		this.stages = stages;
+		this.conditions = conditions;
+		this.addedConditions = addedConditions;
+	}
+
+	public static StageRuleOverrides read(Resource resource) throws IOException {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+			return parse(reader.lines().toList());
+		}
+	}
+
+	static StageRuleOverrides parse(List<String> lines) {
+		List<StageRules.Stage> stages = new ArrayList<>();
+		List<StageRules.Condition> conditions = new ArrayList<>();
+		List<StageRules.Condition> addedConditions = new ArrayList<>();
+		// the first line is the header
+		for (int i = 1; i < lines.size(); i++) {
+			String line = lines.get(i).strip();
+			if (line.isEmpty()) {
+				continue;
+			}
+			String[] columns = line.split(",", -1);
+			if (columns.length != COLUMNS) {
+				throw new IllegalArgumentException(
+						"Expected " + COLUMNS + " columns but found " + columns.length + " at line " + (i + 1));
+			}
+			switch (columns[0]) {
+				case "STAGE" -> stages.add(new StageRules.Stage(columns[1], Integer.parseInt(columns[2]),
+						columns[3].isEmpty() || Boolean.parseBoolean(columns[3])));
+				case "CONDITION" -> {
+					StageRules.Condition condition = condition(columns);
+					if (columns[4].isEmpty()) {
+						addedConditions.add(condition);
+					}
+					else {
+						conditions.add(condition);
+					}
+				}
+				default ->
+					throw new IllegalArgumentException("Unsupported rule_kind " + columns[0] + " at line " + (i + 1));
+			}
+		}
+		return new StageRuleOverrides(stages, conditions, addedConditions);
+	}
+
+	private static StageRules.Condition condition(String[] columns) {
+		long id = columns[4].isEmpty() ? 0 : Long.parseLong(columns[4]);
+		if (StageRules.Condition.RANK_CHANGE.equals(columns[6])) {
+			if (columns[9].isEmpty()) {
+				throw new IllegalArgumentException("threshold_value is required for rank change " + columns[5]);
+			}
+			return StageRules.Condition.rankChange(id, columns[5], new BigDecimal(columns[9]),
+					columns[10].isEmpty() ? 1 : Integer.parseInt(columns[10]));
+		}
+		return new StageRules.Condition(id, columns[5], columns[6], columns[1], decimal(columns[7], BigDecimal.ZERO),
+				decimal(columns[8], DEFAULT_MAX_VALUE), null, 0);
+	}
+
+	private static BigDecimal decimal(String value, BigDecimal defaultValue) {
+		return value.isEmpty() ? defaultValue : new BigDecimal(value);
+	}
+
+	/**
+	 * Returns {@code rules} with the overrides applied.
+	 */
+	public StageRules applyTo(StageRules rules) {
+		Map<String, StageRules.Stage> stages = new LinkedHashMap<>();
+		rules.stages().forEach(stage -> stages.put(stage.stageCode(), stage));
+		this.stages.forEach(stage -> stages.put(stage.stageCode(), stage));
+		Map<Long, StageRules.Condition> conditions = new LinkedHashMap<>();
+		rules.conditions().forEach(condition -> conditions.put(condition.id(), condition));
+		this.conditions.forEach(condition -> conditions.put(condition.id(), condition));
+		long nextId = conditions.keySet().stream().mapToLong(Long::longValue).max().orElse(0);
+		for (StageRules.Condition condition : this.addedConditions) {
+			nextId++;
+			conditions.put(nextId,
+					new StageRules.Condition(nextId, condition.conditionType(), condition.conditionCategory(),
+							condition.stageCode(), condition.minValue(), condition.maxValue(),
+							condition.thresholdValue(), condition.rankChangeLevels()));
+		}
+		return new StageRules(rules.effectiveDate(), new ArrayList<>(stages.values()),
+				new ArrayList<>(conditions.values()));
+	}
+
+}
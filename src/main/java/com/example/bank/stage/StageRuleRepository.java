@@ -0,0 +1,75 @@
+package com.example.bank.stage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class StageRuleRepository {
+
+	private final JdbcClient jdbcClient;
+
+	public StageRuleRepository(JdbcClient jdbcClient) {
+		this.jdbcClient = jdbcClient;
+	}
+
+	/**
+	 * Loads all stages and conditions effective on {@code effectiveDate} in one query.
+	 */
+	public StageRules findEffectiveRules(LocalDate effectiveDate) {
+		List<StageRules.Stage> stages = new ArrayList<>();
+		List<StageRules.Condition> conditions = new ArrayList<>();
+		this.jdbcClient.sql("""
+				SELECT
+				    'STAGE' AS rule_kind,
+				    CAST(s.stage_code AS VARCHAR) AS stage_code,
+				    s.stage_order,
+				    s.rank_up_reachable,
+				    CAST(NULL AS BIGINT) AS condition_id,
+				    CAST(NULL AS VARCHAR) AS condition_type,
+				    CAST(NULL AS VARCHAR) AS condition_category,
+				    CAST(NULL AS DECIMAL(15, 2)) AS min_value,
+				    CAST(NULL AS DECIMAL(15, 2)) AS max_value,
+				    CAST(NULL AS DECIMAL(15, 2)) AS threshold_value,
+				    CAST(NULL AS INT) AS rank_change_levels
+				FROM
+				    stages s
+				WHERE
+				    :effectiveDate BETWEEN s.valid_from AND s.valid_to
+				UNION ALL
+				SELECT
+				    'CONDITION',
+				    CAST(sc.stage_code AS VARCHAR),
+				    NULL,
+				    NULL,
+				    c.id,
+				    CAST(c.condition_type AS VARCHAR),
+				    CAST(c.condition_category AS VARCHAR),
+				    sc.min_value,
+				    sc.max_value,
+				    rc.threshold_value,
+				    rc.rank_change_levels
+				FROM
+				    conditions c
+				    LEFT JOIN stage_conditions sc ON sc.id = c.id
+				    LEFT JOIN rank_change_conditions rc ON rc.id = c.id
+				WHERE
+				    :effectiveDate BETWEEN c.valid_from AND c.valid_to
+				""").param("effectiveDate", effectiveDate).query(rs -> {
+			if ("STAGE".equals(rs.getString("rule_kind"))) {
+				stages.add(new StageRules.Stage(rs.getString("stage_code"), rs.getInt("stage_order"),
+						rs.getBoolean("rank_up_reachable")));
+			}
+			else {
+				conditions.add(new StageRules.Condition(rs.getLong("condition_id"), rs.getString("condition_type"),
+						rs.getString("condition_category"), rs.getString("stage_code"), rs.getBigDecimal("min_value"),
+						rs.getBigDecimal("max_value"), rs.getBigDecimal("threshold_value"),
+						rs.getInt("rank_change_levels")));
+			}
+		});
+		return new StageRules(effectiveDate, stages, conditions);
+	}
+
+}
@@ -0,0 +1,45 @@
+package com.example.bank.stage;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The rows of {@code stages}, {@code conditions}, {@code stage_conditions} and
+ * {@code rank_change_conditions} effective on {@code effectiveDate}.
+ */
+public record StageRules(LocalDate effectiveDate, List<Stage> stages, List<Condition> conditions) {
+
+	public StageRules {
+		stages = List.copyOf(stages);
+		conditions = List.copyOf(conditions);
+	}
+
+	public record Stage(String stageCode, int stageOrder, boolean rankUpReachable) {
+	}
+
+	/**
+	 * A condition of category {@code STAGE} (with {@code stageCode}, {@code minValue} and
+	 * {@code maxValue}) or {@code RANK_CHANGE} (with {@code thresholdValue} and
+	 * {@code rankChangeLevels}).
+	 */
+	public record Condition(long id, String conditionType, String conditionCategory, String stageCode,
+			BigDecimal minValue, BigDecimal maxValue, BigDecimal thresholdValue, int rankChangeLevels) {
+
+		public static final String STAGE = "STAGE";
+
+		public static final String RANK_CHANGE = "RANK_CHANGE";
+
+		public static Condition stage(long id, String conditionType, String stageCode, BigDecimal minValue,
+				BigDecimal maxValue) {
+			return new Condition(id, conditionType, STAGE, stageCode, minValue, maxValue, null, 0);
+		}
+
+		public static Condition rankChange(long id, String conditionType, BigDecimal thresholdValue,
+				int rankChangeLevels) {
+			return new Condition(id, conditionType, RANK_CHANGE, null, null, null, thresholdValue, rankChangeLevels);
+		}
+
+	}
+
+}
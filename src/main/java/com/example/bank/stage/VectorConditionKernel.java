@@ -0,0 +1,71 @@
+package com.example.bank.stage;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ConditionKernel} evaluating as many items at once as fit in the preferred vector
+ * shape, e.g. 8 on AVX-512. Each condition is one or two lane-wise comparisons whose mask
+ * sets the condition's bit and raises the base rank or adds the rank change levels, so
+ * there is no branch per item. Items that do not fill a whole vector are evaluated by the
+ * {@link ScalarConditionKernel}.
+ * <p>
+ * Only loaded by {@link ConditionKernel#create} when the {@code jdk.incubator.vector}
+ * module is enabled.
+ */
+final class VectorConditionKernel implements ConditionKernel {
+
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+	private final int[] metricSlots;
+
+	private final int[] stageRanks;
+
+	private final long[] minValues;
+
+	private final long[] maxValues;
+
+	private final int[] rankChangeLevels;
+
+	private final ScalarConditionKernel tail;
+
+	VectorConditionKernel(int[] metricSlots, int[] stageRanks, long[] minValues, long[] maxValues,
+			int[] rankChangeLevels, ScalarConditionKernel tail) {
+		this.metricSlots = metricSlots;
+		this.stageRanks = stageRanks;
+		this.minValues = minValues;
+		this.maxValues = maxValues;
+		this.rankChangeLevels = rankChangeLevels;
+		this.tail = tail;
+	}
+
+	@Override
+	public void evaluate(long[][] columns, int from, int to, long[] metBits, long[] baseRanks, long[] levels) {
+		int i = from;
+		for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+			LongVector bits = LongVector.zero(SPECIES);
+			LongVector baseRank = LongVector.zero(SPECIES);
+			LongVector level = LongVector.zero(SPECIES);
+			for (int c = 0; c < this.metricSlots.length; c++) {
+				LongVector value = LongVector.fromArray(SPECIES, columns[this.metricSlots[c]], i);
+				VectorMask<Long> met = value.compare(VectorOperators.GE, this.minValues[c]);
+				int stageRank = this.stageRanks[c];
+				if (stageRank >= 0) {
+					met = met.and(value.compare(VectorOperators.LT, this.maxValues[c]));
+					baseRank = baseRank.lanewise(VectorOperators.MAX, stageRank, met);
+				}
+				else {
+					level = level.lanewise(VectorOperators.ADD, this.rankChangeLevels[c], met);
+				}
+				bits = bits.lanewise(VectorOperators.OR, 1L << c, met);
+			}
+			bits.intoArray(metBits, i);
+			baseRank.intoArray(baseRanks, i);
+			level.intoArray(levels, i);
+		}
+		this.tail.evaluate(columns, i, to, metBits, baseRanks, levels);
+	}
+
+}
@@ -0,0 +1,3 @@
+-- Whether rank change conditions may move a customer into this stage.
+-- A stage that can only be earned through its own stage conditions (such as a DIAMOND stage) sets this to FALSE.
+ALTER TABLE stages ADD COLUMN rank_up_reachable BOOLEAN NOT NULL DEFAULT TRUE;
@@ -0,0 +1,15 @@
+-- Staging table the SQL execution mode copies the input file into.
+-- UNLOGGED because its content is transient and can always be reloaded from the input file.
+CREATE UNLOGGED TABLE bank_account_stage_inputs (
+    line_number BIGINT GENERATED ALWAYS AS IDENTITY,            -- Position of the record in the input file (1 = first record)
+    customer_id VARCHAR(50) NOT NULL,                           -- Unique customer identifier
+    current_stage_code stage_code_enum NOT NULL,                -- Customer's current stage
+    month_end_date DATE NOT NULL,                               -- Month-end date of the balances
+    total_balance DECIMAL(15, 2) NOT NULL,                      -- Total account balance at month-end
+    foreign_currency_balance DECIMAL(15, 2) NOT NULL,           -- Foreign currency deposit balance
+    investment_trust_balance DECIMAL(15, 2) NOT NULL,           -- Investment trust balance
+    monthly_foreign_currency_purchase DECIMAL(15, 2) NOT NULL,  -- Monthly FX purchase amount
+    monthly_investment_trust_purchase DECIMAL(15, 2) NOT NULL,  -- Monthly investment purchase
+    housing_loan_balance DECIMAL(15, 2) NOT NULL,               -- Housing loan balance
+    monthly_fx_trading_volume INT NOT NULL                      -- Monthly FX trading volume
+);
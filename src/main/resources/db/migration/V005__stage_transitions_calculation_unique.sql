@@ -0,0 +1,3 @@
+-- A calculation records at most one stage transition.
+-- The constraint lets the idempotent write mode upsert transitions of a calculation that is written again.
+ALTER TABLE stage_transitions ADD CONSTRAINT uq_transition_calculation UNIQUE (calculation_id);
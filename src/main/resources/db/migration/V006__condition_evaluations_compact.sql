@@ -0,0 +1,29 @@
+-- Compact storage of the condition evaluations of a calculation, written by the compact write mode.
+-- One row per calculation replaces one condition_evaluation_results row per condition.
+CREATE TABLE condition_evaluations_compact (
+    calculation_id BIGINT PRIMARY KEY,                       -- Reference to customer_stage_calculations
+    condition_ids BIGINT[] NOT NULL,                         -- Evaluated conditions in ascending id order
+    met_bits BIGINT NOT NULL DEFAULT 0,                      -- Bit i is set if condition_ids[i + 1] was met
+    evaluated_values DECIMAL(15, 2)[] NOT NULL,              -- Actual values evaluated, in the order of condition_ids
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, -- Record creation timestamp
+
+    -- Foreign key
+    CONSTRAINT fk_compact_calculation FOREIGN KEY (calculation_id) REFERENCES customer_stage_calculations(id),
+
+    -- A bitmask holds at most 64 conditions
+    CONSTRAINT ck_compact_conditions CHECK (cardinality(condition_ids) <= 64
+        AND cardinality(condition_ids) = cardinality(evaluated_values))
+);
+
+-- The condition evaluations of both storages in the normalized shape of condition_evaluation_results.
+CREATE VIEW condition_evaluation_results_view AS
+SELECT calculation_id, condition_id, is_met, evaluated_value, created_at
+FROM condition_evaluation_results
+UNION ALL
+SELECT c.calculation_id,
+       e.condition_id,
+       ((c.met_bits >> (e.ordinality - 1)::INT) & 1) = 1,
+       e.evaluated_value,
+       c.created_at
+FROM condition_evaluations_compact c
+CROSS JOIN LATERAL unnest(c.condition_ids, c.evaluated_values) WITH ORDINALITY AS e(condition_id, evaluated_value, ordinality);
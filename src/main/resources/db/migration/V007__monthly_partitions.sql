@@ -0,0 +1,96 @@
+-- Range partitions customer_stage_calculations by calculation_date and stage_transitions by transition_date,
+-- one partition per month. The job creates the partitions of the month it writes before its steps start,
+-- and can detach partitions older than a retention window into the archive schema.
+--
+-- Primary keys and unique constraints of a partitioned table must include the partition key, so they gain
+-- calculation_date or transition_date. A foreign key cannot reference customer_stage_calculations(id) alone
+-- any more; the writers insert the calculations and the rows referencing them in the same transaction.
+
+-- Creates the partition of the month of month_date if it does not exist yet, and returns its name.
+-- Indexes and constraints of the partitioned table are created on the new partition as well.
+CREATE FUNCTION create_monthly_partition(parent_table TEXT, month_date DATE) RETURNS TEXT AS $$
+DECLARE
+    month_start DATE := date_trunc('month', month_date)::DATE;
+    partition_name TEXT := parent_table || to_char(month_start, '"_y"YYYY"m"MM');
+BEGIN
+    EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+        partition_name, parent_table, month_start, (month_start + INTERVAL '1 month')::DATE);
+    RETURN partition_name;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Schema the retention step moves detached partitions into
+CREATE SCHEMA archive;
+
+ALTER TABLE condition_evaluation_results DROP CONSTRAINT fk_calculation;
+ALTER TABLE condition_evaluations_compact DROP CONSTRAINT fk_compact_calculation;
+ALTER TABLE stage_transitions DROP CONSTRAINT fk_calculation;
+
+-- Keep the id sequences when the unpartitioned tables are dropped
+ALTER SEQUENCE customer_stage_calculations_id_seq OWNED BY NONE;
+ALTER SEQUENCE stage_transitions_id_seq OWNED BY NONE;
+
+ALTER TABLE customer_stage_calculations RENAME TO customer_stage_calculations_unpartitioned;
+ALTER TABLE customer_stage_calculations_unpartitioned DROP CONSTRAINT customer_stage_calculations_pkey;
+ALTER TABLE customer_stage_calculations_unpartitioned DROP CONSTRAINT uq_customer_valid;
+ALTER TABLE stage_transitions RENAME TO stage_transitions_unpartitioned;
+ALTER TABLE stage_transitions_unpartitioned DROP CONSTRAINT stage_transitions_pkey;
+ALTER TABLE stage_transitions_unpartitioned DROP CONSTRAINT uq_transition_calculation;
+DROP INDEX idx_customer_date;
+
+CREATE TABLE customer_stage_calculations (
+    id INT NOT NULL DEFAULT nextval('customer_stage_calculations_id_seq'), -- Auto-increment ID for easy reference
+    customer_id VARCHAR(50) NOT NULL,                                    -- Unique customer identifier
+    calculation_date DATE NOT NULL,                                      -- Date when calculation was performed (typically month-end), partition key
+    valid_from DATE NOT NULL,                                            -- First date when stage is valid
+    valid_to DATE NOT NULL,                                              -- Last date when stage is valid
+    current_stage_code stage_code_enum NOT NULL,                         -- Customer's current stage
+    final_stage_code stage_code_enum NOT NULL,                           -- Final stage after applying rank changes
+    total_balance DECIMAL(15, 2) NOT NULL DEFAULT 0,                     -- Total account balance at month-end
+    foreign_currency_balance DECIMAL(15, 2) NOT NULL DEFAULT 0,          -- Foreign currency deposit balance
+    investment_trust_balance DECIMAL(15, 2) NOT NULL DEFAULT 0,          -- Investment trust balance
+    monthly_foreign_currency_purchase DECIMAL(15, 2) NOT NULL DEFAULT 0, -- Monthly FX purchase amount
+    monthly_investment_trust_purchase DECIMAL(15, 2) NOT NULL DEFAULT 0, -- Monthly investment purchase
+    housing_loan_balance DECIMAL(15, 2) NOT NULL DEFAULT 0,              -- Housing loan balance
+    monthly_fx_trading_volume INT NOT NULL DEFAULT 0,                    -- Monthly FX trading volume
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,             -- Record creation timestamp
+
+    -- Primary Key
+    PRIMARY KEY (id, calculation_date),
+
+    -- Ensure unique combination
+    CONSTRAINT uq_customer_valid UNIQUE (customer_id, valid_from, valid_to, calculation_date)
+) PARTITION BY RANGE (calculation_date);
+
+CREATE TABLE stage_transitions (
+    id INT NOT NULL DEFAULT nextval('stage_transitions_id_seq'), -- Auto-increment ID for easy reference
+    customer_id VARCHAR(50) NOT NULL,                            -- Unique customer identifier
+    calculation_id BIGINT NOT NULL,                              -- Reference to customer_stage_calculations
+    previous_stage_code stage_code_enum NOT NULL,                -- Previous stage code
+    current_stage_code stage_code_enum NOT NULL,                 -- Current stage code
+    transition_date DATE NOT NULL,                               -- Date when transition occurs, partition key
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,     -- Record creation timestamp
+
+    -- Primary Key
+    PRIMARY KEY (id, transition_date),
+
+    -- A calculation records at most one stage transition
+    CONSTRAINT uq_transition_calculation UNIQUE (calculation_id, transition_date)
+) PARTITION BY RANGE (transition_date);
+
+CREATE INDEX idx_customer_date ON stage_transitions(customer_id, transition_date);
+
+ALTER SEQUENCE customer_stage_calculations_id_seq OWNED BY customer_stage_calculations.id;
+ALTER SEQUENCE stage_transitions_id_seq OWNED BY stage_transitions.id;
+
+-- Move the existing rows into their monthly partitions
+SELECT create_monthly_partition('customer_stage_calculations', month_date)
+FROM (SELECT DISTINCT date_trunc('month', calculation_date)::DATE AS month_date FROM customer_stage_calculations_unpartitioned) months;
+SELECT create_monthly_partition('stage_transitions', month_date)
+FROM (SELECT DISTINCT date_trunc('month', transition_date)::DATE AS month_date FROM stage_transitions_unpartitioned) months;
+
+INSERT INTO customer_stage_calculations SELECT * FROM customer_stage_calculations_unpartitioned;
+INSERT INTO stage_transitions SELECT * FROM stage_transitions_unpartitioned;
+
+DROP TABLE customer_stage_calculations_unpartitioned;
+DROP TABLE stage_transitions_unpartitioned;
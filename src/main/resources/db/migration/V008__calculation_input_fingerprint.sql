@@ -0,0 +1,10 @@
+-- Fingerprint of the evaluated input columns of a calculation and of the rules it was evaluated with.
+-- The incremental mode carries a calculation forward into the next month when the customer's next input
+-- has the same fingerprint. Calculations written without one, such as by the sql execution mode, are NULL.
+ALTER TABLE customer_stage_calculations ADD COLUMN input_fingerprint BIGINT;
+
+-- Looks up the fingerprints of the previous month's calculations of a chunk of customers.
+-- Only calculations that recorded no stage transition are carried forward, so only those are indexed.
+CREATE INDEX idx_calculation_fingerprint ON customer_stage_calculations (customer_id, calculation_date)
+    INCLUDE (input_fingerprint)
+    WHERE input_fingerprint IS NOT NULL AND current_stage_code = final_stage_code;
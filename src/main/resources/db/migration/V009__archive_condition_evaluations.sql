@@ -0,0 +1,8 @@
+-- condition_evaluation_results and condition_evaluations_compact are not partitioned, so the retention step
+-- moves the condition evaluations of the calculations it archives into these tables of the archive schema,
+-- in the same transaction as it detaches their partitions.
+CREATE TABLE archive.condition_evaluation_results (LIKE condition_evaluation_results);
+CREATE INDEX idx_archive_evaluation_calculation ON archive.condition_evaluation_results (calculation_id);
+
+CREATE TABLE archive.condition_evaluations_compact (LIKE condition_evaluations_compact);
+CREATE INDEX idx_archive_compact_calculation ON archive.condition_evaluations_compact (calculation_id);
@@ -1,28 +1,53 @@
 package com.example.bank;
 
+import com.example.bank.job.BankAccountStageMetrics;
+import com.example.bank.lookup.CustomerStageLookup;
+import com.example.bank.lookup.CustomerStageLookupRefresher;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParameter;
 import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.test.JobLauncherTestUtils;
 import org.springframework.batch.test.context.SpringBatchTest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.jdbc.core.simple.JdbcClient;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 @Import(TestcontainersConfiguration.class)
-@SpringBootTest(properties = { "spring.batch.job.enabled=false", "spring.docker.compose.enabled=false" })
+@SpringBootTest(properties = { "spring.batch.job.enabled=false", "spring.docker.compose.enabled=false",
+		"bank.worker.enabled=true", "bank.worker.concurrency=2", "bank.worker.poll-interval=100ms" })
 @SpringBatchTest
 class BankAccountStageBatchApplicationTests {
 
@@ -36,11 +61,32 @@ class BankAccountStageBatchApplicationTests {
 	@Autowired
 	JdbcClient jdbcClient;
 
-	@Test
-	void allUseCases() throws Exception {
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	CustomerStageLookup customerStageLookup;
+
+	@Autowired
+	JobExplorer jobExplorer;
+
+	@BeforeEach
+	void truncate() {
+		this.jdbcClient.sql("""
+				TRUNCATE TABLE customer_stage_calculations, condition_evaluation_results, condition_evaluations_compact,
+				stage_transitions RESTART IDENTITY
+				""").update();
+	}
+
+	@ParameterizedTest
+	@CsvSource({ "chunk,insert,0", "chunk,compact,0", "chunk,copy,0", "chunk,insert,4", "sql,insert,0" })
+	void allUseCases(String executionMode, String writeMode, long asyncConcurrency) throws Exception {
 		this.jobLauncherTestUtils.setJob(this.job);
 		JobExecution jobExecution = this.jobLauncherTestUtils.launchJob(new JobParameters(Map.of("inputFile",
-				new JobParameter<>("classpath:bank_account_stage_usecase_data.csv", String.class))));
+				new JobParameter<>("classpath:bank_account_stage_usecase_data.csv", String.class), "executionMode",
+				new JobParameter<>(executionMode, String.class), "writeMode",
+				new JobParameter<>(writeMode, String.class), "asyncConcurrency",
+				new JobParameter<>(asyncConcurrency, Long.class), "chunkSize", new JobParameter<>(3L, Long.class))));
 		assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
 		assertThat(jobExecution.getExitStatus()).isEqualTo(ExitStatus.COMPLETED);
 
@@ -256,9 +302,10 @@ class BankAccountStageBatchApplicationTests {
 				    is_met,
 				    evaluated_value
 				FROM
-				    condition_evaluation_results
+				    condition_evaluation_results_view
 				ORDER BY
-				    id
+				    calculation_id,
+				    condition_id
 				""").query().listOfRows();
 
 		assertThat(conditionEvaluationResults).hasSize(77)
@@ -374,4 +421,537 @@ class BankAccountStageBatchApplicationTests {
 		;
 	}
 
+	@ParameterizedTest
+	@ValueSource(strings = { "trust-csv", "trust-db", "fail" })
+	void priorStagePolicies(String priorStagePolicy) throws Exception {
+		// the previous month's final stages: CUS001 is not NONE as in the input file,
+		// CUS003 is SILVER as in the input file
+		this.jdbcClient.sql("SELECT create_monthly_partition('customer_stage_calculations', DATE '2025-03-31')")
+			.query()
+			.singleValue();
+		this.jdbcClient.sql("""
+				INSERT INTO customer_stage_calculations (id, customer_id, calculation_date, valid_from, valid_to,
+				    current_stage_code, final_stage_code)
+				VALUES (-1, 'CUS001', DATE '2025-03-31', DATE '2025-04-01', DATE '2025-04-30', 'SILVER', 'SILVER'),
+				       (-3, 'CUS003', DATE '2025-03-31', DATE '2025-04-01', DATE '2025-04-30', 'NONE', 'SILVER')
+				""").update();
+
+		double mismatches = count(BankAccountStageMetrics.PRIOR_STAGE_MISMATCHES);
+		this.jobLauncherTestUtils.setJob(this.job);
+		JobExecution jobExecution = this.jobLauncherTestUtils.launchJob(new JobParameters(
+				Map.of("inputFile", new JobParameter<>("classpath:bank_account_stage_usecase_data.csv", String.class),
+						"priorStagePolicy", new JobParameter<>(priorStagePolicy, String.class))));
+
+		assertThat(count(BankAccountStageMetrics.PRIOR_STAGE_MISMATCHES) - mismatches).isEqualTo(1);
+		List<Map<String, Object>> stageTransitions = this.jdbcClient
+			.sql("SELECT previous_stage_code, current_stage_code FROM stage_transitions WHERE customer_id = 'CUS001'")
+			.query()
+			.listOfRows();
+		switch (priorStagePolicy) {
+			case "trust-csv" -> {
+				assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+				assertThat(stageTransitions).isEmpty();
+			}
+			case "trust-db" -> {
+				assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+				assertThat(stageTransitions)
+					.containsExactly(Map.of("previous_stage_code", "SILVER", "current_stage_code", "NONE"));
+			}
+			default -> assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.FAILED);
+		}
+		this.jdbcClient.sql("DROP TABLE customer_stage_calculations_y2025m03").update();
+	}
+
+	@Test
+	void upsertRerunsSameInput() throws Exception {
+		this.jobLauncherTestUtils.setJob(this.job);
+		for (long run = 1; run <= 2; run++) {
+			JobExecution jobExecution = this.jobLauncherTestUtils.launchJob(new JobParameters(Map.of("inputFile",
+					new JobParameter<>("classpath:bank_account_stage_usecase_data.csv", String.class), "writeMode",
+					new JobParameter<>("upsert", String.class), "run", new JobParameter<>(run, Long.class))));
+			assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+		}
+
+		assertThat(this.jdbcClient.sql("SELECT COUNT(*) FROM customer_stage_calculations").query(Long.class).single())
+			.isEqualTo(11);
+		assertThat(this.jdbcClient.sql("SELECT COUNT(*) FROM condition_evaluation_results_view")
+			.query(Long.class)
+			.single()).isEqualTo(77);
+		assertThat(this.jdbcClient.sql("""
+				SELECT COUNT(*), COUNT(DISTINCT (customer_id, calculation_id)) FROM stage_transitions
+				""").query((rs, rowNum) -> rs.getLong(1) + ":" + rs.getLong(2)).single()).isEqualTo("10:10");
+	}
+
+	@Test
+	void partitionedStepMatchesSingleStep() throws Exception {
+		this.jobLauncherTestUtils.setJob(this.job);
+		JobExecution single = this.jobLauncherTestUtils.launchJob(new JobParameters(
+				Map.of("inputFile", new JobParameter<>("classpath:bank_account_stage_usecase_data.csv", String.class),
+						"chunkSize", new JobParameter<>(2L, Long.class))));
+		assertThat(single.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+		List<List<Map<String, Object>>> expected = results();
+		truncate();
+
+		JobExecution partitioned = this.jobLauncherTestUtils.launchJob(new JobParameters(Map.of("inputFile",
+				new JobParameter<>("classpath:bank_account_stage_usecase_data.csv", String.class), "chunkSize",
+				new JobParameter<>(2L, Long.class), "gridSize", new JobParameter<>(3L, Long.class))));
+		assertThat(partitioned.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+		assertThat(partitioned.getStepExecutions())
+			.filteredOn(stepExecution -> stepExecution.getStepName().startsWith("BankAccountStageWorker:"))
+			.hasSize(3)
+			.extracting(StepExecution::getStatus)
+			.containsOnly(BatchStatus.COMPLETED);
+		assertThat(results()).isEqualTo(expected);
+	}
+
+	/**
+	 * The calculations, condition evaluations and transitions of the customers, without
+	 * the ids that depend on the order in which the chunks are written.
+	 */
+	private List<List<Map<String, Object>>> results() {
+		return List.of(
+				this.jdbcClient
+					.sql("""
+							SELECT customer_id, calculation_date, valid_from, valid_to, current_stage_code, final_stage_code,
+							    total_balance, foreign_currency_balance, investment_trust_balance, monthly_foreign_currency_purchase,
+							    monthly_investment_trust_purchase, housing_loan_balance, monthly_fx_trading_volume
+							FROM customer_stage_calculations
+							ORDER BY customer_id
+							""")
+					.query()
+					.listOfRows(),
+				this.jdbcClient
+					.sql("""
+							SELECT c.customer_id, e.condition_id, e.is_met, e.evaluated_value
+							FROM condition_evaluation_results_view e JOIN customer_stage_calculations c ON c.id = e.calculation_id
+							ORDER BY c.customer_id, e.condition_id
+							""")
+					.query()
+					.listOfRows(),
+				this.jdbcClient.sql("""
+						SELECT t.customer_id, t.previous_stage_code, t.current_stage_code, t.transition_date
+						FROM stage_transitions t JOIN customer_stage_calculations c ON c.id = t.calculation_id
+						    AND c.customer_id = t.customer_id
+						ORDER BY t.customer_id
+						""").query().listOfRows());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "chunk", "sql" })
+	void rejectsDuplicateCustomers(String executionMode, @TempDir Path dir) throws Exception {
+		List<String> lines = Files
+			.readAllLines(new ClassPathResource("bank_account_stage_usecase_data.csv").getFile().toPath());
+		List<String> input = new ArrayList<>(lines);
+		input.add(lines.get(3).replace("SILVER", "GOLD"));
+		Files.write(dir.resolve("input.csv"), input);
+
+		this.jobLauncherTestUtils.setJob(this.job);
+		JobExecution jobExecution = this.jobLauncherTestUtils.launchJob(new JobParameters(
+				Map.of("inputFile", new JobParameter<>("file:" + dir.resolve("input.csv"), String.class),
+						"executionMode", new JobParameter<>(executionMode, String.class), "duplicateRejectFile",
+						new JobParameter<>("file:" + dir.resolve("duplicates.csv"), String.class))));
+		assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+		assertThat(this.jdbcClient.sql("SELECT customer_id FROM customer_stage_calculations ORDER BY customer_id")
+			.query(String.class)
+			.list()).hasSize(10).doesNotContain("CUS003");
+		assertThat(this.jdbcClient.sql("SELECT MAX(id) FROM customer_stage_calculations").query(Long.class).single())
+			.isLessThanOrEqualTo(this.jdbcClient.sql("SELECT last_value FROM customer_stage_calculations_id_seq")
+				.query(Long.class)
+				.single());
+		assertThat(Files.readAllLines(dir.resolve("duplicates.csv"))).containsExactly(
+				"file,line_number,reason," + lines.get(0), "input.csv,4,duplicate customer_id," + lines.get(3),
+				"input.csv,13,duplicate customer_id," + input.get(12));
+	}
+
+	@ParameterizedTest
+	@CsvSource({ "chunk,flatfile,1", "chunk,mapped,1", "sql,flatfile,1", "chunk,flatfile,3", "chunk,mapped,3" })
+	void rejectsInvalidLines(String executionMode, String reader, long gridSize, @TempDir Path dir) throws Exception {
+		List<String> lines = Files
+			.readAllLines(new ClassPathResource("bank_account_stage_usecase_data.csv").getFile().toPath());
+		List<String> input = new ArrayList<>(lines);
+		input.set(4, lines.get(4).replace("GOLD", "DIAMOND"));
+		input.set(7, lines.get(7).replace("2025-04-30", "2025-04-31"));
+		input.add("CUS012,NONE,2025-04-30,12345678901234,0,0,0,0,0,0");
+		Files.write(dir.resolve("input.csv"), input);
+
+		this.jobLauncherTestUtils.setJob(this.job);
+		JobExecution jobExecution = this.jobLauncherTestUtils.launchJob(new JobParameters(Map.of("inputFile",
+				new JobParameter<>("file:" + dir.resolve("input.csv"), String.class), "executionMode",
+				new JobParameter<>(executionMode, String.class), "reader", new JobParameter<>(reader, String.class),
+				"rejectFile", new JobParameter<>("file:" + dir.resolve("rejects.csv"), String.class), "gridSize",
+				new JobParameter<>(gridSize, Long.class))));
+		assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+		assertThat(this.jdbcClient.sql("SELECT customer_id FROM customer_stage_calculations ORDER BY customer_id")
+			.query(String.class)
+			.list()).hasSize(9).doesNotContain("CUS004", "CUS007", "CUS012");
+		assertThat(Files.readAllLines(dir.resolve("rejects.csv"))).hasSize(4)
+			.first()
+			.isEqualTo("file,line_number,reason," + lines.get(0));
+		List<String> rejects = Files.readAllLines(dir.resolve("rejects.csv")).subList(1, 4);
+		assertThat(rejects).extracting(l -> l.split(",", 4)[1]).containsExactlyInAnyOrder("5", "8", "13");
+		// the line numbers are those of the file, also for the partitions after the first
+		assertThat(rejects)
+			.allSatisfy(l -> assertThat(l).endsWith("," + input.get(Integer.parseInt(l.split(",", 4)[1]) - 1)));
+	}
+
+	@Test
+	void readsCompressedInputFiles(@TempDir Path dir) throws Exception {
+		List<String> lines = Files
+			.readAllLines(new ClassPathResource("bank_account_stage_usecase_data.csv").getFile().toPath());
+		String header = lines.get(0);
+		Path shards = Files.createDirectory(dir.resolve("shards"));
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(shards.resolve("shard-0.csv.gz")))) {
+			out.write(String.join("\n", header, lines.get(1), lines.get(2), lines.get(3), lines.get(4)).getBytes());
+		}
+		// CUS006 has an unknown stage
+		try (OutputStream out = new ZstdOutputStream(Files.newOutputStream(shards.resolve("shard-1.csv.zst")))) {
+			out.write(String
+				.join("\n", header, lines.get(5), lines.get(6).replace("CUS006,NONE", "CUS006,DIAMOND"), lines.get(7),
+						lines.get(8))
+				.getBytes());
+		}
+		// CUS003 appears in two files
+		Files.write(shards.resolve("shard-2.csv"),
+				List.of(header, lines.get(9), lines.get(10), lines.get(11), lines.get(3).replace("SILVER", "GOLD")));
+
+		this.jobLauncherTestUtils.setJob(this.job);
+		JobExecution jobExecution = this.jobLauncherTestUtils
+			.launchJob(new JobParameters(Map.of("inputFiles", new JobParameter<>("file:" + shards, String.class),
+					"gridSize", new JobParameter<>(2L, Long.class), "chunkSize", new JobParameter<>(2L, Long.class),
+					"rejectFile", new JobParameter<>("file:" + dir.resolve("rejects.csv"), String.class),
+					"duplicateRejectFile", new JobParameter<>("file:" + dir.resolve("duplicates.csv"), String.class))));
+		assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+		assertThat(jobExecution.getStepExecutions())
+			.filteredOn(stepExecution -> stepExecution.getStepName().startsWith("BankAccountStageFileWorker:"))
+			.hasSize(3)
+			.extracting(StepExecution::getStatus)
+			.containsOnly(BatchStatus.COMPLETED);
+		assertThat(jobExecution.getStepExecutions())
+			.filteredOn(stepExecution -> stepExecution.getStepName().equals("BankAccountStageMultiFile"))
+			.singleElement()
+			.extracting(StepExecution::getWriteCount)
+			.isEqualTo(9L);
+		// the results of the use cases, without the rejected and the duplicate customers
+		assertThat(this.jdbcClient.sql("""
+				SELECT customer_id, final_stage_code FROM customer_stage_calculations ORDER BY customer_id
+				""").query((rs, rowNum) -> rs.getString(1) + ":" + rs.getString(2)).list()).containsExactly(
+				"CUS001:NONE", "CUS002:SILVER", "CUS004:SILVER", "CUS005:GOLD", "CUS007:SILVER", "CUS008:PLATINUM",
+				"CUS009:SILVER", "CUS010:SILVER", "CUS011:PLATINUM");
+		assertThat(Files.readAllLines(dir.resolve("rejects.csv"))).hasSize(2)
+			.first()
+			.isEqualTo("file,line_number,reason," + header);
+		assertThat(Files.readAllLines(dir.resolve("rejects.csv")).get(1).split(",", 4)).startsWith("shard-1.csv.zst",
+				"3");
+		assertThat(Files.readAllLines(dir.resolve("duplicates.csv"))).containsExactlyInAnyOrder(
+				"file,line_number,reason," + header, "shard-0.csv.gz,4,duplicate customer_id," + lines.get(3),
+				"shard-2.csv,5,duplicate customer_id," + lines.get(3).replace("SILVER", "GOLD"));
+	}
+
+	@Test
+	void rejectFileCannotBeCombinedWithAsyncConcurrency(@TempDir Path dir) {
+		this.jobLauncherTestUtils.setJob(this.job);
+		assertThatExceptionOfType(JobParametersInvalidException.class)
+			.isThrownBy(() -> this.jobLauncherTestUtils.launchJob(new JobParameters(Map.of("inputFile",
+					new JobParameter<>("classpath:bank_account_stage_usecase_data.csv", String.class),
+					"asyncConcurrency", new JobParameter<>(4L, Long.class), "rejectFile",
+					new JobParameter<>("file:" + dir.resolve("rejects.csv"), String.class)))));
+		assertThat(this.jdbcClient.sql("SELECT COUNT(*) FROM customer_stage_calculations").query(Long.class).single())
+			.isZero();
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "range", "customer" })
+	void remotePartitions(String partitionBy) throws Exception {
+		// the partitions are run by the worker polling the job repository in this JVM
+		this.jobLauncherTestUtils.setJob(this.job);
+		JobExecution jobExecution = this.jobLauncherTestUtils.launchJob(new JobParameters(
+				Map.of("inputFile", new JobParameter<>("classpath:bank_account_stage_usecase_data.csv", String.class),
+						"executionMode", new JobParameter<>("remote", String.class), "partitionBy",
+						new JobParameter<>(partitionBy, String.class), "gridSize", new JobParameter<>(3L, Long.class),
+						"pollIntervalMillis", new JobParameter<>(100L, Long.class), "claimTimeoutMillis",
+						new JobParameter<>(30000L, Long.class), "heartbeatTimeoutMillis",
+						new JobParameter<>(30000L, Long.class))));
+		assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+		assertThat(jobExecution.getStepExecutions())
+			.filteredOn(stepExecution -> stepExecution.getStepName().equals("BankAccountStageRemote"))
+			.singleElement()
+			.satisfies(stepExecution -> {
+				assertThat(stepExecution.getReadCount()).isEqualTo(11);
+				assertThat(stepExecution.getWriteCount()).isEqualTo(11);
+			});
+		assertThat(this.jdbcClient.sql("""
+				SELECT customer_id, final_stage_code FROM customer_stage_calculations ORDER BY customer_id
+				""").query((rs, rowNum) -> rs.getString(1) + ":" + rs.getString(2)).list()).containsExactly(
+				"CUS001:NONE", "CUS002:SILVER", "CUS003:GOLD", "CUS004:SILVER", "CUS005:GOLD", "CUS006:SILVER",
+				"CUS007:SILVER", "CUS008:PLATINUM", "CUS009:SILVER", "CUS010:SILVER", "CUS011:PLATINUM");
+		assertThat(this.jdbcClient.sql("SELECT COUNT(*) FROM stage_transitions").query(Long.class).single())
+			.isEqualTo(10);
+	}
+
+	@Test
+	void simulatesCandidateRulesWithoutWriting(@TempDir Path dir) throws Exception {
+		Files.write(dir.resolve("rules.csv"), List.of(
+				"rule_kind,stage_code,stage_order,rank_up_reachable,condition_id,condition_type,condition_category,min_value,max_value,threshold_value,rank_change_levels",
+				"STAGE,DIAMOND,400,false,,,,,,,", "CONDITION,DIAMOND,,,,TOTAL_BALANCE_DIAMOND,STAGE,13000000,,,",
+				"CONDITION,SILVER,,,1,TOTAL_BALANCE,STAGE,2000000,,,"));
+
+		this.jobLauncherTestUtils.setJob(this.job);
+		JobExecution jobExecution = this.jobLauncherTestUtils.launchJob(new JobParameters(
+				Map.of("inputFile", new JobParameter<>("classpath:bank_account_stage_usecase_data.csv", String.class),
+						"executionMode", new JobParameter<>("whatif", String.class), "candidateRules",
+						new JobParameter<>("file:" + dir.resolve("rules.csv"), String.class), "whatIfMatrixFile",
+						new JobParameter<>("file:" + dir.resolve("matrix.csv"), String.class), "whatIfSampleFile",
+						new JobParameter<>("file:" + dir.resolve("sample.csv"), String.class), "whatIfSampleSize",
+						new JobParameter<>(3L, Long.class))));
+		assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+		assertThat(jobExecution.getStepExecutions()).extracting(StepExecution::getStepName)
+			.containsExactly("BankAccountStageWhatIf");
+
+		assertThat(Files.readAllLines(dir.resolve("matrix.csv"))).containsExactly(
+				"current_rules_stage,candidate_rules_stage,customers", "NONE,SILVER,1", "SILVER,SILVER,6",
+				"GOLD,GOLD,1", "GOLD,DIAMOND,1", "PLATINUM,DIAMOND,2");
+		assertThat(Files.readAllLines(dir.resolve("sample.csv"))).containsExactly(
+				"customer_id,current_stage_code,current_rules_stage,candidate_rules_stage", "CUS001,NONE,NONE,SILVER",
+				"CUS005,PLATINUM,GOLD,DIAMOND", "CUS008,SILVER,PLATINUM,DIAMOND");
+		assertThat(this.jdbcClient.sql("SELECT COUNT(*) FROM customer_stage_calculations").query(Long.class).single())
+			.isZero();
+	}
+
+	@ParameterizedTest
+	@CsvSource({ "1,item,csv", "3,item,ndjson", "1,columnar,csv" })
+	void exportsTransitions(long gridSize, String evaluation, String format, @TempDir Path dir) throws Exception {
+		this.jobLauncherTestUtils.setJob(this.job);
+		JobExecution jobExecution = this.jobLauncherTestUtils.launchJob(new JobParameters(
+				Map.of("inputFile", new JobParameter<>("classpath:bank_account_stage_usecase_data.csv", String.class),
+						"gridSize", new JobParameter<>(gridSize, Long.class), "evaluation",
+						new JobParameter<>(evaluation, String.class), "chunkSize", new JobParameter<>(2L, Long.class),
+						"transitionExport", new JobParameter<>("file:" + dir, String.class), "transitionExportFormat",
+						new JobParameter<>(format, String.class), "transitionExportFileBytes",
+						new JobParameter<>(200L, Long.class))));
+		assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+		List<String> manifest = Files.readAllLines(dir.resolve("manifest.csv"));
+		assertThat(manifest.get(0)).isEqualTo("file,records,bytes,sha256");
+		// the files roll over at 200 bytes
+		assertThat(manifest).hasSizeGreaterThan(2);
+		long records = 0;
+		for (String line : manifest.subList(1, manifest.size())) {
+			String[] columns = line.split(",");
+			assertThat(columns[0]).endsWith("." + format);
+			assertThat(Files.size(dir.resolve(columns[0]))).isEqualTo(Long.parseLong(columns[2]));
+			records += Long.parseLong(columns[1]);
+		}
+		assertThat(records).isEqualTo(10);
+		assertThat(dir.toFile().list()).allMatch(name -> !name.startsWith("."));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "insert", "compact" })
+	void carriesForwardUnchangedCustomers(String writeMode, @TempDir Path dir) throws Exception {
+		List<String> lines = Files
+			.readAllLines(new ClassPathResource("bank_account_stage_usecase_data.csv").getFile().toPath());
+		assertThat(runIncremental(dir.resolve("2025-04.csv"), lines, writeMode)).isZero();
+		// the calculations of April recorded transitions, except the one of CUS001
+		assertThat(runIncremental(dir.resolve("2025-05.csv"), nextMonth(lines, "2025-05-31", Map.of()), writeMode))
+			.isEqualTo(1);
+		assertThat(runIncremental(dir.resolve("2025-06.csv"),
+				nextMonth(lines, "2025-06-30", Map.of("CUS002", "1000000")), writeMode))
+			.isEqualTo(10);
+
+		assertThat(this.jdbcClient.sql("""
+				SELECT customer_id, current_stage_code, final_stage_code FROM customer_stage_calculations
+				WHERE calculation_date = '2025-06-30' ORDER BY customer_id
+				""").query((rs, rowNum) -> rs.getString(1) + ":" + rs.getString(2) + ":" + rs.getString(3)).list())
+			.containsExactly("CUS001:NONE:NONE", "CUS002:SILVER:NONE", "CUS003:GOLD:GOLD", "CUS004:SILVER:SILVER",
+					"CUS005:GOLD:GOLD", "CUS006:SILVER:SILVER", "CUS007:SILVER:SILVER", "CUS008:PLATINUM:PLATINUM",
+					"CUS009:SILVER:SILVER", "CUS010:SILVER:SILVER", "CUS011:PLATINUM:PLATINUM");
+		assertThat(this.jdbcClient.sql("""
+				SELECT COUNT(*) FROM condition_evaluation_results_view e
+				JOIN customer_stage_calculations c ON c.id = e.calculation_id
+				WHERE c.calculation_date = '2025-06-30'
+				""").query(Long.class).single()).isEqualTo(11 * 7);
+		assertThat(this.jdbcClient.sql("""
+				SELECT customer_id FROM stage_transitions WHERE transition_date = '2025-07-01'
+				""").query(String.class).list()).containsExactly("CUS002");
+		assertThat(this.jdbcClient.sql("""
+				SELECT COUNT(DISTINCT input_fingerprint) FROM customer_stage_calculations
+				WHERE customer_id = 'CUS003' AND calculation_date IN ('2025-05-31', '2025-06-30')
+				""").query(Long.class).single()).isEqualTo(1);
+		this.jdbcClient.sql("""
+				DROP TABLE IF EXISTS customer_stage_calculations_y2025m06, customer_stage_calculations_y2025m07,
+				stage_transitions_y2025m06, stage_transitions_y2025m07
+				""").update();
+	}
+
+	/**
+	 * Runs the job with {@code incremental=true} on {@code lines} written to
+	 * {@code file}, and returns the number of carried forward customers.
+	 */
+	long runIncremental(Path file, List<String> lines, String writeMode) throws Exception {
+		Files.write(file, lines);
+		double carriedForward = count(BankAccountStageMetrics.CARRIED_FORWARD);
+		this.jobLauncherTestUtils.setJob(this.job);
+		JobExecution jobExecution = this.jobLauncherTestUtils
+			.launchJob(new JobParameters(Map.of("inputFile", new JobParameter<>("file:" + file, String.class),
+					"incremental", new JobParameter<>("true", String.class), "writeMode",
+					new JobParameter<>(writeMode, String.class), "chunkSize", new JobParameter<>(4L, Long.class))));
+		assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+		return (long) (count(BankAccountStageMetrics.CARRIED_FORWARD) - carriedForward);
+	}
+
+	/**
+	 * The count of the counters named {@code name} over all steps and runs.
+	 */
+	double count(String name) {
+		return this.meterRegistry.find(name).counters().stream().mapToDouble(Counter::count).sum();
+	}
+
+	/**
+	 * The inputs of {@code lines} for the month ending on {@code monthEndDate}, with the
+	 * final stages of the previous month as current stages and the total balances of
+	 * {@code totalBalances} by customer.
+	 */
+	List<String> nextMonth(List<String> lines, String monthEndDate, Map<String, String> totalBalances) {
+		Map<String, String> finalStages = new HashMap<>();
+		this.jdbcClient.sql("""
+				SELECT customer_id, final_stage_code FROM customer_stage_calculations
+				WHERE calculation_date = (SELECT MAX(calculation_date) FROM customer_stage_calculations)
+				""").query(rs -> {
+			finalStages.put(rs.getString(1), rs.getString(2));
+		});
+		List<String> next = new ArrayList<>(List.of(lines.get(0)));
+		for (String line : lines.subList(1, lines.size())) {
+			String[] columns = line.split(",");
+			columns[1] = finalStages.get(columns[0]);
+			columns[2] = monthEndDate;
+			columns[3] = totalBalances.getOrDefault(columns[0], columns[3]);
+			next.add(String.join(",", columns));
+		}
+		return next;
+	}
+
+	@Test
+	void looksUpStagesRefreshedAfterRun() throws Exception {
+		this.customerStageLookup.clear();
+		// indexed before the run, so that its stage comes from the refresh
+		assertThat(this.customerStageLookup.findStage("CUS002", LocalDate.of(2025, 5, 15))).isEmpty();
+
+		this.jobLauncherTestUtils.setJob(this.job);
+		JobExecution jobExecution = this.jobLauncherTestUtils.launchJob(new JobParameters(Map.of("inputFile",
+				new JobParameter<>("classpath:bank_account_stage_usecase_data.csv", String.class))));
+		assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+		assertThat(this.customerStageLookup.findStage("CUS002", LocalDate.of(2025, 5, 15))).contains("SILVER");
+		assertThat(this.customerStageLookup.findStage("CUS003", LocalDate.of(2025, 5, 1))).contains("GOLD");
+		assertThat(this.customerStageLookup.findStage("CUS003", LocalDate.of(2025, 6, 1))).isEmpty();
+		assertThat(this.customerStageLookup.findStage("CUS999", LocalDate.of(2025, 5, 15))).isEmpty();
+		assertThat(this.customerStageLookup.size()).isEqualTo(3);
+		this.customerStageLookup.clear();
+	}
+
+	@Test
+	void refreshesLookupOfServingProcessFromCompletedRuns() throws Exception {
+		// a lookup of another process, which is not a listener of the job
+		CustomerStageLookup lookup = new CustomerStageLookup(this.jdbcClient, 100);
+		CustomerStageLookupRefresher refresher = new CustomerStageLookupRefresher(this.jobExplorer, lookup,
+				"BankAccountStage", Duration.ofSeconds(1));
+		refresher.refresh();
+		assertThat(lookup.findStage("CUS002", LocalDate.of(2025, 5, 15))).isEmpty();
+		this.customerStageLookup.clear();
+		assertThat(this.customerStageLookup.findStage("CUS002", LocalDate.of(2025, 5, 15))).isEmpty();
+
+		this.jobLauncherTestUtils.setJob(this.job);
+		JobExecution jobExecution = this.jobLauncherTestUtils.launchJob(new JobParameters(
+				Map.of("inputFile", new JobParameter<>("classpath:bank_account_stage_usecase_data.csv", String.class),
+						"chunkSize", new JobParameter<>(5L, Long.class))));
+		assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+		assertThat(lookup.findStage("CUS002", LocalDate.of(2025, 5, 15))).isEmpty();
+
+		refresher.refresh();
+		assertThat(lookup.findStage("CUS002", LocalDate.of(2025, 5, 15))).contains("SILVER");
+
+		// the lookup registered on the job has applied the run already and skips it
+		this.jdbcClient.sql("UPDATE customer_stage_calculations SET final_stage_code = 'GOLD' WHERE customer_id = ?")
+			.param("CUS002")
+			.update();
+		new CustomerStageLookupRefresher(this.jobExplorer, this.customerStageLookup, "BankAccountStage",
+				Duration.ofSeconds(1))
+			.refresh();
+		assertThat(this.customerStageLookup.findStage("CUS002", LocalDate.of(2025, 5, 15))).contains("SILVER");
+		this.customerStageLookup.clear();
+	}
+
+	@Test
+	void archivesPartitionsOutOfRetention() throws Exception {
+		// the partitions of the calculations of March and April 2024 and of their
+		// transitions
+		Map<String, List<String>> partitions = Map.of("customer_stage_calculations",
+				List.of("2024-03-31", "2024-04-30"), "stage_transitions", List.of("2024-04-01", "2024-05-01"));
+		partitions.forEach((table,
+				dates) -> dates.forEach(date -> this.jdbcClient.sql("SELECT create_monthly_partition(?, ?)")
+					.params(table, Date.valueOf(date))
+					.query()
+					.singleValue()));
+		this.jdbcClient.sql("""
+				INSERT INTO customer_stage_calculations (id, customer_id, calculation_date, valid_from, valid_to,
+				    current_stage_code, final_stage_code)
+				VALUES (0, 'CUS001', DATE '2024-03-31', DATE '2024-04-01', DATE '2024-04-30', 'NONE', 'NONE')
+				""").update();
+		this.jdbcClient.sql("""
+				INSERT INTO condition_evaluation_results (calculation_id, condition_id, is_met, evaluated_value)
+				VALUES (0, 1, FALSE, 0), (0, 2, FALSE, 0)
+				""").update();
+		this.jdbcClient.sql("""
+				INSERT INTO condition_evaluations_compact (calculation_id, condition_ids, met_bits, evaluated_values)
+				VALUES (0, ARRAY[1, 2], 0, ARRAY[0, 0])
+				""").update();
+
+		this.jobLauncherTestUtils.setJob(this.job);
+		JobExecution jobExecution = this.jobLauncherTestUtils.launchJob(new JobParameters(
+				Map.of("inputFile", new JobParameter<>("classpath:bank_account_stage_usecase_data.csv", String.class),
+						"retentionMonths", new JobParameter<>(13L, Long.class))));
+		assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+		assertThat(this.jdbcClient.sql("""
+				SELECT c.relname
+				FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+				WHERE i.inhparent IN ('customer_stage_calculations'::regclass, 'stage_transitions'::regclass)
+				""").query(String.class).list()).containsExactlyInAnyOrder("customer_stage_calculations_y2024m04",
+				"customer_stage_calculations_y2025m04", "customer_stage_calculations_y2025m05",
+				"stage_transitions_y2024m05", "stage_transitions_y2025m04", "stage_transitions_y2025m05");
+		assertThat(this.jdbcClient.sql("SELECT customer_id FROM archive.customer_stage_calculations_y2024m03")
+			.query(String.class)
+			.list()).containsExactly("CUS001");
+		assertThat(this.jdbcClient.sql("SELECT COUNT(*) FROM archive.stage_transitions_y2024m04")
+			.query(Long.class)
+			.single()).isZero();
+		assertThat(this.jdbcClient.sql("SELECT COUNT(*) FROM customer_stage_calculations").query(Long.class).single())
+			.isEqualTo(11);
+		// the condition evaluations of the archived calculation are archived along with
+		// it
+		assertThat(this.jdbcClient.sql("SELECT condition_id FROM archive.condition_evaluation_results")
+			.query(Long.class)
+			.list()).containsExactlyInAnyOrder(1L, 2L);
+		assertThat(this.jdbcClient.sql("SELECT calculation_id FROM archive.condition_evaluations_compact")
+			.query(Long.class)
+			.list()).containsExactly(0L);
+		assertThat(
+				this.jdbcClient.sql("SELECT COUNT(*) FROM condition_evaluation_results_view WHERE calculation_id = 0")
+					.query(Long.class)
+					.single())
+			.isZero();
+		assertThat(this.jdbcClient.sql("SELECT COUNT(*) FROM condition_evaluation_results").query(Long.class).single())
+			.isEqualTo(77);
+		this.jdbcClient
+			.sql("DROP TABLE archive.customer_stage_calculations_y2024m03, archive.stage_transitions_y2024m04")
+			.update();
+		this.jdbcClient
+			.sql("TRUNCATE TABLE archive.condition_evaluation_results, archive.condition_evaluations_compact")
+			.update();
+	}
+
 }
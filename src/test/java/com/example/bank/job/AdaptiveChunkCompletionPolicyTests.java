@@ -0,0 +1,64 @@
+package com.example.bank.job;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveChunkCompletionPolicyTests {
+
+	private static final long TARGET_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	@Test
+	void growsWhenChunksCommitFasterThanTarget() {
+		AdaptiveChunkCompletionPolicy policy = policy(200);
+
+		// a quarter of the target: sqrt(4) = 2
+		assertThat(policy.nextChunkSize(200, TARGET_NANOS / 4)).isEqualTo(400);
+		// far below the target: at most doubled
+		assertThat(policy.nextChunkSize(200, 1)).isEqualTo(400);
+	}
+
+	@Test
+	void shrinksWhenChunksCommitSlowerThanTarget() {
+		AdaptiveChunkCompletionPolicy policy = policy(200);
+
+		assertThat(policy.nextChunkSize(200, TARGET_NANOS * 4)).isEqualTo(100);
+		assertThat(policy.nextChunkSize(200, TARGET_NANOS * 100)).isEqualTo(100);
+	}
+
+	@Test
+	void keepsSizeNearTargetAndForShortChunks() {
+		AdaptiveChunkCompletionPolicy policy = policy(200);
+
+		assertThat(policy.nextChunkSize(200, TARGET_NANOS + TARGET_NANOS / 20)).isEqualTo(200);
+		assertThat(policy.nextChunkSize(50, TARGET_NANOS * 4)).isEqualTo(200);
+	}
+
+	@Test
+	void staysWithinBounds() {
+		assertThat(policy(900).nextChunkSize(900, 1)).isEqualTo(1000);
+		assertThat(policy(15).nextChunkSize(15, TARGET_NANOS * 4)).isEqualTo(10);
+		assertThat(policy(5000).getChunkSize()).isEqualTo(1000);
+	}
+
+	@Test
+	void restartResumesWithSavedSize() {
+		AdaptiveChunkCompletionPolicy policy = policy(200);
+		policy.setChunkSize(policy.nextChunkSize(200, TARGET_NANOS / 4));
+		ExecutionContext executionContext = new ExecutionContext();
+		policy.update(executionContext);
+
+		AdaptiveChunkCompletionPolicy restarted = policy(200);
+		restarted.open(executionContext);
+
+		assertThat(restarted.getChunkSize()).isEqualTo(400);
+	}
+
+	private static AdaptiveChunkCompletionPolicy policy(int initialChunkSize) {
+		return new AdaptiveChunkCompletionPolicy(initialChunkSize, 10, 1000, Duration.ofNanos(TARGET_NANOS));
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.example.bank.job;
+
+import com.example.bank.job.BankAccountStageDuplicateCheckTasklet.Duplicates;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BankAccountStageDuplicateCheckTaskletTests {
+
+	@Test
+	void rejectsAllRecordsOfCustomersAppearingInSeveralFiles(@TempDir Path dir) throws Exception {
+		List<String> lines = Files
+			.readAllLines(new ClassPathResource("bank_account_stage_usecase_data.csv").getFile().toPath());
+		String header = lines.get(0);
+		Files.writeString(dir.resolve("shard-0.csv"),
+				String.join("\n", header, lines.get(1), lines.get(2), lines.get(3), lines.get(2)) + "\n");
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(dir.resolve("shard-1.csv.gz")))) {
+			out.write(String.join("\n", header, lines.get(4), lines.get(3)).getBytes());
+		}
+		Path rejectFile = dir.resolve("rejects/duplicates.csv");
+
+		Duplicates duplicates = BankAccountStageDuplicateCheckTasklet
+			.findDuplicates(List.of(new FileSystemResource(dir.resolve("shard-0.csv")),
+					new FileSystemResource(dir.resolve("shard-1.csv.gz"))), 100, rejectFile);
+
+		assertThat(duplicates.customerIds()).containsExactlyInAnyOrder("CUS002", "CUS003");
+		assertThat(duplicates.rejectedRecords()).isEqualTo(4);
+		assertThat(Files.readAllLines(rejectFile)).containsExactly("file,line_number,reason," + header,
+				"shard-0.csv,3,duplicate customer_id," + lines.get(2),
+				"shard-0.csv,5,duplicate customer_id," + lines.get(2),
+				"shard-0.csv,4,duplicate customer_id," + lines.get(3),
+				"shard-1.csv.gz,3,duplicate customer_id," + lines.get(3));
+	}
+
+	@Test
+	void confirmsCandidatesOfAnUndersizedFilter(@TempDir Path dir) throws Exception {
+		// a filter sized for a single customer reports almost every customer as a
+		// candidate, only the second pass finds the actual duplicate
+		List<String> lines = new ArrayList<>(List.of("customer_id,current_stage_code,month_end_date"));
+		for (int i = 0; i < 10_000; i++) {
+			lines.add("C" + i + ",NONE,2025-04-30");
+		}
+		lines.add("C1234,GOLD,2025-04-30");
+		Path input = dir.resolve("input.csv");
+		Files.write(input, lines);
+
+		Duplicates duplicates = BankAccountStageDuplicateCheckTasklet
+			.findDuplicates(List.<Resource>of(new FileSystemResource(input)), 1, dir.resolve("duplicates.csv"));
+
+		assertThat(duplicates.customerIds()).containsExactly("C1234");
+		assertThat(Files.readAllLines(dir.resolve("duplicates.csv"))).containsExactly(
+				"file,line_number,reason,customer_id,current_stage_code,month_end_date",
+				"input.csv,1236,duplicate customer_id,C1234,NONE,2025-04-30",
+				"input.csv,10002,duplicate customer_id,C1234,GOLD,2025-04-30");
+	}
+
+	@Test
+	void writesOnlyTheHeaderWithoutDuplicates(@TempDir Path dir) throws Exception {
+		Duplicates duplicates = BankAccountStageDuplicateCheckTasklet.findDuplicates(
+				List.of(new ClassPathResource("bank_account_stage_usecase_data.csv")), 100,
+				dir.resolve("duplicates.csv"));
+
+		assertThat(duplicates.customerIds()).isEmpty();
+		assertThat(Files.readAllLines(dir.resolve("duplicates.csv"))).hasSize(1);
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.example.bank.job;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BankAccountStageInputPartitionerTests {
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 3, 4, 7, 11, 50 })
+	void partitionsCoverEveryDataLineExactlyOnce(int gridSize) throws IOException {
+		Resource resource = new ClassPathResource("bank_account_stage_usecase_data.csv");
+		List<String> lines = resource.getContentAsString(StandardCharsets.UTF_8).lines().toList();
+		List<String> expected = lines.subList(1, lines.size()); // without the header
+
+		Map<String, ExecutionContext> partitions = new BankAccountStageInputPartitioner(resource).partition(gridSize);
+
+		assertThat(partitions).hasSizeLessThanOrEqualTo(gridSize);
+		List<String> actual = new ArrayList<>();
+		long previousEnd = -1;
+		for (ExecutionContext executionContext : partitions.values()) {
+			long startOffset = executionContext.getLong(BankAccountStageInputPartitioner.START_OFFSET_KEY);
+			long endOffset = executionContext.getLong(BankAccountStageInputPartitioner.END_OFFSET_KEY);
+			if (previousEnd >= 0) {
+				assertThat(startOffset).isEqualTo(previousEnd);
+			}
+			assertThat(endOffset).isGreaterThan(startOffset);
+			previousEnd = endOffset;
+			List<String> range = read(new ByteRangeResource(resource, startOffset, endOffset)).lines().toList();
+			long startLineNumber = executionContext.getLong(BankAccountStageInputPartitioner.START_LINE_NUMBER_KEY);
+			assertThat(lines.get((int) startLineNumber - 1)).isEqualTo(range.get(0));
+			actual.addAll(range);
+		}
+		assertThat(previousEnd).isEqualTo(resource.contentLength());
+		assertThat(actual).containsExactlyElementsOf(expected);
+	}
+
+	@Test
+	void lastLineWithoutLineFeed() throws IOException {
+		Resource resource = new ByteArrayResource("header\na\nbb\nccc".getBytes(StandardCharsets.UTF_8));
+
+		Map<String, ExecutionContext> partitions = new BankAccountStageInputPartitioner(resource).partition(3);
+
+		List<String> actual = new ArrayList<>();
+		for (ExecutionContext executionContext : partitions.values()) {
+			actual.add(read(new ByteRangeResource(resource,
+					executionContext.getLong(BankAccountStageInputPartitioner.START_OFFSET_KEY),
+					executionContext.getLong(BankAccountStageInputPartitioner.END_OFFSET_KEY))));
+		}
+		assertThat(actual).containsExactly("a\n", "bb\n", "ccc");
+	}
+
+	@Test
+	void headerOnly() {
+		Resource resource = new ByteArrayResource("header\n".getBytes(StandardCharsets.UTF_8));
+
+		assertThat(new BankAccountStageInputPartitioner(resource).partition(4)).isEmpty();
+	}
+
+	private static String read(Resource resource) throws IOException {
+		try (InputStream inputStream = resource.getInputStream()) {
+			return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package com.example.bank.job;
+
+import java.time.LocalDate;
+import java.util.Set;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BankAccountStageInputValidatorTests {
+
+	final BankAccountStageInputValidator validator = new BankAccountStageInputValidator(
+			Set.of("NONE", "SILVER", "GOLD", "PLATINUM"), LocalDate.of(2025, 4, 30));
+
+	@ParameterizedTest
+	@ValueSource(strings = { "CUS001,NONE,2025-04-30,2500000,0,0,0,0,0,0",
+			"CUS001,PLATINUM,2025-04-30,9999999999999.99,-1.5,+.5,0.100,1.,0,-2147483648",
+			"CUS001,GOLD,2025-04-30,00000000000001234567890123,0,0,0,0,0,2147483647" })
+	void acceptsValidLines(String line) {
+		assertThat(this.validator.validate(line)).isNull();
+	}
+
+	@ParameterizedTest
+	@CsvSource(delimiter = '|',
+			textBlock = """
+					CUS001,NONE,2025-04-30,2500000,0,0,0,0,0                 | Expected 10 columns but found 9
+					CUS001,NONE,2025-04-30,2500000,0,0,0,0,0,0,0             | More than 10 columns
+					,NONE,2025-04-30,2500000,0,0,0,0,0,0                     | customer_id must have 1 to 50 characters
+					CUS001,DIAMOND,2025-04-30,2500000,0,0,0,0,0,0            | Unknown current_stage_code
+					CUS001,NONE,2025/04/30,2500000,0,0,0,0,0,0               | month_end_date is not a yyyy-MM-dd date
+					CUS001,NONE,2025-13-31,2500000,0,0,0,0,0,0               | month_end_date is not a yyyy-MM-dd date
+					CUS001,NONE,2025-04-29,2500000,0,0,0,0,0,0               | month_end_date is not the last day of a month
+					CUS001,NONE,2025-03-31,2500000,0,0,0,0,0,0               | month_end_date differs from 2025-04-30
+					CUS001,NONE,2025-04-30,10000000000000,0,0,0,0,0,0        | total_balance is not a DECIMAL(15,2) value
+					CUS001,NONE,2025-04-30,2500000,0.001,0,0,0,0,0           | foreign_currency_balance is not a DECIMAL(15,2) value
+					CUS001,NONE,2025-04-30,2500000,0,0,0,0,1e3,0             | housing_loan_balance is not a DECIMAL(15,2) value
+					CUS001,NONE,2025-04-30,2500000,0,0,0,0,,0                | housing_loan_balance is not a DECIMAL(15,2) value
+					CUS001,NONE,2025-04-30,2500000,0,0,0,0,0,2147483648      | monthly_fx_trading_volume is not an INT value
+					CUS001,NONE,2025-04-30,2500000,0,0,0,0,0,1.5             | monthly_fx_trading_volume is not an INT value
+					""")
+	void rejectsInvalidLines(String line, String reason) {
+		assertThat(this.validator.validate(line)).isEqualTo(reason);
+	}
+
+}
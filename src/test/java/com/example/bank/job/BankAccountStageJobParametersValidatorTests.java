@@ -0,0 +1,105 @@
+package com.example.bank.job;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatNoException;
+
+class BankAccountStageJobParametersValidatorTests {
+
+	final BankAccountStageJobParametersValidator validator = new BankAccountStageJobParametersValidator(
+			new DefaultResourceLoader());
+
+	@Test
+	void rejectsAsyncConcurrencyWithRejectFile() {
+		assertInvalid(new JobParametersBuilder().addLong("asyncConcurrency", 4L)
+			.addString("rejectFile", "file:./rejects.csv")
+			.toJobParameters(), "asyncConcurrency cannot be combined with rejectFile");
+		assertThatNoException()
+			.isThrownBy(() -> this.validator.validate(new JobParametersBuilder().addLong("asyncConcurrency", 0L)
+				.addString("rejectFile", "file:./rejects.csv")
+				.toJobParameters()));
+	}
+
+	@Test
+	void rejectsAsyncConcurrencyWithoutItemProcessor() {
+		assertInvalid(new JobParametersBuilder().addLong("asyncConcurrency", 4L)
+			.addString("evaluation", "columnar")
+			.toJobParameters(), "asyncConcurrency cannot be combined with evaluation=columnar");
+		assertInvalid(
+				new JobParametersBuilder().addLong("asyncConcurrency", 4L)
+					.addString("incremental", "true")
+					.toJobParameters(),
+				"asyncConcurrency cannot be combined with evaluation=columnar or incremental=true");
+	}
+
+	@Test
+	void rejectsSingleStepOptionsForPartitionedRuns() {
+		assertInvalid(
+				new JobParametersBuilder().addLong("gridSize", 3L).addLong("asyncConcurrency", 4L).toJobParameters(),
+				"asyncConcurrency cannot be combined with gridSize");
+		assertInvalid(new JobParametersBuilder().addString("inputFiles", "file:./shards/")
+			.addLong("chunkTargetMillis", 500L)
+			.toJobParameters(), "chunkTargetMillis cannot be combined with gridSize");
+		assertInvalid(new JobParametersBuilder().addString("executionMode", "remote")
+			.addLong("maxChunkSize", 1000L)
+			.toJobParameters(), "maxChunkSize cannot be combined with gridSize");
+		assertInvalid(new JobParametersBuilder().addLong("gridSize", 3L)
+			.addString("evaluation", "columnar")
+			.toJobParameters(), "evaluation=columnar cannot be combined with gridSize");
+		assertThatNoException()
+			.isThrownBy(() -> this.validator.validate(new JobParametersBuilder().addLong("gridSize", 1L)
+				.addLong("asyncConcurrency", 4L)
+				.addLong("chunkTargetMillis", 500L)
+				.toJobParameters()));
+		assertThatNoException()
+			.isThrownBy(() -> this.validator.validate(new JobParametersBuilder().addLong("gridSize", 3L)
+				.addString("evaluation", "item")
+				.addString("incremental", "true")
+				.toJobParameters()));
+	}
+
+	@Test
+	void mapsInputFilesOnTheFileSystem(@TempDir Path dir) throws Exception {
+		Files.writeString(dir.resolve("shard-0.csv"), "");
+		Files.writeString(dir.resolve("shard-1.csv.gz"), "");
+
+		assertThatNoException()
+			.isThrownBy(() -> this.validator.validate(new JobParametersBuilder().addString("reader", "mapped")
+				.addString("inputFile", "file:" + dir.resolve("shard-0.csv"))
+				.toJobParameters()));
+		// the compressed file is read by the flat file reader
+		assertThatNoException()
+			.isThrownBy(() -> this.validator.validate(new JobParametersBuilder().addString("reader", "mapped")
+				.addString("inputFiles", "file:" + dir)
+				.toJobParameters()));
+	}
+
+	@Test
+	void rejectsMappedReaderForInputsThatAreNotFiles() {
+		assertInvalid(new JobParametersBuilder().addString("reader", "mapped")
+			.addString("inputFile", "https://example.com/input.csv")
+			.toJobParameters(), "reader=mapped needs a file on the file system");
+		assertInvalid(new JobParametersBuilder().addString("reader", "mapped")
+			.addString("inputFile", "file:./input.csv.zst")
+			.toJobParameters(), "reader=mapped cannot read the compressed inputFile");
+		assertThatNoException()
+			.isThrownBy(() -> this.validator.validate(new JobParametersBuilder().addString("reader", "flatfile")
+				.addString("inputFile", "https://example.com/input.csv")
+				.toJobParameters()));
+	}
+
+	private void assertInvalid(JobParameters parameters, String message) {
+		assertThatExceptionOfType(JobParametersInvalidException.class)
+			.isThrownBy(() -> this.validator.validate(parameters))
+			.withMessageStartingWith(message);
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.example.bank.job;
+
+import com.example.bank.job.BankAccountStageMetrics.StepMetrics;
+import com.example.bank.stage.StageCodes;
+import com.example.bank.stage.StageEvaluation;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BankAccountStageMetricsTests {
+
+	@Test
+	void tagsPartitionWorkerSteps() {
+		JobExecution jobExecution = new JobExecution(new JobInstance(1L, "BankAccountStage"), 7L, new JobParameters());
+		StepExecution stepExecution = new StepExecution("BankAccountStageWorker:partition2", jobExecution, 3L);
+
+		assertThat(BankAccountStageMetrics.tags(stepExecution)).isEqualTo(
+				Tags.of("job.name", "BankAccountStage", "step", "BankAccountStageWorker", "partition", "partition2"));
+		assertThat(BankAccountStageMetrics.tags(new StepExecution("BankAccountStage", jobExecution, 4L)))
+			.contains(Tag.of("step", "BankAccountStage"), Tag.of("partition", "none"));
+	}
+
+	@Test
+	void countsCommittedItemsByFinalStageAndRankUp() {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		StepMetrics metrics = new BankAccountStageMetrics(meterRegistry).forStep(null);
+
+		metrics.committed(List.of(result("NONE", "NONE"), result("SILVER", "GOLD"), result("GOLD", "GOLD")));
+
+		assertThat(meterRegistry.get(BankAccountStageMetrics.ITEMS).counter().count()).isEqualTo(3);
+		assertThat(meterRegistry.get(BankAccountStageMetrics.FINAL_STAGES).tag("stage", "GOLD").counter().count())
+			.isEqualTo(2);
+		assertThat(meterRegistry.get(BankAccountStageMetrics.FINAL_STAGES).tag("stage", "NONE").counter().count())
+			.isEqualTo(1);
+		assertThat(meterRegistry.get(BankAccountStageMetrics.RANK_UPS).counter().count()).isEqualTo(1);
+	}
+
+	private static ProcessResult result(String baseStageCode, String finalStageCode) {
+		BankAccountStageInput input = BankAccountStageInput.of("C1", "NONE", LocalDate.parse("2025-04-30"),
+				BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO,
+				0);
+		return new ProcessResult(input,
+				new StageEvaluation(StageCodes.ordinal(baseStageCode), StageCodes.ordinal(finalStageCode), List.of()),
+				LocalDate.parse("2025-05-01"), LocalDate.parse("2025-05-31"), 0);
+	}
+
+}
@@ -0,0 +1,183 @@
+package com.example.bank.job;
+
+import com.example.bank.config.BankAccountStageJobConfig;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static com.example.bank.job.MappedBankAccountStageInputItemReaderTests.readAll;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class ByteOffsetFlatFileItemReaderTests {
+
+	final Resource resource = new ClassPathResource("bank_account_stage_usecase_data.csv");
+
+	@Test
+	void readsPartitionByteRanges() throws Exception {
+		List<BankAccountStageInput> expected = readAll(reader(this.resource), new ExecutionContext());
+		assertThat(expected).hasSize(11);
+
+		List<BankAccountStageInput> actual = new ArrayList<>();
+		for (ExecutionContext executionContext : new BankAccountStageInputPartitioner(this.resource).partition(3)
+			.values()) {
+			actual.addAll(readAll(new BankAccountStageJobConfig().bankAccountStagePartitionItemReader(this.resource,
+					"flatfile", executionContext.getLong(BankAccountStageInputPartitioner.START_OFFSET_KEY),
+					executionContext.getLong(BankAccountStageInputPartitioner.END_OFFSET_KEY),
+					executionContext.getLong(BankAccountStageInputPartitioner.START_LINE_NUMBER_KEY), null, null),
+					new ExecutionContext()));
+		}
+		assertThat(actual).containsExactlyElementsOf(expected);
+	}
+
+	@Test
+	void restartsFromByteOffset() throws Exception {
+		List<BankAccountStageInput> expected = readAll(reader(this.resource), new ExecutionContext());
+
+		ExecutionContext executionContext = new ExecutionContext();
+		ItemStreamReader<BankAccountStageInput> reader = reader(this.resource);
+		reader.open(executionContext);
+		List<BankAccountStageInput> actual = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			actual.add(reader.read());
+		}
+		reader.update(executionContext);
+		reader.read(); // read after the checkpoint, lost by the failure
+		reader.close();
+
+		actual.addAll(readAll(reader(this.resource), executionContext));
+		assertThat(actual).containsExactlyElementsOf(expected);
+	}
+
+	@Test
+	void readsLinesAcrossBufferBoundaries(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("input.csv");
+		StringBuilder content = new StringBuilder(MappedBankAccountStageInputItemReader.HEADER).append("\r\n");
+		for (int i = 0; i < 5000; i++) {
+			content.append("CUS").append(i).append(",GOLD,2025-04-30,").append(i).append(".5,0,0,0,0,0,").append(i);
+			content.append((i % 2 == 0) ? "\n" : "\r\n");
+		}
+		Files.writeString(file, content, StandardCharsets.UTF_8);
+		Resource resource = new FileSystemResource(file);
+
+		List<BankAccountStageInput> items = readAll(reader(resource), new ExecutionContext());
+
+		assertThat(items).hasSize(5000);
+		assertThat(items).containsExactlyElementsOf(
+				readAll(new MappedBankAccountStageInputItemReader(resource), new ExecutionContext()));
+	}
+
+	@Test
+	void malformedLine(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("input.csv");
+		Files.writeString(file,
+				MappedBankAccountStageInputItemReader.HEADER + "\nCUS001,GOLD,2025-04-30,1x0,0,0,0,0,0,0\n",
+				StandardCharsets.UTF_8);
+		ItemStreamReader<BankAccountStageInput> reader = reader(new FileSystemResource(file));
+		reader.open(new ExecutionContext());
+
+		assertThatExceptionOfType(FlatFileParseException.class).isThrownBy(reader::read)
+			.satisfies(e -> assertThat(e.getLineNumber()).isEqualTo(2))
+			.satisfies(e -> assertThat(e.getInput()).isEqualTo("CUS001,GOLD,2025-04-30,1x0,0,0,0,0,0,0"));
+		reader.close();
+	}
+
+	@Test
+	void rejectsInvalidLinesOnceAcrossRestarts(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("input.csv");
+		Files.writeString(file,
+				String.join("\n", MappedBankAccountStageInputItemReader.HEADER,
+						"CUS001,GOLD,2025-04-30,100,0,0,0,0,0,0", "CUS002,GOLD,2025-04-30,1x0,0,0,0,0,0,0",
+						"CUS003,GOLD,2025-04-30,300,0,0,0,0,0,0", "CUS004,GOLD,2025-04-30,400,0,0,0,0,0,0",
+						"CUS005,DIAMOND,2025-04-30,500,0,0,0,0,0,0", "CUS006,GOLD,2025-04-30,600,0,0,0,0,0,0"),
+				StandardCharsets.UTF_8);
+		RejectFile rejectFile = new RejectFile(dir.resolve("rejects.csv"));
+		ExecutionContext executionContext = new ExecutionContext();
+
+		ByteOffsetFlatFileItemReader<BankAccountStageInput> reader = rejectingReader(file, rejectFile);
+		reader.open(executionContext);
+		List<String> customerIds = new ArrayList<>();
+		customerIds.add(reader.read().customerId());
+		customerIds.add(reader.read().customerId());
+		reader.update(executionContext);
+		// fails after reading the line of CUS005 without saving its rejection
+		customerIds.add(reader.read().customerId());
+		reader.close();
+
+		reader = rejectingReader(file, rejectFile);
+		reader.open(executionContext);
+		customerIds.subList(2, customerIds.size()).clear();
+		for (BankAccountStageInput item; (item = reader.read()) != null;) {
+			customerIds.add(item.customerId());
+		}
+		reader.update(executionContext);
+		reader.close();
+
+		assertThat(customerIds).containsExactly("CUS001", "CUS003", "CUS004", "CUS006");
+		assertThat(Files.readAllLines(rejectFile.path())).containsExactly(RejectFile.HEADER,
+				"input.csv,3,total_balance is not a DECIMAL(15;2) value,CUS002,GOLD,2025-04-30,1x0,0,0,0,0,0,0",
+				"input.csv,6,Unknown current_stage_code,CUS005,DIAMOND,2025-04-30,500,0,0,0,0,0,0");
+	}
+
+	@Test
+	void rejectsLinesOfCommittedChunksOnly(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("input.csv");
+		Files.writeString(file,
+				String.join("\n", MappedBankAccountStageInputItemReader.HEADER,
+						"CUS001,GOLD,2025-04-30,100,0,0,0,0,0,0", "CUS002,GOLD,2025-04-30,1x0,0,0,0,0,0,0",
+						"CUS003,GOLD,2025-04-30,300,0,0,0,0,0,0"),
+				StandardCharsets.UTF_8);
+		RejectFile rejectFile = new RejectFile(dir.resolve("rejects.csv"));
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+
+		ByteOffsetFlatFileItemReader<BankAccountStageInput> reader = rejectingReader(file, rejectFile);
+		reader.open(new ExecutionContext());
+		assertThat(reader.read().customerId()).isEqualTo("CUS001");
+		assertThat(reader.read().customerId()).isEqualTo("CUS003");
+		assertThatIllegalStateException().isThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+			reader.update(new ExecutionContext());
+			throw new IllegalStateException("rolled back");
+		}));
+		reader.close();
+		assertThat(rejectFile.path()).doesNotExist();
+
+		ByteOffsetFlatFileItemReader<BankAccountStageInput> restarted = rejectingReader(file, rejectFile);
+		restarted.open(new ExecutionContext());
+		assertThat(restarted.read().customerId()).isEqualTo("CUS001");
+		assertThat(restarted.read().customerId()).isEqualTo("CUS003");
+		transactionTemplate.executeWithoutResult(status -> restarted.update(new ExecutionContext()));
+		restarted.close();
+		assertThat(Files.readAllLines(rejectFile.path())).containsExactly(RejectFile.HEADER,
+				"input.csv,3,total_balance is not a DECIMAL(15;2) value,CUS002,GOLD,2025-04-30,1x0,0,0,0,0,0,0");
+	}
+
+	private static ByteOffsetFlatFileItemReader<BankAccountStageInput> rejectingReader(Path file,
+			RejectFile rejectFile) {
+		ByteOffsetFlatFileItemReader<BankAccountStageInput> reader = (ByteOffsetFlatFileItemReader<BankAccountStageInput>) reader(
+				new FileSystemResource(file));
+		reader.setRejects(new BankAccountStageInputValidator(Set.of("NONE", "SILVER", "GOLD", "PLATINUM"),
+				LocalDate.of(2025, 4, 30)), rejectFile);
+		return reader;
+	}
+
+	private static ItemStreamReader<BankAccountStageInput> reader(Resource resource) {
+		return new BankAccountStageJobConfig().bankAccountStageInputItemReader(resource, "flatfile", null, null);
+	}
+
+}
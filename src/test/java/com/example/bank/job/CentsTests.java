@@ -0,0 +1,64 @@
+package com.example.bank.job;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.FileSystemResource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class CentsTests {
+
+	@Test
+	void convertsDecimal152Exactly() {
+		assertThat(Cents.of(new BigDecimal("3000000"))).isEqualTo(300000000);
+		assertThat(Cents.of(new BigDecimal("2999999.99"))).isEqualTo(299999999);
+		assertThat(Cents.of(new BigDecimal("-0.5"))).isEqualTo(-50);
+		assertThat(Cents.of(new BigDecimal("1.230"))).isEqualTo(123);
+		assertThat(Cents.of(new BigDecimal("9999999999999.99"))).isEqualTo(Cents.MAX_VALUE);
+		assertThat(Cents.toBigDecimal(-5)).isEqualTo(new BigDecimal("-0.05"));
+		assertThat(Cents.toBigDecimal(Cents.MAX_VALUE)).isEqualTo(new BigDecimal("9999999999999.99"));
+	}
+
+	@Test
+	void rejectsValuesOutsideDecimal152() {
+		assertThatExceptionOfType(ArithmeticException.class).isThrownBy(() -> Cents.of(new BigDecimal("1.005")));
+		assertThatExceptionOfType(ArithmeticException.class)
+			.isThrownBy(() -> Cents.of(new BigDecimal("10000000000000")));
+		assertThatExceptionOfType(ArithmeticException.class).isThrownBy(() -> Cents.toString(Cents.MAX_VALUE + 1));
+	}
+
+	@Test
+	void formatsLikeToPlainString() {
+		SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < 10000; i++) {
+			long cents = (i < 200) ? i - 100 : random.nextLong(-Cents.MAX_VALUE, Cents.MAX_VALUE + 1);
+			assertThat(Cents.toString(cents)).isEqualTo(Cents.toBigDecimal(cents).toPlainString());
+		}
+	}
+
+	@Test
+	void mappedReaderRejectsMoreThanTwoDecimalPlaces(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("input.csv");
+		Files.writeString(file,
+				MappedBankAccountStageInputItemReader.HEADER
+						+ "\nCUS001,GOLD,2025-04-30,1.500,0,0,0,0,0,0\nCUS002,GOLD,2025-04-30,1.005,0,0,0,0,0,0\n",
+				StandardCharsets.UTF_8);
+		MappedBankAccountStageInputItemReader reader = new MappedBankAccountStageInputItemReader(
+				new FileSystemResource(file));
+		reader.open(new ExecutionContext());
+
+		assertThat(reader.read().totalBalance()).isEqualTo(150);
+		assertThatExceptionOfType(FlatFileParseException.class).isThrownBy(reader::read)
+			.satisfies(e -> assertThat(e.getLineNumber()).isEqualTo(3));
+		reader.close();
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.example.bank.job;
+
+import com.example.bank.config.BankAccountStageJobConfig;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+
+import static com.example.bank.job.MappedBankAccountStageInputItemReaderTests.readAll;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DecompressingResourceTests {
+
+	final Resource resource = new ClassPathResource("bank_account_stage_usecase_data.csv");
+
+	@Test
+	void readsPlainGzipAndZstdShardsOfDirectory(@TempDir Path dir) throws Exception {
+		List<BankAccountStageInput> expected = readAll(
+				new BankAccountStageJobConfig().bankAccountStageInputItemReader(this.resource, "flatfile", null, null),
+				new ExecutionContext());
+		List<String> lines = Files.readAllLines(this.resource.getFile().toPath());
+		String header = lines.get(0);
+		Files.writeString(dir.resolve("shard-0.csv"), String.join("\n", header, lines.get(1), lines.get(2)) + "\n");
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(dir.resolve("shard-1.csv.gz")))) {
+			out.write(String.join("\n", header, lines.get(3), lines.get(4), lines.get(5)).getBytes());
+		}
+		List<String> lastShard = new ArrayList<>(List.of(header));
+		lastShard.addAll(lines.subList(6, lines.size()));
+		try (OutputStream out = new ZstdOutputStream(Files.newOutputStream(dir.resolve("shard-2.csv.zst")))) {
+			out.write(String.join("\r\n", lastShard).getBytes());
+		}
+
+		Map<String, ExecutionContext> partitions = new BankAccountStageJobConfig()
+			.bankAccountStageInputFilesPartitioner(dir.toUri().toString(), new DefaultResourceLoader())
+			.partition(1);
+
+		assertThat(partitions).hasSize(3);
+		List<BankAccountStageInput> actual = new ArrayList<>();
+		for (ExecutionContext executionContext : partitions.values()) {
+			Resource file = new UrlResource(executionContext.getString("fileName"));
+			actual.addAll(readAll(
+					new BankAccountStageJobConfig().bankAccountStageInputFileItemReader(file, "mapped", null, null),
+					new ExecutionContext()));
+		}
+		// MultiResourcePartitioner does not keep the order of the files
+		assertThat(actual).containsExactlyInAnyOrderElementsOf(expected);
+	}
+
+	@Test
+	void restartsCompressedFileFromDecompressedOffset(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("input.csv.gz");
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+			out.write(this.resource.getContentAsByteArray());
+		}
+		List<BankAccountStageInput> expected = readAll(reader(file), new ExecutionContext());
+		assertThat(expected).hasSize(11);
+
+		ExecutionContext executionContext = new ExecutionContext();
+		ItemStreamReader<BankAccountStageInput> reader = reader(file);
+		reader.open(executionContext);
+		List<BankAccountStageInput> actual = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			actual.add(reader.read());
+		}
+		reader.update(executionContext);
+		reader.close();
+
+		actual.addAll(readAll(reader(file), executionContext));
+		assertThat(actual).containsExactlyElementsOf(expected);
+	}
+
+	private static ItemStreamReader<BankAccountStageInput> reader(Path file) {
+		return new BankAccountStageJobConfig().bankAccountStageInputFileItemReader(new FileSystemResource(file),
+				"flatfile", null, null);
+	}
+
+}
@@ -0,0 +1,201 @@
+package com.example.bank.job;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.explore.support.JobExplorerFactoryBean;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.partition.support.SimpleStepExecutionSplitter;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.support.JdbcTransactionManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JobRepositoryPartitionHandlerTests {
+
+	private static final String WORKER_STEP_NAME = "BankAccountStageRemoteWorker";
+
+	private EmbeddedDatabase database;
+
+	private JobRepository jobRepository;
+
+	private JobExplorer jobExplorer;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		this.database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+			.generateUniqueName(true)
+			.addScript("/org/springframework/batch/core/schema-h2.sql")
+			.build();
+		JdbcTransactionManager transactionManager = new JdbcTransactionManager(this.database);
+		JobRepositoryFactoryBean jobRepositoryFactory = new JobRepositoryFactoryBean();
+		jobRepositoryFactory.setDataSource(this.database);
+		jobRepositoryFactory.setTransactionManager(transactionManager);
+		jobRepositoryFactory.afterPropertiesSet();
+		this.jobRepository = jobRepositoryFactory.getObject();
+		JobExplorerFactoryBean jobExplorerFactory = new JobExplorerFactoryBean();
+		jobExplorerFactory.setDataSource(this.database);
+		jobExplorerFactory.setTransactionManager(transactionManager);
+		jobExplorerFactory.afterPropertiesSet();
+		this.jobExplorer = jobExplorerFactory.getObject();
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.database.shutdown();
+	}
+
+	@Test
+	void waitsForWorkersAndReassignsPartitionsOfDeadWorkers() throws Exception {
+		StepExecution managerStepExecution = managerStepExecution();
+		JobRepositoryPartitionHandler partitionHandler = new JobRepositoryPartitionHandler(this.jobExplorer,
+				this.jobRepository, Duration.ofMillis(20), Duration.ofMillis(200), Duration.ofSeconds(10));
+		partitionHandler.setGridSize(2);
+
+		CompletableFuture<Void> worker = CompletableFuture.runAsync(() -> {
+			// the first claim of partition0 dies after one chunk, everything else
+			// completes
+			boolean died = false;
+			for (int completed = 0; completed < 2;) {
+				StepExecution stepExecution = claim(managerStepExecution.getJobExecutionId());
+				commitChunk(stepExecution);
+				if (!died && stepExecution.getStepName().endsWith("partition0")) {
+					died = true;
+					continue;
+				}
+				stepExecution.setStatus(BatchStatus.COMPLETED);
+				this.jobRepository.update(stepExecution);
+				completed++;
+			}
+		});
+		Collection<StepExecution> stepExecutions = partitionHandler.handle(splitter(new CustomerHashPartitioner()),
+				managerStepExecution);
+		worker.get();
+
+		Map<String, StepExecution> byName = stepExecutions.stream()
+			.collect(Collectors.toMap(StepExecution::getStepName, stepExecution -> stepExecution));
+		assertThat(byName).containsOnlyKeys(WORKER_STEP_NAME + ":partition0", WORKER_STEP_NAME + ":partition1");
+		assertThat(byName.values()).extracting(StepExecution::getStatus).containsOnly(BatchStatus.COMPLETED);
+		// the reassigned partition resumed from the state of the dead worker
+		StepExecution reassigned = byName.get(WORKER_STEP_NAME + ":partition0");
+		assertThat(reassigned.getReadCount()).isEqualTo(20);
+		assertThat(reassigned.getExecutionContext().getLong("offset")).isEqualTo(20);
+		assertThat(reassigned.getExecutionContext().getInt(CustomerHashPartitioner.PARTITION_KEY)).isEqualTo(0);
+		assertThat(this.jobExplorer.getJobExecution(managerStepExecution.getJobExecutionId()).getStepExecutions())
+			.filteredOn(stepExecution -> stepExecution.getStepName().equals(WORKER_STEP_NAME + ":partition0"))
+			.extracting(StepExecution::getStatus)
+			.containsExactlyInAnyOrder(BatchStatus.FAILED, BatchStatus.COMPLETED);
+	}
+
+	@Test
+	void keepsPartitionsOfWorkersThatCommitWithinTheHeartbeatTimeout() throws Exception {
+		StepExecution managerStepExecution = managerStepExecution();
+		JobRepositoryPartitionHandler partitionHandler = new JobRepositoryPartitionHandler(this.jobExplorer,
+				this.jobRepository, Duration.ofMillis(20), Duration.ofMillis(200), Duration.ofSeconds(10));
+		partitionHandler.setGridSize(1);
+
+		// the worker runs longer than the heartbeat timeout, but commits more often
+		CompletableFuture<Void> worker = CompletableFuture.runAsync(() -> {
+			StepExecution stepExecution = claim(managerStepExecution.getJobExecutionId());
+			for (int i = 0; i < 5; i++) {
+				sleep(80);
+				commitChunk(stepExecution);
+			}
+			stepExecution.setStatus(BatchStatus.COMPLETED);
+			this.jobRepository.update(stepExecution);
+		});
+		Collection<StepExecution> stepExecutions = partitionHandler
+			.handle(splitter(gridSize -> Map.of("partition0", new ExecutionContext())), managerStepExecution);
+		worker.get();
+
+		assertThat(stepExecutions).singleElement().satisfies(stepExecution -> {
+			assertThat(stepExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+			assertThat(stepExecution.getReadCount()).isEqualTo(50);
+		});
+		assertThat(this.jobExplorer.getJobExecution(managerStepExecution.getJobExecutionId()).getStepExecutions())
+			.hasSize(2);
+	}
+
+	@Test
+	void failsPartitionsThatNoWorkerClaimsWithinTheClaimTimeout() throws Exception {
+		StepExecution managerStepExecution = managerStepExecution();
+		JobRepositoryPartitionHandler partitionHandler = new JobRepositoryPartitionHandler(this.jobExplorer,
+				this.jobRepository, Duration.ofMillis(20), Duration.ofMillis(200), Duration.ofMillis(300));
+		partitionHandler.setGridSize(1);
+
+		Collection<StepExecution> stepExecutions = partitionHandler
+			.handle(splitter(gridSize -> Map.of("partition0", new ExecutionContext())), managerStepExecution);
+
+		assertThat(stepExecutions).singleElement().satisfies(stepExecution -> {
+			assertThat(stepExecution.getStatus()).isEqualTo(BatchStatus.FAILED);
+			assertThat(stepExecution.getExitStatus().getExitDescription()).startsWith("Not claimed by a worker");
+		});
+		// a worker started later does not pick the failed partition up
+		assertThat(this.jobExplorer.getJobExecution(managerStepExecution.getJobExecutionId()).getStepExecutions())
+			.filteredOn(stepExecution -> stepExecution.getStepName().startsWith(WORKER_STEP_NAME + ":"))
+			.extracting(StepExecution::getStatus)
+			.containsExactly(BatchStatus.FAILED);
+	}
+
+	private StepExecution managerStepExecution() throws Exception {
+		JobExecution jobExecution = this.jobRepository.createJobExecution("BankAccountStage", new JobParameters());
+		StepExecution managerStepExecution = jobExecution.createStepExecution("BankAccountStageRemote");
+		this.jobRepository.add(managerStepExecution);
+		return managerStepExecution;
+	}
+
+	private SimpleStepExecutionSplitter splitter(Partitioner partitioner) {
+		return new SimpleStepExecutionSplitter(this.jobRepository, false, WORKER_STEP_NAME, partitioner);
+	}
+
+	/**
+	 * Claims a partition like {@link BankAccountStageRemoteWorker} does, waiting until
+	 * one is available.
+	 */
+	private StepExecution claim(long jobExecutionId) {
+		while (true) {
+			for (StepExecution stepExecution : this.jobExplorer.getJobExecution(jobExecutionId).getStepExecutions()) {
+				if (stepExecution.getStatus() == BatchStatus.STARTING
+						&& stepExecution.getStepName().startsWith(WORKER_STEP_NAME + ":")) {
+					stepExecution.setStatus(BatchStatus.STARTED);
+					this.jobRepository.update(stepExecution);
+					return stepExecution;
+				}
+			}
+			sleep(10);
+		}
+	}
+
+	private void commitChunk(StepExecution stepExecution) {
+		stepExecution.setReadCount(stepExecution.getReadCount() + 10);
+		stepExecution.getExecutionContext().putLong("offset", stepExecution.getReadCount());
+		this.jobRepository.updateExecutionContext(stepExecution);
+		this.jobRepository.update(stepExecution);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+package com.example.bank.job;
+
+import com.example.bank.config.BankAccountStageJobConfig;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class MappedBankAccountStageInputItemReaderTests {
+
+	final Resource resource = new ClassPathResource("bank_account_stage_usecase_data.csv");
+
+	@Test
+	void readsSameItemsAsFlatFileItemReader() throws Exception {
+		List<BankAccountStageInput> expected = readAll(
+				new BankAccountStageJobConfig().bankAccountStageInputItemReader(this.resource, "flatfile", null, null),
+				new ExecutionContext());
+
+		assertThat(expected).hasSize(11);
+		assertThat(readAll(new MappedBankAccountStageInputItemReader(this.resource), new ExecutionContext()))
+			.containsExactlyElementsOf(expected);
+
+		MappedBankAccountStageInputItemReader smallWindow = new MappedBankAccountStageInputItemReader(this.resource);
+		smallWindow.setWindowSize(300);
+		assertThat(readAll(smallWindow, new ExecutionContext())).containsExactlyElementsOf(expected);
+	}
+
+	@Test
+	void readsPartitionByteRanges() throws Exception {
+		List<BankAccountStageInput> expected = readAll(new MappedBankAccountStageInputItemReader(this.resource),
+				new ExecutionContext());
+
+		List<BankAccountStageInput> actual = new ArrayList<>();
+		for (ExecutionContext executionContext : new BankAccountStageInputPartitioner(this.resource).partition(3)
+			.values()) {
+			actual.addAll(readAll(
+					new MappedBankAccountStageInputItemReader(this.resource,
+							executionContext.getLong(BankAccountStageInputPartitioner.START_OFFSET_KEY),
+							executionContext.getLong(BankAccountStageInputPartitioner.END_OFFSET_KEY)),
+					new ExecutionContext()));
+		}
+		assertThat(actual).containsExactlyElementsOf(expected);
+	}
+
+	@Test
+	void restartsFromByteOffset() throws Exception {
+		List<BankAccountStageInput> expected = readAll(new MappedBankAccountStageInputItemReader(this.resource),
+				new ExecutionContext());
+
+		ExecutionContext executionContext = new ExecutionContext();
+		MappedBankAccountStageInputItemReader reader = new MappedBankAccountStageInputItemReader(this.resource);
+		reader.open(executionContext);
+		List<BankAccountStageInput> actual = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			actual.add(reader.read());
+		}
+		reader.update(executionContext);
+		reader.read(); // read after the checkpoint, lost by the failure
+		reader.close();
+
+		actual.addAll(readAll(new MappedBankAccountStageInputItemReader(this.resource), executionContext));
+		assertThat(actual).containsExactlyElementsOf(expected);
+	}
+
+	@Test
+	void readsCrLfWithoutTrailingLineFeed(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("input.csv");
+		Files.writeString(file, MappedBankAccountStageInputItemReader.HEADER
+				+ "\r\nCUS001,GOLD,2025-04-30,100.5,0,0,0,0,0,0\r\n\r\nCUS002,DIAMOND,2025-05-31,-1,2.25,0,0,0,0,12",
+				StandardCharsets.UTF_8);
+
+		List<BankAccountStageInput> items = readAll(
+				new MappedBankAccountStageInputItemReader(new FileSystemResource(file)), new ExecutionContext());
+
+		assertThat(items).extracting(BankAccountStageInput::customerId).containsExactly("CUS001", "CUS002");
+		assertThat(items.get(0).totalBalance()).isEqualTo(10050);
+		assertThat(items.get(1).currentStageCode()).isEqualTo("DIAMOND");
+		assertThat(items.get(1).monthEndDate()).hasToString("2025-05-31");
+		assertThat(items.get(1).totalBalance()).isEqualTo(-100);
+		assertThat(items.get(1).foreignCurrencyBalance()).isEqualTo(225);
+		assertThat(items.get(1).monthlyFxTradingVolume()).isEqualTo(12);
+	}
+
+	@Test
+	void malformedLine(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("input.csv");
+		Files.writeString(file,
+				MappedBankAccountStageInputItemReader.HEADER + "\nCUS001,GOLD,2025-04-30,1x0,0,0,0,0,0,0\n",
+				StandardCharsets.UTF_8);
+		MappedBankAccountStageInputItemReader reader = new MappedBankAccountStageInputItemReader(
+				new FileSystemResource(file));
+		reader.open(new ExecutionContext());
+
+		assertThatExceptionOfType(FlatFileParseException.class).isThrownBy(reader::read)
+			.satisfies(e -> assertThat(e.getLineNumber()).isEqualTo(2))
+			.satisfies(e -> assertThat(e.getInput()).isEqualTo("CUS001,GOLD,2025-04-30,1x0,0,0,0,0,0,0"));
+		reader.close();
+	}
+
+	@Test
+	void rejectsInvalidLines(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("input.csv");
+		Files.writeString(file,
+				String.join("\n", MappedBankAccountStageInputItemReader.HEADER,
+						"CUS001,GOLD,2025-04-30,100,0,0,0,0,0,0", "CUS002,GOLD,2025-04-30,1x0,0,0,0,0,0,0",
+						"CUS003,DIAMOND,2025-04-30,300,0,0,0,0,0,0", "CUS004,GOLD,2025-03-31,400,0,0,0,0,0,0",
+						"CUS005,GOLD,2025-04-30,500,0,0", "CUS006,GOLD,2025-04-30,600,0,0,0,0,0,0"),
+				StandardCharsets.UTF_8);
+		RejectFile rejectFile = new RejectFile(dir.resolve("rejects.csv"));
+		MappedBankAccountStageInputItemReader reader = new MappedBankAccountStageInputItemReader(
+				new FileSystemResource(file));
+		reader.setRejects(new BankAccountStageInputValidator(Set.of("NONE", "SILVER", "GOLD", "PLATINUM"),
+				LocalDate.of(2025, 4, 30)), rejectFile);
+		ExecutionContext executionContext = new ExecutionContext();
+
+		reader.open(executionContext);
+		List<String> customerIds = new ArrayList<>();
+		for (BankAccountStageInput item; (item = reader.read()) != null;) {
+			customerIds.add(item.customerId());
+		}
+		reader.update(executionContext);
+		reader.close();
+
+		assertThat(customerIds).containsExactly("CUS001", "CUS006");
+		assertThat(Files.readAllLines(rejectFile.path())).containsExactly(RejectFile.HEADER,
+				"input.csv,3,Invalid number,CUS002,GOLD,2025-04-30,1x0,0,0,0,0,0,0",
+				"input.csv,4,Unknown current_stage_code,CUS003,DIAMOND,2025-04-30,300,0,0,0,0,0,0",
+				"input.csv,5,month_end_date differs from 2025-04-30,CUS004,GOLD,2025-03-31,400,0,0,0,0,0,0",
+				"input.csv,6,Expected 10 columns,CUS005,GOLD,2025-04-30,500,0,0");
+	}
+
+	static List<BankAccountStageInput> readAll(ItemStreamReader<BankAccountStageInput> reader,
+			ExecutionContext executionContext) throws Exception {
+		List<BankAccountStageInput> items = new ArrayList<>();
+		reader.open(executionContext);
+		try {
+			BankAccountStageInput item;
+			while ((item = reader.read()) != null) {
+				items.add(item);
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return items;
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.example.bank.job;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.support.IteratorItemReader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class ReadAheadItemReaderTests {
+
+	@Test
+	void readsAllItemsInOrder() throws Exception {
+		ReadAheadItemReader<Integer> reader = new ReadAheadItemReader<>(numbers(1000), 10);
+		reader.open(new ExecutionContext());
+
+		assertThat(readAll(reader)).containsExactlyElementsOf(IntStream.rangeClosed(1, 1000).boxed().toList());
+		assertThat(reader.read()).isNull();
+		reader.close();
+	}
+
+	@Test
+	void restartSkipsItemsAlreadyRead() throws Exception {
+		ExecutionContext executionContext = new ExecutionContext();
+		ReadAheadItemReader<Integer> reader = new ReadAheadItemReader<>(numbers(100), 10);
+		reader.open(executionContext);
+		for (int i = 0; i < 30; i++) {
+			reader.read();
+		}
+		reader.update(executionContext);
+		reader.close();
+
+		ReadAheadItemReader<Integer> restarted = new ReadAheadItemReader<>(numbers(100), 10);
+		restarted.open(executionContext);
+
+		assertThat(readAll(restarted)).containsExactlyElementsOf(IntStream.rangeClosed(31, 100).boxed().toList());
+		restarted.close();
+	}
+
+	@Test
+	void closeBeforeEndStopsReadingAhead() throws Exception {
+		ReadAheadItemReader<Integer> reader = new ReadAheadItemReader<>(numbers(1000), 10);
+		reader.open(new ExecutionContext());
+
+		assertThat(reader.read()).isEqualTo(1);
+		reader.close();
+	}
+
+	@Test
+	void readFailureIsThrownAfterPrecedingItems() throws Exception {
+		Iterator<Integer> iterator = IntStream.rangeClosed(1, 3).iterator();
+		ReadAheadItemReader<Integer> reader = new ReadAheadItemReader<>(stream(() -> {
+			if (!iterator.hasNext()) {
+				throw new ParseException("broken");
+			}
+			return iterator.next();
+		}), 10);
+		reader.open(new ExecutionContext());
+
+		assertThat(List.of(reader.read(), reader.read(), reader.read())).containsExactly(1, 2, 3);
+		assertThatExceptionOfType(ParseException.class).isThrownBy(reader::read).withMessage("broken");
+		reader.close();
+	}
+
+	static ItemStreamReader<Integer> numbers(int count) {
+		IteratorItemReader<Integer> reader = new IteratorItemReader<>(IntStream.rangeClosed(1, count).boxed().toList());
+		return stream(reader::read);
+	}
+
+	static ItemStreamReader<Integer> stream(ThrowingSupplier supplier) {
+		return new ItemStreamReader<>() {
+			@Override
+			public Integer read() throws Exception {
+				return supplier.get();
+			}
+		};
+	}
+
+	static List<Integer> readAll(ReadAheadItemReader<Integer> reader) throws Exception {
+		List<Integer> items = new ArrayList<>();
+		Integer item;
+		while ((item = reader.read()) != null) {
+			items.add(item);
+		}
+		return items;
+	}
+
+	interface ThrowingSupplier {
+
+		Integer get() throws Exception;
+
+	}
+
+}
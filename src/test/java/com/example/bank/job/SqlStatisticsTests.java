@@ -0,0 +1,48 @@
+package com.example.bank.job;
+
+import com.example.bank.job.SqlStatistics.StatementSummary;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SqlStatisticsTests {
+
+	@Test
+	void normalizesLiteralsAndLists() {
+		assertThat(SqlStatistics.normalize("""
+				SELECT * FROM customer_stage_calculations
+				WHERE customer_id = 'CUS''001' AND calculation_date = '2025-04-30' AND id IN (1, 2, 3)
+				""")).isEqualTo("SELECT * FROM customer_stage_calculations "
+				+ "WHERE customer_id = ? AND calculation_date = ? AND id IN (?...)");
+		assertThat(SqlStatistics.normalize("INSERT INTO stage_transitions (a, b2) VALUES (?, ?), (?, ?), (?, ?)"))
+			.isEqualTo(SqlStatistics.normalize("INSERT INTO stage_transitions (a, b2) VALUES (?, ?)"))
+			.isEqualTo("INSERT INTO stage_transitions (a, b2) VALUES (?...)");
+		assertThat(SqlStatistics.normalize("INSERT INTO t (a) VALUES (1.5), (2), (3)"))
+			.isEqualTo("INSERT INTO t (a) VALUES (?...)");
+	}
+
+	@Test
+	void aggregatesStatementsByNormalizedText() {
+		SqlStatistics statistics = new SqlStatistics();
+		IntStream.rangeClosed(1, 100)
+			.parallel()
+			.forEach(i -> statistics.record("UPDATE t SET a = " + i + " WHERE id = " + i,
+					TimeUnit.MICROSECONDS.toNanos((i == 100) ? 50_000 : 100), 1));
+		statistics.record("SELECT 1", TimeUnit.MILLISECONDS.toNanos(1), 0);
+
+		List<StatementSummary> summaries = statistics.summaries();
+
+		assertThat(summaries).extracting(StatementSummary::sql)
+			.containsExactly("UPDATE t SET a = ? WHERE id = ?", "SELECT ?");
+		StatementSummary update = summaries.get(0);
+		assertThat(update.count()).isEqualTo(100);
+		assertThat(update.rows()).isEqualTo(100);
+		assertThat(update.p50Micros()).isEqualTo(128);
+		assertThat(update.p99Micros()).isEqualTo(128);
+		assertThat(update.maxNanos()).isEqualTo(TimeUnit.MICROSECONDS.toNanos(50_000));
+	}
+
+}
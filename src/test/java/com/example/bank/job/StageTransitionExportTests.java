@@ -0,0 +1,131 @@
+package com.example.bank.job;
+
+import com.example.bank.stage.StageCodes;
+import com.example.bank.stage.StageEvaluation;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.util.HexFormat;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class StageTransitionExportTests {
+
+	final TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+
+	@Test
+	void exportsCommittedChunksOnly(@TempDir Path dir) throws Exception {
+		StageTransitionExport export = new StageTransitionExport(new FileSystemResource(dir), "csv", 1 << 20, 7);
+
+		this.transactionTemplate.executeWithoutResult(status -> export.export(
+				List.of(result("CUS001", "NONE", "SILVER"), result("CUS002", "GOLD", "GOLD")), new long[] { 1, 2 }));
+		assertThatIllegalStateException().isThrownBy(() -> this.transactionTemplate.executeWithoutResult(status -> {
+			export.export(List.of(result("CUS003", "NONE", "GOLD")), new long[] { 3 });
+			throw new IllegalStateException("rolled back");
+		}));
+		this.transactionTemplate.executeWithoutResult(
+				status -> export.export(List.of(result("CUS\"4", "SILVER", "NONE")), new long[] { 4 }));
+		export.close();
+
+		Path file = dir.resolve("transitions-7-0.csv");
+		assertThat(Files.readAllLines(file)).containsExactly(StageTransitionExport.CSV_HEADER,
+				"CUS001,1,NONE,SILVER,2025-05-01", "CUS\"4,4,SILVER,NONE,2025-05-01");
+		byte[] bytes = Files.readAllBytes(file);
+		assertThat(Files.readAllLines(dir.resolve(StageTransitionExport.IN_PROGRESS_MANIFEST_FILE)))
+			.containsExactly(StageTransitionExport.MANIFEST_HEADER, "transitions-7-0.csv,2," + bytes.length + ","
+					+ HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes)));
+		assertThat(dir.toFile().list()).containsExactlyInAnyOrder("transitions-7-0.csv",
+				StageTransitionExport.IN_PROGRESS_MANIFEST_FILE);
+	}
+
+	@Test
+	void rollsNdjsonFiles(@TempDir Path dir) throws Exception {
+		StageTransitionExport export = new StageTransitionExport(new FileSystemResource(dir), "ndjson", 1, 7);
+
+		export.export(List.of(result("CUS001", "NONE", "SILVER")), new long[] { 1 });
+		export.export(List.of(result("CUS\"2", "NONE", "GOLD")), new long[] { 2 });
+		export.close();
+
+		assertThat(Files.readString(dir.resolve("transitions-7-0.ndjson"), StandardCharsets.UTF_8)).isEqualTo(
+				"{\"customer_id\":\"CUS001\",\"calculation_id\":1,\"previous_stage_code\":\"NONE\",\"current_stage_code\":\"SILVER\",\"transition_date\":\"2025-05-01\"}\n");
+		assertThat(Files.readString(dir.resolve("transitions-7-1.ndjson"), StandardCharsets.UTF_8))
+			.startsWith("{\"customer_id\":\"CUS\\\"2\",\"calculation_id\":2,");
+		assertThat(Files.readAllLines(dir.resolve(StageTransitionExport.IN_PROGRESS_MANIFEST_FILE))).hasSize(3);
+	}
+
+	@Test
+	void restartTruncatesUncommittedChunks(@TempDir Path dir) throws Exception {
+		ExecutionContext executionContext = new ExecutionContext();
+		StageTransitionExport export = new StageTransitionExport(new FileSystemResource(dir), "csv", 1 << 20, 7);
+		export.open(executionContext);
+		this.transactionTemplate.executeWithoutResult(status -> {
+			export.export(List.of(result("CUS001", "NONE", "SILVER")), new long[] { 1 });
+			export.update(executionContext);
+		});
+		// the JVM stops after writing the next chunk, before its commit
+		Files.writeString(dir.resolve(".transitions-7-0.csv.inprogress"), "CUS002,2,NONE,GOLD,2025-05-01\n",
+				StandardOpenOption.APPEND);
+
+		StageTransitionExport restarted = new StageTransitionExport(new FileSystemResource(dir), "csv", 1 << 20, 8);
+		restarted.open(executionContext);
+		this.transactionTemplate.executeWithoutResult(status -> {
+			restarted.export(List.of(result("CUS002", "NONE", "GOLD")), new long[] { 3 });
+			restarted.update(executionContext);
+		});
+		restarted.close();
+
+		Path file = dir.resolve("transitions-7-0.csv");
+		assertThat(Files.readAllLines(file)).containsExactly(StageTransitionExport.CSV_HEADER,
+				"CUS001,1,NONE,SILVER,2025-05-01", "CUS002,3,NONE,GOLD,2025-05-01");
+		byte[] bytes = Files.readAllBytes(file);
+		assertThat(Files.readAllLines(dir.resolve(StageTransitionExport.IN_PROGRESS_MANIFEST_FILE)))
+			.containsExactly(StageTransitionExport.MANIFEST_HEADER, "transitions-7-0.csv,2," + bytes.length + ","
+					+ HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes)));
+	}
+
+	@Test
+	void restartAfterPublishingStartsNextFile(@TempDir Path dir) throws Exception {
+		ExecutionContext executionContext = new ExecutionContext();
+		StageTransitionExport export = new StageTransitionExport(new FileSystemResource(dir), "csv", 1, 7);
+		export.open(executionContext);
+		// rolls over when the chunk commits, after its update
+		this.transactionTemplate.executeWithoutResult(status -> {
+			export.export(List.of(result("CUS001", "NONE", "SILVER")), new long[] { 1 });
+			export.update(executionContext);
+		});
+
+		StageTransitionExport restarted = new StageTransitionExport(new FileSystemResource(dir), "csv", 1, 8);
+		restarted.open(executionContext);
+		this.transactionTemplate.executeWithoutResult(status -> {
+			restarted.export(List.of(result("CUS002", "NONE", "GOLD")), new long[] { 2 });
+			restarted.update(executionContext);
+		});
+
+		assertThat(dir.toFile().list()).containsExactlyInAnyOrder("transitions-7-0.csv", "transitions-8-1.csv",
+				StageTransitionExport.IN_PROGRESS_MANIFEST_FILE);
+		assertThat(Files.readAllLines(dir.resolve(StageTransitionExport.IN_PROGRESS_MANIFEST_FILE))).hasSize(3);
+	}
+
+	static ProcessResult result(String customerId, String currentStageCode, String finalStageCode) {
+		LocalDate monthEndDate = LocalDate.of(2025, 4, 30);
+		BankAccountStageInput input = BankAccountStageInput.of(customerId, currentStageCode, monthEndDate,
+				BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO,
+				0);
+		int finalStage = StageCodes.ordinal(finalStageCode);
+		return new ProcessResult(input, new StageEvaluation(finalStage, finalStage, List.of()),
+				monthEndDate.plusDays(1), LocalDate.of(2025, 5, 31), 0);
+	}
+
+}
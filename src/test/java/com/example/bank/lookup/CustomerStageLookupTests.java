@@ -0,0 +1,34 @@
+package com.example.bank.lookup;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerStageLookupTests {
+
+	@Test
+	void findsThePeriodContainingTheDay() {
+		int[] periods = new int[0];
+		periods = CustomerStageLookup.merge(periods, 200, 229, 2);
+		periods = CustomerStageLookup.merge(periods, 100, 130, 0);
+		periods = CustomerStageLookup.merge(periods, 131, 159, 1);
+
+		assertThat(periods).containsExactly(100, 130, 0, 131, 159, 1, 200, 229, 2);
+		assertThat(CustomerStageLookup.find(periods, 99)).isEqualTo(-1);
+		assertThat(CustomerStageLookup.find(periods, 100)).isZero();
+		assertThat(CustomerStageLookup.find(periods, 131)).isEqualTo(1);
+		assertThat(CustomerStageLookup.find(periods, 159)).isEqualTo(1);
+		assertThat(CustomerStageLookup.find(periods, 160)).isEqualTo(-1);
+		assertThat(CustomerStageLookup.find(periods, 229)).isEqualTo(2);
+		assertThat(CustomerStageLookup.find(periods, 230)).isEqualTo(-1);
+		assertThat(CustomerStageLookup.find(new int[0], 100)).isEqualTo(-1);
+	}
+
+	@Test
+	void replacesAPeriodStartingOnTheSameDay() {
+		int[] periods = CustomerStageLookup.merge(new int[] { 100, 130, 0, 131, 159, 1 }, 131, 159, 3);
+
+		assertThat(periods).containsExactly(100, 130, 0, 131, 159, 3);
+	}
+
+}
@@ -0,0 +1,88 @@
+package com.example.bank.stage;
+
+import com.example.bank.job.BankAccountStageInput;
+import com.example.bank.job.MappedBankAccountStageInputItemReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.ClassPathResource;
+
+import static com.example.bank.stage.FixedPointEvaluationTests.around;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class ChunkEvaluationTests {
+
+	@Test
+	void useCases() throws Exception {
+		StageDecisionTable decisionTable = StageDecisionTable
+			.compile(StageDecisionTableTests.initialRules(StageDecisionTableTests.MONTH_END_DATE));
+		List<BankAccountStageInput> inputs = new ArrayList<>();
+		MappedBankAccountStageInputItemReader reader = new MappedBankAccountStageInputItemReader(
+				new ClassPathResource("bank_account_stage_usecase_data.csv"));
+		reader.open(new ExecutionContext());
+		BankAccountStageInput input;
+		while ((input = reader.read()) != null) {
+			inputs.add(input);
+		}
+		reader.close();
+
+		ChunkEvaluation evaluation = decisionTable.evaluate(inputs);
+
+		assertSameAsItemEvaluation(decisionTable, inputs, evaluation);
+		// CUS003: conditions 1 and 4
+		assertThat(evaluation.metBits(2)).isEqualTo(0b0001001);
+		// CUS011: all but conditions 2, 3 and 4
+		assertThat(evaluation.metBits(10)).isEqualTo(0b1110001);
+		assertThat(evaluation.evaluatedValue(10, 6)).isEqualTo(120000);
+	}
+
+	@Test
+	void randomValuesAroundThresholdsWithBothKernels() {
+		StageDecisionTable decisionTable = StageDecisionTable.compile(FixedPointEvaluationTests.rulesWithDiamond());
+		SplittableRandom random = new SplittableRandom(20251231);
+		List<BankAccountStageInput> inputs = new ArrayList<>();
+		// not a multiple of any vector length, so that the tail is evaluated by the
+		// scalar kernel
+		for (int i = 0; i < 4099; i++) {
+			inputs.add(BankAccountStageInput.of("CUS" + i, "NONE", FixedPointEvaluationTests.MONTH_END_DATE,
+					around(random, 3000000, 100000000, 300000000), around(random, 5000000, 10000000), BigDecimal.ZERO,
+					around(random, 30000), around(random, 30000), around(random, 1, 100000000),
+					random.nextInt(998, 1003)));
+		}
+
+		for (StageDecisionTable table : List.of(decisionTable, decisionTable.withoutVectorization())) {
+			assertSameAsItemEvaluation(table, inputs, table.evaluate(inputs));
+			assertSameAsItemEvaluation(table, inputs.subList(5, 12), table.evaluate(inputs.subList(5, 12)));
+		}
+		assertThat(decisionTable.withoutVectorization().isVectorized()).isFalse();
+		assertThat(decisionTable.evaluate(List.of()).size()).isZero();
+	}
+
+	@Test
+	void inputOfAnotherMonthEndDate() {
+		StageDecisionTable decisionTable = StageDecisionTable
+			.compile(StageDecisionTableTests.initialRules(StageDecisionTableTests.MONTH_END_DATE));
+		BankAccountStageInput input = StageDecisionTableTests.input(0, 0, 0, 0);
+		BankAccountStageInput nextMonth = BankAccountStageInput.of("CUS998", "NONE",
+				StageDecisionTableTests.MONTH_END_DATE.plusMonths(1), BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO,
+				BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, 0);
+
+		assertThatIllegalArgumentException().isThrownBy(() -> decisionTable.evaluate(List.of(input, nextMonth)));
+	}
+
+	private static void assertSameAsItemEvaluation(StageDecisionTable decisionTable, List<BankAccountStageInput> inputs,
+			ChunkEvaluation evaluation) {
+		assertThat(evaluation.size()).isEqualTo(inputs.size());
+		for (int i = 0; i < inputs.size(); i++) {
+			StageEvaluation expected = decisionTable.evaluate(inputs.get(i));
+			assertThat(evaluation.stageEvaluation(i)).isEqualTo(expected);
+			assertThat(evaluation.baseStage(i)).isEqualTo(expected.baseStage());
+			assertThat(evaluation.finalStage(i)).isEqualTo(expected.finalStage());
+		}
+	}
+
+}
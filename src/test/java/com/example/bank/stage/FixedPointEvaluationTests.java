@@ -0,0 +1,250 @@
+package com.example.bank.stage;
+
+import com.example.bank.config.BankAccountStageJobConfig;
+import com.example.bank.job.BankAccountStageInput;
+import com.example.bank.job.Cents;
+import com.example.bank.job.MappedBankAccountStageInputItemReader;
+import java.io.BufferedWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the fixed-point evaluation gives the same results as evaluating the
+ * {@code BigDecimal} values of the CSV file directly.
+ */
+class FixedPointEvaluationTests {
+
+	static final LocalDate MONTH_END_DATE = LocalDate.parse("2025-12-31");
+
+	static final BigDecimal ONE_CENT = new BigDecimal("0.01");
+
+	static final String HEADER = "customer_id,current_stage_code,month_end_date,total_balance,foreign_currency_balance,investment_trust_balance,monthly_foreign_currency_purchase,monthly_investment_trust_purchase,housing_loan_balance,monthly_fx_trading_volume";
+
+	@Test
+	void useCases() throws Exception {
+		Resource resource = new ClassPathResource("bank_account_stage_usecase_data.csv");
+		StageRules rules = StageDecisionTableTests.initialRules(StageDecisionTableTests.MONTH_END_DATE);
+		List<DecimalInput> expected = Files.readAllLines(resource.getFile().toPath())
+			.stream()
+			.skip(1)
+			.map(DecimalInput::parse)
+			.toList();
+
+		assertSameEvaluations(rules, expected, resource);
+	}
+
+	@Test
+	void randomValuesAroundThresholds(@TempDir Path dir) throws Exception {
+		StageRules rules = rulesWithDiamond();
+		SplittableRandom random = new SplittableRandom(20250430);
+		List<DecimalInput> expected = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			BigDecimal combinedBalance = around(random, 5000000, 10000000);
+			BigDecimal foreignCurrencyBalance = BigDecimal
+				.valueOf(random.nextLong(combinedBalance.movePointRight(2).longValue() + 1), 2);
+			expected.add(new DecimalInput("CUS" + i, random.nextBoolean() ? "SILVER" : "NONE", MONTH_END_DATE,
+					around(random, 3000000, 100000000, 300000000), foreignCurrencyBalance,
+					combinedBalance.subtract(foreignCurrencyBalance), around(random, 30000), around(random, 30000),
+					around(random, 1, 100000000), random.nextInt(998, 1003)));
+		}
+		Path file = dir.resolve("input.csv");
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			for (DecimalInput input : expected) {
+				writer.write('\n');
+				writer.write(input.toCsv(random));
+			}
+		}
+
+		assertSameEvaluations(rules, expected, new FileSystemResource(file));
+	}
+
+	private static void assertSameEvaluations(StageRules rules, List<DecimalInput> expected, Resource resource)
+			throws Exception {
+		StageDecisionTable decisionTable = StageDecisionTable.compile(rules);
+		List<List<BankAccountStageInput>> inputs = List
+			.of(readAll(new MappedBankAccountStageInputItemReader(resource)), readAll(
+					new BankAccountStageJobConfig().bankAccountStageInputItemReader(resource, "flatfile", null, null)));
+		for (List<BankAccountStageInput> actual : inputs) {
+			assertThat(actual).hasSameSizeAs(expected);
+			for (int i = 0; i < expected.size(); i++) {
+				DecimalInput decimalInput = expected.get(i);
+				BankAccountStageInput input = actual.get(i);
+				assertThat(input).isEqualTo(decimalInput.toInput());
+				assertThat(Cents.toBigDecimal(input.totalBalance())).isEqualByComparingTo(decimalInput.totalBalance());
+
+				StageEvaluation evaluation = decisionTable.evaluate(input);
+				Reference reference = Reference.evaluate(rules, decimalInput);
+				assertThat(evaluation.baseStageCode()).as(decimalInput.toString()).isEqualTo(reference.baseStageCode());
+				assertThat(evaluation.finalStageCode()).as(decimalInput.toString())
+					.isEqualTo(reference.finalStageCode());
+				assertThat(evaluation.conditionEvaluations()).hasSameSizeAs(reference.values());
+				for (int j = 0; j < reference.values().size(); j++) {
+					ConditionEvaluation conditionEvaluation = evaluation.conditionEvaluations().get(j);
+					assertThat(conditionEvaluation.met()).as(decimalInput.toString()).isEqualTo(reference.met().get(j));
+					assertThat(Cents.toBigDecimal(conditionEvaluation.evaluatedValue()))
+						.isEqualByComparingTo(reference.values().get(j));
+				}
+			}
+		}
+	}
+
+	static StageRules rulesWithDiamond() {
+		StageRules initial = StageDecisionTableTests.initialRules(MONTH_END_DATE);
+		List<StageRules.Stage> stages = new ArrayList<>(initial.stages());
+		stages.add(new StageRules.Stage("DIAMOND", 400, false));
+		List<StageRules.Condition> conditions = new ArrayList<>(initial.conditions());
+		conditions.add(StageRules.Condition.stage(8, "TOTAL_BALANCE_DIAMOND", "DIAMOND",
+				StageDecisionTableTests.amount(300000000), StageDecisionTableTests.maxValue()));
+		conditions.add(StageRules.Condition.stage(9, "TOTAL_BALANCE_AND_HOUSING_LOAN_DIAMOND", "DIAMOND",
+				StageDecisionTableTests.amount(100000000), StageDecisionTableTests.maxValue()));
+		return new StageRules(MONTH_END_DATE, stages, conditions);
+	}
+
+	/**
+	 * One of the thresholds, one cent below or above it, zero, or a random amount.
+	 */
+	static BigDecimal around(SplittableRandom random, long... thresholds) {
+		BigDecimal threshold = BigDecimal.valueOf(thresholds[random.nextInt(thresholds.length)]);
+		return switch (random.nextInt(5)) {
+			case 0 -> threshold.subtract(ONE_CENT);
+			case 1 -> threshold;
+			case 2 -> threshold.add(ONE_CENT);
+			case 3 -> BigDecimal.ZERO;
+			default -> BigDecimal.valueOf(random.nextLong(threshold.movePointRight(2).longValue() * 2), 2);
+		};
+	}
+
+	private static List<BankAccountStageInput> readAll(ItemStreamReader<BankAccountStageInput> reader)
+			throws Exception {
+		List<BankAccountStageInput> items = new ArrayList<>();
+		reader.open(new ExecutionContext());
+		try {
+			BankAccountStageInput item;
+			while ((item = reader.read()) != null) {
+				items.add(item);
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return items;
+	}
+
+	record DecimalInput(String customerId, String currentStageCode, LocalDate monthEndDate, BigDecimal totalBalance,
+			BigDecimal foreignCurrencyBalance, BigDecimal investmentTrustBalance,
+			BigDecimal monthlyForeignCurrencyPurchase, BigDecimal monthlyInvestmentTrustPurchase,
+			BigDecimal housingLoanBalance, int monthlyFxTradingVolume) {
+
+		static DecimalInput parse(String line) {
+			String[] fields = line.split(",");
+			return new DecimalInput(fields[0], fields[1], LocalDate.parse(fields[2]), new BigDecimal(fields[3]),
+					new BigDecimal(fields[4]), new BigDecimal(fields[5]), new BigDecimal(fields[6]),
+					new BigDecimal(fields[7]), new BigDecimal(fields[8]), Integer.parseInt(fields[9]));
+		}
+
+		BankAccountStageInput toInput() {
+			return BankAccountStageInput.of(this.customerId, this.currentStageCode, this.monthEndDate,
+					this.totalBalance, this.foreignCurrencyBalance, this.investmentTrustBalance,
+					this.monthlyForeignCurrencyPurchase, this.monthlyInvestmentTrustPurchase, this.housingLoanBalance,
+					this.monthlyFxTradingVolume);
+		}
+
+		/**
+		 * Writes the amounts with or without their trailing zeros.
+		 */
+		String toCsv(SplittableRandom random) {
+			List<String> fields = new ArrayList<>(
+					List.of(this.customerId, this.currentStageCode, this.monthEndDate.toString()));
+			for (BigDecimal amount : List.of(this.totalBalance, this.foreignCurrencyBalance,
+					this.investmentTrustBalance, this.monthlyForeignCurrencyPurchase,
+					this.monthlyInvestmentTrustPurchase, this.housingLoanBalance)) {
+				fields.add(random.nextBoolean() ? amount.setScale(2).toPlainString()
+						: amount.stripTrailingZeros().toPlainString());
+			}
+			fields.add(Integer.toString(this.monthlyFxTradingVolume));
+			return String.join(",", fields);
+		}
+
+		BigDecimal value(ConditionMetric metric) {
+			return switch (metric) {
+				case TOTAL_BALANCE -> this.totalBalance;
+				case MONTHLY_FOREIGN_CURRENCY_PURCHASE -> this.monthlyForeignCurrencyPurchase;
+				case MONTHLY_INVESTMENT_TRUST_PURCHASE -> this.monthlyInvestmentTrustPurchase;
+				case COMBINED_BALANCE -> this.foreignCurrencyBalance.add(this.investmentTrustBalance);
+				case HOUSING_LOAN -> this.housingLoanBalance;
+				case FX_TRADING -> BigDecimal.valueOf(this.monthlyFxTradingVolume);
+				case TOTAL_BALANCE_AND_HOUSING_LOAN -> this.totalBalance.min(this.housingLoanBalance);
+			};
+		}
+
+	}
+
+	/**
+	 * Straightforward {@code BigDecimal} evaluation of the rules, conditions in id order.
+	 */
+	record Reference(String baseStageCode, String finalStageCode, List<Boolean> met, List<BigDecimal> values) {
+
+		static Reference evaluate(StageRules rules, DecimalInput input) {
+			List<StageRules.Stage> stages = rules.stages()
+				.stream()
+				.sorted(Comparator.comparingInt(StageRules.Stage::stageOrder))
+				.toList();
+			List<String> stageCodes = stages.stream().map(StageRules.Stage::stageCode).toList();
+			List<Boolean> met = new ArrayList<>();
+			List<BigDecimal> values = new ArrayList<>();
+			int base = 0;
+			int levels = 0;
+			for (StageRules.Condition condition : rules.conditions()
+				.stream()
+				.sorted(Comparator.comparingLong(StageRules.Condition::id))
+				.toList()) {
+				BigDecimal value = input.value(ConditionMetric.of(condition.conditionType()));
+				boolean conditionMet;
+				if (StageRules.Condition.STAGE.equals(condition.conditionCategory())) {
+					conditionMet = value.compareTo(condition.minValue()) >= 0
+							&& value.compareTo(condition.maxValue()) < 0;
+					if (conditionMet) {
+						base = Math.max(base, stageCodes.indexOf(condition.stageCode()));
+					}
+				}
+				else {
+					conditionMet = value.compareTo(condition.thresholdValue()) >= 0;
+					if (conditionMet) {
+						levels += condition.rankChangeLevels();
+					}
+				}
+				met.add(conditionMet);
+				values.add(value);
+			}
+			int rank = base;
+			for (int i = 0; i < levels; i++) {
+				for (int next = rank + 1; next < stages.size(); next++) {
+					if (stages.get(next).rankUpReachable()) {
+						rank = next;
+						break;
+					}
+				}
+			}
+			return new Reference(stageCodes.get(base), stageCodes.get(rank), met, values);
+		}
+
+	}
+
+}
@@ -0,0 +1,153 @@
+package com.example.bank.stage;
+
+import com.example.bank.job.BankAccountStageInput;
+import com.example.bank.job.MappedBankAccountStageInputItemReader;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.ClassPathResource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class StageDecisionTableTests {
+
+	static final LocalDate MONTH_END_DATE = LocalDate.parse("2025-04-30");
+
+	/**
+	 * Same rules as the V002 migration.
+	 */
+	static StageRules initialRules(LocalDate effectiveDate) {
+		return new StageRules(effectiveDate,
+				List.of(new StageRules.Stage("PLATINUM", 300, true), new StageRules.Stage("NONE", 0, true),
+						new StageRules.Stage("SILVER", 100, true), new StageRules.Stage("GOLD", 200, true)),
+				List.of(StageRules.Condition.stage(1, "TOTAL_BALANCE", "SILVER", amount(3000000), maxValue()),
+						StageRules.Condition.stage(2, "MONTHLY_FOREIGN_CURRENCY_PURCHASE", "SILVER", amount(30000),
+								maxValue()),
+						StageRules.Condition.stage(3, "MONTHLY_INVESTMENT_TRUST_PURCHASE", "SILVER", amount(30000),
+								maxValue()),
+						StageRules.Condition.stage(4, "COMBINED_BALANCE_GOLD", "GOLD", amount(5000000),
+								amount(10000000)),
+						StageRules.Condition.stage(5, "COMBINED_BALANCE_PLATINUM", "PLATINUM", amount(10000000),
+								maxValue()),
+						StageRules.Condition.rankChange(7, "FX_TRADING", amount(1000), 1),
+						StageRules.Condition.rankChange(6, "HOUSING_LOAN", amount(1), 1)));
+	}
+
+	@Test
+	void allUseCases() throws Exception {
+		StageDecisionTable decisionTable = StageDecisionTable.compile(initialRules(MONTH_END_DATE));
+
+		List<StageEvaluation> evaluations = new ArrayList<>();
+		MappedBankAccountStageInputItemReader reader = new MappedBankAccountStageInputItemReader(
+				new ClassPathResource("bank_account_stage_usecase_data.csv"));
+		reader.open(new ExecutionContext());
+		BankAccountStageInput input;
+		while ((input = reader.read()) != null) {
+			evaluations.add(decisionTable.evaluate(input));
+		}
+		reader.close();
+
+		assertThat(evaluations).extracting(StageEvaluation::finalStageCode)
+			.containsExactly("NONE", "SILVER", "GOLD", "SILVER", "GOLD", "SILVER", "SILVER", "PLATINUM", "SILVER",
+					"SILVER", "PLATINUM");
+		assertThat(evaluations).extracting(StageEvaluation::baseStageCode)
+			.containsExactly("NONE", "SILVER", "GOLD", "SILVER", "GOLD", "SILVER", "SILVER", "PLATINUM", "NONE", "NONE",
+					"PLATINUM");
+		// CUS003
+		assertThat(evaluations.get(2).conditionEvaluations()).containsExactly(
+				new ConditionEvaluation(1, true, cents(8800000)), new ConditionEvaluation(2, false, cents(0)),
+				new ConditionEvaluation(3, false, cents(0)), new ConditionEvaluation(4, true, cents(6000000)),
+				new ConditionEvaluation(5, false, cents(6000000)), new ConditionEvaluation(6, false, cents(0)),
+				new ConditionEvaluation(7, false, cents(0)));
+		// CUS011
+		assertThat(evaluations.get(10).conditionEvaluations()).extracting(ConditionEvaluation::met)
+			.containsExactly(true, false, false, false, true, true, true);
+		assertThat(evaluations.get(10).conditionEvaluations().get(6).evaluatedValue()).isEqualTo(cents(1200));
+	}
+
+	@Test
+	void validityPeriod() {
+		StageDecisionTable decisionTable = StageDecisionTable.compile(initialRules(MONTH_END_DATE));
+
+		assertThat(decisionTable.validFrom()).isEqualTo("2025-05-01");
+		assertThat(decisionTable.validTo()).isEqualTo("2025-05-31");
+	}
+
+	@Test
+	void stageAddedAsDataOnlyCannotBeReachedByRankUp() {
+		StageRules initial = initialRules(LocalDate.parse("2025-12-31"));
+		List<StageRules.Stage> stages = new ArrayList<>(initial.stages());
+		stages.add(new StageRules.Stage("DIAMOND", 400, false));
+		List<StageRules.Condition> conditions = new ArrayList<>(initial.conditions());
+		conditions
+			.add(StageRules.Condition.stage(8, "TOTAL_BALANCE_DIAMOND", "DIAMOND", amount(300000000), maxValue()));
+		conditions.add(StageRules.Condition.stage(9, "TOTAL_BALANCE_AND_HOUSING_LOAN_DIAMOND", "DIAMOND",
+				amount(100000000), maxValue()));
+		StageDecisionTable decisionTable = StageDecisionTable
+			.compile(new StageRules(initial.effectiveDate(), stages, conditions));
+
+		// total balance of 300M
+		assertThat(decisionTable.evaluate(input(300000000, 0, 0, 0)).finalStageCode()).isEqualTo("DIAMOND");
+		// total balance and housing loan of 100M each
+		assertThat(decisionTable.evaluate(input(150000000, 0, 100000000, 0)).finalStageCode()).isEqualTo("DIAMOND");
+		// platinum with both rank change conditions stays platinum
+		StageEvaluation platinum = decisionTable.evaluate(input(120000000, 12000000, 50000000, 1200));
+		assertThat(platinum.baseStageCode()).isEqualTo("PLATINUM");
+		assertThat(platinum.finalStageCode()).isEqualTo("PLATINUM");
+		assertThat(platinum.conditionEvaluations()).hasSize(9);
+		assertThat(platinum.conditionEvaluations().get(8).evaluatedValue()).isEqualTo(cents(50000000));
+		// gold with both rank change conditions is capped at platinum
+		assertThat(decisionTable.evaluate(input(10000000, 6000000, 1, 1000)).finalStageCode()).isEqualTo("PLATINUM");
+	}
+
+	@Test
+	void conditionOfStageNotEffective() {
+		StageRules initial = initialRules(MONTH_END_DATE);
+		List<StageRules.Condition> conditions = new ArrayList<>(initial.conditions());
+		conditions
+			.add(StageRules.Condition.stage(8, "TOTAL_BALANCE_DIAMOND", "DIAMOND", amount(300000000), maxValue()));
+
+		assertThatIllegalStateException()
+			.isThrownBy(() -> StageDecisionTable.compile(new StageRules(MONTH_END_DATE, initial.stages(), conditions)));
+	}
+
+	@Test
+	void ruleSetVersion() {
+		long version = StageDecisionTable.compile(initialRules(MONTH_END_DATE)).ruleSetVersion();
+		assertThat(StageDecisionTable.compile(initialRules(LocalDate.parse("2025-05-31"))).ruleSetVersion())
+			.isEqualTo(version);
+
+		StageRules initial = initialRules(MONTH_END_DATE);
+		List<StageRules.Condition> conditions = new ArrayList<>(initial.conditions());
+		conditions.set(0, StageRules.Condition.stage(1, "TOTAL_BALANCE", "SILVER", amount(2000000), maxValue()));
+		assertThat(StageDecisionTable.compile(new StageRules(MONTH_END_DATE, initial.stages(), conditions))
+			.ruleSetVersion()).isNotEqualTo(version);
+		List<StageRules.Stage> stages = new ArrayList<>(initial.stages());
+		stages.set(0, new StageRules.Stage("PLATINUM", 300, false));
+		assertThat(StageDecisionTable.compile(new StageRules(MONTH_END_DATE, stages, initial.conditions()))
+			.ruleSetVersion()).isNotEqualTo(version);
+	}
+
+	static BankAccountStageInput input(long totalBalance, long combinedBalance, long housingLoanBalance,
+			int fxTradingVolume) {
+		return BankAccountStageInput.of("CUS999", "NONE", MONTH_END_DATE, amount(totalBalance), amount(combinedBalance),
+				amount(0), amount(0), amount(0), amount(housingLoanBalance), fxTradingVolume);
+	}
+
+	static BigDecimal amount(long value) {
+		return BigDecimal.valueOf(value);
+	}
+
+	static long cents(long value) {
+		return value * 100;
+	}
+
+	static BigDecimal maxValue() {
+		return new BigDecimal("9999999999999.99");
+	}
+
+}
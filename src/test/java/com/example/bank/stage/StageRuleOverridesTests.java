@@ -0,0 +1,69 @@
+package com.example.bank.stage;
+
+import com.example.bank.job.BankAccountStageInput;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class StageRuleOverridesTests {
+
+	static final LocalDate MONTH_END_DATE = LocalDate.of(2025, 12, 31);
+
+	final StageRules rules = new StageRules(MONTH_END_DATE,
+			List.of(new StageRules.Stage("NONE", 0, true), new StageRules.Stage("SILVER", 100, true),
+					new StageRules.Stage("GOLD", 200, true), new StageRules.Stage("PLATINUM", 300, true)),
+			List.of(StageRules.Condition.stage(1, "TOTAL_BALANCE", "SILVER", new BigDecimal("3000000"),
+					new BigDecimal("9999999999999.99")),
+					StageRules.Condition.stage(4, "COMBINED_BALANCE_PLATINUM", "PLATINUM", new BigDecimal("10000000"),
+							new BigDecimal("9999999999999.99")),
+					StageRules.Condition.rankChange(6, "HOUSING_LOAN", new BigDecimal("1"), 1)));
+
+	@Test
+	void addsAndReplacesStagesAndConditions() {
+		StageRuleOverrides overrides = StageRuleOverrides.parse(List.of(
+				"rule_kind,stage_code,stage_order,rank_up_reachable,condition_id,condition_type,condition_category,min_value,max_value,threshold_value,rank_change_levels",
+				"STAGE,DIAMOND,400,false,,,,,,,", "CONDITION,DIAMOND,,,,TOTAL_BALANCE_DIAMOND,STAGE,300000000,,,",
+				"CONDITION,DIAMOND,,,,TOTAL_BALANCE_AND_HOUSING_LOAN_DIAMOND,STAGE,100000000,,,",
+				"CONDITION,SILVER,,,1,TOTAL_BALANCE,STAGE,2000000,,,", ""));
+
+		StageRules candidate = overrides.applyTo(this.rules);
+
+		assertThat(candidate.stages()).extracting(StageRules.Stage::stageCode)
+			.containsExactly("NONE", "SILVER", "GOLD", "PLATINUM", "DIAMOND");
+		assertThat(candidate.conditions()).extracting(StageRules.Condition::id).containsExactly(1L, 4L, 6L, 7L, 8L);
+		assertThat(candidate.conditions().get(0).minValue()).isEqualByComparingTo("2000000");
+		assertThat(candidate.conditions().get(4).maxValue()).isEqualByComparingTo("9999999999999.99");
+
+		StageDecisionTable table = StageDecisionTable.compile(candidate);
+		assertThat(table.evaluate(input(2_500_000, 0, 0)).finalStageCode()).isEqualTo("SILVER");
+		assertThat(table.evaluate(input(300_000_000, 0, 0)).finalStageCode()).isEqualTo("DIAMOND");
+		assertThat(table.evaluate(input(100_000_000, 0, 100_000_000)).finalStageCode()).isEqualTo("DIAMOND");
+		// diamond cannot be reached by a rank up
+		assertThat(table.evaluate(input(100_000_000, 10_000_000, 50_000_000)).finalStageCode()).isEqualTo("PLATINUM");
+	}
+
+	@Test
+	void rejectsMalformedRows() {
+		String header = "rule_kind,stage_code,stage_order,rank_up_reachable,condition_id,condition_type,condition_category,min_value,max_value,threshold_value,rank_change_levels";
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> StageRuleOverrides.parse(List.of(header, "STAGE,DIAMOND,400")))
+			.withMessage("Expected 11 columns but found 3 at line 2");
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> StageRuleOverrides.parse(List.of(header, "RULE,,,,,,,,,,")))
+			.withMessage("Unsupported rule_kind RULE at line 2");
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> StageRuleOverrides.parse(List.of(header, "CONDITION,,,,6,HOUSING_LOAN,RANK_CHANGE,,,,")))
+			.withMessage("threshold_value is required for rank change HOUSING_LOAN");
+	}
+
+	static BankAccountStageInput input(long totalBalance, long foreignCurrencyBalance, long housingLoanBalance) {
+		return BankAccountStageInput.of("CUS001", "NONE", MONTH_END_DATE, BigDecimal.valueOf(totalBalance),
+				BigDecimal.valueOf(foreignCurrencyBalance), BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO,
+				BigDecimal.valueOf(housingLoanBalance), 0);
+	}
+
+}